@@ -0,0 +1,85 @@
+package example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first lookup of a class file that only the last of N jars contains,
+ * through a fresh ChildFirstURLClassLoader per iteration, like the first
+ * request of a cold container. With indexed the lib directory carries a
+ * class index, as written by `mvn package` and `fun nas sync`, and only the
+ * jar owning the package is opened.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassLookupBenchmark {
+
+    @Param({"10", "150"})
+    public int jarCount;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private File libDir;
+    private File[] jars;
+    private String lastClass;
+
+    private ChildFirstURLClassLoader loader;
+
+    @Setup(Level.Trial)
+    public void createJars() throws IOException {
+        libDir = Files.createTempDirectory("class-lookup").toFile();
+        jars = new File[jarCount];
+        for (int i = 0; i < jarCount; i++) {
+            jars[i] = new File(libDir, String.format("dep-%03d.jar", i));
+            ResourceLookupBenchmark.writeJar(jars[i], "dep" + i + "/Marker.class", "dep" + i + "/Util.class");
+        }
+        lastClass = "dep" + (jarCount - 1) + "/Marker.class";
+
+        if (indexed) {
+            ClassIndex.write(libDir);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createLoader() throws MalformedURLException {
+        ClassIndex classIndex = new ClassIndex();
+        List<URL> urls = new ArrayList<>();
+        classIndex.load(libDir, jars);
+        urls.add(libDir.toURI().toURL());
+        for (File jar : jars) {
+            urls.add(jar.toURI().toURL());
+        }
+        loader = new ChildFirstURLClassLoader(urls.toArray(new URL[0]), classIndex, getClass().getClassLoader());
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeLoader() throws IOException {
+        loader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJars() {
+        for (File f : libDir.listFiles()) {
+            f.delete();
+        }
+        libDir.delete();
+    }
+
+    @Benchmark
+    public URL firstLookup() {
+        return loader.findResource(lastClass);
+    }
+}
@@ -0,0 +1,70 @@
+package example;
+
+import com.aliyun.fc.runtime.Context;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cached MethodHandle dispatch of Entrypoint with the
+ * per-request reflective lookup it used before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntrypointDispatchBenchmark {
+
+    private Entrypoint entrypoint;
+    private Class<?> appClass;
+    private Object appObj;
+    private Context context;
+
+    private ByteArrayInputStream input;
+    private ByteArrayOutputStream output;
+
+    @Setup
+    public void setup() throws Exception {
+        entrypoint = new Entrypoint();
+        appClass = Class.forName("example.AppProxy");
+        appObj = appClass.getDeclaredConstructor().newInstance();
+        context = FakeContext.create();
+
+        // the apps create their pools in initialize, as the Initializer does before the first request
+        entrypoint.initialize(context);
+        appClass.getMethod("initialize", Context.class).invoke(appObj, context);
+
+        input = new ByteArrayInputStream(new byte[0]);
+        output = new ByteArrayOutputStream(64);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        entrypoint.preStop(context);
+        appClass.getMethod("preStop", Context.class).invoke(appObj, context);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream methodHandle() throws Exception {
+        input.reset();
+        output.reset();
+        entrypoint.handleRequest(input, output, context);
+        return output;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream reflection() throws Exception {
+        input.reset();
+        output.reset();
+        Method handleRequest = appClass.getDeclaredMethod("handleRequest", InputStream.class, OutputStream.class, Context.class);
+        handleRequest.invoke(appObj, input, output, context);
+        return output;
+    }
+}
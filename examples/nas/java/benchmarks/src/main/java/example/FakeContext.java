@@ -0,0 +1,40 @@
+package example;
+
+import com.aliyun.fc.runtime.Context;
+import com.aliyun.fc.runtime.FunctionComputeLogger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+/**
+ * A local Context for the benchmarks. Methods other than getRequestId and
+ * getLogger return null, so it keeps compiling against newer fc-java-core
+ * versions that add methods to the interface.
+ */
+final class FakeContext {
+
+    private FakeContext() {
+    }
+
+    static Context create() {
+        String requestId = UUID.randomUUID().toString();
+        FunctionComputeLogger logger = proxy(FunctionComputeLogger.class, (proxy, method, args) -> null);
+
+        return proxy(Context.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getRequestId":
+                    return requestId;
+                case "getLogger":
+                    return logger;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeContext.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
@@ -0,0 +1,171 @@
+package example;
+
+import com.aliyun.fc.runtime.Context;
+import com.aliyun.fc.runtime.HttpRequestHandler;
+import example.starter.Pool;
+import example.starter.Resources;
+import example.starter.TextBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the response the way the App of the http-trigger-java8 template
+ * does: status, headers and a text body, built into a pooled TextBuffer of
+ * fc-java-starter or, as the template did before, formatted into a String.
+ * The request and response are proxies over maps, their dispatch cost is
+ * part of every run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HttpResponseBenchmark {
+
+    private final HttpRequestHandler handler = new TemplateApp();
+    private final PooledTemplateApp pooledHandler = new PooledTemplateApp();
+    private final Context context = FakeContext.create();
+
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private final Map<String, String> headers = new HashMap<>();
+    private final CountingServletOutputStream output = new CountingServletOutputStream();
+
+    @Setup
+    public void setup() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("FC_REQUEST_PATH", "/2016-08-15/proxy/demo/http/users");
+        attributes.put("FC_REQUEST_URI", "/2016-08-15/proxy/demo/http/users?id=1");
+        attributes.put("FC_REQUEST_CLIENT_IP", "127.0.0.1");
+
+        request = FakeContext.proxy(HttpServletRequest.class, (proxy, method, args) ->
+                "getAttribute".equals(method.getName()) ? attributes.get(args[0]) : null);
+
+        response = FakeContext.proxy(HttpServletResponse.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "setHeader":
+                    headers.put((String) args[0], (String) args[1]);
+                    return null;
+                case "getOutputStream":
+                    return output;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pooledHandler.resources.close();
+    }
+
+    @Benchmark
+    public long writeResponse() throws IOException, ServletException {
+        headers.clear();
+        output.count = 0;
+        handler.handleRequest(request, response, context);
+        return output.count;
+    }
+
+    @Benchmark
+    public long writePooledResponse() throws IOException, ServletException {
+        headers.clear();
+        output.count = 0;
+        pooledHandler.handleRequest(request, response, context);
+        return output.count;
+    }
+
+    /**
+     * The handleRequest of templates/http-trigger-java8 before it used fc-java-starter.
+     */
+    static class TemplateApp implements HttpRequestHandler {
+
+        @Override
+        public void handleRequest(HttpServletRequest request, HttpServletResponse response, Context context)
+                throws IOException, ServletException {
+            String requestPath = (String) request.getAttribute("FC_REQUEST_PATH");
+            String requestURI = (String) request.getAttribute("FC_REQUEST_URI");
+            String requestClientIP = (String) request.getAttribute("FC_REQUEST_CLIENT_IP");
+
+            response.setStatus(200);
+            response.setHeader("header1", "value1");
+            response.setHeader("header2", "value2");
+            response.setHeader("Content-Type", "text/plain");
+
+            String body = String.format("Path: %s\n Uri: %s\n IP: %s\n", requestPath, requestURI, requestClientIP);
+            OutputStream out = response.getOutputStream();
+            out.write((body).getBytes());
+            out.flush();
+            out.close();
+        }
+    }
+
+    /**
+     * The handleRequest of templates/http-trigger-java8, the pool is created
+     * as its initialize does.
+     */
+    static class PooledTemplateApp implements HttpRequestHandler {
+
+        final Resources resources = new Resources();
+        final Pool<TextBuffer> buffers = resources.buffers("response buffers", 16, 1024);
+
+        @Override
+        public void handleRequest(HttpServletRequest request, HttpServletResponse response, Context context)
+                throws IOException, ServletException {
+            String requestPath = (String) request.getAttribute("FC_REQUEST_PATH");
+            String requestURI = (String) request.getAttribute("FC_REQUEST_URI");
+            String requestClientIP = (String) request.getAttribute("FC_REQUEST_CLIENT_IP");
+
+            response.setStatus(200);
+            response.setHeader("header1", "value1");
+            response.setHeader("header2", "value2");
+            response.setHeader("Content-Type", "text/plain");
+
+            try (Pool.Lease<TextBuffer> lease = buffers.lease()) {
+                TextBuffer body = lease.get()
+                        .append("Path: ").append(requestPath)
+                        .append("\n Uri: ").append(requestURI)
+                        .append("\n IP: ").append(requestClientIP).append('\n');
+                OutputStream out = response.getOutputStream();
+                body.writeTo(out);
+                out.flush();
+                out.close();
+            }
+        }
+    }
+
+    static class CountingServletOutputStream extends ServletOutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
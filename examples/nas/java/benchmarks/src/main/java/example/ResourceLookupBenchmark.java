@@ -0,0 +1,99 @@
+package example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * getResources over N jars that all contain the looked up resource, the way
+ * SpringFactoriesLoader and ServiceLoader query META-INF files at startup.
+ *
+ * firstOnly stops after the first hit, which ChildFirstURLClassLoader answers
+ * without opening the remaining jars. all drains the enumeration and is served
+ * from the loader's resource cache after the first call. urlClassLoaderAll is
+ * the plain URLClassLoader scan for reference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceLookupBenchmark {
+
+    static final String RESOURCE = "META-INF/spring.factories";
+
+    @Param({"10", "150"})
+    public int jarCount;
+
+    private File libDir;
+    private ChildFirstURLClassLoader childFirst;
+    private URLClassLoader plain;
+
+    @Setup
+    public void setup() throws IOException {
+        libDir = Files.createTempDirectory("resource-lookup").toFile();
+        URL[] urls = new URL[jarCount];
+        for (int i = 0; i < jarCount; i++) {
+            File jar = new File(libDir, "dep-" + i + ".jar");
+            writeJar(jar, RESOURCE, "dep" + i + "/Marker.class");
+            urls[i] = jar.toURI().toURL();
+        }
+        childFirst = new ChildFirstURLClassLoader(urls, getClass().getClassLoader());
+        plain = new URLClassLoader(urls, getClass().getClassLoader());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        childFirst.close();
+        plain.close();
+        for (File f : libDir.listFiles()) {
+            f.delete();
+        }
+        libDir.delete();
+    }
+
+    static void writeJar(File jar, String... entries) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                out.write(entry.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Benchmark
+    public URL firstOnly() throws IOException {
+        return childFirst.getResources(RESOURCE).nextElement();
+    }
+
+    @Benchmark
+    public int all() throws IOException {
+        return drain(childFirst.getResources(RESOURCE));
+    }
+
+    @Benchmark
+    public int urlClassLoaderAll() throws IOException {
+        return drain(plain.getResources(RESOURCE));
+    }
+
+    private static int drain(Enumeration<URL> urls) {
+        int count = 0;
+        while (urls.hasMoreElements()) {
+            urls.nextElement();
+            count++;
+        }
+        return count;
+    }
+}
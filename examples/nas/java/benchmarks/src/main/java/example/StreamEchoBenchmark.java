@@ -0,0 +1,80 @@
+package example;
+
+import com.aliyun.fc.runtime.Context;
+import com.aliyun.fc.runtime.StreamRequestHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A StreamRequestHandler copying the request to the response, with payloads
+ * from 1 KB up to the 50 MB limit of synchronous invocations. The response is
+ * counted and dropped, so only the copy through the handler is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamEchoBenchmark {
+
+    @Param({"1024", "1048576", "52428800"})
+    public int payloadSize;
+
+    private final StreamRequestHandler handler = new EchoHandler();
+    private final Context context = FakeContext.create();
+
+    private ByteArrayInputStream input;
+    private CountingOutputStream output;
+
+    @Setup
+    public void setup() {
+        byte[] payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+
+        input = new ByteArrayInputStream(payload);
+        output = new CountingOutputStream();
+    }
+
+    @Benchmark
+    public long echo() throws IOException {
+        input.reset();
+        output.count = 0;
+        handler.handleRequest(input, output, context);
+        return output.count;
+    }
+
+    static class EchoHandler implements StreamRequestHandler {
+
+        @Override
+        public void handleRequest(InputStream inputStream, OutputStream outputStream, Context context) throws IOException {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = inputStream.read(buf)) != -1) {
+                outputStream.write(buf, 0, n);
+            }
+            outputStream.flush();
+        }
+    }
+
+    static class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
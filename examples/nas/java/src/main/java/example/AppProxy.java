@@ -3,6 +3,7 @@ package example;
 import com.alibaba.fastjson.JSON;
 import com.aliyun.fc.runtime.Context;
 import com.aliyun.fc.runtime.FunctionInitializer;
+import com.aliyun.fc.runtime.PreStopHandler;
 import com.aliyun.fc.runtime.StreamRequestHandler;
 
 import java.io.IOException;
@@ -11,7 +12,7 @@ import java.io.OutputStream;
 import java.net.URLClassLoader;
 
 
-public class AppProxy implements StreamRequestHandler, FunctionInitializer {
+public class AppProxy implements StreamRequestHandler, FunctionInitializer, PreStopHandler {
 
     private App app = new App();
 
@@ -24,4 +25,9 @@ public class AppProxy implements StreamRequestHandler, FunctionInitializer {
             InputStream inputStream, OutputStream outputStream, Context context) throws IOException {
         app.handleRequest(inputStream, outputStream, context);
     }
+
+    @Override
+    public void preStop(Context context) throws IOException {
+        app.preStop(context);
+    }
 }
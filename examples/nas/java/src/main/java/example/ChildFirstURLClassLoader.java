@@ -0,0 +1,409 @@
+package example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+class ChildFirstURLClassLoader extends URLClassLoader {
+
+    private static final int RESOURCE_CACHE_SIZE = 512;
+    private static final int SYSTEM_MISS_CACHE_SIZE = 4096;
+
+    static {
+        // class loading locks are taken per class name, see getClassLoadingLock
+        registerAsParallelCapable();
+    }
+
+    private ClassLoader system;
+    private final ClassIndex classIndex;
+    // the classpath in order, see segmentsOf
+    private final List<Segment> segments;
+    private final Map<File, JarFile> indexedJarFiles = new ConcurrentHashMap<>();
+    // class names the system loader is known not to have, so misses don't throw again
+    private final Set<String> systemMisses = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > SYSTEM_MISS_CACHE_SIZE;
+                }
+            }));
+    private final Map<String, List<URL>> resourceCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, List<URL>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<URL>> eldest) {
+                    return size() > RESOURCE_CACHE_SIZE;
+                }
+            });
+
+    public ChildFirstURLClassLoader(URL[] classpath, ClassLoader parent) {
+        this(classpath, new ClassIndex(), parent);
+    }
+
+    public ChildFirstURLClassLoader(URL[] classpath, ClassIndex classIndex, ClassLoader parent) {
+        super(scannedEntries(classpath, classIndex), parent);
+        system = getSystemClassLoader();
+        this.classIndex = classIndex;
+        this.segments = segmentsOf(classpath, classIndex);
+    }
+
+    private static File indexedJarOf(URL url, ClassIndex classIndex) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            File file = new File(url.toURI());
+            return classIndex.covers(file) ? file : null;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static URL[] scannedEntries(URL[] classpath, ClassIndex classIndex) {
+        return Stream.of(classpath).filter(url -> indexedJarOf(url, classIndex) == null).toArray(URL[]::new);
+    }
+
+    /**
+     * Splits the classpath into the indexed jars and the runs of entries between them.
+     * The URLClassPath of this loader holds all the runs, so once the earlier segments
+     * have missed, its first match is in the current run. Runs followed by indexed jars
+     * are probed through a finder of their own, the last one is left to the URLClassPath.
+     */
+    private static List<Segment> segmentsOf(URL[] classpath, ClassIndex classIndex) {
+        List<Segment> segments = new ArrayList<Segment>();
+        List<URL> run = new ArrayList<URL>();
+        for (URL url : classpath) {
+            File jar = indexedJarOf(url, classIndex);
+            if (jar == null) {
+                run.add(url);
+                continue;
+            }
+            if (!run.isEmpty()) {
+                segments.add(new Segment(null, run.toArray(new URL[0]), false));
+                run.clear();
+            }
+            segments.add(new Segment(jar, null, false));
+        }
+        if (!run.isEmpty()) {
+            segments.add(new Segment(null, run.toArray(new URL[0]), true));
+        }
+        return segments;
+    }
+
+    /**
+     * An indexed jar, or a run of scanned entries.
+     */
+    private static final class Segment {
+        final File indexedJar;
+        final URL[] run;
+        final boolean last;
+        private URLClassLoader finder;
+
+        Segment(File indexedJar, URL[] run, boolean last) {
+            this.indexedJar = indexedJar;
+            this.run = run;
+            this.last = last;
+        }
+
+        // searches the run alone, without a parent
+        synchronized URLClassLoader finder() {
+            if (finder == null) {
+                finder = new URLClassLoader(run, null);
+            }
+            return finder;
+        }
+
+        synchronized void close() throws IOException {
+            if (finder != null) {
+                finder.close();
+            }
+        }
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve)
+            throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            // First, check if the class has already been loaded
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                // checking system: jvm classes, endorsed, cmd classpath, etc.
+                c = loadFromSystem(name);
+                if (c == null) {
+                    try {
+                        // checking local
+                        c = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        // checking parent
+                        // This call to loadClass may eventually call findClass again, in case the parent doesn't find anything.
+                        c = super.loadClass(name, resolve);
+                    }
+                }
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    private Class<?> loadFromSystem(String name) {
+        if (system == null || systemMisses.contains(name)) {
+            return null;
+        }
+        try {
+            return system.loadClass(name);
+        } catch (ClassNotFoundException ignored) {
+            systemMisses.add(name);
+            return null;
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL url = null;
+        if (system != null) {
+            url = system.getResource(name);
+        }
+        if (url == null) {
+            url = findResource(name);
+            if (url == null) {
+                // This call to getResource may eventually call findResource again, in case the parent doesn't find anything.
+                url = super.getResource(name);
+            }
+        }
+        return url;
+    }
+
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        /**
+         * Similar to super, but local resources are enumerated before parent resources.
+         * Each source is only searched once iteration reaches it, and fully iterated
+         * results are cached per resource name.
+         */
+        List<URL> cached = resourceCache.get(name);
+        if (cached != null) {
+            return Collections.enumeration(cached);
+        }
+
+        List<ResourceSource> sources = new ArrayList<ResourceSource>(3);
+        if (system != null) {
+            sources.add(() -> system.getResources(name));
+        }
+        sources.add(() -> findResources(name));
+        if (getParent() != null) {
+            sources.add(() -> getParent().getResources(name));
+        }
+        return new LazyResourceEnumeration(sources, urls -> resourceCache.put(name, urls));
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(".class");
+        for (Segment segment : segments) {
+            if (segment.indexedJar == null) {
+                if (segment.last || segment.finder().findResource(path) != null) {
+                    return super.findClass(name);
+                }
+            } else if (classIndex.mayContain(segment.indexedJar, path)) {
+                try {
+                    JarFile jarFile = openIndexedJar(segment.indexedJar);
+                    JarEntry entry = jarFile.getJarEntry(path);
+                    if (entry != null) {
+                        return defineIndexedClass(name, segment.indexedJar, jarFile, entry);
+                    }
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        for (Segment segment : segments) {
+            URL url;
+            if (segment.indexedJar == null) {
+                url = segment.last ? super.findResource(name) : segment.finder().findResource(name);
+            } else {
+                url = classIndex.mayContain(segment.indexedJar, name) ? findIndexedResource(segment.indexedJar, name) : null;
+            }
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (segments.size() == 1 && segments.get(0).last) {
+            return super.findResources(name);
+        }
+
+        // the URLClassPath would repeat the earlier runs, so every run is listed by its own finder
+        List<URL> urls = new ArrayList<URL>();
+        for (Segment segment : segments) {
+            if (segment.indexedJar == null) {
+                urls.addAll(Collections.list(segment.finder().findResources(name)));
+            } else if (classIndex.mayContain(segment.indexedJar, name)) {
+                URL url = findIndexedResource(segment.indexedJar, name);
+                if (url != null) {
+                    urls.add(url);
+                }
+            }
+        }
+        return Collections.enumeration(urls);
+    }
+
+    private JarFile openIndexedJar(File jar) throws IOException {
+        JarFile jarFile = indexedJarFiles.get(jar);
+        if (jarFile == null) {
+            JarFile opened = new JarFile(jar);
+            jarFile = indexedJarFiles.putIfAbsent(jar, opened);
+            if (jarFile == null) {
+                jarFile = opened;
+            } else {
+                opened.close();
+            }
+        }
+        return jarFile;
+    }
+
+    private URL findIndexedResource(File jar, String name) {
+        try {
+            if (openIndexedJar(jar).getJarEntry(name) == null) {
+                return null;
+            }
+            return new URL("jar:" + jar.toURI().toURL() + "!/" + name);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // getDefinedPackage replaces getPackage from java 9, the function targets java 8
+    @SuppressWarnings("deprecation")
+    private Class<?> defineIndexedClass(String name, File jar, JarFile jarFile, JarEntry entry) throws IOException {
+        URL jarUrl = jar.toURI().toURL();
+
+        int dot = name.lastIndexOf('.');
+        if (dot != -1) {
+            String pkgName = name.substring(0, dot);
+            if (getPackage(pkgName) == null) {
+                try {
+                    Manifest manifest = jarFile.getManifest();
+                    if (manifest != null) {
+                        definePackage(pkgName, manifest, jarUrl);
+                    } else {
+                        definePackage(pkgName, null, null, null, null, null, null, null);
+                    }
+                } catch (IllegalArgumentException ignored) {
+                    // defined concurrently by another thread
+                }
+            }
+        }
+
+        byte[] bytes;
+        try (InputStream in = jarFile.getInputStream(entry)) {
+            bytes = readFully(in, (int) entry.getSize());
+        }
+        // code signers are only known once the entry has been read
+        CodeSource codeSource = new CodeSource(jarUrl, entry.getCodeSigners());
+        return defineClass(name, bytes, 0, bytes.length, codeSource);
+    }
+
+    private static byte[] readFully(InputStream in, int sizeHint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint > 0 ? sizeHint : 8192);
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (JarFile jarFile : indexedJarFiles.values()) {
+            jarFile.close();
+        }
+        indexedJarFiles.clear();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        super.close();
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        URL url = getResource(name);
+        try {
+            return url != null ? url.openStream() : null;
+        } catch (IOException e) {
+        }
+        return null;
+    }
+
+    private interface ResourceSource {
+        Enumeration<URL> open() throws IOException;
+    }
+
+    /**
+     * Concatenates the sources lazily and hands the complete list to onComplete
+     * once the last source is exhausted.
+     */
+    private static class LazyResourceEnumeration implements Enumeration<URL> {
+
+        private final Iterator<ResourceSource> sources;
+        private Consumer<List<URL>> onComplete;
+        private final List<URL> seen = new ArrayList<URL>();
+        private Enumeration<URL> current = Collections.emptyEnumeration();
+
+        LazyResourceEnumeration(List<ResourceSource> sources, Consumer<List<URL>> onComplete) {
+            this.sources = sources.iterator();
+            this.onComplete = onComplete;
+        }
+
+        public boolean hasMoreElements() {
+            while (!current.hasMoreElements()) {
+                if (!sources.hasNext()) {
+                    if (onComplete != null) {
+                        onComplete.accept(Collections.unmodifiableList(seen));
+                        onComplete = null;
+                    }
+                    return false;
+                }
+                try {
+                    current = sources.next().open();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return true;
+        }
+
+        public URL nextElement() {
+            if (!hasMoreElements()) {
+                throw new NoSuchElementException();
+            }
+            URL url = current.nextElement();
+            seen.add(url);
+            return url;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Package to jar index of a lib directory, stored as {@value #FILE_NAME} next to the jars.
+ *
+ * The file lists every jar as "@name size mtime", mtime in seconds, followed by the packages
+ * (entry directories with a trailing slash, "/" for the root) that contain at least one entry
+ * of that jar. The same file is written by `fun nas sync` and by the `class-index` execution
+ * in pom.xml.
+ *
+ * A jar is only served from the index when its size still matches the recorded one and it
+ * has not been modified since it was indexed: its mtime is the recorded one, or it is not
+ * newer than the index file, as uploads to NAS give the files new mtimes. Other jars are
+ * left to the regular URLClassPath scan.
+ */
+public class ClassIndex {
+
+    static final String FILE_NAME = ".fun-class-index";
+
+    private static final String ROOT_PACKAGE = "/";
+    private static final String JAR_PREFIX = "@";
+
+    private final Map<File, Set<String>> packagesByJar = new HashMap<>();
+
+    /**
+     * Reads the index of dir, if any, and remembers the jars that it covers.
+     */
+    void load(File dir, File[] jars) {
+        File indexFile = new File(dir, FILE_NAME);
+        if (jars.length == 0 || !indexFile.isFile()) {
+            return;
+        }
+
+        Map<String, IndexedJar> indexedJars;
+        try {
+            indexedJars = read(indexFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        long indexModified = indexFile.lastModified();
+
+        // stat the jars in parallel, each call is a round trip to NAS
+        List<File> upToDate = Stream.of(jars)
+                .parallel()
+                .filter(jar -> isUpToDate(jar, indexedJars.get(jar.getName()), indexModified))
+                .collect(Collectors.toList());
+
+        for (File jar : upToDate) {
+            packagesByJar.put(jar.getAbsoluteFile(), new HashSet<>(indexedJars.get(jar.getName()).packages));
+        }
+    }
+
+    private static boolean isUpToDate(File jar, IndexedJar indexed, long indexModified) {
+        if (indexed == null) {
+            return false;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(jar.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return false;
+        }
+        long modified = attributes.lastModifiedTime().toMillis();
+        return indexed.size == attributes.size()
+                && (modified / 1000 == indexed.mtime || modified <= indexModified);
+    }
+
+    /**
+     * Whether the jar is served from the index.
+     */
+    boolean covers(File jar) {
+        return packagesByJar.containsKey(jar.getAbsoluteFile());
+    }
+
+    /**
+     * Whether the indexed jar has the package of the resource, it may still not have the resource.
+     */
+    boolean mayContain(File jar, String resourceName) {
+        Set<String> packages = packagesByJar.get(jar.getAbsoluteFile());
+        return packages != null && packages.contains(packageOf(resourceName));
+    }
+
+    private static String packageOf(String entryName) {
+        return entryName.substring(0, entryName.lastIndexOf('/') + 1);
+    }
+
+    private static String parentOf(String pkg) {
+        return packageOf(pkg.substring(0, pkg.length() - 1));
+    }
+
+    private static Map<String, IndexedJar> read(File indexFile) throws IOException {
+        Map<String, IndexedJar> indexedJars = new HashMap<>();
+        IndexedJar current = null;
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith(JAR_PREFIX)) {
+                    int sep = line.lastIndexOf(' ');
+                    long last = Long.parseLong(line.substring(sep + 1));
+                    // indexes written before mtimes were recorded end with the size
+                    int sizeSep = line.lastIndexOf(' ', sep - 1);
+                    Long size = sizeSep > 0 ? parseLongOrNull(line.substring(sizeSep + 1, sep)) : null;
+                    if (size != null) {
+                        current = new IndexedJar(size, last);
+                        indexedJars.put(line.substring(JAR_PREFIX.length(), sizeSep), current);
+                    } else {
+                        current = new IndexedJar(last, -1);
+                        indexedJars.put(line.substring(JAR_PREFIX.length(), sep), current);
+                    }
+                } else if (current != null) {
+                    current.packages.add(ROOT_PACKAGE.equals(line) ? "" : line);
+                }
+            }
+        }
+        return indexedJars;
+    }
+
+    private static Long parseLongOrNull(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static void write(File dir) throws IOException {
+        File[] jars = dir.listFiles((_dir, name) -> name.endsWith(".jar"));
+        if (jars == null) {
+            throw new IOException(dir + " is not a directory");
+        }
+        Arrays.sort(jars);
+
+        Map<File, Set<String>> packagesByJar = new ConcurrentHashMap<>();
+        Stream.of(jars).parallel().forEach(jar -> {
+            try {
+                packagesByJar.put(jar, packagesOf(jar));
+            } catch (IOException e) {
+                // leave the jar out of the index, it will be scanned at runtime
+                e.printStackTrace();
+            }
+        });
+
+        File tmp = new File(dir, FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            for (File jar : jars) {
+                Set<String> packages = packagesByJar.get(jar);
+                if (packages == null) {
+                    continue;
+                }
+                writer.write(JAR_PREFIX + jar.getName() + " " + jar.length() + " " + jar.lastModified() / 1000);
+                writer.newLine();
+                for (String pkg : packages) {
+                    writer.write(pkg.isEmpty() ? ROOT_PACKAGE : pkg);
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(tmp.toPath(), new File(dir, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Set<String> packagesOf(File jar) throws IOException {
+        Set<String> packages = new TreeSet<>();
+        try (JarFile jarFile = new JarFile(jar, false)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                // register every parent directory as well, so that directory lookups
+                // such as getResources("com/example/") find nested packages
+                for (String pkg = packageOf(entry.getName()); packages.add(pkg); pkg = parentOf(pkg)) {
+                    if (pkg.indexOf('/') == pkg.length() - 1) {
+                        // top level package or root
+                        break;
+                    }
+                }
+            }
+        }
+        return packages;
+    }
+
+    private static class IndexedJar {
+        final long size;
+        final long mtime;
+        final List<String> packages = new ArrayList<>();
+
+        IndexedJar(long size, long mtime) {
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (String dir : args) {
+            write(new File(dir));
+            System.out.println("class index written to " + new File(dir, FILE_NAME));
+        }
+    }
+}
@@ -2,32 +2,50 @@ package example;
 
 import com.aliyun.fc.runtime.Context;
 import com.aliyun.fc.runtime.FunctionInitializer;
+import com.aliyun.fc.runtime.PreStopHandler;
 import com.aliyun.fc.runtime.StreamRequestHandler;
+import example.starter.StartupTrace;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.*;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class Entrypoint implements StreamRequestHandler, FunctionInitializer {
+public class Entrypoint implements StreamRequestHandler, FunctionInitializer, PreStopHandler {
 
-    private ClassLoader nasLibClassloader;
-    private Class<?> appClass;
-    private Object appObj;
+    private static final ClassLoader nasLibClassloader;
+    private static final MethodHandle initializeHandle;
+    private static final MethodHandle handleRequestHandle;
+    // null when the app is not a PreStopHandler
+    private static final MethodHandle preStopHandle;
 
-    {
+    private static volatile boolean handled;
 
-        List<URL> classpathExt = Stream.of("/mnt/auto/lib", "/code")
+    static {
+        StartupTrace.recordSinceJvmStart("jvm and runtime startup");
+
+        // jars covered by an up-to-date class index are opened on demand by the loader,
+        // at their position in the classpath, only the remaining ones are scanned.
+        // /opt/java/lib holds the dependency layer published by `fun deploy --java-dependency-layer`
+        StartupTrace.Span listing = StartupTrace.begin("list jars and class index");
+        ClassIndex classIndex = new ClassIndex();
+        List<URL> classpathExt = Stream.of("/mnt/auto/lib", "/opt/java/lib", "/code")
                 .map(p -> new File(p))
-                .flatMap(f -> Stream.concat(Stream.of(f), Stream.of(f.listFiles((_dir, name) -> name.endsWith(".jar")))))
+                .flatMap(f -> {
+                    File[] jars = listJars(f);
+                    classIndex.load(f, jars);
+                    return Stream.concat(Stream.of(f), Stream.of(jars));
+                })
                 .map(f -> {
                     try {
                         return f.toURI().toURL();
@@ -38,42 +56,57 @@ public class Entrypoint implements StreamRequestHandler, FunctionInitializer {
 
                 })
                 .collect(Collectors.toList());
+        listing.end();
 
-        nasLibClassloader = new ChildFirstURLClassLoader(classpathExt.toArray(new URL[0]), Thread.currentThread().getContextClassLoader());
-
+        StartupTrace.Span creating = StartupTrace.begin("create ChildFirstURLClassLoader");
+        nasLibClassloader = new ChildFirstURLClassLoader(classpathExt.toArray(new URL[0]), classIndex, Thread.currentThread().getContextClassLoader());
+        creating.end();
 
+        // resolve the proxy once, every invocation then dispatches through the bound handles
+        StartupTrace.Span loading = StartupTrace.begin("load AppProxy");
         try {
-            appClass = Class.forName("example.AppProxy", true, nasLibClassloader);
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-
-
-        try {
-            appObj = appClass.getDeclaredConstructor().newInstance();
-        } catch (InstantiationException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
+            Class<?> appClass = Class.forName("example.AppProxy", true, nasLibClassloader);
+            Object appObj = appClass.getDeclaredConstructor().newInstance();
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            initializeHandle = lookup
+                    .findVirtual(appClass, "initialize", MethodType.methodType(void.class, Context.class))
+                    .bindTo(appObj);
+            handleRequestHandle = lookup
+                    .findVirtual(appClass, "handleRequest",
+                            MethodType.methodType(void.class, InputStream.class, OutputStream.class, Context.class))
+                    .bindTo(appObj);
+            // looked up through the app's loader, fc-java-core may also be one of the nas jars
+            Class<?> preStopHandler = Class.forName(PreStopHandler.class.getName(), false, nasLibClassloader);
+            preStopHandle = preStopHandler.isAssignableFrom(appClass)
+                    ? lookup.findVirtual(appClass, "preStop", MethodType.methodType(void.class, Context.class)).bindTo(appObj)
+                    : null;
         } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
+            throw new ExceptionInInitializerError(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        } finally {
+            loading.end();
         }
     }
 
+    private static File[] listJars(File dir) {
+        File[] jars = dir.listFiles((_dir, name) -> name.endsWith(".jar"));
+        return jars == null ? new File[0] : jars;
+    }
+
     public void initialize(Context context) throws IOException {
         Thread.currentThread().setContextClassLoader(nasLibClassloader);
 
+        StartupTrace.Span initializing = StartupTrace.begin("initialize");
         try {
-            Method initialize = appClass.getDeclaredMethod("initialize", Context.class);
-            initialize.invoke(appObj, context);
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
+            initializeHandle.invokeExact(context);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        } finally {
+            initializing.end();
         }
     }
 
@@ -82,124 +115,35 @@ public class Entrypoint implements StreamRequestHandler, FunctionInitializer {
             InputStream inputStream, OutputStream outputStream, Context context) throws IOException {
         Thread.currentThread().setContextClassLoader(nasLibClassloader);
 
-        try {
-            Method handleRequest = appClass.getDeclaredMethod("handleRequest", InputStream.class, OutputStream.class, Context.class);
-            handleRequest.invoke(appObj, inputStream, outputStream, context);
-        } catch (NoSuchMethodException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        }
-    }
-}
-
-class ChildFirstURLClassLoader extends URLClassLoader {
-
-    private ClassLoader system;
-
-    public ChildFirstURLClassLoader(URL[] classpath, ClassLoader parent) {
-        super(classpath, parent);
-        system = getSystemClassLoader();
-    }
+        // only the first request of the container is traced
+        StartupTrace.Span firstRequest = handled ? StartupTrace.NOOP : StartupTrace.begin("first handleRequest");
+        handled = true;
 
-    @Override
-    protected synchronized Class<?> loadClass(String name, boolean resolve)
-            throws ClassNotFoundException {
-        // First, check if the class has already been loaded
-        Class<?> c = findLoadedClass(name);
-        if (c == null) {
-            if (system != null) {
-                try {
-                    // checking system: jvm classes, endorsed, cmd classpath, etc.
-                    c = system.loadClass(name);
-                } catch (ClassNotFoundException ignored) {
-                }
-            }
-            if (c == null) {
-                try {
-                    // checking local
-                    c = findClass(name);
-                } catch (ClassNotFoundException e) {
-                    // checking parent
-                    // This call to loadClass may eventually call findClass again, in case the parent doesn't find anything.
-                    c = super.loadClass(name, resolve);
-                }
-            }
-        }
-        if (resolve) {
-            resolveClass(c);
-        }
-        return c;
-    }
-
-    @Override
-    public URL getResource(String name) {
-        URL url = null;
-        if (system != null) {
-            url = system.getResource(name);
-        }
-        if (url == null) {
-            url = findResource(name);
-            if (url == null) {
-                // This call to getResource may eventually call findResource again, in case the parent doesn't find anything.
-                url = super.getResource(name);
-            }
+        try {
+            handleRequestHandle.invokeExact(inputStream, outputStream, context);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        } finally {
+            firstRequest.end();
         }
-        return url;
     }
 
     @Override
-    public Enumeration<URL> getResources(String name) throws IOException {
-        /**
-         * Similar to super, but local resources are enumerated before parent resources
-         */
-        Enumeration<URL> systemUrls = null;
-        if (system != null) {
-            systemUrls = system.getResources(name);
+    public void preStop(Context context) throws IOException {
+        // the app has nothing to release
+        if (preStopHandle == null) {
+            return;
         }
-        Enumeration<URL> localUrls = findResources(name);
-        Enumeration<URL> parentUrls = null;
-        if (getParent() != null) {
-            parentUrls = getParent().getResources(name);
-        }
-        final List<URL> urls = new ArrayList<URL>();
-        if (systemUrls != null) {
-            while (systemUrls.hasMoreElements()) {
-                urls.add(systemUrls.nextElement());
-            }
-        }
-        if (localUrls != null) {
-            while (localUrls.hasMoreElements()) {
-                urls.add(localUrls.nextElement());
-            }
-        }
-        if (parentUrls != null) {
-            while (parentUrls.hasMoreElements()) {
-                urls.add(parentUrls.nextElement());
-            }
-        }
-        return new Enumeration<URL>() {
-            Iterator<URL> iter = urls.iterator();
-
-            public boolean hasMoreElements() {
-                return iter.hasNext();
-            }
-
-            public URL nextElement() {
-                return iter.next();
-            }
-        };
-    }
+        Thread.currentThread().setContextClassLoader(nasLibClassloader);
 
-    @Override
-    public InputStream getResourceAsStream(String name) {
-        URL url = getResource(name);
         try {
-            return url != null ? url.openStream() : null;
-        } catch (IOException e) {
+            preStopHandle.invokeExact(context);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
         }
-        return null;
     }
 }
@@ -0,0 +1,117 @@
+package example;
+
+import junit.framework.TestCase;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads a chain of generated classes from many threads at once through one
+ * ChildFirstURLClassLoader.
+ */
+public class ChildFirstURLClassLoaderTest extends TestCase {
+
+    private static final int CLASS_COUNT = 200;
+    private static final int THREAD_COUNT = 16;
+
+    private File classesDir;
+
+    protected void setUp() throws Exception {
+        classesDir = Files.createTempDirectory("child-first-classes").toFile();
+        File srcDir = new File(classesDir, "stress");
+        assertTrue(srcDir.mkdirs());
+
+        List<String> sources = new ArrayList<String>();
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            // every class references the next one, so defining one triggers nested loads
+            String next = i + 1 < CLASS_COUNT ? "C" + (i + 1) : "Object";
+            File src = new File(srcDir, "C" + i + ".java");
+            String code = "package stress; public class C" + i + " { public static Class<?> next() { return " + next + ".class; } }";
+            Files.write(src.toPath(), code.getBytes(StandardCharsets.UTF_8));
+            sources.add(src.getPath());
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("tests must run on a JDK", compiler);
+        sources.add(0, "-nowarn");
+        assertEquals(0, compiler.run(null, null, null, sources.toArray(new String[0])));
+    }
+
+    protected void tearDown() throws IOException {
+        for (File f : new File(classesDir, "stress").listFiles()) {
+            f.delete();
+        }
+        new File(classesDir, "stress").delete();
+        classesDir.delete();
+    }
+
+    public void testConcurrentLoading() throws Exception {
+        final ChildFirstURLClassLoader loader = new ChildFirstURLClassLoader(
+                new URL[]{classesDir.toURI().toURL()}, getClass().getClassLoader());
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREAD_COUNT);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Class<?>>>> results = new ArrayList<Future<Map<String, Class<?>>>>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            final long seed = t;
+            results.add(pool.submit(new Callable<Map<String, Class<?>>>() {
+                public Map<String, Class<?>> call() throws Exception {
+                    List<String> names = new ArrayList<String>();
+                    for (int i = 0; i < CLASS_COUNT; i++) {
+                        names.add("stress.C" + i);
+                    }
+                    Collections.shuffle(names, new Random(seed));
+
+                    start.await();
+                    Map<String, Class<?>> loaded = new HashMap<String, Class<?>>();
+                    for (String name : names) {
+                        Class<?> c = Class.forName(name, true, loader);
+                        c.getMethod("next").invoke(null);
+                        loaded.put(name, c);
+                    }
+                    return loaded;
+                }
+            }));
+        }
+        start.countDown();
+
+        Map<String, Class<?>> first = null;
+        for (Future<Map<String, Class<?>>> result : results) {
+            Map<String, Class<?>> loaded = result.get(60, TimeUnit.SECONDS);
+            assertEquals(CLASS_COUNT, loaded.size());
+            if (first == null) {
+                first = loaded;
+            }
+            for (Map.Entry<String, Class<?>> e : loaded.entrySet()) {
+                assertSame(loader, e.getValue().getClassLoader());
+                assertSame(first.get(e.getKey()), e.getValue());
+            }
+        }
+        pool.shutdown();
+        loader.close();
+    }
+
+    public void testRepeatedSystemMiss() throws Exception {
+        ChildFirstURLClassLoader loader = new ChildFirstURLClassLoader(
+                new URL[]{classesDir.toURI().toURL()}, getClass().getClassLoader());
+
+        // the second lookup is answered from the negative cache and must behave the same
+        for (int i = 0; i < 2; i++) {
+            assertSame(loader, loader.loadClass("stress.C0").getClassLoader());
+            try {
+                loader.loadClass("stress.Missing");
+                fail("stress.Missing should not be found");
+            } catch (ClassNotFoundException expected) {
+            }
+        }
+        assertSame(String.class, loader.loadClass("java.lang.String"));
+        loader.close();
+    }
+}
@@ -0,0 +1,128 @@
+package example;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Looks up resources through a ChildFirstURLClassLoader whose classpath mixes
+ * a directory, indexed jars and a jar the index does not cover.
+ */
+public class ClassIndexTest extends TestCase {
+
+    private static final String RESOURCE = "shared/version.txt";
+
+    private File libDir;
+    private File classesDir;
+
+    protected void setUp() throws IOException {
+        libDir = Files.createTempDirectory("class-index-lib").toFile();
+        classesDir = Files.createTempDirectory("class-index-classes").toFile();
+    }
+
+    protected void tearDown() {
+        delete(libDir);
+        delete(classesDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static File writeJar(File dir, String name, String content) throws IOException {
+        File jar = new File(dir, name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new JarEntry(RESOURCE));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    private static String read(URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            byte[] buf = new byte[64];
+            int n = in.read(buf);
+            return new String(buf, 0, n, StandardCharsets.UTF_8);
+        }
+    }
+
+    private ChildFirstURLClassLoader loader(ClassIndex classIndex, File... classpath) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        for (File entry : classpath) {
+            urls.add(entry.toURI().toURL());
+        }
+        return new ChildFirstURLClassLoader(urls.toArray(new URL[0]), classIndex, null);
+    }
+
+    public void testClasspathOrder() throws IOException {
+        File a = writeJar(libDir, "a.jar", "a");
+        File b = writeJar(libDir, "b.jar", "b");
+        ClassIndex.write(libDir);
+        File c = writeJar(libDir, "c.jar", "c");
+
+        ClassIndex classIndex = new ClassIndex();
+        classIndex.load(libDir, new File[]{a, b, c});
+        assertTrue(classIndex.covers(a));
+        assertFalse(classIndex.covers(c));
+
+        // the scanned jar comes first, it wins over the indexed ones
+        ChildFirstURLClassLoader loader = loader(classIndex, c, a, b);
+        assertEquals("c", read(loader.findResource(RESOURCE)));
+        List<String> all = new ArrayList<String>();
+        for (URL url : Collections.list(loader.findResources(RESOURCE))) {
+            all.add(read(url));
+        }
+        assertEquals(3, all.size());
+        assertEquals("[c, a, b]", all.toString());
+        loader.close();
+
+        loader = loader(classIndex, b, c, a);
+        assertEquals("b", read(loader.findResource(RESOURCE)));
+        loader.close();
+
+        // a directory in front of the indexed jars
+        new File(classesDir, "shared").mkdirs();
+        Files.write(new File(classesDir, RESOURCE).toPath(), "dir".getBytes(StandardCharsets.UTF_8));
+        loader = loader(classIndex, classesDir, a, b);
+        assertEquals("dir", read(loader.findResource(RESOURCE)));
+        loader.close();
+    }
+
+    public void testReplacedJarOfSameSize() throws IOException {
+        File a = writeJar(libDir, "a.jar", "a");
+        ClassIndex.write(libDir);
+        File index = new File(libDir, ClassIndex.FILE_NAME);
+        assertTrue(index.setLastModified(a.lastModified()));
+
+        ClassIndex classIndex = new ClassIndex();
+        classIndex.load(libDir, new File[]{a});
+        assertTrue(classIndex.covers(a));
+
+        // same size, written after the index
+        long size = a.length();
+        writeJar(libDir, "a.jar", "z");
+        assertEquals(size, a.length());
+        assertTrue(a.setLastModified(index.lastModified() + 10000));
+        classIndex = new ClassIndex();
+        classIndex.load(libDir, new File[]{a});
+        assertFalse(classIndex.covers(a));
+    }
+}
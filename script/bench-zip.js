@@ -0,0 +1,127 @@
+#!/usr/bin/env node
+
+/**
+ * Benchmark of packaging and encoding function code for uploading.
+ *
+ * usage: node script/bench-zip.js [artifactSizeMB=100] [runs=3]
+ *
+ * A java like artifact is generated in the tmp dir, with compressible class files and
+ * incompressible dependency jars. Every mode runs in a child process to measure its own peak rss:
+ *
+ *   buffered  packs the code and builds the json body with the base64 zip in memory, as before.
+ *   streamed  packs the code and encodes the zip into the body while it's consumed.
+ */
+
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const crypto = require('crypto');
+const stream = require('stream');
+const { fork } = require('child_process');
+
+const zip = require('../src/lib/package/zip');
+const { uploadProgress } = require('../src/lib/import/utils');
+
+const MB = 1024 * 1024;
+
+async function generateArtifact(dir, sizeMB) {
+  if (await fs.pathExists(path.join(dir, '.done'))) { return; }
+
+  // about 20% classes and 80% jars, like a spring boot function
+  const classesBytes = sizeMB * MB * 0.2;
+  const classDir = path.join(dir, 'com', 'example', 'demo');
+  await fs.ensureDir(classDir);
+  for (let i = 0, written = 0; written < classesBytes; i++) {
+    const content = Buffer.from(`public class Demo${i} { ${crypto.randomBytes(2048).toString('hex')} }\n`.repeat(4));
+    await fs.writeFile(path.join(classDir, `Demo${i}.class`), content);
+    written += content.length;
+  }
+
+  const libDir = path.join(dir, 'lib');
+  await fs.ensureDir(libDir);
+  for (let i = 0; i < sizeMB * 0.8 / 2; i++) {
+    await fs.writeFile(path.join(libDir, `dependency-${i}.jar`), crypto.randomBytes(2 * MB));
+  }
+  await fs.writeFile(path.join(dir, '.done'), '');
+}
+
+function sink() {
+  return new stream.Writable({
+    write(chunk, encoding, callback) { callback(); }
+  });
+}
+
+async function runMode(mode, dir) {
+  let peakRss = process.memoryUsage().rss;
+  const timer = setInterval(() => {
+    peakRss = Math.max(peakRss, process.memoryUsage().rss);
+  }, 10);
+
+  const start = Date.now();
+  const { zipPath, randomDir, compressedSize } = await zip.pack(dir, (f) => path.basename(f) === '.done');
+  const packed = Date.now();
+
+  const params = { functionName: 'bench', handler: 'example.App::handleRequest', runtime: 'java8', code: {} };
+  if (mode === 'buffered') {
+    const base64 = (await fs.readFile(zipPath)).toString('base64');
+    const body = Buffer.from(JSON.stringify(Object.assign({}, params, { code: { zipFile: base64 } })));
+    await new Promise((resolve) => sink().end(body, resolve));
+  } else {
+    const body = await uploadProgress(params, zipPath);
+    await new Promise((resolve, reject) => body.pipe(sink()).on('finish', resolve).on('error', reject));
+  }
+  const encoded = Date.now();
+
+  clearInterval(timer);
+  await fs.remove(randomDir);
+
+  process.send({
+    compressedSize,
+    packMs: packed - start,
+    encodeMs: encoded - packed,
+    peakRss: Math.max(peakRss, process.memoryUsage().rss)
+  });
+}
+
+function runChild(mode, dir) {
+  return new Promise((resolve, reject) => {
+    const child = fork(__filename, ['--mode', mode, dir], { stdio: ['ignore', 'ignore', 'inherit', 'ipc'] });
+    child.on('message', resolve);
+    child.on('error', reject);
+    child.on('exit', (code) => {
+      if (code) { reject(new Error(`${mode} exited with ${code}`)); }
+    });
+  });
+}
+
+function mb(bytes) {
+  return `${(bytes / MB).toFixed(1)} MB`;
+}
+
+async function main() {
+  if (process.argv[2] === '--mode') {
+    await runMode(process.argv[3], process.argv[4]);
+    return;
+  }
+
+  const sizeMB = parseInt(process.argv[2] || '100', 10);
+  const runs = parseInt(process.argv[3] || '3', 10);
+  const dir = path.join(os.tmpdir(), `fun-bench-zip-${sizeMB}mb`);
+
+  console.log(`generating a ${sizeMB} MB artifact in ${dir}...`);
+  await generateArtifact(dir, sizeMB);
+
+  for (const mode of ['buffered', 'streamed']) {
+    for (let i = 0; i < runs; i++) {
+      const { compressedSize, packMs, encodeMs, peakRss } = await runChild(mode, dir);
+      console.log(`${mode}\tzip ${mb(compressedSize)}\tpack ${packMs} ms\tencode ${encodeMs} ms\tpeak rss ${mb(peakRss)}`);
+    }
+  }
+}
+
+main().catch((err) => {
+  console.error(err);
+  process.exit(1);
+});
@@ -17,6 +17,12 @@ program
   .option('-b, --use-buildkit', 'Use buildkit to build functions')
   .option('-y, --assume-yes', 'Automatic yes to prompts. Assume "yes" as answer to all prompts and run non-interactively.\n')
   .option('-t, --template [template]', 'The path of fun template file.')
+  .option('--incremental', 'Skip java functions whose pom.xml and sources are not changed since last build')
+  .option('--parallel <count>', 'The number of functions built concurrently, default is 1')
+  .option('--enable-cds', 'Generate an AppCDS archive for java11 and custom runtime functions by running them once in the local runtime container')
+  .option('--cds-event <path>', 'Event file used for the AppCDS training invocation')
+  .option('--jvm-profile <profile>', 'The jvm profile of custom runtime java bootstraps, fast-start or throughput, the heap is sized to MemorySize. Also could be set by FUN_JVM_PROFILE')
+  .option('--compare-jvm-profiles', 'Compare the cold start and the invocation duration of the jvm profiles by running the built custom runtime java functions locally')
   .parse(process.argv);
 
 if (program.args.length > 1) {
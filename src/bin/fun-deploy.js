@@ -37,6 +37,9 @@ program
   .option('--use-nas', 'Automatically upload local resources to NAS.')
   .option('--stack-name <stackName>', 'The name of the ROS stack')
   .option('--push-registry <pushRegistry>', 'Modify the image upload path')
+  .option('--java-dependency-layer', 'Upload the jars of java functions as a layer addressed by their content, only when they change')
+  .option('--concurrency <count>', 'The max number of resources deployed concurrently, default 5, also could be set by FUN_DEPLOY_CONCURRENCY')
+  .option('--jvm-profile <profile>', 'The jvm profile of custom runtime java bootstraps, fast-start or throughput, the heap is sized to MemorySize. Also could be set by FUN_JVM_PROFILE')
   .parse(process.argv);
 
 if (program.args.length > 1) {
@@ -54,6 +57,9 @@ const context = {
   stackName: program.stackName,
   assumeYes: program.assumeYes || false,
   pushRegistry: program.pushRegistry,
+  javaDependencyLayer: program.javaDependencyLayer || false,
+  concurrency: program.concurrency,
+  jvmProfile: program.jvmProfile,
   parameterOverride: program.parameterOverride
 };
 
@@ -0,0 +1,63 @@
+#!/usr/bin/env node
+
+/* eslint-disable quotes */
+
+'use strict';
+
+const program = require('commander');
+const getVisitor = require('../lib/visitor').getVisitor;
+const notifier = require('../lib/update-notifier');
+const { autoExit } = require('../lib/unref-timeout');
+const { collectOptions } = require('../lib/options');
+
+program
+  .name('fun local bench')
+  .description(
+    `Benchmark your function in local containers. Every client invokes the function in its own container,
+the first invocation of each container is reported as a cold start, the following ones as warm invocations
+with their latency percentiles, throughput and the memory usage of the containers.`)
+  .usage('[options] <[service/]function>')
+  .option('-t, --template [template]', 'The path of fun template file.', collectOptions)
+  .option('-e, --event <event>', `Event data(strings) passed to the function during invocation.`)
+  .option('-f, --event-file <path>', `A file containing event data, could be specified multiple times to take turns.`, collectOptions)
+  .option('-s, --event-stdin', 'Read from standard input, to support script pipeline.')
+  .option('-c, --concurrency <concurrency>', 'The number of concurrent clients and containers, default to 1.')
+  .option('-d, --duration <seconds>', 'The seconds of recording warm invocations, default to 10.')
+  .option('--warm-up <seconds>', 'The seconds of invocations not recorded before the duration, default to 0.')
+  .option('-o, --output <path>', 'Save the result as JSON to compare runs.')
+  .option('--tmp-dir <tmpDir>', `The temp directory mounted to /tmp , default to './.fun/tmp/invoke/{service}/{function}/'`)
+  .parse(process.argv);
+
+if (program.args.length > 1) {
+  console.error();
+  console.error("  error: unexpected argument '%s'", program.args[1]);
+  program.help();
+}
+
+notifier.notify();
+
+getVisitor().then(visitor => {
+  visitor.pageview('/fun/local/bench').send();
+
+  require('../lib/commands/local/bench').bench(program.args[0], program)
+    .then(() => {
+      visitor.event({
+        ec: 'local bench',
+        ea: 'bench',
+        el: 'success',
+        dp: '/fun/local/bench'
+      }).send();
+
+      autoExit();
+    })
+    .catch(error => {
+      visitor.event({
+        ec: 'local bench',
+        ea: 'bench',
+        el: 'error',
+        dp: '/fun/local/bench'
+      }).send();
+
+      require('../lib/exception-handler')(error);
+    });
+});
@@ -34,6 +34,17 @@ parameter.`)
   .option('--debug-args <debugArgs>', 'additional parameters that will be passed to the debugger')
   .option('--debugger-path <debuggerPath>', `the path of the debugger on the host
   `)
+  .option('--startup-trace <path>', `Record the startup phases of the java shims and templates, and save them as a Chrome trace
+  `)
+  .option('--profile', `Record the java function with JDK Flight Recorder, the recording and its collapsed stacks are saved
+  to './.fun/profile/{service}/{function}/'`)
+  .option('--async-profiler <path>', `Record the java function with the async-profiler agent of this linux build
+  instead of JDK Flight Recorder, implies --profile`)
+  .option('--events <path>', `Replay the events of a JSONL file, one event per line, or of a directory, one event per file,
+  through one warm container`)
+  .option('--concurrency <concurrency>', 'The number of events replayed concurrently in the container, default to 1.')
+  .option('--results <path>', `The JSONL file of the outputs, errors and durations of the replayed events,
+  default to './.fun/tmp/replay/{service}/{function}/results.jsonl'`)
   .parse(process.argv);
 
 if (program.args.length > 1) {
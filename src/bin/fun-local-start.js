@@ -31,6 +31,11 @@ program
     'Select which IDE to use when debugging and output related debug config tips for the IDE. Options：\'vscode\', \'pycharm\'')
   .option('--debugger-path <debuggerPath>', 'The path of the debugger on the host')
   .option('--debug-args <debugArgs>', 'Additional parameters that will be passed to the debugger')
+  .option('--pool-size <count>', 'The number of containers started for each http trigger function, concurrent requests are dispatched across them', 1)
+  .option('--hot-swap', 'Redefine the changed classes of java functions in the running containers instead of restarting them, only changes of pom.xml and jars restart the containers')
+  .option('--startup-trace <path>', 'Record the startup phases of the java shims and templates in every container, and save them as a Chrome trace')
+  .option('--profile', 'Record every container of java functions with JDK Flight Recorder until it stops, the recordings and their collapsed stacks are saved to \'./.fun/profile/{service}/{function}/\'')
+  .option('--async-profiler <path>', 'Record with the async-profiler agent of this linux build instead of JDK Flight Recorder, implies --profile')
   .parse(process.argv);
 
 if (program.args.length > 1) {
@@ -10,7 +10,8 @@ program
   .name('fun local')
   .description('Run your serverless application locally for quick development & testing.')
   .command('invoke', 'Invoke a function locally once')
-  .command('start', 'Runs your HttpTriggers and APIs locally');
+  .command('start', 'Runs your HttpTriggers and APIs locally')
+  .command('bench', 'Benchmark a function locally with concurrent invocations');
 
 require('../lib/utils/command').registerCommandChecker(program);
 
@@ -9,6 +9,20 @@ const _ = require('lodash');
 const fs = require('fs-extra');
 const buildkit = require('../buildkit');
 
+// a named volume, so that the local maven repository survives the build containers
+const MAVEN_REPOSITORY_VOLUME = 'fun-build-maven-repository';
+
+function resolveMavenRepositoryMount(runtime) {
+  if (runtime !== 'java8' && runtime !== 'java11') { return null; }
+
+  return {
+    Type: 'volume',
+    Source: MAVEN_REPOSITORY_VOLUME,
+    Target: '/root/.m2',
+    ReadOnly: false
+  };
+}
+
 async function generateBuildContainerBuildOpts(serviceName, serviceRes, functionName, functionRes, baseDir, codeUri, funcArtifactDir, verbose, preferredImage, stages) {
   const functionProps = functionRes.Properties;
   const runtime = functionProps.Runtime;
@@ -32,7 +46,9 @@ async function generateBuildContainerBuildOpts(serviceName, serviceRes, function
     ReadOnly: false
   };
 
-  const mounts = _.compact([codeMount, artifactDirMount, ...nasMounts, passwdMount]);
+  const mavenRepositoryMount = resolveMavenRepositoryMount(runtime);
+
+  const mounts = _.compact([codeMount, artifactDirMount, ...nasMounts, passwdMount, mavenRepositoryMount]);
 
   const params = {
     method: 'build',
@@ -97,4 +113,4 @@ async function generateDockerfileForBuildkit(dockerfilePath, serviceName, servic
 
 
 
-module.exports = { generateBuildContainerBuildOpts, generateDockerfileForBuildkit };
\ No newline at end of file
+module.exports = { generateBuildContainerBuildOpts, generateDockerfileForBuildkit, resolveMavenRepositoryMount };
\ No newline at end of file
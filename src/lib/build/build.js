@@ -15,6 +15,9 @@ const docker = require('../docker');
 const uuid = require('uuid');
 const parser = require('./parser');
 const builder = require('./builder');
+const cds = require('./cds');
+const jvm = require('./jvm-profile');
+const cache = require('./cache');
 const fcBuilders = require('@alicloud/fc-builders');
 
 const { yellow } = require('colors');
@@ -220,7 +223,131 @@ async function recordMetaData(baseDir, functions, tplPath, metaPath, buildOps) {
   await recordMtimes([...metaPaths, tplPath], buildOps, metaPath);
 }
 
-async function buildFunction(buildName, tpl, baseDir, useDocker, useBuildkit, stages, verbose, tplPath, assumeYes) {
+async function buildOneFunction(func, ctx) {
+  const { functionName, serviceName, serviceRes, functionRes } = func;
+  const { buildStage, stages, baseDir, rootArtifactsDir, verbose, assumeYes, buildCache, skippedBuildFuncs, cachedBuildFuncs } = ctx;
+  // a Funfile switches this function alone, the others may be building at the same time
+  const buildOpts = Object.assign({}, ctx.buildOpts);
+
+  console.log();
+  console.log(green(`building ${serviceName}/${functionName}`));
+
+  const runtime = functionRes.Properties.Runtime;
+  const codeUri = functionRes.Properties.CodeUri;
+  if (isCustomContainerRuntime(runtime)) {
+    if (!buildStage) {
+      return;
+    }
+    if (!buildOpts.useDocker && !buildOpts.useBuildkit) {
+      throw new Error(`Runtime custom-container must use --use-docker or --use-buildkit`);
+    }
+    if (buildOpts.useDocker) {
+      await dockerBuildAndPush(codeUri, functionRes.Properties.CustomContainerConfig.Image, baseDir, functionName, serviceName);
+    } else if (buildOpts.useBuildkit) {
+      const msg = `Use fun build to build image and push to ${functionRes.Properties.CustomContainerConfig.Image}.Please confirm to continue.`;
+      if (!assumeYes && !await promptForConfirmContinue(msg)) {
+        skippedBuildFuncs.push(func);
+        return;
+      }
+      await buildkitBuild(codeUri, functionRes.Properties.CustomContainerConfig.Image, baseDir, functionName, serviceName);
+    }
+    return;
+  }
+  const absCodeUri = path.resolve(baseDir, functionRes.Properties.CodeUri);
+
+  await assertCodeUriExist(absCodeUri);
+
+  if ((runtime === 'java8' || runtime === 'java11') && (absCodeUri.endsWith('.zip') || absCodeUri.endsWith('.jar') || absCodeUri.endsWith('.war'))) {
+    console.warn(red(`\nDetectionWarning: your codeuri is '${codeUri}', and 'fun build' will not compile your functions. It is recommended that you modify ${serviceName}/${functionName}'s 'CodeUri' property to the directory where 'pom.xml' is located.`));
+  }
+
+  let funcArtifactDir;
+  let sourcesHash;
+  if (buildStage) {
+    funcArtifactDir = await artifact.generateArtifactDirectory(rootArtifactsDir, serviceName, functionName);
+
+    if (buildCache) {
+      sourcesHash = await cache.hashFunctionSources(runtime, absCodeUri, _.pick(buildOpts, ['useDocker', 'useBuildkit', 'enableCds']));
+      if (await buildCache.isUpToDate(`${serviceName}/${functionName}`, sourcesHash, funcArtifactDir)) {
+        console.log(`${serviceName}/${functionName} is not changed since last build, skip building`);
+        cachedBuildFuncs.push(func);
+        return;
+      }
+    }
+
+    await artifact.cleanDirectory(funcArtifactDir);
+  } else {
+    funcArtifactDir = absCodeUri;
+  }
+
+  const Builder = fcBuilders.Builder;
+  const taskFlows = await Builder.detectTaskFlow(runtime, absCodeUri);
+
+  const funfilePath = await getOrConvertFunfile(absCodeUri);
+
+  let imageTag;
+
+  // if Funfile exist,use docker or buildkit.
+  if (funfilePath) {
+    if (buildOpts.useBuildkit || ctx.escapeDockerArgsInBuildFC) {
+      await processFunfileForBuildkit(serviceName, serviceRes, absCodeUri, funfilePath, baseDir, funcArtifactDir, runtime, functionName);
+      buildOpts.useDocker = false;
+      buildOpts.useBuildkit = true;
+    } else { // force docker if funfilePath exist and escapeDockerArgsInBuildFC not exist
+      imageTag = await processFunfile(serviceName, serviceRes, absCodeUri, funfilePath, baseDir, funcArtifactDir, runtime, functionName);
+      buildOpts.useDocker = true;
+    }
+    ctx.usedDocker = ctx.usedDocker || buildOpts.useDocker;
+  }
+  // For build stage, Fun needn't compile functions only if there are no manifest file and no Funfile.
+  // For install stage, Fun needn't compile functions only if there are no manifest file.
+  const manifestExist = !(_.isEmpty(taskFlows) || taskflow.isOnlyDefaultTaskFlow(taskFlows));
+
+  if ((buildStage && (!funfilePath && !manifestExist))
+    || (!buildStage && !manifestExist)) {
+    debug(`could not find any manifest file for ${func.serviceName}/${func.functionName}, [${stages}] stage for manifest will be skipped`);
+    skippedBuildFuncs.push(func);
+    return;
+  }
+
+  if (buildOpts.useBuildkit) {
+    await builder.buildInBuildkit(serviceName, serviceRes, functionName, functionRes, baseDir, absCodeUri, funcArtifactDir, verbose, stages);
+  } else if (buildOpts.useDocker) {
+    await builder.buildInDocker(serviceName, serviceRes, functionName, functionRes, baseDir, absCodeUri, funcArtifactDir, verbose, imageTag, stages);
+  } else {
+    await builder.buildInProcess(serviceName, functionName, absCodeUri, runtime, funcArtifactDir, verbose, stages);
+  }
+
+  if (buildCache) {
+    buildCache.update(`${serviceName}/${functionName}`, sourcesHash);
+  }
+}
+
+// a failed task stops the queue, the running ones are waited for before the first error is thrown
+async function runInParallel(items, parallel, task) {
+  const queue = items.slice();
+  const errors = [];
+  const workers = _.range(Math.max(1, Math.min(parallel, queue.length))).map(async () => {
+    while (queue.length && !errors.length) {
+      try {
+        await task(queue.shift());
+      } catch (e) {
+        errors.push(e);
+      }
+    }
+  });
+  await Promise.all(workers);
+
+  if (errors.length) {
+    throw errors[0];
+  }
+}
+
+async function buildFunction(buildName, tpl, baseDir, useDocker, useBuildkit, stages, verbose, tplPath, assumeYes, {
+  enableCds = false, cdsEvent, incremental = false, parallel = 1, jvmProfile, compareJvmProfiles = false
+} = {}) {
+  jvmProfile = jvm.resolveJvmProfile(jvmProfile);
+
   const buildStage = _.includes(stages, 'build');
   const escapeDockerArgsInBuildFC = +process.env.escapeDockerArgsInBuildFC;
   const setBuildkitArgsDefaultInBuildFC = +process.env.setBuildkitArgsDefaultInBuildFC;
@@ -246,104 +373,61 @@ async function buildFunction(buildName, tpl, baseDir, useDocker, useBuildkit, st
 
   const buildFuncs = template.findBuildFuncs(buildName, tpl);
   const skippedBuildFuncs = [];
+  // reuse the artifacts of the last build, including the jvm profile and the cds archive
+  const cachedBuildFuncs = [];
 
   let rootArtifactsDir;
+  let buildCache;
   if (buildStage) {
     rootArtifactsDir = await artifact.generateRootArtifactDirectory(baseDir);
-    await artifact.cleanDirectory(rootArtifactsDir);
+    if (incremental) {
+      // keep the artifacts of unchanged functions, the others are cleaned one by one
+      buildCache = await cache.loadBuildCache(rootArtifactsDir);
+    } else {
+      await artifact.cleanDirectory(rootArtifactsDir);
+    }
   } else {
     rootArtifactsDir = baseDir;
   }
 
   await detectFunFile(baseDir, tpl);
 
-  for (let func of buildFuncs) {
-    const { functionName, serviceName, serviceRes, functionRes } = func;
-
-    console.log();
-    console.log(green(`building ${serviceName}/${functionName}`));
-
-    const runtime = functionRes.Properties.Runtime;
-    const codeUri = functionRes.Properties.CodeUri;
-    if (isCustomContainerRuntime(runtime)) {
-      if (!buildStage) {
-        continue;
-      }
-      if (!useDocker && !useBuildkit) {
-        throw new Error(`Runtime custom-container must use --use-docker or --use-buildkit`);
-      }
-      if (useDocker) {
-        await dockerBuildAndPush(codeUri, functionRes.Properties.CustomContainerConfig.Image, baseDir, functionName, serviceName);
-      } else if (useBuildkit) {
-        const msg = `Use fun build to build image and push to ${functionRes.Properties.CustomContainerConfig.Image}.Please confirm to continue.`;
-        if (!assumeYes && !await promptForConfirmContinue(msg)) {
-          skippedBuildFuncs.push(func);
-          continue;
-        }
-        await buildkitBuild(codeUri, functionRes.Properties.CustomContainerConfig.Image, baseDir, functionName, serviceName);
-      }
-      continue;
+  // copied by every function, the cds archives generated after the build are part of the cached artifacts
+  const buildOpts = { useDocker, useBuildkit, enableCds };
+  const ctx = {
+    buildStage, stages, baseDir, rootArtifactsDir, verbose, assumeYes,
+    escapeDockerArgsInBuildFC, buildOpts, buildCache, skippedBuildFuncs, cachedBuildFuncs, usedDocker: false
+  };
+
+  try {
+    await runInParallel(buildFuncs, parallel, (func) => buildOneFunction(func, ctx));
+  } finally {
+    if (buildCache) {
+      await buildCache.save();
     }
-    const absCodeUri = path.resolve(baseDir, functionRes.Properties.CodeUri);
-
-    await assertCodeUriExist(absCodeUri);
-
-    if ((runtime === 'java8' || runtime === 'java11') && (absCodeUri.endsWith('.zip') || absCodeUri.endsWith('.jar') || absCodeUri.endsWith('.war'))) {
-      console.warn(red(`\nDetectionWarning: your codeuri is '${codeUri}', and 'fun build' will not compile your functions. It is recommended that you modify ${serviceName}/${functionName}'s 'CodeUri' property to the directory where 'pom.xml' is located.`));
-    }
-
-    let funcArtifactDir;
-    if (buildStage) {
-      funcArtifactDir = await artifact.generateArtifactDirectory(rootArtifactsDir, serviceName, functionName);
-      await artifact.cleanDirectory(funcArtifactDir);
-    } else {
-      funcArtifactDir = absCodeUri;
-    }
-
-    const Builder = fcBuilders.Builder;
-    const taskFlows = await Builder.detectTaskFlow(runtime, absCodeUri);
+  }
 
-    const funfilePath = await getOrConvertFunfile(absCodeUri);
+  if (buildStage) {
+    const updatedTemplateContent = template.updateTemplateResources(tpl, buildFuncs, skippedBuildFuncs, baseDir, rootArtifactsDir);
 
-    let imageTag;
+    const builtFuncs = _.difference(buildFuncs, skippedBuildFuncs, cachedBuildFuncs);
+    await jvm.applyJvmProfiles(updatedTemplateContent, builtFuncs, rootArtifactsDir, jvmProfile);
 
-    // if Funfile exist,use docker or buildkit.
-    if (funfilePath) {
-      if (useBuildkit || escapeDockerArgsInBuildFC) {
-        await processFunfileForBuildkit(serviceName, serviceRes, absCodeUri, funfilePath, baseDir, funcArtifactDir, runtime, functionName);
-        useDocker = false;
-        useBuildkit = true;
-      } else { // force docker if funfilePath exist and escapeDockerArgsInBuildFC not exist
-        imageTag = await processFunfile(serviceName, serviceRes, absCodeUri, funfilePath, baseDir, funcArtifactDir, runtime, functionName);
-        useDocker = true;
-      }
-    }
-    // For build stage, Fun needn't compile functions only if there are no manifest file and no Funfile.
-    // For install stage, Fun needn't compile functions only if there are no manifest file.
-    const manifestExist = !(_.isEmpty(taskFlows) || taskflow.isOnlyDefaultTaskFlow(taskFlows));
-
-    if ((buildStage && (!funfilePath && !manifestExist))
-      || (!buildStage && !manifestExist)) {
-      debug(`could not find any manifest file for ${func.serviceName}/${func.functionName}, [${stages}] stage for manifest will be skipped`);
-      skippedBuildFuncs.push(func);
-      continue;
+    if (enableCds) {
+      await cds.reuseCdsArchives(updatedTemplateContent, cachedBuildFuncs, rootArtifactsDir);
+      await cds.generateCdsArchives(updatedTemplateContent, builtFuncs, rootArtifactsDir, cdsEvent);
     }
 
-    if (useBuildkit) {
-      await builder.buildInBuildkit(serviceName, serviceRes, functionName, functionRes, baseDir, absCodeUri, funcArtifactDir, verbose, stages);
-    } else if (useDocker) {
-      await builder.buildInDocker(serviceName, serviceRes, functionName, functionRes, baseDir, absCodeUri, funcArtifactDir, verbose, imageTag, stages);
-    } else {
-      await builder.buildInProcess(serviceName, functionName, absCodeUri, runtime, funcArtifactDir, verbose, stages);
+    if (compareJvmProfiles) {
+      await jvm.compareJvmProfiles(updatedTemplateContent, builtFuncs, rootArtifactsDir, {
+        event: cdsEvent ? await fs.readFile(cdsEvent, 'utf8') : ''
+      });
     }
-  }
-  if (buildStage) {
-    const updatedTemplateContent = template.updateTemplateResources(tpl, buildFuncs, skippedBuildFuncs, baseDir, rootArtifactsDir);
 
     await fs.writeFile(path.join(rootArtifactsDir, 'template.yml'), yaml.dump(updatedTemplateContent));
     // save meta data
     await recordMetaData(baseDir, buildFuncs, tplPath, path.resolve(rootArtifactsDir, 'meta.json'), {
-      'useDocker': useDocker,
+      'useDocker': buildOpts.useDocker || ctx.usedDocker,
       'verbose': verbose,
       'buildName': buildName
     });
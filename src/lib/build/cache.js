@@ -0,0 +1,118 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const crypto = require('crypto');
+const debug = require('debug')('fun:build:cache');
+
+const _ = require('lodash');
+
+const CACHEABLE_RUNTIMES = ['java8', 'java11'];
+
+// everything that goes into a maven build of the function
+const SOURCE_FILES = ['pom.xml', 'Funfile', 'fun.yml'];
+// fc-java-starter is compiled from its sources by the poms of the java templates
+const SOURCE_DIRS = ['src', 'fc-java-starter/src'];
+
+async function listFilesRecursive(dir) {
+  if (!await fs.pathExists(dir)) { return []; }
+
+  const files = [];
+  for (const item of await fs.readdir(dir)) {
+    const itemPath = path.join(dir, item);
+    const stats = await fs.lstat(itemPath);
+    if (stats.isDirectory()) {
+      files.push(...await listFilesRecursive(itemPath));
+    } else if (stats.isFile()) {
+      files.push(itemPath);
+    }
+  }
+  return files;
+}
+
+function hashFile(filePath) {
+  return new Promise((resolve, reject) => {
+    const hash = crypto.createHash('sha256');
+    fs.createReadStream(filePath)
+      .on('error', reject)
+      .on('data', (chunk) => hash.update(chunk))
+      .on('end', () => resolve(hash.digest('hex')));
+  });
+}
+
+// returns null if the function could not be built incrementally
+async function hashFunctionSources(runtime, absCodeUri, buildOps = {}) {
+  if (!_.includes(CACHEABLE_RUNTIMES, runtime)) { return null; }
+
+  const pom = path.join(absCodeUri, 'pom.xml');
+  if (!await fs.pathExists(pom)) { return null; }
+
+  const files = _.compact(await Promise.all(SOURCE_FILES.map(async (file) => {
+    const filePath = path.join(absCodeUri, file);
+    return await fs.pathExists(filePath) ? filePath : null;
+  })));
+
+  for (const dir of SOURCE_DIRS) {
+    files.push(...await listFilesRecursive(path.join(absCodeUri, dir)));
+  }
+
+  const hash = crypto.createHash('sha256');
+  hash.update(JSON.stringify({ runtime, buildOps }));
+
+  // sort by relative path with '/', so that the same sources hash the same on every platform
+  const relativeFiles = _.sortBy(files.map(file => ({
+    file,
+    relative: path.relative(absCodeUri, file).split(path.sep).join('/')
+  })), 'relative');
+
+  for (const { file, relative } of relativeFiles) {
+    hash.update(`${relative}\0${await hashFile(file)}\0`);
+  }
+
+  return hash.digest('hex');
+}
+
+class BuildCache {
+  constructor(cachePath, entries = {}) {
+    this.cachePath = cachePath;
+    this.entries = entries;
+  }
+
+  async isUpToDate(key, hash, funcArtifactDir) {
+    const entry = this.entries[key];
+    if (!hash || !entry || entry.hash !== hash) { return false; }
+
+    if (!await fs.pathExists(funcArtifactDir)) { return false; }
+    return !_.isEmpty(await fs.readdir(funcArtifactDir));
+  }
+
+  update(key, hash) {
+    if (!hash) {
+      delete this.entries[key];
+      return;
+    }
+    this.entries[key] = { hash };
+  }
+
+  async save() {
+    await fs.outputFile(this.cachePath, JSON.stringify(this.entries, null, 4));
+  }
+}
+
+async function loadBuildCache(rootArtifactsDir) {
+  const cachePath = path.join(path.dirname(rootArtifactsDir), 'cache.json');
+
+  let entries = {};
+  if (await fs.pathExists(cachePath)) {
+    try {
+      entries = JSON.parse(await fs.readFile(cachePath, 'utf8'));
+    } catch (e) {
+      debug(`ignore invalid build cache ${cachePath}: ${e}`);
+    }
+  }
+  return new BuildCache(cachePath, entries);
+}
+
+module.exports = {
+  hashFunctionSources, loadBuildCache, BuildCache
+};
@@ -0,0 +1,167 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const uuid = require('uuid');
+const tmpDir = require('temp-dir');
+const debug = require('debug')('fun:build:cds');
+const devnull = require('dev-null');
+const definition = require('../definition');
+
+const { isJavaBootstrap } = require('./jvm-profile');
+
+const { green, yellow } = require('colors');
+
+const _ = require('lodash');
+
+const CDS_RUNTIMES = ['java11', 'custom'];
+
+const CDS_DIR = path.join('.fun', 'cds');
+const CDS_ARCHIVE_NAME = 'app.jsa';
+const CDS_CLASS_LIST_NAME = 'classes.lst';
+
+// the artifact dir is mounted to /code and the tmp dir to /tmp in the runtime container
+const CONTAINER_CDS_ARCHIVE = `/code/.fun/cds/${CDS_ARCHIVE_NAME}`;
+const CONTAINER_CLASS_LIST = `/tmp/${CDS_CLASS_LIST_NAME}`;
+const CONTAINER_TMP_ARCHIVE = `/tmp/${CDS_ARCHIVE_NAME}`;
+
+const CDS_RUNTIME_OPTIONS = `-XX:SharedArchiveFile=${CONTAINER_CDS_ARCHIVE} -Xshare:auto`;
+
+function isCdsSupported(runtime) {
+  return _.includes(CDS_RUNTIMES, runtime);
+}
+
+function appendJavaToolOptions(functionRes, options) {
+  const updated = _.cloneDeep(functionRes);
+  const props = updated.Properties;
+  const envs = Object.assign({}, props.EnvironmentVariables);
+
+  envs.JAVA_TOOL_OPTIONS = _.compact([envs.JAVA_TOOL_OPTIONS, options]).join(' ');
+  props.EnvironmentVariables = envs;
+
+  return updated;
+}
+
+async function timedInvoke({ serviceName, serviceRes, functionName, functionRes, baseDir, absTmpDir, event }, javaToolOptions) {
+  // Lazy loading to avoid stdin being taken over twice.
+  const LocalInvoke = require('../local/local-invoke');
+
+  const invokeRes = javaToolOptions ? appendJavaToolOptions(functionRes, javaToolOptions) : functionRes;
+  const localInvoke = new LocalInvoke(serviceName, serviceRes, functionName, invokeRes, null, null, baseDir, absTmpDir);
+
+  // pulling image and resolving mounts is not part of the cold start
+  await localInvoke.init();
+
+  const start = Date.now();
+  await localInvoke.invoke(event, { outputStream: devnull(), errorStream: devnull() });
+  return Date.now() - start;
+}
+
+async function generateCdsArchive(serviceName, serviceRes, functionName, functionRes, baseDir, event) {
+  const absCodeDir = path.resolve(baseDir, functionRes.Properties.CodeUri);
+  const absCdsDir = path.join(absCodeDir, CDS_DIR);
+  const absTmpDir = path.join(tmpDir, uuid.v4());
+
+  await fs.ensureDir(absTmpDir);
+
+  const ctx = { serviceName, serviceRes, functionName, functionRes, baseDir, absTmpDir, event };
+
+  try {
+    console.log(`generating AppCDS archive for ${serviceName}/${functionName}`);
+
+    const withoutArchive = await timedInvoke(ctx);
+
+    debug('dumping loaded class list');
+    await timedInvoke(ctx, `-Xshare:off -XX:DumpLoadedClassList=${CONTAINER_CLASS_LIST}`);
+    if (!await fs.pathExists(path.join(absTmpDir, CDS_CLASS_LIST_NAME))) {
+      throw new Error(`Could not dump the loaded class list of ${serviceName}/${functionName}, AppCDS requires the function to run on JDK 11.`);
+    }
+
+    // the runtime jvm exits right after the archive is dumped, so this invocation is expected to fail
+    debug('dumping shared archive');
+    await timedInvoke(ctx, `-Xshare:dump -XX:SharedClassListFile=${CONTAINER_CLASS_LIST} -XX:SharedArchiveFile=${CONTAINER_TMP_ARCHIVE}`);
+    if (!await fs.pathExists(path.join(absTmpDir, CDS_ARCHIVE_NAME))) {
+      throw new Error(`Could not dump the AppCDS archive of ${serviceName}/${functionName}.`);
+    }
+
+    await fs.ensureDir(absCdsDir);
+    await fs.copy(path.join(absTmpDir, CDS_CLASS_LIST_NAME), path.join(absCdsDir, CDS_CLASS_LIST_NAME));
+    await fs.copy(path.join(absTmpDir, CDS_ARCHIVE_NAME), path.join(absCdsDir, CDS_ARCHIVE_NAME));
+
+    const withArchive = await timedInvoke(ctx, CDS_RUNTIME_OPTIONS);
+
+    console.log(`${green('✔')} AppCDS archive: ${path.relative(baseDir, path.join(absCdsDir, CDS_ARCHIVE_NAME))}`);
+    console.log(`  cold start without archive: ${withoutArchive} ms, with archive: ${withArchive} ms`);
+
+    return { withoutArchive, withArchive };
+  } finally {
+    await fs.remove(absTmpDir);
+  }
+}
+
+async function readCdsEvent(eventFile) {
+  if (!eventFile) { return ''; }
+  return await fs.readFile(eventFile, 'utf8');
+}
+
+// generate archives for the built java11 functions and custom functions running java of the artifact template
+// and point their JAVA_TOOL_OPTIONS to it
+async function generateCdsArchives(updatedTpl, builtFuncs, rootArtifactsDir, eventFile) {
+  const event = await readCdsEvent(eventFile);
+
+  const cdsFuncs = [];
+  definition.iterateFunctions(updatedTpl, (serviceName, serviceRes, functionName, functionRes) => {
+    const built = _.some(builtFuncs, (func) => func.serviceName === serviceName && func.functionName === functionName);
+    if (!built) { return; }
+
+    const runtime = functionRes.Properties.Runtime;
+    if (!isCdsSupported(runtime)) {
+      if (_.startsWith(runtime, 'java')) {
+        console.warn(yellow(`skip generating AppCDS archive for ${serviceName}/${functionName}, runtime ${runtime} is not supported.`));
+      }
+      return;
+    }
+    cdsFuncs.push({ serviceName, serviceRes, functionName, functionRes });
+  });
+
+  const timings = {};
+  for (const { serviceName, serviceRes, functionName, functionRes } of cdsFuncs) {
+    const { Runtime, CodeUri } = functionRes.Properties;
+    if (Runtime === 'custom' && !await isJavaBootstrap(path.resolve(rootArtifactsDir, CodeUri))) {
+      console.warn(yellow(`skip generating AppCDS archive for ${serviceName}/${functionName}, its bootstrap doesn't run java.`));
+      continue;
+    }
+
+    timings[`${serviceName}/${functionName}`] = await generateCdsArchive(serviceName, serviceRes, functionName, functionRes, rootArtifactsDir, event);
+
+    const updated = appendJavaToolOptions(functionRes, CDS_RUNTIME_OPTIONS);
+    functionRes.Properties.EnvironmentVariables = updated.Properties.EnvironmentVariables;
+  }
+  return timings;
+}
+
+// the archives of the functions not changed since the last build are kept in their artifacts,
+// only the JAVA_TOOL_OPTIONS of the regenerated artifact template need to point to them again
+async function reuseCdsArchives(updatedTpl, cachedFuncs, rootArtifactsDir) {
+  const reusedFuncs = [];
+  definition.iterateFunctions(updatedTpl, (serviceName, serviceRes, functionName, functionRes) => {
+    const cached = _.some(cachedFuncs, (func) => func.serviceName === serviceName && func.functionName === functionName);
+    if (cached && isCdsSupported(functionRes.Properties.Runtime)) {
+      reusedFuncs.push(functionRes);
+    }
+  });
+
+  for (const functionRes of reusedFuncs) {
+    const absCodeDir = path.resolve(rootArtifactsDir, functionRes.Properties.CodeUri);
+    if (!await fs.pathExists(path.join(absCodeDir, CDS_DIR, CDS_ARCHIVE_NAME))) { continue; }
+
+    const updated = appendJavaToolOptions(functionRes, CDS_RUNTIME_OPTIONS);
+    functionRes.Properties.EnvironmentVariables = updated.Properties.EnvironmentVariables;
+  }
+}
+
+module.exports = {
+  CDS_RUNTIME_OPTIONS,
+  isCdsSupported, appendJavaToolOptions,
+  generateCdsArchive, generateCdsArchives, reuseCdsArchives
+};
@@ -0,0 +1,231 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const uuid = require('uuid');
+const tmpDir = require('temp-dir');
+const streams = require('memory-streams');
+const debug = require('debug')('fun:build:jvm');
+const definition = require('../definition');
+
+const { isBinary } = require('istextorbinary');
+const { parseInvokeDuration } = require('../local/duration');
+const { green, yellow } = require('colors');
+
+const _ = require('lodash');
+
+// the memory size of the functions generated for the detected frameworks
+const DEFAULT_FRAMEWORK_MEMORY_SIZE = 1024;
+const DEFAULT_MEMORY_SIZE = 128;
+
+const JVM_PROFILES = {
+  // C1 only, a single threaded gc and the default class data sharing, for functions dominated by cold starts
+  'fast-start': ['-XX:TieredStopAtLevel=1', '-XX:+UseSerialGC', '-Xshare:auto', '-XX:-UsePerfData', '-Xss512k'],
+  // the full tiered compilation with C2 and a parallel gc, for functions serving steady traffic
+  'throughput': ['-XX:+TieredCompilation', '-XX:+UseParallelGC']
+};
+
+const DEFAULT_JVM_PROFILE = 'fast-start';
+
+// the line managed by fun in bootstrap, FUN_JVM_OPTIONS could still be overridden by the environment variables
+const JVM_OPTIONS_LINE_REGEX = /^export FUN_JVM_OPTIONS=.*$/m;
+const JVM_PROFILE_COMMENT_REGEX = /# fun jvm profile: ([\w-]+)/;
+const JAVA_COMMAND_REGEX = /^(\s*(?:exec\s+)?java)\s(?!\$FUN_JVM_OPTIONS)/mg;
+const JAVA_LINE_REGEX = /^\s*(exec\s+)?java\s/;
+
+function resolveJvmProfile(profile) {
+  profile = profile || process.env.FUN_JVM_PROFILE;
+  if (profile && !JVM_PROFILES[profile]) {
+    throw new Error(`invalid jvm profile ${profile}, it should be one of ${_.keys(JVM_PROFILES).join(', ')}`);
+  }
+  return profile;
+}
+
+// leaves a quarter of the memory, at least 64 MB, for metaspace, code cache, thread stacks and direct buffers
+function resolveHeapSize(memorySize = DEFAULT_MEMORY_SIZE) {
+  const reserved = Math.max(64, Math.round(memorySize / 4));
+  return Math.max(32, memorySize - reserved);
+}
+
+function generateJvmOptions(profile, memorySize) {
+  const heapSize = resolveHeapSize(memorySize);
+  return [`-Xms${heapSize}m`, `-Xmx${heapSize}m`, ...JVM_PROFILES[profile]].join(' ');
+}
+
+function generateJvmOptionsLine(profile, memorySize = DEFAULT_MEMORY_SIZE) {
+  return `export FUN_JVM_OPTIONS=\${FUN_JVM_OPTIONS:-"${generateJvmOptions(profile, memorySize)}"} # fun jvm profile: ${profile}, memory size: ${memorySize} MB`;
+}
+
+// returns the profile of the line managed by fun, or null if the bootstrap has no such line
+function parseJvmProfile(bootstrapContent) {
+  const line = bootstrapContent.match(JVM_OPTIONS_LINE_REGEX);
+  if (!line) { return null; }
+
+  const comment = line[0].match(JVM_PROFILE_COMMENT_REGEX);
+  return comment && JVM_PROFILES[comment[1]] ? comment[1] : DEFAULT_JVM_PROFILE;
+}
+
+function insertJvmOptionsLine(bootstrapContent, line) {
+  if (JVM_OPTIONS_LINE_REGEX.test(bootstrapContent)) {
+    return bootstrapContent.replace(JVM_OPTIONS_LINE_REGEX, line).replace(JAVA_COMMAND_REGEX, '$1 $FUN_JVM_OPTIONS ');
+  }
+
+  const lines = bootstrapContent.split('\n');
+  const index = _.findIndex(lines, l => JAVA_LINE_REGEX.test(l));
+  if (index === -1) { return bootstrapContent; }
+
+  lines.splice(index, 0, line);
+  return lines.join('\n').replace(JAVA_COMMAND_REGEX, '$1 $FUN_JVM_OPTIONS ');
+}
+
+// Sets the FUN_JVM_OPTIONS line of bootstrap to the profile and memory size, and passes it to the java commands.
+// Bootstraps without java commands are returned as is.
+function applyJvmProfile(bootstrapContent, profile, memorySize) {
+  return insertJvmOptionsLine(bootstrapContent, generateJvmOptionsLine(profile, memorySize));
+}
+
+// carries the FUN_JVM_OPTIONS line over to the bootstrap rewritten from bootstrapContent
+function carryJvmOptions(bootstrapContent, rewrittenContent) {
+  const line = bootstrapContent.match(JVM_OPTIONS_LINE_REGEX);
+  return line ? insertJvmOptionsLine(rewrittenContent, line[0]) : rewrittenContent;
+}
+
+// Without an explicit profile, only the bootstraps already managed by fun are updated, so that the heap
+// follows the MemorySize of the function. Returns the profile applied, or null if bootstrap is not changed.
+// whether the bootstrap of the code dir is a script that starts a jvm
+async function isJavaBootstrap(codeDir) {
+  const bootstrapPath = path.join(codeDir, 'bootstrap');
+  if (!await fs.pathExists(bootstrapPath) || isBinary(bootstrapPath)) { return false; }
+
+  const content = await fs.readFile(bootstrapPath, 'utf8');
+  return _.some(content.split('\n'), l => JAVA_LINE_REGEX.test(l));
+}
+
+async function updateBootstrapJvmProfile(codeDir, { profile, memorySize }) {
+  const bootstrapPath = path.join(codeDir, 'bootstrap');
+  if (!await fs.pathExists(bootstrapPath) || isBinary(bootstrapPath)) { return null; }
+
+  const content = await fs.readFile(bootstrapPath, 'utf8');
+  const applied = profile || parseJvmProfile(content);
+  if (!applied) { return null; }
+
+  const updated = applyJvmProfile(content, applied, memorySize);
+  if (updated === content) { return null; }
+
+  debug(`update jvm profile of ${bootstrapPath} to ${applied}, memory size ${memorySize}`);
+  await fs.writeFile(bootstrapPath, updated);
+  return applied;
+}
+
+function findCustomFunctions(updatedTpl, builtFuncs) {
+  const funcs = [];
+  definition.iterateFunctions(updatedTpl, (serviceName, serviceRes, functionName, functionRes) => {
+    const built = _.some(builtFuncs, (func) => func.serviceName === serviceName && func.functionName === functionName);
+    if (built && functionRes.Properties.Runtime === 'custom') {
+      funcs.push({ serviceName, serviceRes, functionName, functionRes });
+    }
+  });
+  return funcs;
+}
+
+// applies the profile to the bootstraps of the built custom runtime functions
+async function applyJvmProfiles(updatedTpl, builtFuncs, rootArtifactsDir, profile) {
+  for (const { serviceName, functionName, functionRes } of findCustomFunctions(updatedTpl, builtFuncs)) {
+    const codeDir = path.resolve(rootArtifactsDir, functionRes.Properties.CodeUri);
+    const applied = await updateBootstrapJvmProfile(codeDir, { profile, memorySize: functionRes.Properties.MemorySize });
+
+    if (applied) {
+      console.log(`jvm profile of ${serviceName}/${functionName}: ${applied}`);
+    }
+  }
+}
+
+function overrideJvmOptions(functionRes, options) {
+  const updated = _.cloneDeep(functionRes);
+  updated.Properties.EnvironmentVariables = Object.assign({}, updated.Properties.EnvironmentVariables, {
+    FUN_JVM_OPTIONS: options
+  });
+  return updated;
+}
+
+async function timedInvoke({ serviceName, serviceRes, functionName, functionRes, baseDir, event }) {
+  // Lazy loading to avoid stdin being taken over twice.
+  const LocalInvoke = require('../local/local-invoke');
+
+  const absTmpDir = path.join(tmpDir, uuid.v4());
+  await fs.ensureDir(absTmpDir);
+
+  try {
+    const localInvoke = new LocalInvoke(serviceName, serviceRes, functionName, functionRes, null, null, baseDir, absTmpDir);
+    await localInvoke.init();
+
+    const outputStream = new streams.WritableStream();
+    const errorStream = new streams.WritableStream();
+
+    const start = Date.now();
+    await localInvoke.invoke(event, { outputStream, errorStream });
+
+    return {
+      coldStart: Date.now() - start,
+      duration: parseInvokeDuration(`${outputStream.toString()}\n${errorStream.toString()}`)
+    };
+  } finally {
+    await fs.remove(absTmpDir);
+  }
+}
+
+function median(values) {
+  const sorted = _.sortBy(_.compact(values));
+  return sorted.length ? sorted[Math.floor(sorted.length / 2)] : null;
+}
+
+function formatMs(value) {
+  return value === null ? '-' : `${Math.round(value)} ms`;
+}
+
+// Invokes each built custom runtime function in fresh containers with every profile. The cold start is the
+// time of the whole invocation, the duration is the time of the request reported by the runtime.
+async function compareJvmProfiles(updatedTpl, builtFuncs, rootArtifactsDir, { runs = 3, event = '' } = {}) {
+  const reports = {};
+
+  for (const { serviceName, serviceRes, functionName, functionRes } of findCustomFunctions(updatedTpl, builtFuncs)) {
+    const codeDir = path.resolve(rootArtifactsDir, functionRes.Properties.CodeUri);
+    const bootstrapPath = path.join(codeDir, 'bootstrap');
+    if (!await fs.pathExists(bootstrapPath) || !parseJvmProfile(await fs.readFile(bootstrapPath, 'utf8'))) {
+      console.warn(yellow(`skip comparing jvm profiles of ${serviceName}/${functionName}, its bootstrap doesn't use FUN_JVM_OPTIONS.`));
+      continue;
+    }
+
+    const memorySize = functionRes.Properties.MemorySize;
+    const report = {};
+
+    console.log(`comparing jvm profiles of ${serviceName}/${functionName}, ${runs} cold starts for each profile`);
+    for (const profile of _.keys(JVM_PROFILES)) {
+      const invokeRes = overrideJvmOptions(functionRes, generateJvmOptions(profile, memorySize));
+
+      const timings = [];
+      for (let i = 0; i < runs; i++) {
+        timings.push(await timedInvoke({ serviceName, serviceRes, functionName, functionRes: invokeRes, baseDir: rootArtifactsDir, event }));
+      }
+
+      report[profile] = {
+        coldStart: median(_.map(timings, 'coldStart')),
+        duration: median(_.map(timings, 'duration'))
+      };
+      console.log(`  ${_.padEnd(profile, 12)} cold start ${_.padStart(formatMs(report[profile].coldStart), 9)}` +
+        `  duration ${_.padStart(formatMs(report[profile].duration), 9)}`);
+    }
+
+    const fastest = _.minBy(_.keys(report), profile => report[profile].coldStart);
+    console.log(green(`  ${fastest} starts fastest, use 'fun build --jvm-profile ${fastest}' to apply it.`));
+    reports[`${serviceName}/${functionName}`] = report;
+  }
+  return reports;
+}
+
+module.exports = {
+  JVM_PROFILES, DEFAULT_JVM_PROFILE, DEFAULT_FRAMEWORK_MEMORY_SIZE,
+  resolveJvmProfile, resolveHeapSize, generateJvmOptions, generateJvmOptionsLine,
+  parseJvmProfile, applyJvmProfile, carryJvmOptions, isJavaBootstrap, updateBootstrapJvmProfile,
+  applyJvmProfiles, compareJvmProfiles
+};
@@ -33,7 +33,14 @@ async function build(buildName, options) {
 
   const baseDir = path.dirname(tplPath);
 
-  await buildFunction(buildName, tpl, baseDir, useDocker, useBuildkit, ['install', 'build'], options.verbose, tplPath, assumeYes);
+  await buildFunction(buildName, tpl, baseDir, useDocker, useBuildkit, ['install', 'build'], options.verbose, tplPath, assumeYes, {
+    enableCds: options.enableCds,
+    cdsEvent: options.cdsEvent,
+    jvmProfile: options.jvmProfile,
+    compareJvmProfiles: options.compareJvmProfiles,
+    incremental: options.incremental,
+    parallel: parseInt(options.parallel) || 1
+  });
 
   showBuildNextTips();
 }
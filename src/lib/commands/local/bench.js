@@ -0,0 +1,76 @@
+'use strict';
+
+const fc = require('../../fc');
+const fs = require('fs-extra');
+const path = require('path');
+const debug = require('debug')('fun:local:bench');
+const definition = require('../../definition');
+
+const { red, green, yellow } = require('colors');
+const { ensureTmpDir } = require('../../utils/path');
+const { ensureFilesModified, eventPriority } = require('../../utils/file');
+const { generateMergedTpl, detectNasBaseDir } = require('../../tpl');
+const { LocalBench, printReport } = require('../../local/bench');
+
+const _ = require('lodash');
+
+function parsePositiveInt(value, name, { allowZero = false } = {}) {
+  const parsed = _.isNil(value) ? value : Number(value);
+  if (!Number.isInteger(parsed) || parsed < 0 || (!allowZero && parsed === 0)) {
+    throw new Error(red(`${name} should be a ${allowZero ? 'non-negative' : 'positive'} integer, but got ${value}`));
+  }
+  return parsed;
+}
+
+// every event file is the body of one request, requests take them in turn
+async function readEvents(options) {
+  if (!_.isEmpty(options.eventFile)) {
+    return await Promise.all(options.eventFile.map(eventFile => fs.readFile(path.resolve(process.cwd(), eventFile))));
+  }
+  const event = await eventPriority(_.omit(options, ['eventFile']));
+  return [event || ''];
+}
+
+async function bench(invokeName, options) {
+  const { tpl, tplPath } = await generateMergedTpl(options.template, true);
+
+  const hasInvokeName = !!invokeName;
+  if (!hasInvokeName) {
+    invokeName = definition.findFirstFunctionName(tpl);
+    console.log(`\nMissing invokeName argument, Fun will use the first function ${yellow(invokeName)} as invokeName\n`);
+  }
+
+  const { serviceName, serviceRes, functionName, functionRes } = definition.findFunctionInTpl(invokeName, tpl);
+  if (!functionRes) {
+    throw new Error(red(`invokeName ${invokeName} is invalid`));
+  }
+
+  const concurrency = parsePositiveInt(options.concurrency || 1, 'concurrency');
+  const duration = parsePositiveInt(options.duration || 10, 'duration');
+  const warmUp = parsePositiveInt(options.warmUp || 0, 'warm-up', { allowZero: true });
+  const events = await readEvents(options);
+
+  const baseDir = path.resolve(path.dirname(tplPath));
+  await ensureFilesModified(tplPath);
+  await fc.detectLibrary(functionRes.Properties.CodeUri, functionRes.Properties.Runtime, baseDir, functionName);
+
+  const absTmpDir = await ensureTmpDir(options.tmpDir, tplPath, serviceName, functionName);
+  debug(`The temp directory mounted to /tmp is ${absTmpDir}`);
+
+  const localBench = new LocalBench(serviceName, serviceRes, functionName, functionRes, baseDir, absTmpDir, detectNasBaseDir(tplPath), {
+    concurrency, duration, warmUp, events,
+    httpTrigger: !_.isEmpty(definition.findHttpTriggersInFunction(functionRes))
+  });
+
+  const report = await localBench.run();
+  printReport(report);
+
+  if (options.output) {
+    const outputPath = path.resolve(process.cwd(), options.output);
+    await fs.outputJson(outputPath, report, { spaces: 2 });
+    console.log(green(`\nbenchmark result is saved to ${outputPath}`));
+  }
+  return report;
+}
+
+module.exports = { bench };
@@ -19,14 +19,14 @@ function printHttpTriggerTips(serverPort, serviceName, functionName, triggerName
   console.log(`\tauthType: ` + yellow(authType));
 }
 
-async function registerHttpTriggers(app, router, serverPort, httpTriggers, debugPort, debugIde, baseDir, debuggerPath, debugArgs, nasBaseDir, tplPath) {
+async function registerHttpTriggers(app, router, serverPort, httpTriggers, debugPort, debugIde, baseDir, debuggerPath, debugArgs, nasBaseDir, tplPath, startOpts = {}) {
   for (let httpTrigger of httpTriggers) {
-    await registerSingleHttpTrigger(app, router, serverPort, httpTrigger, debugPort, debugIde, baseDir, false, debuggerPath, debugArgs, nasBaseDir, tplPath);
+    await registerSingleHttpTrigger(app, router, serverPort, httpTrigger, debugPort, debugIde, baseDir, false, debuggerPath, debugArgs, nasBaseDir, tplPath, startOpts);
   }
   console.log();
 }
 
-async function registerSingleHttpTrigger(app, router, serverPort, httpTrigger, debugPort, debugIde, baseDir, eager = false, debuggerPath, debugArgs, nasBaseDir, tplPath) {
+async function registerSingleHttpTrigger(app, router, serverPort, httpTrigger, debugPort, debugIde, baseDir, eager = false, debuggerPath, debugArgs, nasBaseDir, tplPath, startOpts = {}) {
   const { serviceName, serviceRes,
     functionName, functionRes,
     triggerName, triggerRes, path, domainName } = httpTrigger;
@@ -64,9 +64,12 @@ async function registerSingleHttpTrigger(app, router, serverPort, httpTrigger, d
 
   const tmpDir = await ensureTmpDir(null, tplPath, serviceName, functionName);
 
-  const httpInvoke = new HttpInvoke(serviceName, serviceRes, functionName, functionRes, debugPort, debugIde, baseDir, tmpDir, authType, endpointPrefix, debuggerPath, debugArgs, nasBaseDir);
+  const httpInvoke = new HttpInvoke(serviceName, serviceRes, functionName, functionRes, debugPort, debugIde, baseDir, tmpDir, authType, endpointPrefix, debuggerPath, debugArgs, nasBaseDir, startOpts);
   if (eager) {
     await httpInvoke.initAndStartRunner();
+  } else if (httpInvoke.poolSize > 1) {
+    // start the containers before the first request, so that concurrent requests don't wait for them
+    await httpInvoke.warmUp();
   }
   app.use(setCORSHeaders);
   app.use(router);
@@ -26,7 +26,52 @@ function findFunctionInTpl(invokeName, tpl) {
   };
 }
 
+// replays the events through one warm container instead of starting a container for every event
+async function replay(invokeName, options) {
+  if (options.debugPort) {
+    throw new Error(red('--events could not be used with --debug-port.'));
+  }
+
+  const concurrency = Number(options.concurrency || 1);
+  if (!Number.isInteger(concurrency) || concurrency < 1) {
+    throw new Error(red(`concurrency should be a positive integer, but got ${options.concurrency}`));
+  }
+
+  const { tpl, tplPath } = await generateMergedTpl(options.template, true);
+  if (!invokeName) {
+    invokeName = definition.findFirstFunctionName(tpl);
+    console.log(`\nMissing invokeName argument, Fun will use the first function ${yellow(invokeName)} as invokeName\n`);
+  }
+  const { serviceName, serviceRes, functionName, functionRes } = findFunctionInTpl(invokeName, tpl);
+
+  // Lazy loading to avoid stdin being taken over twice.
+  const { EventReplay, loadEvents, printReplaySummary } = require('../../local/event-replay');
+
+  const baseDir = path.resolve(path.dirname(tplPath));
+  const events = await loadEvents(path.resolve(process.cwd(), options.events));
+  const resultsPath = options.results ? path.resolve(process.cwd(), options.results)
+    : path.join(baseDir, '.fun', 'tmp', 'replay', serviceName, functionName, 'results.jsonl');
+
+  await ensureFilesModified(tplPath);
+  await fc.detectLibrary(functionRes.Properties.CodeUri, functionRes.Properties.Runtime, baseDir, functionName);
+
+  const absTmpDir = await ensureTmpDir(options.tmpDir, tplPath, serviceName, functionName);
+
+  const eventReplay = new EventReplay(serviceName, serviceRes, functionName, functionRes, baseDir, absTmpDir, detectNasBaseDir(tplPath), {
+    concurrency, resultsPath,
+    httpTrigger: !_.isEmpty(definition.findHttpTriggersInFunction(functionRes))
+  });
+
+  const summary = await eventReplay.replay(events);
+  printReplaySummary(summary, resultsPath);
+  return summary;
+}
+
 async function invoke(invokeName, options) {
+  if (options.events) {
+    return await replay(invokeName, options);
+  }
+
   let isDotnetcore = false;
   let tpl, tplPath;
   let serviceName, serviceRes, functionName, functionRes, codeUri, runtime;
@@ -101,16 +146,27 @@ async function invoke(invokeName, options) {
 
   // Lazy loading to avoid stdin being taken over twice.
   const LocalInvoke = require('../../local/local-invoke');
+  const { StartupTrace } = require('../../local/startup-trace');
+  const { getProfileOptions } = require('../../local/java-profile');
+  const startupTrace = options.startupTrace ? new StartupTrace(path.resolve(process.cwd(), options.startupTrace)) : null;
+
   const localInvoke = new LocalInvoke(
     serviceName, serviceRes,
     functionName, functionRes,
     debugPort, debugIde,
     baseDir, absTmpDir,
     debuggerPath, debugArgs,
-    reuse, nasBaseDir
+    reuse, nasBaseDir,
+    { startupTrace, profile: getProfileOptions(options) }
   );
 
   await localInvoke.invoke(event);
+
+  if (startupTrace) {
+    await startupTrace.flush();
+    startupTrace.printSummary();
+    console.log(`\nstartup trace is saved to ${startupTrace.outputPath}`);
+  }
 }
 
 function isDotnetcoreRuntime(runtime) {
@@ -10,6 +10,8 @@ const definition = require('../../definition');
 const httpSupport = require('./http-support');
 const EventStart = require('../../local/event-start');
 
+const { StartupTrace } = require('../../local/startup-trace');
+const { getProfileOptions } = require('../../local/java-profile');
 const { ensureTmpDir } = require('../../utils/path');
 const { ensureFilesModified } = require('../../utils/file');
 const { showLocalStartNextTips } = require('../../../lib/build/tips');
@@ -192,6 +194,12 @@ async function start(options, invokeName = '') {
   const debugIde = getDebugIde(options);
   const debuggerPath = options.debuggerPath;
   const debugArgs = options.debugArgs;
+  const startOpts = {
+    poolSize: parseInt(options.poolSize) || 1,
+    hotSwap: options.hotSwap || false,
+    startupTrace: options.startupTrace ? new StartupTrace(path.resolve(process.cwd(), options.startupTrace)) : null,
+    profile: getProfileOptions(options)
+  };
   const baseDir = path.dirname(tplPath);
 
   await ensureFilesModified(tplPath);
@@ -236,7 +244,7 @@ async function start(options, invokeName = '') {
         throw new Error(`${invokeName} is not unique`);
       }
 
-      await httpSupport.registerSingleHttpTrigger(app, router, serverPort, httpTrigger[0], debugPort, debugIde, baseDir, true, debuggerPath, debugArgs, nasBaseDir, tplPath);
+      await httpSupport.registerSingleHttpTrigger(app, router, serverPort, httpTrigger[0], debugPort, debugIde, baseDir, true, debuggerPath, debugArgs, nasBaseDir, tplPath, startOpts);
       startExpress(app);
       return;
     }
@@ -255,9 +263,9 @@ async function start(options, invokeName = '') {
       debugFunction = httpTriggers;
     }
 
-    await httpSupport.registerSingleHttpTrigger(app, router, serverPort, debugFunction[0], debugPort, debugIde, baseDir, true, debuggerPath, debugArgs, nasBaseDir, tplPath);
+    await httpSupport.registerSingleHttpTrigger(app, router, serverPort, debugFunction[0], debugPort, debugIde, baseDir, true, debuggerPath, debugArgs, nasBaseDir, tplPath, startOpts);
   } else {
-    await httpSupport.registerHttpTriggers(app, router, serverPort, httpTriggers, debugPort, debugIde, baseDir, debuggerPath, debugArgs, nasBaseDir, tplPath);
+    await httpSupport.registerHttpTriggers(app, router, serverPort, httpTriggers, debugPort, debugIde, baseDir, debuggerPath, debugArgs, nasBaseDir, tplPath, startOpts);
   }
 
   if (_.isEmpty(routes)) { await registerApis(tpl, app, serverPort, debugPort, debugIde, baseDir, debuggerPath, debugArgs, nasBaseDir, tplPath); }
@@ -2,16 +2,35 @@
 
 const nasCp = require('../../nas/cp');
 const nas = require('../../nas');
+const fs = require('fs-extra');
 const path = require('path');
 const validate = require('../../validate/validate');
 const tips = require('../../nas/tips');
 
 const { red } = require('colors');
+const { writeClassIndexes } = require('../../nas/class-index');
 const { toBeUmountedDirs, mergeNasMappingsInNasYml } = require('../../nas/support');
 const { detectTplPath, getTpl, validateTplName, detectNasBaseDir, getBaseDir, getNasYmlPath } = require('../../tpl');
 
 const _ = require('lodash');
 
+// the class indexes are staged out of the local nas dir and uploaded next to the jars,
+// without deleting the other files of the remote dir
+async function syncClassIndexes(srcPath, dstPath, localNasTmpDir, tpl, tplPath, baseDir) {
+  const indexDir = path.join(localNasTmpDir, 'class-indexes');
+  await fs.remove(indexDir);
+
+  try {
+    const indexPaths = await writeClassIndexes(srcPath, indexDir);
+    if (_.isEmpty(indexPaths)) { return; }
+
+    console.log(`uploading ${indexPaths.length} class ${indexPaths.length === 1 ? 'index' : 'indexes'} to ${dstPath}`);
+    await nasCp(indexDir, dstPath, true, false, localNasTmpDir, tpl, tplPath, baseDir, false, true);
+  } finally {
+    await fs.remove(indexDir);
+  }
+}
+
 async function sync(options) {
 
   let tplPath = options.template;
@@ -66,6 +85,7 @@ async function sync(options) {
       console.log(`starting upload ${srcPath} to ${dstPath}`);
       try {
         await nasCp(srcPath, dstPath, true, false, localNasTmpDir, tpl, tplPath, baseDir, true);
+        await syncClassIndexes(srcPath, dstPath, localNasTmpDir, tpl, tplPath, baseDir);
       } catch (error) {
         errors.push(`Upload ${srcPath} To ${dstPath} ${error}`);
       }
@@ -0,0 +1,133 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const crypto = require('crypto');
+const crc64 = require('crc64-ecma182.js');
+const debug = require('debug')('fun:deploy:checksum');
+
+const _ = require('lodash');
+
+const ARCHIVE_SUFFIXES = ['.zip', '.jar', '.war'];
+
+function isCodeArchive(codeUri) {
+  return _.some(ARCHIVE_SUFFIXES, suffix => (codeUri || '').endsWith(suffix));
+}
+
+// the crc64 ecma182 checksum, which is the codeChecksum of the function
+function crc64File(filePath) {
+  return new Promise((resolve, reject) => {
+    crc64.crc64File(filePath, (err, ret) => {
+      err ? reject(err) : resolve(ret);
+    });
+  });
+}
+
+function md5File(filePath) {
+  return new Promise((resolve, reject) => {
+    const hash = crypto.createHash('md5');
+    fs.createReadStream(filePath)
+      .on('data', (data) => hash.update(data))
+      .on('error', reject)
+      .on('end', () => resolve(hash.digest('hex')));
+  });
+}
+
+async function digestEntry(hash, codeAbsPath, absPath, ignore) {
+  if (ignore && ignore(absPath)) { return; }
+
+  const stats = await fs.lstat(absPath);
+  const relative = path.relative(codeAbsPath, absPath).split(path.sep).join('/');
+
+  if (stats.isDirectory()) {
+    hash.update(`d ${relative}\n`);
+    for (const name of (await fs.readdir(absPath)).sort()) {
+      await digestEntry(hash, codeAbsPath, path.join(absPath, name), ignore);
+    }
+  } else if (stats.isSymbolicLink()) {
+    hash.update(`l ${relative} ${await fs.readlink(absPath)}\n`);
+  } else if (stats.isFile()) {
+    hash.update(`f ${relative} ${(stats.mode & 0o777).toString(8)} ${await md5File(absPath)}\n`);
+  }
+}
+
+// A digest of the paths, modes and contents of the files to be packed. Unlike the zip package,
+// it doesn't change with mtimes or the order of the entries.
+async function digestCode(codeAbsPath, ignore) {
+  const hash = crypto.createHash('sha256');
+  const stats = await fs.lstat(codeAbsPath);
+
+  if (stats.isDirectory()) {
+    for (const name of (await fs.readdir(codeAbsPath)).sort()) {
+      await digestEntry(hash, codeAbsPath, path.join(codeAbsPath, name), ignore);
+    }
+  } else {
+    await digestEntry(hash, path.dirname(codeAbsPath), codeAbsPath, ignore);
+  }
+  return hash.digest('hex');
+}
+
+// the digests of the code deployed last time, and the codeChecksum fc returned for them
+function checksumsPath(baseDir) {
+  return path.join(baseDir, '.fun', 'tmp', 'deploy', 'code-checksums.json');
+}
+
+const caches = new Map();
+
+async function loadChecksums(baseDir) {
+  const cachePath = checksumsPath(baseDir);
+  if (!caches.has(cachePath)) {
+    caches.set(cachePath, (async () => {
+      try {
+        return { records: await fs.readJson(cachePath), saving: Promise.resolve() };
+      } catch (e) {
+        debug(`ignore code checksums ${cachePath}: ${e}`);
+        return { records: {}, saving: Promise.resolve() };
+      }
+    })());
+  }
+  return await caches.get(cachePath);
+}
+
+// functions are deployed concurrently, writes of the same file are serialized
+async function saveCodeChecksum(baseDir, key, digest, codeChecksum) {
+  const cache = await loadChecksums(baseDir);
+  cache.records[key] = { digest, codeChecksum };
+
+  const content = JSON.stringify(cache.records, null, 2);
+  cache.saving = cache.saving.then(() => fs.outputFile(checksumsPath(baseDir), content));
+  await cache.saving;
+}
+
+// Code archives are compared with the codeChecksum of the function directly, that is the crc64 of the archive
+// uploaded as it is. Directories are compared by the digest recorded when they were deployed, as long as the code
+// of the function hasn't changed since then. The code is read only when it could be unchanged, digest is undefined
+// otherwise and the digest to record is computed right before packaging, after the jvm profile of the bootstrap
+// is applied. A deploy that repacks the spring boot jars of custom runtimes stops before uploading.
+//
+// The crc64 of an archive changes whenever it is rebuilt, the timestamps of its entries are part of it. An archive
+// CodeUri rebuilt by mvn package is uploaded again even if its classes are the same, use a directory to avoid that.
+async function detectCodeChange({ baseDir, key, codeAbsPath, ignore, remoteChecksum }) {
+  if (!remoteChecksum) {
+    return { changed: true };
+  }
+
+  if (isCodeArchive(codeAbsPath)) {
+    const checksum = await crc64File(codeAbsPath);
+    return { changed: checksum !== remoteChecksum, digest: checksum };
+  }
+
+  const record = (await loadChecksums(baseDir)).records[key];
+  if (!record || record.codeChecksum !== remoteChecksum) {
+    debug(`code of ${key} is changed, recorded ${JSON.stringify(record)}, remote checksum ${remoteChecksum}`);
+    return { changed: true };
+  }
+
+  const digest = await digestCode(codeAbsPath, ignore);
+  debug(`code digest of ${key} is ${digest}, recorded ${JSON.stringify(record)}`);
+  return { changed: record.digest !== digest, digest };
+}
+
+module.exports = {
+  isCodeArchive, crc64File, digestCode, detectCodeChange, saveCodeChecksum
+};
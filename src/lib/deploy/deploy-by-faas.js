@@ -1,11 +1,8 @@
 'use strict';
 
 const path = require('path');
-const util = require('util');
 const fs = require('fs-extra');
 
-const writeFile = util.promisify(fs.writeFile);
-
 const { green } = require('colors');
 
 const CloudAPI = require('@alicloud/cloudapi');
@@ -54,13 +51,16 @@ async function makeFunction(fc, serviceName, func) {
   }
 
   debug(`package function ${func.name}.`);
-  const base64 = await zip.compress(func, rootDir);
+  const { zipPath, randomDir } = await zip.compress(func, rootDir);
   if (debug.enabled) {
-    const zipPath = path.join(rootDir, `package_${serviceName}_${functionName}.zip`);
-    await writeFile(zipPath, base64, 'base64');
+    await fs.copy(zipPath, path.join(rootDir, `package_${serviceName}_${functionName}.zip`));
   }
   debug(`package function ${func.name}. done.`);
 
+  // the legacy fc client only accepts json bodies
+  const base64 = await fs.readFile(zipPath, { encoding: 'base64' });
+  await fs.remove(randomDir);
+
   const params = {
     description: functionDescription,
     handler: func.handler,
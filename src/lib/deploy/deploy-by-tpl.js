@@ -26,6 +26,8 @@ const { getTpl, getRootBaseDir, getNasYmlPath } = require('../tpl');
 const { transformFunctionInDefinition, transformFlowDefinition } = require('../fnf');
 const { makeService, makeFunction, deleteFunction, makeFcUtilsFunctionTmpDomainToken } = require('../fc');
 const { FUNCTION_TYPE } = require('../import/constants');
+const { DeployScheduler } = require('./deploy-scheduler');
+const { resolveJvmProfile } = require('../build/jvm-profile');
 
 const _ = require('lodash');
 
@@ -84,7 +86,8 @@ async function deployTrigger(serviceName, functionName, triggerName, triggerDefi
   }
 }
 
-async function deployTriggers(serviceName, functionName, events, tplPath) {
+// the triggers configured in fc console but not in the template are left as they are
+async function warnUnmatchedTriggers(serviceName, functionName, events) {
   if (_.isEmpty(events)) { return; }
 
   let localTriggerNames = Object.keys(events);
@@ -93,23 +96,15 @@ async function deployTriggers(serviceName, functionName, events, tplPath) {
   onLineTriggerNames.filter(x => !_.includes(localTriggerNames, x)).forEach(element => {
     console.warn(red(`\t\tThe trigger ${element} you configured in fc console does not match the local configuration.\n\t\tFun will not modify this trigger. You can remove this trigger manually through fc console if necessary`));
   });
-
-  for (const [triggerName, triggerDefinition] of Object.entries(events)) {
-    console.log(`\t\tWaiting for ${yellow(triggerDefinition.Type)} trigger ${triggerName} to be deployed...`);
-    await deployTrigger(serviceName, functionName, triggerName, triggerDefinition);
-    const tpl = await getTpl(tplPath);
-    await displayTriggerInfo(serviceName, functionName, triggerName, triggerDefinition.Type, triggerDefinition.Properties, '\t\t', tpl);
-    console.log(green(`\t\ttrigger ${triggerName} deploy success`));
-  }
 }
 
-async function deployFunction({ baseDir, nasConfig, vpcConfig, useNas, assumeYes,
+async function deployFunction({ baseDir, nasConfig, vpcConfig, useNas, assumeYes, javaDependencyLayer, jvmProfile,
   serviceName, functionName, functionRes,
-  onlyConfig, tplPath, skipTrigger = false
+  onlyConfig, tplPath, tplUpdateLocked = false
 }) {
   const properties = functionRes.Properties || {};
 
-  const rs = await makeFunction(baseDir, {
+  return await makeFunction(baseDir, {
     serviceName,
     functionName,
     description: properties.Description,
@@ -129,14 +124,9 @@ async function deployFunction({ baseDir, nasConfig, vpcConfig, useNas, assumeYes
     layers: properties.Layers,
     nasConfig,
     vpcConfig,
-    InstanceLifecycleConfig: properties.InstanceLifecycleConfig
-  }, onlyConfig, tplPath, useNas, assumeYes);
-
-  if (!skipTrigger) {
-    await deployTriggers(serviceName, functionName, functionRes.Events, tplPath);
-  }
-
-  return rs;
+    InstanceLifecycleConfig: properties.InstanceLifecycleConfig,
+    tplUpdateLocked
+  }, onlyConfig, tplPath, useNas, assumeYes, javaDependencyLayer, jvmProfile);
 }
 
 async function reloadServiceRes(tplPath, name) {
@@ -151,42 +141,108 @@ async function reloadServiceRes(tplPath, name) {
   return {};
 }
 
-async function deployFunctions({ baseDir, serviceName, serviceRes, onlyConfig, tplPath, skipTrigger, useNas, assumeYes }) {
-  const serviceProps = serviceRes.Properties || {};
+function findFunctionNames(serviceRes) {
+  return Object.keys(serviceRes).filter(k => (serviceRes[k] || {}).Type === FUNCTION_TYPE);
+}
 
-  let deployedFunctions = [];
-  let tplChanged;
+// the latest serviceRes is read when a function node starts, because the template may be changed
+// by the nas auto configuration of another function of the service
+function addFunctionNode(scheduler, service, functionName, deps) {
+  const { serviceName, onlyConfig } = service;
+  const nodeId = service.nodeIds[functionName]
+    ? `function:${serviceName}/${functionName}#${++service.redeployCount}`
+    : `function:${serviceName}/${functionName}`;
+  service.nodeIds[functionName] = nodeId;
+
+  scheduler.add(nodeId, {
+    stage: 'function',
+    deps,
+    run: async () => {
+      const functionRes = service.serviceRes[functionName];
+      if (!functionRes) { return; }
+
+      const serviceProps = service.serviceRes.Properties || {};
+      service.deployed[functionName] = functionRes;
+
+      const beforeDeployLog = onlyConfig ? 'config to be updated' : 'to be deployed';
+      const afterDeployLog = onlyConfig ? 'config update success' : 'deploy success';
+
+      console.log(`\tWaiting for function ${functionName} ${beforeDeployLog}...`);
+
+      const rs = await deployFunction({ functionName, functionRes,
+        baseDir: service.baseDir,
+        serviceName,
+        onlyConfig,
+        tplPath: service.tplPath,
+        useNas: service.useNas,
+        nasConfig: serviceProps.NasConfig,
+        vpcConfig: serviceProps.VpcConfig,
+        assumeYes: service.assumeYes,
+        javaDependencyLayer: service.javaDependencyLayer,
+        jvmProfile: service.jvmProfile,
+        tplUpdateLocked: service.tplUpdateLocked
+      });
+      if (!service.skipTrigger) {
+        await warnUnmatchedTriggers(serviceName, functionName, functionRes.Events);
+      }
+      console.log(green(`\tfunction ${functionName} ${afterDeployLog}`));
 
-  do {
-    tplChanged = false;
+      if (rs.tplChanged) {
+        await redeployChangedFunctions(scheduler, service, functionName);
+      }
+    }
+  });
+}
 
-    for (const [k, v] of Object.entries(serviceRes)) {
-      if ((v || {}).Type === FUNCTION_TYPE) {
-        if (_.includes(deployedFunctions, k)) { continue; }
+// nas auto configuration changes the template, such as the environment variables of the functions sharing
+// the same code. The functions which have been deployed with the former template are deployed again.
+async function redeployChangedFunctions(scheduler, service, changedFunctionName) {
+  service.serviceRes = await reloadServiceRes(service.tplPath, service.serviceName);
+  service.tpl = null;
 
-        const beforeDeployLog = onlyConfig ? 'config to be updated' : 'to be deployed';
-        const afterDeployLog = onlyConfig ? 'config update success' : 'deploy success';
+  // the function changing the template has been redeployed by nas auto configuration
+  service.deployed[changedFunctionName] = service.serviceRes[changedFunctionName];
 
-        console.log(`\tWaiting for function ${k} ${beforeDeployLog}...`);
+  for (const functionName of findFunctionNames(service.serviceRes)) {
+    const deployed = service.deployed[functionName];
+    if (!service.nodeIds[functionName] || !deployed || _.isEqual(deployed, service.serviceRes[functionName])) { continue; }
 
-        const rs = await deployFunction({ baseDir, serviceName, onlyConfig, tplPath, skipTrigger, useNas,
-          functionName: k,
-          functionRes: v,
-          nasConfig: serviceProps.NasConfig,
-          vpcConfig: serviceProps.VpcConfig,
-          assumeYes
-        });
-        deployedFunctions.push(k);
-        console.log(green(`\tfunction ${k} ${afterDeployLog}`));
+    // the pending node reads the latest serviceRes when it starts
+    service.deployed[functionName] = null;
+    addFunctionNode(scheduler, service, functionName, [service.nodeIds[functionName]]);
 
-        if (rs.tplChanged) {
-          serviceRes = await reloadServiceRes(tplPath, serviceName);
-          tplChanged = true;
-          break;
-        }
-      }
+    // the resources invoking the functions are still pending, they wait for the redeployment too
+    for (const dependent of service.dependents) {
+      scheduler.addDeps(dependent, [service.nodeIds[functionName]]);
     }
-  } while (tplChanged);
+  }
+}
+
+function addTriggerNodes(scheduler, service, functionName, events) {
+  const { serviceName, tplPath } = service;
+  const nodeIds = [];
+
+  // displayTriggerInfo needs the template, which is read only once unless it changes
+  const loadTpl = () => {
+    if (!service.tpl) { service.tpl = getTpl(tplPath); }
+    return service.tpl;
+  };
+
+  for (const [triggerName, triggerDefinition] of Object.entries(events || {})) {
+    const nodeId = `trigger:${serviceName}/${functionName}/${triggerName}`;
+    nodeIds.push(nodeId);
+    scheduler.add(nodeId, {
+      stage: 'trigger',
+      deps: [service.nodeIds[functionName]],
+      run: async () => {
+        console.log(`\t\tWaiting for ${yellow(triggerDefinition.Type)} trigger ${triggerName} to be deployed...`);
+        await deployTrigger(serviceName, functionName, triggerName, triggerDefinition);
+        await displayTriggerInfo(serviceName, functionName, triggerName, triggerDefinition.Type, triggerDefinition.Properties, '\t\t', await loadTpl());
+        console.log(green(`\t\ttrigger ${triggerName} deploy success`));
+      }
+    });
+  }
+  return nodeIds;
 }
 
 async function deployPolicy(resourceName, roleName, policy, curCount, product = 'Fc') {
@@ -334,7 +390,15 @@ function hasConfiguration(tpl, configKey) {
   });
 }
 
-async function deployService({ baseDir, serviceName, serviceRes, onlyConfig, tplPath, skipTrigger = false, useNas, assumeYes }) {
+// role -> service -> functions -> triggers, returns the ids of all the nodes added.
+// dependents are the nodes waiting for the whole service, function nodes added later by redeployChangedFunctions are added to their dependencies
+function addServiceNodes(scheduler, { baseDir, serviceName, serviceRes, onlyConfig, tplPath, skipTrigger = false, useNas, assumeYes, javaDependencyLayer,
+  jvmProfile,
+  tplUpdateLocked = false,
+  displayLog = false,
+  deps = [],
+  dependents = []
+}) {
   const properties = (serviceRes.Properties || {});
 
   const internetAccess = 'InternetAccess' in properties ? properties.InternetAccess : null;
@@ -347,26 +411,70 @@ async function deployService({ baseDir, serviceName, serviceRes, onlyConfig, tpl
   const hasFunctionAsyncConfig = !!hasConfiguration(serviceRes, 'AsyncConfiguration');
   const hasCustomContainerConfig = !!hasConfiguration(serviceRes, 'CustomContainerConfig');
 
-  const role = await generateServiceRole({
-    serviceName, vpcConfig, nasConfig, logConfig,
-    roleArn: properties.Role,
-    policies: properties.Policies,
-    hasFunctionAsyncConfig,
-    hasCustomContainerConfig
+  const roleNodeId = `role:${serviceName}`;
+  const serviceNodeId = `service:${serviceName}`;
+
+  scheduler.add(roleNodeId, {
+    stage: 'role',
+    deps,
+    run: async () => {
+      if (displayLog) {
+        console.log(`Waiting for service ${serviceName} ${onlyConfig ? 'config to be updated' : 'to be deployed'}...`);
+      }
+      return await generateServiceRole({
+        serviceName, vpcConfig, nasConfig, logConfig,
+        roleArn: properties.Role,
+        policies: properties.Policies,
+        hasFunctionAsyncConfig,
+        hasCustomContainerConfig
+      });
+    }
   });
 
-  await makeService({
-    serviceName,
-    role,
-    internetAccess,
-    description,
-    logConfig,
-    vpcConfig,
-    nasConfig,
-    tracingConfig
+  scheduler.add(serviceNodeId, {
+    stage: 'service',
+    deps: [roleNodeId],
+    run: async () => {
+      await makeService({
+        serviceName,
+        role: scheduler.result(roleNodeId),
+        internetAccess,
+        description,
+        logConfig,
+        vpcConfig,
+        nasConfig,
+        tracingConfig
+      });
+      if (displayLog) {
+        console.log(green(`service ${serviceName} ${onlyConfig ? 'config update success' : 'deploy success'}\n`));
+      }
+    }
   });
 
-  await deployFunctions({ baseDir, serviceName, serviceRes, onlyConfig, tplPath, skipTrigger, useNas, assumeYes });
+  const service = { baseDir, serviceName, serviceRes, onlyConfig, tplPath, skipTrigger, useNas, assumeYes, javaDependencyLayer, jvmProfile, tplUpdateLocked,
+    nodeIds: {},
+    dependents,
+    deployed: {},
+    redeployCount: 0,
+    tpl: null
+  };
+
+  const triggerNodeIds = [];
+  for (const functionName of findFunctionNames(serviceRes)) {
+    addFunctionNode(scheduler, service, functionName, [serviceNodeId]);
+
+    if (!skipTrigger) {
+      triggerNodeIds.push(...addTriggerNodes(scheduler, service, functionName, serviceRes[functionName].Events));
+    }
+  }
+
+  return [roleNodeId, serviceNodeId, ..._.values(service.nodeIds), ...triggerNodeIds];
+}
+
+async function deployService(options) {
+  const scheduler = new DeployScheduler(options.concurrency);
+  addServiceNodes(scheduler, options);
+  await scheduler.run();
 }
 
 async function deployLogstoreDefaultIndex(projectName, logstoreName) {
@@ -559,19 +667,15 @@ async function deployCustomDomain(domainName, domainDefinition, routes) {
   await makeCustomDomain({ domainName, certConfig, protocol, routeConfig: { routes } });
 }
 
-async function deployLogs(resourcesDefinition) {
-  for (const [projectName, v] of Object.entries(resourcesDefinition)) {
-    if ((v || {}).Type === 'Aliyun::Serverless::Log') {
-      console.log(`Waiting for log service project ${projectName} to be deployed...`);
-      const properties = (v || {}).Properties;
+async function deployLog(projectName, logDefinition) {
+  console.log(`Waiting for log service project ${projectName} to be deployed...`);
+  const properties = (logDefinition || {}).Properties;
 
-      const description = properties.Description || '';
-      await makeSlsProject(projectName, description);
+  const description = properties.Description || '';
+  await makeSlsProject(projectName, description);
 
-      await deployLogstore(projectName, v);
-      console.log(green(`log serivce project ${projectName} deploy success\n`));
-    }
-  }
+  await deployLogstore(projectName, logDefinition);
+  console.log(green(`log serivce project ${projectName} deploy success\n`));
 }
 
 async function deployTablestore(instanceName, resourceDefinition) {
@@ -779,14 +883,15 @@ async function partialDeployment(sourceName, tpl) {
   return {};
 }
 
-async function deployTplService({ baseDir, serviceName, serviceRes, onlyConfig, tplPath, useNas, assumeYes }) {
+async function deployTplService({ baseDir, serviceName, serviceRes, onlyConfig, tplPath, useNas, assumeYes, javaDependencyLayer, jvmProfile, concurrency }) {
+  const scheduler = new DeployScheduler(concurrency);
 
-  const beforeDeployLog = onlyConfig ? 'config to be updated' : 'to be deployed';
-  const afterDeployLog = onlyConfig ? 'config update success' : 'deploy success';
+  addServiceNodes(scheduler, { baseDir, serviceName, serviceRes, onlyConfig, tplPath, useNas, assumeYes, javaDependencyLayer, jvmProfile,
+    displayLog: true
+  });
+  await scheduler.run();
 
-  console.log(`Waiting for service ${serviceName} ${beforeDeployLog}...`);
-  await deployService({ baseDir, serviceName, serviceRes, onlyConfig, tplPath, useNas, assumeYes });
-  console.log(green(`service ${serviceName} ${afterDeployLog}\n`));
+  scheduler.printSummary();
 }
 
 async function deployFlow(name, resource, tpl, parameterOverride = {}, baseDir) {
@@ -883,7 +988,10 @@ async function deployByApi(baseDir, tpl, tplPath, context) {
         serviceName: resourceName,
         serviceRes: resourceRes,
         useNas: context.useNas,
-        onlyConfig: context.onlyConfig
+        onlyConfig: context.onlyConfig,
+        javaDependencyLayer: context.javaDependencyLayer,
+        jvmProfile: context.jvmProfile,
+        concurrency: context.concurrency
       });
     } else if (resourceType === definition.FLOW_RESOURCE) {
       await deployFlow(resourceName, resourceRes, tpl, context.parameterOverride, baseDir);
@@ -897,52 +1005,109 @@ async function deployByApi(baseDir, tpl, tplPath, context) {
 
   if (!context.assumeYes && !await promptForConfirmContinue('Please confirm to continue.')) { return; }
 
-  await deployLogs(tpl.Resources);
+  const scheduler = new DeployScheduler(context.concurrency);
 
+  // services may write their logs to the log projects of the template
+  const logNodeIds = [];
   for (const [name, resource] of Object.entries(tpl.Resources)) {
-    if (resource.Type === 'Aliyun::Serverless::Service') {
+    if (resource.Type === 'Aliyun::Serverless::Log') {
+      scheduler.add(`log:${name}`, {
+        stage: 'log',
+        run: () => deployLog(name, resource)
+      });
+      logNodeIds.push(`log:${name}`);
+    }
+  }
 
-      await deployTplService({ baseDir, tplPath,
+  // filled with the api, domain and flow nodes below, before the scheduler runs
+  const fcDependents = [];
+  const fcNodeIds = [];
+  for (const [name, resource] of Object.entries(tpl.Resources)) {
+    if (resource.Type === 'Aliyun::Serverless::Service') {
+      fcNodeIds.push(...addServiceNodes(scheduler, { baseDir, tplPath,
         serviceName: name,
         serviceRes: resource,
         useNas: context.useNas,
         onlyConfig: context.onlyConfig,
-        assumeYes: context.assumeYes
+        assumeYes: context.assumeYes,
+        javaDependencyLayer: context.javaDependencyLayer,
+        jvmProfile: context.jvmProfile,
+        displayLog: true,
+        deps: logNodeIds,
+        dependents: fcDependents
+      }));
+    } else if (resource.Type === 'Aliyun::Serverless::TableStore') {
+      scheduler.add(`tablestore:${name}`, {
+        stage: 'table store',
+        run: async () => {
+          console.log(`Waiting for table store ${name} to be deployed...`);
+          await deployTablestore(name, resource);
+          console.log(green(`table store ${name} deploy success\n`));
+        }
+      });
+    } else if (resource.Type === 'Aliyun::Serverless::MNSTopic') {
+      scheduler.add(`mns:${name}`, {
+        stage: 'mns topic',
+        run: async () => {
+          console.log(`Waiting for Mns topic ${name} to be deployed...`);
+          await deployMNSTopic(name, resource);
+          console.log(green(`table store ${name} deploy success\n`));
+        }
       });
-    } else if (resource.Type === 'Aliyun::Serverless::Api') {
-      console.log(`Waiting for api gateway ${name} to be deployed...`);
-      await deployApigateway(name, {
-        apiDefinition: resource,
-        template: tpl,
-        tplPath
+    }
+  }
+
+  // api gateways, custom domains and flows invoke the functions, they are deployed after all functions and triggers,
+  // the redeployed functions included
+  for (const [name, resource] of Object.entries(tpl.Resources)) {
+    if (resource.Type === 'Aliyun::Serverless::Api') {
+      fcDependents.push(`api:${name}`);
+      scheduler.add(`api:${name}`, {
+        stage: 'api gateway',
+        deps: fcNodeIds,
+        run: async () => {
+          console.log(`Waiting for api gateway ${name} to be deployed...`);
+          await deployApigateway(name, {
+            apiDefinition: resource,
+            template: tpl,
+            tplPath
+          });
+          console.log(green(`api gateway ${name} deploy success\n`));
+        }
       });
-      console.log(green(`api gateway ${name} deploy success\n`));
-    } else if (resource.Type === 'Aliyun::Serverless::TableStore') {
-      console.log(`Waiting for table store ${name} to be deployed...`);
-      await deployTablestore(name, resource);
-      console.log(green(`table store ${name} deploy success\n`));
-    } else if (resource.Type === 'Aliyun::Serverless::Log') {
-      // ignore, done by deployLogs
     } else if (resource.Type === 'Aliyun::Serverless::CustomDomain') {
-      const { domainName, routes } = await processTemporaryDomainIfNecessary(name, resource, tpl.Resources);
-
-      console.log(`Waiting for custom domain ${name} to be deployed...`);
-      await deployCustomDomain(domainName, resource, routes);
-      console.log(green(`custom domain ${name} deploy success\n`));
-    } else if (resource.Type === 'Aliyun::Serverless::MNSTopic') {
-      console.log(`Waiting for Mns topic ${name} to be deployed...`);
-      await deployMNSTopic(name, resource);
-      console.log(green(`table store ${name} deploy success\n`));
+      fcDependents.push(`domain:${name}`);
+      scheduler.add(`domain:${name}`, {
+        stage: 'custom domain',
+        deps: fcNodeIds,
+        run: async () => {
+          const { domainName, routes } = await processTemporaryDomainIfNecessary(name, resource, tpl.Resources);
+
+          console.log(`Waiting for custom domain ${name} to be deployed...`);
+          await deployCustomDomain(domainName, resource, routes);
+          console.log(green(`custom domain ${name} deploy success\n`));
+        }
+      });
     } else if (resource.Type === 'Aliyun::Serverless::Flow') {
-      console.log(`Waiting for flow ${name} to be deployed...`);
-      await deployFlow(name, resource, tpl, context.parameterOverride, baseDir);
-      console.log(green(`flow ${name} deploy success\n`));
-    } else {
+      fcDependents.push(`flow:${name}`);
+      scheduler.add(`flow:${name}`, {
+        stage: 'flow',
+        deps: fcNodeIds,
+        run: async () => {
+          console.log(`Waiting for flow ${name} to be deployed...`);
+          await deployFlow(name, resource, tpl, context.parameterOverride, baseDir);
+          console.log(green(`flow ${name} deploy success\n`));
+        }
+      });
+    } else if (!_.includes(['Aliyun::Serverless::Service', 'Aliyun::Serverless::TableStore', 'Aliyun::Serverless::MNSTopic', 'Aliyun::Serverless::Log'], resource.Type)) {
       console.log('unknown resource %s', name);
     }
   }
-}
 
+  await scheduler.run();
+
+  scheduler.printSummary();
+}
 
 async function deploy(tplPath, context) {
   if (!context.useRos) {
@@ -952,6 +1117,9 @@ async function deploy(tplPath, context) {
     // https://api.aliyun.com/#/?product=ROS&api=ValidateTemplate&tab=DEMO&lang=NODEJS
   }
 
+  // fails before anything is deployed if the profile is invalid
+  context.jvmProfile = resolveJvmProfile(context.jvmProfile);
+
   const tpl = await getTpl(tplPath);
   const profile = await getProfile();
 
@@ -0,0 +1,150 @@
+'use strict';
+
+const debug = require('debug')('fun:deploy:scheduler');
+
+const { green } = require('colors');
+
+const _ = require('lodash');
+
+const DEFAULT_DEPLOY_CONCURRENCY = 5;
+
+function resolveConcurrency(concurrency) {
+  const count = parseInt(concurrency || process.env.FUN_DEPLOY_CONCURRENCY || DEFAULT_DEPLOY_CONCURRENCY, 10);
+  if (!(count > 0)) {
+    throw new Error(`invalid deploy concurrency ${concurrency}, it should be a positive integer`);
+  }
+  return count;
+}
+
+// Runs the deployment of resources as a dependency graph, nodes whose dependencies are all done run
+// concurrently up to the limit. Dependencies must be added before the nodes depending on them,
+// so that the graph never has cycles. Nodes could also be added while the graph is running.
+class DeployScheduler {
+  constructor(concurrency) {
+    this.concurrency = resolveConcurrency(concurrency);
+    this.nodes = new Map();
+    this.stages = new Map();
+  }
+
+  has(id) {
+    return this.nodes.has(id);
+  }
+
+  result(id) {
+    return this.nodes.get(id).result;
+  }
+
+  add(id, { stage, deps = [], run }) {
+    if (this.nodes.has(id)) {
+      throw new Error(`deploy node ${id} already exists`);
+    }
+    for (const dep of deps) {
+      if (!this.nodes.has(dep)) {
+        throw new Error(`deploy node ${id} depends on ${dep}, which must be added first`);
+      }
+    }
+
+    this.nodes.set(id, { id, stage, deps, run, state: 'pending' });
+    if (this.wakeUp) { this.wakeUp(); }
+  }
+
+  // a node waiting for nodes added while the graph is running gets them as dependencies before it starts
+  addDeps(id, deps) {
+    const node = this.nodes.get(id);
+    if (!node || node.state !== 'pending') {
+      throw new Error(`deploy node ${id} is not pending, dependencies could not be added`);
+    }
+    for (const dep of deps) {
+      if (!this.nodes.has(dep)) {
+        throw new Error(`deploy node ${id} depends on ${dep}, which must be added first`);
+      }
+    }
+
+    node.deps = node.deps.concat(deps);
+  }
+
+  isReady(node) {
+    return node.state === 'pending' && _.every(node.deps, dep => this.nodes.get(dep).state === 'done');
+  }
+
+  recordStage(stage, start, end) {
+    const timing = this.stages.get(stage) || { count: 0, busy: 0, start, end };
+    timing.count++;
+    timing.busy += end - start;
+    timing.start = Math.min(timing.start, start);
+    timing.end = Math.max(timing.end, end);
+    this.stages.set(stage, timing);
+  }
+
+  start(node) {
+    node.state = 'running';
+    const start = Date.now();
+    debug(`start ${node.id}`);
+
+    const finish = (state) => {
+      node.state = state;
+      this.recordStage(node.stage, start, Date.now());
+      debug(`${state} ${node.id}`);
+    };
+
+    return Promise.resolve()
+      .then(() => node.run(this))
+      .then((result) => {
+        node.result = result;
+        finish('done');
+      }, (error) => {
+        finish('failed');
+        throw error;
+      });
+  }
+
+  // on failure, no more nodes are started and the first error is thrown after the running ones finish
+  async run() {
+    const running = new Set();
+    let failure;
+
+    for (;;) {
+      if (!failure) {
+        for (const node of this.nodes.values()) {
+          if (running.size >= this.concurrency) { break; }
+          if (!this.isReady(node)) { continue; }
+
+          const task = this.start(node)
+            .catch((error) => { failure = failure || error; })
+            .then(() => running.delete(task));
+          running.add(task);
+        }
+      }
+
+      if (!running.size) { break; }
+
+      // nodes added by the running ones also wake up the loop
+      await new Promise(resolve => {
+        this.wakeUp = resolve;
+        Promise.race(running).then(resolve);
+      });
+      this.wakeUp = null;
+    }
+
+    if (failure) { throw failure; }
+  }
+
+  // the wall time of a stage overlaps with the others, busy time is the sum of all its nodes
+  printSummary() {
+    if (!this.stages.size) { return; }
+
+    console.log(green('\nDeployment time of stages:'));
+    for (const [stage, { count, busy, start, end }] of this.stages) {
+      console.log(`\t${_.padEnd(stage, 16)}${_.padStart(String(count), 4)} ${count === 1 ? 'resource ' : 'resources'}` +
+        `  wall ${formatSeconds(end - start)}  busy ${formatSeconds(busy)}`);
+    }
+  }
+}
+
+function formatSeconds(ms) {
+  return `${(ms / 1000).toFixed(1)}s`;
+}
+
+module.exports = {
+  DeployScheduler, resolveConcurrency, DEFAULT_DEPLOY_CONCURRENCY
+};
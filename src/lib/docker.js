@@ -29,6 +29,9 @@ require('draftlog').into(console);
 
 var containers = new Set();
 
+// containers whose processes need to exit normally, they are stopped instead of killed when use ctrl + c
+var gracefulContainers = new Set();
+
 const devnull = require('dev-null');
 
 // exit container, when use ctrl + c
@@ -80,7 +83,8 @@ function waitingForContainerStopped() {
           const c = docker.getContainer(container);
           console.log(`stopping container ${container}`);
 
-          jobs.push(c.kill().catch(ex => debug('kill container instance error, error is', ex)));
+          const job = gracefulContainers.has(container) ? c.stop() : c.kill();
+          jobs.push(job.catch(ex => debug('kill container instance error, error is', ex)));
         }
       } catch (error) {
         debug('get container instance error, ignore container to stop, error is', error);
@@ -733,6 +737,53 @@ async function waitForExec(exec) {
   });
 }
 
+// like modem.demuxStream, but stops reading the stream while outputStream or errorStream is full,
+// so that the process in the container waits for a slow consumer instead of its output piling up in memory.
+// returns a promise resolved when the stream ended and all of its output has been written.
+function demuxStreamWithBackpressure(stream, outputStream, errorStream) {
+  return new Promise((resolve) => {
+    let header = null;
+    let waiting = false;
+    let ended = false;
+
+    function flush() {
+      waiting = false;
+
+      while (!waiting) {
+        header = header || stream.read(8);
+        if (header === null) { break; }
+
+        const size = header.readUInt32BE(4);
+        const payload = size > 0 ? stream.read(size) : Buffer.alloc(0);
+        if (payload === null) { break; }
+
+        const target = header.readUInt8(0) === 2 ? errorStream : outputStream;
+        header = null;
+
+        if (payload.length && !target.write(payload)) {
+          waiting = true;
+          target.once('drain', flush);
+        }
+      }
+
+      if (ended && !waiting) {
+        resolve();
+      }
+    }
+
+    stream.on('readable', () => {
+      if (!waiting) { flush(); }
+    });
+
+    const onEnd = () => {
+      ended = true;
+      if (!waiting) { flush(); }
+    };
+    stream.once('end', onEnd);
+    stream.once('close', onEnd);
+  });
+}
+
 // outputStream, errorStream used for http invoke
 // because agent is started when container running and exec could not receive related logs
 async function startContainer(opts, outputStream, errorStream, context = {}) {
@@ -740,6 +791,9 @@ async function startContainer(opts, outputStream, errorStream, context = {}) {
   const container = await createContainer(opts);
 
   containers.add(container.id);
+  if (context.stopGracefully) {
+    gracefulContainers.add(container.id);
+  }
 
   try {
     await container.start({});
@@ -776,9 +830,20 @@ async function startContainer(opts, outputStream, errorStream, context = {}) {
     stop: async () => {
       await container.stop();
       containers.delete(container.id);
+      gracefulContainers.delete(container.id);
     },
 
-    exec: async (cmd, { cwd = '', env = {}, outputStream, errorStream, verbose = false, context = {}, event = null } = {}) => {
+    // resolves when the container exits
+    wait: async () => {
+      return await container.wait();
+    },
+
+    // a single sample of the docker stats api
+    stats: async () => {
+      return await container.stats({ stream: false });
+    },
+
+    exec: async (cmd, { cwd = '', env = {}, outputStream, errorStream, verbose = false, context = {}, event = null, waitForOutput = false } = {}) => {
       const stdin = event ? true : false;
 
       const options = {
@@ -815,13 +880,15 @@ async function startContainer(opts, outputStream, errorStream, context = {}) {
         errorStream = process.stderr;
       }
 
-      if (verbose) {
-        container.modem.demuxStream(stream, outputStream, errorStream);
-      } else {
-        container.modem.demuxStream(stream, devnull(), errorStream);
-      }
+      const output = demuxStreamWithBackpressure(stream, verbose ? outputStream : devnull(), errorStream);
+
+      const exitCode = await waitForExec(exec);
 
-      return await waitForExec(exec);
+      // stream.on('end') could not be received on windows, see waitForExec
+      if (waitForOutput && !isWin) {
+        await output;
+      }
+      return exitCode;
     }
   };
 }
@@ -1091,7 +1158,7 @@ module.exports = {
   resolveCodeUriToMount, generateFunctionEnvs, run, generateRamdomContainerName,
   generateDockerEnvs, pullImageIfNeed, generateDockerfileEnvs,
   showDebugIdeTipsForVscode, resolveNasConfigToMounts,
-  startInstallationContainer, startContainer, isDockerToolBoxAndEnsureDockerVersion,
+  startInstallationContainer, demuxStreamWithBackpressure, startContainer, isDockerToolBoxAndEnsureDockerVersion,
   conventInstallTargetsToMounts, startSboxContainer, buildImage, copyFromImage,
   resolveTmpDirToMount, showDebugIdeTipsForPycharm, resolveDebuggerPathToMount,
   listContainers, getContainer, createAndRunContainer, execContainer,
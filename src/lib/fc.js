@@ -35,6 +35,10 @@ const { addEnv, mergeEnvs, resolveLibPathsFromLdConf, generateDefaultLibPath } =
 const { readFileFromNasYml, mergeNasMappingsInNasYml, getNasMappingsFromNasYml, extractNasMappingsFromNasYml } = require('./nas/support');
 const { isBinary } = require('istextorbinary');
 const { isCustomContainerRuntime } = require('./common/model/runtime');
+const { JAVA_LAYER_LIB_DIR, publishDependencyLayer } = require('./package/java-layer');
+const { repackJar, UnsupportedJarError } = require('./package/jar-repack');
+const { isCodeArchive, digestCode, detectCodeChange, saveCodeChecksum } = require('./deploy/code-checksum');
+const { carryJvmOptions, updateBootstrapJvmProfile } = require('./build/jvm-profile');
 const _ = require('lodash');
 
 const {
@@ -128,7 +132,20 @@ function extractOssCodeUri(ossUri) {
   };
 }
 
-async function zipCode(baseDir, codeUri, runtime, functionName) {
+function ignoreDirs(ignore, absDirs) {
+  if (_.isEmpty(absDirs)) { return ignore; }
+
+  return (f) => {
+    const absPath = path.resolve(f);
+    if (_.some(absDirs, dir => absPath === dir || absPath.startsWith(dir + path.sep))) {
+      return true;
+    }
+    return ignore ? ignore(f) : false;
+  };
+}
+
+// returns the zip file to upload, randomDir is the temporary directory of the zip to be removed after uploading
+async function zipCode(baseDir, codeUri, runtime, functionName, excludeDirs = []) {
   let codeAbsPath;
 
   if (codeUri) {
@@ -138,7 +155,7 @@ async function zipCode(baseDir, codeUri, runtime, functionName) {
 
       const lstat = await fs.stat(codeAbsPath);
       return {
-        base64: Buffer.from(await fs.readFile(codeAbsPath)).toString('base64'),
+        zipPath: codeAbsPath,
         compressedSize: lstat.size
       };
     }
@@ -146,13 +163,49 @@ async function zipCode(baseDir, codeUri, runtime, functionName) {
     codeAbsPath = path.resolve(baseDir, './');
   }
 
-  const ignore = await generateFunIngore(baseDir, codeAbsPath, runtime);
+  const ignore = ignoreDirs(await generateFunIngore(baseDir, codeAbsPath, runtime), excludeDirs);
 
   await detectLibrary(codeAbsPath, runtime, baseDir, functionName, '\t\t');
 
   return await zip.pack(codeAbsPath, ignore);
 }
 
+async function removeCodeTmpDir(codeTmpDir) {
+  if (codeTmpDir) {
+    await fs.remove(codeTmpDir);
+  }
+}
+
+// compares the code to be packaged with the code of the deployed function, see digestCodeToPack for the digest recorded after uploading
+async function detectFunctionCodeChange(baseDir, codeUri, runtime, excludeDirs, serviceName, functionName, fn) {
+  const codeAbsPath = path.resolve(baseDir, codeUri || './');
+  const ignore = isCodeArchive(codeUri) ? null : ignoreDirs(await generateFunIngore(baseDir, codeAbsPath, runtime), excludeDirs);
+
+  const profile = await getProfile();
+  const key = `${profile.accountId}/${profile.defaultRegion}/${serviceName}/${functionName}`;
+
+  const codeChange = await detectCodeChange({
+    baseDir, key, codeAbsPath, ignore,
+    remoteChecksum: _.get(fn, 'data.codeChecksum')
+  });
+  return Object.assign(codeChange, { key, codeAbsPath, ignore, isArchive: isCodeArchive(codeUri) });
+}
+
+// the digest of a directory is computed before packing it unless it has been computed by detectCodeChange,
+// so a file changed while packing makes the next deploy upload again instead of being recorded as uploaded.
+// it is not recorded if that fails
+async function digestCodeToPack(codeChange) {
+  if (codeChange.isArchive) { return null; }
+  if (codeChange.digest) { return codeChange.digest; }
+
+  try {
+    return await digestCode(codeChange.codeAbsPath, codeChange.ignore);
+  } catch (e) {
+    debug(`digest code of ${codeChange.key} error: ${e}`);
+    return null;
+  }
+}
+
 const NODE_RUNTIME_MAPPING = {
   'localDir': 'node_modules',
   'remoteDir': 'node_modules',
@@ -517,24 +570,39 @@ async function processNasMappingsAndEnvs({ tpl, tplPath, runtime, codeUri, baseD
   };
 }
 
-// 1. unzip spring boot jar to a tmp dir
-// 2. copy BOOT-INF/lib from tmp dir to nas folder
-// 3. zip tmp dir again and replace origin spring boot jar
-async function repackPackage(unzippedPath, libRelativePath, absJarfilePath, targetAbsPath) {
-  const libTmpAbsPath = path.join(unzippedPath, libRelativePath);
+// 1. move BOOT-INF/lib or WEB-INF/lib of the jar to the lib folder of nas
+// 2. copy the other entries of the jar as they are, without extracting and compressing them again
+async function repackPackage(absJarfilePath, libRelativePath, targetAbsPath) {
   const targetLibAbsPath = path.join(targetAbsPath, 'lib');
 
   await fs.ensureDir(targetLibAbsPath);
-  debug('copy lib from ', libTmpAbsPath, 'to', targetLibAbsPath);
+  debug('move lib from ', libRelativePath, 'to', targetLibAbsPath);
 
-  await fs.copy(libTmpAbsPath, targetLibAbsPath, {
-    overwrite: true,
-    recursive: false
-  });
-  await fs.remove(libTmpAbsPath);
-  await fs.ensureDir(libTmpAbsPath);
-  await zip.packTo(unzippedPath, null, absJarfilePath);
-  await fs.remove(libTmpAbsPath);
+  try {
+    await repackJar(absJarfilePath, libRelativePath, targetLibAbsPath);
+    return;
+  } catch (e) {
+    if (!(e instanceof UnsupportedJarError)) { throw e; }
+    debug(`${e.message}, fallback to extract and zip ${absJarfilePath} again`);
+  }
+
+  const unzippedPath = path.join(tmpDir, uuid.v4());
+  const libTmpAbsPath = path.join(unzippedPath, libRelativePath);
+
+  try {
+    await fs.ensureDir(unzippedPath);
+    await zip.extractZipTo(absJarfilePath, unzippedPath);
+
+    await fs.copy(libTmpAbsPath, targetLibAbsPath, {
+      overwrite: true,
+      recursive: false
+    });
+    await fs.remove(libTmpAbsPath);
+    await fs.ensureDir(libTmpAbsPath);
+    await zip.packTo(unzippedPath, null, absJarfilePath);
+  } finally {
+    await fs.remove(unzippedPath);
+  }
 }
 
 async function detectJarfilePathFromBootstrap(bootstrapContent) {
@@ -627,11 +695,11 @@ ${p1}${p2} org.springframework.boot.loader.PropertiesLauncher`;
 
     if (bootstrapContent.indexOf('/mnt/auto/') === -1) {
       const ctxDescriptorPath = await generateJettyContextDescriptor(warfilePath);
-      const newBootstrapContent = `#!/usr/bin/env bash
+      const newBootstrapContent = carryJvmOptions(bootstrapContent, `#!/usr/bin/env bash
 export JETTY_RUNNER=/mnt/auto/root/usr/local/java/jetty-runner.jar
 export PORT=9000
 java -jar $JETTY_RUNNER --port $PORT ${ctxDescriptorPath}
-`;
+`);
       await generateRepackagedBootstrap(bootstrapPath, newBootstrapContent);
     }
   }
@@ -664,10 +732,6 @@ async function processSpringBootJar(absCodeUri, jarfilePath) {
     throw new Error('jarfile ' + absJarfilePath + 'is not a spring boot jar');
   }
 
-  const tmpCodeDir = path.join(tmpDir, uuid.v4());
-  await fs.ensureDir(tmpCodeDir);
-  await zip.extractZipTo(absJarfilePath, tmpCodeDir);
-
   // todo: 先支持 fun deploy 自动生成的场景，也就是 jar 在 target 下面
   // codeUri 可能是一个 target/xxx.jar，也可能是 ./
   // 在这个场景，codeUri 不能是 target/xxx.jar，因为还要有 bootstrap
@@ -682,9 +746,7 @@ async function processSpringBootJar(absCodeUri, jarfilePath) {
 
   if (await fs.pathExists(targetAbsPath)) {
     console.log('repackage spring boot jar file ', absJarfilePath);
-    await repackPackage(tmpCodeDir,
-      path.join('BOOT-INF', 'lib'),
-      absJarfilePath, targetAbsPath);
+    await repackPackage(absJarfilePath, path.join('BOOT-INF', 'lib'), targetAbsPath);
   } else {
     throw new Error('target path not exist ' + targetAbsPath);
   }
@@ -698,10 +760,6 @@ async function processWar(absCodeUri, warfilePath) {
     throw new Error('jarfile not exist ' + absWarfilePath);
   }
 
-  const tmpCodeDir = path.join(tmpDir, uuid.v4());
-  await fs.ensureDir(tmpCodeDir);
-  await zip.extractZipTo(absWarfilePath, tmpCodeDir);
-
   // must have target path in codeUri
   const idx = absWarfilePath.indexOf('target/');
 
@@ -713,14 +771,44 @@ async function processWar(absCodeUri, warfilePath) {
 
   if (await fs.pathExists(targetAbsPath)) {
     console.log('repackage war file ', absWarfilePath);
-    await repackPackage(tmpCodeDir,
-      path.join('WEB-INF', 'lib'),
-      absWarfilePath, targetAbsPath);
+    await repackPackage(absWarfilePath, path.join('WEB-INF', 'lib'), targetAbsPath);
   } else {
     throw new Error('target path not exist ' + targetAbsPath);
   }
 }
 
+// the jars that are moved into the dependency layer, relative to CodeUri
+const JAVA_DEPENDENCY_DIRS = {
+  'java8': 'lib',
+  'java11': 'lib',
+  'custom': CUSTOM_RUNTIME_JAVA_MAPPING.localDir
+};
+
+async function processJavaDependencyLayer(baseDir, codeUri, runtime) {
+  const dependencyDir = JAVA_DEPENDENCY_DIRS[runtime];
+  if (!dependencyDir || !codeUri) { return null; }
+
+  if (codeUri.endsWith('.zip') || codeUri.endsWith('.jar') || codeUri.endsWith('.war')) {
+    console.warn(yellow(`\t\tskip splitting the dependencies of ${codeUri}, the CodeUri must be a directory.`));
+    return null;
+  }
+
+  const absCodeUri = path.resolve(baseDir, codeUri);
+  const absDependencyDir = path.join(absCodeUri, dependencyDir);
+
+  // split the spring boot jar or war into the application and target/lib first
+  if (runtime === 'custom' && !await fs.pathExists(absDependencyDir)
+    && await fs.pathExists(path.join(absCodeUri, 'bootstrap'))) {
+    await processCustomRuntimeIfNecessary(runtime, codeUri, baseDir);
+  }
+
+  const fc = await getFcClient();
+  const layer = await publishDependencyLayer(fc, absDependencyDir);
+  if (!layer) { return null; }
+
+  return Object.assign({ dependencyDir: absDependencyDir }, layer);
+}
+
 async function processNasAutoConfiguration({ tpl, tplPath, runtime, codeUri, convertedNasConfig, stage,
   serviceName,
   functionName
@@ -762,7 +850,8 @@ async function processNasAutoConfiguration({ tpl, tplPath, runtime, codeUri, con
       baseDir: path.dirname(tplPath),
       serviceName: partialDeploy.resourceName,
       serviceRes: partialDeploy.resourceRes,
-      onlyConfig: false, tplPath, skipTrigger: true, useNas: false
+      onlyConfig: false, tplPath, skipTrigger: true, useNas: false,
+      tplUpdateLocked: true
     });
   }
 
@@ -1163,6 +1252,15 @@ function transformInstanceLifecycleConfig(InstanceLifecycleConfig) {
   };
 }
 
+// functions are deployed concurrently, but only one of them could prompt or rewrite the template at a time
+let tplUpdating = Promise.resolve();
+
+function serializeTplUpdate(update) {
+  const result = tplUpdating.then(update);
+  tplUpdating = result.catch(() => {});
+  return result;
+}
+
 async function makeFunction(baseDir, {
   serviceName,
   functionName,
@@ -1183,8 +1281,12 @@ async function makeFunction(baseDir, {
   nasConfig,
   vpcConfig,
   layers = [],
-  InstanceLifecycleConfig
-}, onlyConfig, tplPath, useNas = false, assumeYes) {
+  InstanceLifecycleConfig,
+  tplUpdateLocked = false
+}, onlyConfig, tplPath, useNas = false, assumeYes, javaDependencyLayer = false, jvmProfile) {
+  // the redeployment of nas auto configuration already holds the lock
+  const updateTpl = (update) => tplUpdateLocked ? update() : serializeTplUpdate(update);
+
   const fc = await getFcClient();
   
   const isNotCustomContainer = !isCustomContainerRuntime(runtime);
@@ -1202,6 +1304,10 @@ async function makeFunction(baseDir, {
   }
 
   let code;
+  let codeChange;
+  let codeDigest;
+  let codeZipPath;
+  let codeTmpDir;
 
   if (!onlyConfig) { // ignore code
 
@@ -1212,41 +1318,73 @@ async function makeFunction(baseDir, {
       const fontsConfEnv = await generateFontsConfAndEnv(baseDir, codeUri);
       if (!_.isEmpty(fontsConfEnv)) {
 
-        updateEnvironmentsInTpl({
+        await updateTpl(async () => updateEnvironmentsInTpl({
           serviceName, functionName, tplPath,
           displayLog: false,
           tpl: await getTpl(tplPath),
           envs: DEFAULT_FONTS_CONFIG_ENV
-        });
+        }));
 
         Object.assign(environmentVariables, DEFAULT_FONTS_CONFIG_ENV);
       }
 
-      console.log(`\t\tWaiting for packaging function ${functionName} code...`);
-      const { base64, count, compressedSize } = await zipCode(baseDir, codeUri, runtime, functionName);
+      let excludeDirs = [];
+      if (javaDependencyLayer) {
+        const dependencyLayer = await processJavaDependencyLayer(baseDir, codeUri, runtime);
+        if (dependencyLayer) {
+          excludeDirs = [dependencyLayer.dependencyDir];
+          layers = _.uniq([...(layers || []), dependencyLayer.arn]);
+
+          if (runtime === 'custom') {
+            environmentVariables = Object.assign({}, environmentVariables, {
+              CLASSPATH: _.compact([`${JAVA_LAYER_LIB_DIR}/*`, (environmentVariables || {}).CLASSPATH]).join(':')
+            });
+          }
+        }
+      }
 
-      const rs = await nasAutoConfigurationIfNecessary({
-        nasFunctionName: functionName,
-        nasServiceName: serviceName,
-        codeUri: path.resolve(baseDir, codeUri),
-        compressedSize, tplPath, runtime, nasConfig, vpcConfig, useNas, assumeYes
-      });
+      if (runtime === 'custom' && !isCodeArchive(codeUri)) {
+        const applied = await updateBootstrapJvmProfile(path.resolve(baseDir, codeUri || './'), { profile: jvmProfile, memorySize });
+        if (applied) {
+          console.log(`\t\tThe jvm options of bootstrap are updated to profile ${applied} with memory size ${memorySize} MB`);
+        }
+      }
 
-      if (rs.stop) { return { tplChanged: rs.tplChanged }; }
+      codeChange = await detectFunctionCodeChange(baseDir, codeUri, runtime, excludeDirs, serviceName, functionName, fn);
+      if (!codeChange.changed) {
+        console.log(green(`\t\tThe code of function ${functionName} is unchanged, skip packaging and uploading it.`));
+      } else {
+        console.log(`\t\tWaiting for packaging function ${functionName} code...`);
+        codeDigest = await digestCodeToPack(codeChange);
+        const { zipPath, randomDir, count, compressedSize } = await zipCode(baseDir, codeUri, runtime, functionName, excludeDirs);
+        codeZipPath = zipPath;
+        codeTmpDir = randomDir;
+
+        const rs = await updateTpl(() => nasAutoConfigurationIfNecessary({
+          nasFunctionName: functionName,
+          nasServiceName: serviceName,
+          codeUri: path.resolve(baseDir, codeUri),
+          compressedSize, tplPath, runtime, nasConfig, vpcConfig, useNas, assumeYes
+        }));
+
+        if (rs.stop) {
+          await removeCodeTmpDir(codeTmpDir);
+          return { tplChanged: rs.tplChanged };
+        }
 
-      const convertedSize = bytes(compressedSize, {
-        unitSeparator: ' '
-      });
+        const convertedSize = bytes(compressedSize, {
+          unitSeparator: ' '
+        });
 
-      if (!count || !compressedSize) {
-        console.log(green(`\t\tThe function ${functionName} has been packaged.`));
-      } else {
-        console.log(green(`\t\tThe function ${functionName} has been packaged. A total of ` + yellow(`${count}`) + `${count === 1 ? ' file' : ' files'}` + ` were compressed and the final size was` + yellow(` ${convertedSize}`)));
-      }
+        if (!count || !compressedSize) {
+          console.log(green(`\t\tThe function ${functionName} has been packaged.`));
+        } else {
+          console.log(green(`\t\tThe function ${functionName} has been packaged. A total of ` + yellow(`${count}`) + `${count === 1 ? ' file' : ' files'}` + ` were compressed and the final size was` + yellow(` ${convertedSize}`)));
+        }
 
-      code = {
-        zipFile: base64
-      };
+        // zipFile is encoded from codeZipPath while uploading
+        code = {};
+      }
     }
   }
   const transformedInstanceLifecycleConfig = transformInstanceLifecycleConfig(InstanceLifecycleConfig);
@@ -1271,21 +1409,29 @@ async function makeFunction(baseDir, {
     params['functionName'] = functionName;
   }
 
-  const streamPipe = barUtil.uploadProgress(params);
-
   try {
+    const streamPipe = await barUtil.uploadProgress(params, codeZipPath);
+
+    let res;
     if (!fn) {
       // create
-      await fc.createFunction(serviceName, streamPipe);
+      res = await fc.createFunction(serviceName, streamPipe);
     } else {
       // update
-      await fc.updateFunction(serviceName, functionName, streamPipe);
+      res = await fc.updateFunction(serviceName, functionName, streamPipe);
+    }
+
+    const codeChecksum = _.get(res, 'data.codeChecksum');
+    if (codeDigest && codeChecksum) {
+      await saveCodeChecksum(baseDir, codeChange.key, codeDigest, codeChecksum);
     }
   } catch (ex) {
     if (ex.message.indexOf('timeout') !== -1) {
       throw new Error(`\nError message: ${ex.message}.\n\n` + red(`This error may be caused by network latency. You can set the client timeout to a larger value through 'fun config' and try again.`));
     }
     throw ex;
+  } finally {
+    await removeCodeTmpDir(codeTmpDir);
   }
 
   if (asyncConfiguration) {
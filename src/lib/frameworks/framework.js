@@ -5,6 +5,7 @@ const path = require('path');
 const _ = require('lodash');
 const debug = require('debug')('fun:deploy');
 const { generateFile, listDir } = require('./common/file');
+const { DEFAULT_FRAMEWORK_MEMORY_SIZE } = require('../build/jvm-profile');
 
 const frameworks = [
   // php
@@ -310,7 +311,7 @@ Resources:
         Handler: index.handler
         Runtime: custom
         CodeUri: ./
-        MemorySize: 1024
+        MemorySize: ${DEFAULT_FRAMEWORK_MEMORY_SIZE}
         InstanceConcurrency: 5
         Timeout: 120
         ${environmentVariables}
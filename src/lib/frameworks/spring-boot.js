@@ -5,8 +5,23 @@ const fs = require('fs-extra');
 const _ = require('lodash');
 const file = require('./common/file');
 const { isSpringBootJar } = require('./common/java');
+const { generateJvmOptionsLine, DEFAULT_JVM_PROFILE, DEFAULT_FRAMEWORK_MEMORY_SIZE } = require('../build/jvm-profile');
 const { updateIgnore } = require('../package/ignore');
 
+// the jvm options are updated to the MemorySize of the function by 'fun deploy' and 'fun build',
+// the AppCDS archive of 'fun build --enable-cds' is passed by JAVA_TOOL_OPTIONS of the built template
+async function generateBootstrap(jar) {
+  const bootstrap = `#!/usr/bin/env bash
+export PORT=9000
+${generateJvmOptionsLine(DEFAULT_JVM_PROFILE, DEFAULT_FRAMEWORK_MEMORY_SIZE)}
+java $FUN_JVM_OPTIONS -jar -Dserver.port=$PORT ${jar}
+`;
+
+  await fs.writeFile('bootstrap', bootstrap, {
+    mode: '0755'
+  });
+}
+
 const updateFunIgnoreProcessor = {
   'type': 'function',
   'function': async (codeDir, baseDir) => {
@@ -74,14 +89,7 @@ const springboot = {
               throw new Error('Only Spring Boot jar is supported');
             }
 
-            const bootstrap = `#!/usr/bin/env bash
-export PORT=9000
-java -jar -Dserver.port=$PORT ${path.relative(codeDir, jar)}
-`;
-            
-            await fs.writeFile('bootstrap', bootstrap, {
-              mode: '0755'
-            });
+            await generateBootstrap(path.relative(codeDir, jar));
           }
         },
         updateFunIgnoreProcessor
@@ -121,14 +129,7 @@ You can use 'mvn package' to package SpringBoot to a jar.`);
               throw new Error(`Found more than one jar files from 'target' folder`);
             }
 
-            const bootstrap = `#!/usr/bin/env bash
-export PORT=9000
-java -jar -Dserver.port=$PORT ${jarFiles[0]}
-`;
-
-            await fs.writeFile('bootstrap', bootstrap, {
-              mode: '0755'
-            });
+            await generateBootstrap(jarFiles[0]);
           }
         },
         updateFunIgnoreProcessor
@@ -5,6 +5,7 @@ const fs = require('fs-extra');
 const _ = require('lodash');
 const file = require('./common/file');
 const { downloadJetty } = require('./common/java');
+const { generateJvmOptionsLine, DEFAULT_JVM_PROFILE, DEFAULT_FRAMEWORK_MEMORY_SIZE } = require('../build/jvm-profile');
 const { updateIgnore } = require('../package/ignore');
 
 const downloadJettyProcessor = {
@@ -45,7 +46,8 @@ async function generateBootstrap(codeDir, warPath) {
   const bootstrap = `#!/usr/bin/env bash
 export JETTY_RUNNER=/code/.fun/root/usr/local/java/jetty-runner.jar
 export PORT=9000
-java -jar $JETTY_RUNNER --port $PORT --path / ${warPath}
+${generateJvmOptionsLine(DEFAULT_JVM_PROFILE, DEFAULT_FRAMEWORK_MEMORY_SIZE)}
+java $FUN_JVM_OPTIONS -jar $JETTY_RUNNER --port $PORT --path / ${warPath}
 `;
   
   await fs.writeFile(path.join(codeDir, 'bootstrap'), bootstrap, {
@@ -121,30 +121,88 @@ function readableStreamInstance(paramsBuffer) {
   });
 }
 
-function uploadProgress(params) {
+// encodes the chunks into base64, the bytes left over are carried to the next chunk
+function base64Encoder() {
+  let remaining = Buffer.alloc(0);
+  return new stream.Transform({
+    transform(chunk, encoding, callback) {
+      const buf = Buffer.concat([remaining, chunk]);
+      const length = buf.length - buf.length % 3;
+      remaining = buf.slice(length);
+      callback(null, buf.slice(0, length).toString('base64'));
+    },
+    flush(callback) {
+      callback(null, remaining.toString('base64'));
+    }
+  });
+}
+
+const ZIP_FILE_PLACEHOLDER = '__FUN_CODE_ZIP_FILE__';
+
+// The code zip file is encoded into the json body while uploading, so neither the zip nor
+// its base64 is held in memory, no matter how large the code is.
+async function zipFileBodyStream(params, zipFilePath) {
+  const paramsStr = JSON.stringify(Object.assign({}, params, {
+    code: Object.assign({}, params.code, { zipFile: ZIP_FILE_PLACEHOLDER })
+  }));
+
+  const [head, tail] = paramsStr.split(JSON.stringify(ZIP_FILE_PLACEHOLDER)).map(str => Buffer.from(str));
+  const { size } = await fs.stat(zipFilePath);
+
+  const body = new stream.PassThrough();
+  const zipFile = fs.createReadStream(zipFilePath);
+  const encoder = base64Encoder();
+
+  zipFile.on('error', (err) => body.destroy(err));
+  // a body dropped before it is read, e.g. by a failed request, releases the zip file
+  body.on('close', () => zipFile.destroy());
+  encoder.on('end', () => body.end(Buffer.concat([Buffer.from('"'), tail])));
 
-  const parmasStr = JSON.stringify(params);
-  const paramsBuffer = Buffer.from(parmasStr);
+  body.write(Buffer.concat([head, Buffer.from('"')]));
+  zipFile.pipe(encoder).pipe(body, { end: false });
 
-  const readableStream = readableStreamInstance(paramsBuffer);
+  return {
+    body,
+    length: head.length + tail.length + 2 + Math.ceil(size / 3) * 4
+  };
+}
+
+// functions may be uploaded concurrently, only one progress bar is drawn at a time
+let drawingUploadProgress = false;
+
+async function uploadProgress(params, zipFilePath) {
+
+  let readableStream;
+  let length;
+  if (zipFilePath) {
+    ({ body: readableStream, length } = await zipFileBodyStream(params, zipFilePath));
+  } else {
+    const paramsBuffer = Buffer.from(JSON.stringify(params));
+    readableStream = readableStreamInstance(paramsBuffer);
+    length = paramsBuffer.length;
+  }
 
-  if (!process.stdin.isTTY) {
+  if (!process.stdin.isTTY || drawingUploadProgress) {
     return readableStream;
   }
+  drawingUploadProgress = true;
 
   const str = progress({
     time: 500,
-    length: parmasStr.length
+    length
   });
 
-  const total = Math.round(paramsBuffer.length / 1024);
+  const total = Math.round(length / 1024);
 
   const bar = createProgressBar(`${green(':uploading')} :bar :current/:total :rate KB/s, :percent :etas`, { total });
 
   str.on('progress', (progress) => {
     bar.tick(Math.round(progress.delta / 1024)); // Δ
   });
+  str.on('end', () => { drawingUploadProgress = false; });
+  str.on('error', () => { drawingUploadProgress = false; });
 
+  readableStream.on('error', (err) => str.emit('error', err));
   return readableStream.pipe(str);
 }
 
@@ -156,5 +214,7 @@ module.exports = {
   doProp,
   outputTemplateFile,
   getTemplateHeader,
-  uploadProgress
+  uploadProgress,
+  zipFileBodyStream,
+  base64Encoder
 };
@@ -139,9 +139,42 @@ function renderDir(dir, context) {
   });
 }
 
+// read and written file by file like the copy only paths, the templates may be packaged as assets by pkg
+function copyPath(fullSourcePath, fullTargetPath) {
+  const stat = fs.statSync(fullSourcePath);
+
+  if (stat.isDirectory()) {
+    fs.ensureDirSync(fullTargetPath);
+    fs.readdirSync(fullSourcePath).forEach(file => {
+      copyPath(path.join(fullSourcePath, file), path.join(fullTargetPath, file));
+    });
+    return;
+  }
+
+  fs.writeFileSync(fullTargetPath, fs.readFileSync(fullSourcePath));
+  fs.chmodSync(fullTargetPath, stat.mode);
+}
+
+// includePaths maps paths of the project to paths shared by several templates, relative to the template repository,
+// they are copied as they are after rendering the template
+function copyIncludePaths(context) {
+  const includePaths = context.config.includePaths || {};
+  const renderedDir = renderContent(context.templateDir, context);
+
+  Object.keys(includePaths).forEach(target => {
+    const fullSourcePath = path.resolve(context.repoDir, includePaths[target]);
+    const fullTargetPath = path.resolve(context.outputDir, path.join(renderedDir, target));
+    debug('Copy %s to %s', fullSourcePath, fullTargetPath);
+
+    console.log(green(`+ ${ fullTargetPath }`));
+    copyPath(fullSourcePath, fullTargetPath);
+  });
+}
+
 function render(context) {
   console.log('Start rendering template...');
   renderDir(context.templateDir, context);
+  copyIncludePaths(context);
   console.log('finish rendering template.');
 }
 
@@ -0,0 +1,211 @@
+'use strict';
+
+const Histogram = require('./histogram');
+const RunnerPool = require('./runner-pool');
+const ServerInvoke = require('./server-invoke');
+const debug = require('debug')('fun:local:bench');
+
+const { yellow } = require('colors');
+
+const _ = require('lodash');
+
+const STATS_INTERVAL = 1000;
+const MB = 1024 * 1024;
+
+// the memory used by the processes of the container, without the page cache, as `docker stats` shows
+function memoryUsageOf(stats) {
+  const memoryStats = (stats && stats.memory_stats) || {};
+  if (!memoryStats.usage) { return null; }
+
+  const cache = _.get(memoryStats, 'stats.inactive_file', _.get(memoryStats, 'stats.cache', 0));
+  return { usage: memoryStats.usage - cache, limit: memoryStats.limit };
+}
+
+function toMB(bytes) {
+  return _.isNil(bytes) ? null : _.round(bytes / MB, 1);
+}
+
+// Drives a function with a fixed number of concurrent clients, each with its own container started in
+// server mode. The first invocation of every container runs the initializer and is reported as a cold start,
+// the following ones are warm invocations.
+class LocalBench extends ServerInvoke {
+  constructor(serviceName, serviceRes, functionName, functionRes, baseDir, tmpDir, nasBaseDir, {
+    concurrency = 1, duration = 10, warmUp = 0, events = [''], httpTrigger = false
+  } = {}) {
+    super(serviceName, serviceRes, functionName, functionRes, baseDir, tmpDir, nasBaseDir, { httpTrigger });
+
+    this.concurrency = concurrency;
+    this.duration = duration;
+    this.warmUp = warmUp;
+    this.events = _.map(_.isEmpty(events) ? [''] : events, event => Buffer.from(event));
+
+    this.coldStarts = [];
+    this.latency = new Histogram();
+    this.reportedDuration = new Histogram();
+    this.errors = 0;
+    this.sent = 0;
+    this.memory = { samples: [], limit: null };
+  }
+
+  // returns false if the container exited during the invocation
+  async _invoke(slot, recording) {
+    const event = this.events[this.sent++ % this.events.length];
+
+    let result;
+    try {
+      result = await this.execRunner(slot.runner, event, slot.invokeInitializer);
+    } catch (error) {
+      debug('invocation error: %s, stderr: %s', error, error.stderr);
+      this.errors++;
+      return false;
+    }
+    const { exitCode, stderr, elapsed, reportedDuration } = result;
+
+    if (exitCode) {
+      debug('invocation exited with %s, stderr: %s', exitCode, stderr);
+      this.errors++;
+    }
+
+    if (slot.invokeInitializer) {
+      slot.invokeInitializer = false;
+      this.coldStarts.push({
+        containerStartup: slot.runner.startupTime,
+        firstInvocation: _.round(elapsed, 3),
+        reportedDuration
+      });
+    } else if (recording()) {
+      this.latency.record(elapsed);
+      if (reportedDuration !== null) {
+        this.reportedDuration.record(reportedDuration);
+      }
+    }
+    return true;
+  }
+
+  async _client(deadline, recording) {
+    while (Date.now() < deadline) {
+      const slot = await this.pool.acquire();
+
+      let exited = false;
+      try {
+        exited = !await this._invoke(slot, recording);
+      } finally {
+        if (exited) {
+          this.pool.discard(slot);
+        } else {
+          this.pool.release(slot);
+        }
+      }
+    }
+  }
+
+  async _sampleMemory() {
+    const samples = await Promise.all(this.pool.slots.map(slot => slot.runner.stats().then(memoryUsageOf, error => {
+      debug('docker stats error: %s', error);
+      return null;
+    })));
+
+    for (const sample of _.compact(samples)) {
+      this.memory.samples.push(sample.usage);
+      this.memory.limit = sample.limit;
+    }
+  }
+
+  async run() {
+    if (!this.inited) {
+      await this.init();
+    }
+
+    console.log(`starting ${this.concurrency} containers for ${this.serviceName}/${this.functionName}...`);
+    this.pool = new RunnerPool(this.concurrency, () => this.startRunner());
+    await this.pool.start();
+
+    const start = Date.now();
+    const recordFrom = start + this.warmUp * 1000;
+    const deadline = recordFrom + this.duration * 1000;
+    const recording = () => Date.now() >= recordFrom;
+
+    console.log(`benchmarking for ${this.duration}s${this.warmUp ? ` after ${this.warmUp}s of warm-up` : ''}, concurrency ${this.concurrency}...`);
+
+    const timer = setInterval(() => {
+      this._sampleMemory().catch(error => debug('sample memory error: %s', error));
+    }, STATS_INTERVAL);
+
+    try {
+      await Promise.all(_.range(this.concurrency).map(() => this._client(deadline, recording)));
+    } finally {
+      clearInterval(timer);
+      await this.pool.stop();
+      this.cleanUnzippedCodeDir();
+    }
+
+    return this.report(Math.min(Date.now(), deadline) - Math.min(recordFrom, deadline));
+  }
+
+  report(measuredMs) {
+    const warm = this.latency.summary();
+    const samples = this.memory.samples;
+
+    return {
+      function: `${this.serviceName}/${this.functionName}`,
+      runtime: this.runtime,
+      memorySize: this.functionProps.MemorySize || 128,
+      concurrency: this.concurrency,
+      duration: this.duration,
+      warmUp: this.warmUp,
+      coldStarts: this.coldStarts,
+      warm: {
+        requests: warm.count,
+        errors: this.errors,
+        throughput: measuredMs > 0 ? _.round(warm.count / measuredMs * 1000, 2) : 0,
+        latency: warm,
+        reportedDuration: this.reportedDuration.summary()
+      },
+      memory: {
+        peakMB: toMB(_.max(samples)),
+        meanMB: toMB(_.mean(samples)),
+        limitMB: toMB(this.memory.limit)
+      }
+    };
+  }
+}
+
+function formatMs(value) {
+  return _.isNil(value) ? '-' : `${_.round(value, 2)} ms`;
+}
+
+function printReport(report) {
+  const { coldStarts, warm, memory } = report;
+
+  console.log(`\n${report.function} (${report.runtime}, ${report.memorySize} MB), concurrency ${report.concurrency}\n`);
+
+  if (!_.isEmpty(coldStarts)) {
+    const startup = new Histogram();
+    const first = new Histogram();
+    coldStarts.forEach(coldStart => {
+      startup.record(coldStart.containerStartup);
+      first.record(coldStart.firstInvocation);
+    });
+    console.log(`cold starts        ${coldStarts.length}`);
+    console.log(`  container start  p50 ${formatMs(startup.valueAtPercentile(50))}, max ${formatMs(startup.valueAtPercentile(100))}`);
+    console.log(`  first invocation p50 ${formatMs(first.valueAtPercentile(50))}, max ${formatMs(first.valueAtPercentile(100))} (initializer included)`);
+  }
+
+  console.log(`warm invocations   ${warm.requests}, ${warm.errors} errors, ${warm.throughput} req/s`);
+  for (const [name, summary] of [['latency', warm.latency], ['duration', warm.reportedDuration]]) {
+    if (!summary.count) { continue; }
+    console.log(`  ${_.padEnd(name, 16)} p50 ${formatMs(summary.p50)}, p99 ${formatMs(summary.p99)}, ` +
+      `p99.9 ${formatMs(summary.p999)}, max ${formatMs(summary.max)}`);
+  }
+
+  if (memory.peakMB !== null) {
+    console.log(`memory             peak ${memory.peakMB} MB, mean ${memory.meanMB} MB, limit ${memory.limitMB} MB`);
+  }
+
+  if (!warm.requests) {
+    console.warn(yellow('\nno warm invocation was recorded, try a longer duration.'));
+  }
+  console.log(`\nlatency is measured around docker exec, duration is the one reported by the runtime.`);
+}
+
+module.exports = { LocalBench, printReport, memoryUsageOf };
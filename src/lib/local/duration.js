@@ -0,0 +1,9 @@
+'use strict';
+
+// the duration of the invocation printed by the runtime, without starting the container and the jvm
+function parseInvokeDuration(output) {
+  const matched = output.match(/Duration: ([\d.]+) ?ms/);
+  return matched ? parseFloat(matched[1]) : null;
+}
+
+module.exports = { parseInvokeDuration };
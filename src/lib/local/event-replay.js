@@ -0,0 +1,189 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const Histogram = require('./histogram');
+const ServerInvoke = require('./server-invoke');
+const debug = require('debug')('fun:local:replay');
+
+const { red, green } = require('colors');
+
+const _ = require('lodash');
+
+// A JSONL file holds one event per non-empty line, a directory one event per file, in the order of file names.
+// A JSONL file is read here at once, the files of a directory are only read when their events are replayed.
+async function loadEvents(eventsPath) {
+  const stats = await fs.stat(eventsPath);
+
+  if (stats.isDirectory()) {
+    const events = [];
+    for (const name of (await fs.readdir(eventsPath)).sort()) {
+      const eventPath = path.join(eventsPath, name);
+      if ((await fs.stat(eventPath)).isFile()) {
+        events.push({ source: name, read: () => fs.readFile(eventPath) });
+      }
+    }
+    return events;
+  }
+
+  const fileName = path.basename(eventsPath);
+  const lines = (await fs.readFile(eventsPath, 'utf8')).split(/\r?\n/);
+  return _.compact(lines.map((line, index) => {
+    if (!line.trim()) { return null; }
+    return { source: `${fileName}:${index + 1}`, read: async () => Buffer.from(line) };
+  }));
+}
+
+function writeLine(stream, record) {
+  return new Promise(resolve => {
+    if (stream.write(`${JSON.stringify(record)}\n`)) {
+      resolve();
+    } else {
+      stream.once('drain', resolve);
+    }
+  });
+}
+
+// Replays events through one container started in server mode, so the runtime and the function are only
+// started once. Every result is appended to the results file as a JSON line when its invocation completes.
+class EventReplay extends ServerInvoke {
+  constructor(serviceName, serviceRes, functionName, functionRes, baseDir, tmpDir, nasBaseDir, {
+    concurrency = 1, resultsPath, httpTrigger = false
+  } = {}) {
+    super(serviceName, serviceRes, functionName, functionRes, baseDir, tmpDir, nasBaseDir, { httpTrigger });
+
+    this.concurrency = concurrency;
+    this.resultsPath = resultsPath;
+
+    this.durations = new Histogram();
+    this.errors = 0;
+    this.restarts = 0;
+    this.initializing = Promise.resolve();
+    this.restarting = Promise.resolve();
+  }
+
+  // the initializer runs with the first invocation of a container, the others wait for it
+  async _exec(runner, event) {
+    if (this.invokeInitializer) {
+      this.invokeInitializer = false;
+      this.initializing = this.execRunner(runner, event, true);
+      return await this.initializing;
+    }
+
+    await this.initializing.catch(() => {});
+    return await this.execRunner(runner, event, false);
+  }
+
+  // concurrent invocations of an exited container share the restart
+  async _restart(exitedRunner) {
+    if (!exitedRunner.exited) {
+      exitedRunner.exited = true;
+      this.restarts++;
+      exitedRunner.stop().catch(reason => debug('stop exited container error: %s', reason));
+
+      this.restarting = this.startRunner().then(runner => {
+        this.runner = runner;
+        this.invokeInitializer = true;
+      }, error => {
+        // the remaining events would all fail the same way, so the replay stops
+        this.restartError = error;
+        console.error(red(`restart container error: ${error.message}`));
+      });
+    }
+    await this.restarting;
+  }
+
+  async _replayEvent(index, { source, read }) {
+    const record = { index, source };
+
+    let runner;
+    try {
+      const event = await read();
+
+      await this.restarting;
+      if (this.restartError) { return null; }
+
+      runner = this.runner;
+      const { exitCode, output, stderr, elapsed, reportedDuration } = await this._exec(runner, event);
+
+      Object.assign(record, { exitCode, duration: _.round(elapsed, 3), reportedDuration, output, stderr });
+      this.durations.record(elapsed);
+      if (exitCode) { this.errors++; }
+    } catch (error) {
+      this.errors++;
+      Object.assign(record, { error: error.message, stderr: error.stderr });
+      console.error(red(`replay ${source} error: ${error.message}`));
+
+      if (runner && error.stderr !== undefined) {
+        // the container exited during the invocation
+        await this._restart(runner);
+      }
+    }
+    return record;
+  }
+
+  async replay(events) {
+    if (!this.inited) {
+      await this.init();
+    }
+
+    await fs.ensureDir(path.dirname(this.resultsPath));
+    const results = fs.createWriteStream(this.resultsPath);
+
+    console.log(`replaying ${events.length} events through one container of ${this.serviceName}/${this.functionName}, concurrency ${this.concurrency}...`);
+
+    const start = Date.now();
+    this.runner = await this.startRunner();
+    this.invokeInitializer = true;
+
+    let next = 0;
+    let replayed = 0;
+    const replayNext = async () => {
+      while (next < events.length && !this.restartError) {
+        const index = next++;
+        const record = await this._replayEvent(index, events[index]);
+        if (!record) { break; }
+
+        await writeLine(results, record);
+        replayed++;
+
+        if ((index + 1) % 100 === 0) {
+          console.log(`${index + 1} events replayed`);
+        }
+      }
+    };
+
+    try {
+      await Promise.all(_.range(this.concurrency).map(replayNext));
+    } finally {
+      await new Promise((resolve, reject) => results.end(err => err ? reject(err) : resolve()));
+      await this.runner.stop().catch(reason => debug('stop container error: %s', reason));
+      this.cleanUnzippedCodeDir();
+    }
+
+    if (this.restartError) {
+      throw new Error(`replay stopped after ${replayed} of ${events.length} events, the exited container could not be restarted: ${this.restartError.message}. `
+        + `The results of the replayed events are saved to ${this.resultsPath}`);
+    }
+
+    return {
+      events: events.length,
+      errors: this.errors,
+      restarts: this.restarts,
+      elapsed: Date.now() - start,
+      duration: this.durations.summary()
+    };
+  }
+}
+
+function printReplaySummary(summary, resultsPath) {
+  const { events, errors, restarts, elapsed, duration } = summary;
+
+  console.log(`\n${events} events replayed in ${_.round(elapsed / 1000, 1)}s, ${errors} errors, ${restarts} container restarts`);
+  if (duration.count) {
+    console.log(`duration p50 ${duration.p50} ms, p99 ${duration.p99} ms, max ${duration.max} ms`);
+  }
+  console.log(green(`results are saved to ${resultsPath}`));
+}
+
+module.exports = { EventReplay, loadEvents, printReplaySummary };
@@ -0,0 +1,76 @@
+'use strict';
+
+const _ = require('lodash');
+
+// Latencies are recorded in microseconds and reported in milliseconds.
+const UNIT = 1000;
+
+// A histogram with a bounded relative error, laid out the way HdrHistogram is: values are grouped by their
+// highest bit, and every group is split linearly into the same number of sub buckets. Values below the
+// sub bucket count are recorded exactly, larger ones within 10^-significantDigits of their value.
+class Histogram {
+  constructor(significantDigits = 3) {
+    this.subBucketBits = Math.ceil(Math.log2(2 * Math.pow(10, significantDigits)));
+    this.subBucketCount = Math.pow(2, this.subBucketBits);
+    this.counts = new Map();
+
+    this.count = 0;
+    this.sum = 0;
+    this.min = Infinity;
+    this.max = 0;
+  }
+
+  // the lowest and highest values recorded into the same bucket as value
+  _bucketOf(value) {
+    if (value < this.subBucketCount) {
+      return { lowest: value, highest: value };
+    }
+    const unit = Math.pow(2, Math.floor(Math.log2(value)) + 1 - this.subBucketBits);
+    const lowest = Math.floor(value / unit) * unit;
+    return { lowest, highest: lowest + unit - 1 };
+  }
+
+  record(ms) {
+    const value = Math.max(0, Math.round(ms * UNIT));
+    const { lowest } = this._bucketOf(value);
+
+    this.counts.set(lowest, (this.counts.get(lowest) || 0) + 1);
+    this.count++;
+    this.sum += value;
+    this.min = Math.min(this.min, value);
+    this.max = Math.max(this.max, value);
+  }
+
+  // the highest value equivalent to the one at percentile, in ms
+  valueAtPercentile(percentile) {
+    if (!this.count) { return null; }
+
+    const target = Math.max(1, Math.ceil(percentile * this.count / 100));
+    let seen = 0;
+    for (const lowest of _.sortBy(Array.from(this.counts.keys()))) {
+      seen += this.counts.get(lowest);
+      if (seen >= target) {
+        return Math.min(this._bucketOf(lowest).highest, this.max) / UNIT;
+      }
+    }
+    return this.max / UNIT;
+  }
+
+  summary() {
+    if (!this.count) {
+      return { count: 0 };
+    }
+    return {
+      count: this.count,
+      min: this.min / UNIT,
+      mean: _.round(this.sum / this.count / UNIT, 3),
+      p50: this.valueAtPercentile(50),
+      p90: this.valueAtPercentile(90),
+      p99: this.valueAtPercentile(99),
+      p999: this.valueAtPercentile(99.9),
+      max: this.max / UNIT
+    };
+  }
+}
+
+module.exports = Histogram;
@@ -7,18 +7,24 @@ var watch = require('node-watch');
 const rimraf = require('rimraf');
 const ignore = require('../../lib/package/ignore').isIgnored;
 const Invoke = require('./invoke');
+const RunnerPool = require('./runner-pool');
 const debug = require('debug')('fun:local');
 const streams = require('memory-streams');
 const docker = require('../docker');
 const dockerOpts = require('../docker-opts');
 const FC_HTTP_PARAMS = 'x-fc-http-params';
 
-const { red, green } = require('colors');
+const { red, green, yellow } = require('colors');
 const { startContainer } = require('../docker');
-const { validateSignature, parseOutputStream } = require('./http');
+const { validateSignature, parseOutputStream, HttpOutputStream } = require('./http');
 const { getHttpRawBody, generateHttpParams, parseHttpTriggerHeaders, validateHeader, getFcReqHeaders, requestUntilServerUp, generateInitRequestOpts, generateRequestOpts } = require('../local/http');
 const uuid = require('uuid');
 const { isCustomContainerRuntime } = require('../common/model/runtime');
+const { STARTUP_TRACE_ENV } = require('./startup-trace');
+const { createJavaProfile } = require('./java-profile');
+const { isHotSwapSupported, generateHotSwapDebugOptions, getFreePort, requiresRestart, redefineClasses } = require('./java-hot-swap');
+
+const _ = require('lodash');
 
 const isWin = process.platform === 'win32';
 
@@ -27,139 +33,252 @@ function is2xxStatusCode(statusCode) {
 }
 
 class HttpInvoke extends Invoke {
-  constructor(serviceName, serviceRes, functionName, functionRes, debugPort, debugIde, baseDir, tmpDir, authType, endpointPrefix, debuggerPath, debugArgs, nasBaseDir) {
+  constructor(serviceName, serviceRes, functionName, functionRes, debugPort, debugIde, baseDir, tmpDir, authType, endpointPrefix, debuggerPath, debugArgs, nasBaseDir, { poolSize = 1, hotSwap = false, startupTrace = null, profile = null } = {}) {
     super(serviceName, serviceRes, functionName, functionRes, debugPort, debugIde, baseDir, tmpDir, debuggerPath, debugArgs, nasBaseDir);
 
     this.isAnonymous = authType === 'ANONYMOUS' || authType === 'anonymous';
     this.endpointPrefix = endpointPrefix;
-    this._invokeInitializer = true;
+    this.poolSize = poolSize;
+
+    // the debug port and the CAPort of custom container are bound on the host, only one container could use them
+    if (this.poolSize > 1 && (debugPort || isCustomContainerRuntime(this.runtime))) {
+      console.warn(yellow(`${serviceName}/${functionName} could only be started in one container when debugging or using custom container.`));
+      this.poolSize = 1;
+    }
+
+    // the debugger owns the jdwp agent when debugging
+    this.hotSwap = hotSwap && !debugPort && isHotSwapSupported(this.runtime);
+    this.startupTrace = startupTrace;
+    this.profile = createJavaProfile(baseDir, serviceName, functionName, this.runtime, profile);
+    this._changedFiles = new Set();
+
     process.on('SIGINT', () => {
       this.cleanUnzippedCodeDir();
     });
+
+    if (this.profile) {
+      process.once('SIGINT', () => {
+        this._collectProfileOnExit().catch(error => console.error(`collect profile error: ${error}`));
+      });
+    }
   }
 
-  _disableRunner(evt, name) {
-    let oldRunner = null;
-    let tmpCodeDir = this.unzippedCodeDir;
+  // the containers are stopped instead of killed when profiling, the jvms write their recordings when they exit
+  async _collectProfileOnExit() {
+    if (this.pool) {
+      await Promise.all(this.pool.slots.map(slot => slot.runner.wait().catch(reason => {
+        debug('wait for container error: %s', reason);
+      })));
+    }
+    await this.profile.collect();
+  }
+
+  _reloadRunnerPool(evt, name) {
+    console.log(`detect code changes, file is ${name}, event is ${evt}, auto reloading...`);
+
+    this._changedFiles.add(evt === 'remove' ? null : name);
+
+    clearTimeout(this._reloadTimer);
+    this._reloadTimer = setTimeout(() => {
+      const changedFiles = Array.from(this._changedFiles);
+      this._changedFiles.clear();
 
-    lock.acquire('invoke', (done) => {
-      if (!this.runner) {
-        done();
+      // requests are served by the current pool until the new one is warmed up
+      this._reloading = (this._reloading || Promise.resolve())
+        .then(() => this._applyCodeChanges(changedFiles))
+        .catch(error => {
+          console.error(red(`reloading error, keep using the old containers, reason is ${error}`));
+        });
+    }, 500); // for mvn, jar will be writen done after a while
+  }
+
+  async _applyCodeChanges(changedFiles) {
+    // removed files and dependency changes need a fresh jvm
+    if (this.hotSwap && !this.unzippedCodeDir && !_.some(changedFiles, f => !f || requiresRestart(f))) {
+      try {
+        await this._hotSwapClasses(changedFiles.filter(f => f.endsWith('.class')));
         return;
+      } catch (error) {
+        console.warn(yellow(`hot swap failed, reason is ${error.message}, restarting containers...`));
+      }
+    }
+    await this._swapRunnerPool();
+  }
+
+  async _hotSwapClasses(classFiles) {
+    if (_.isEmpty(classFiles)) {
+      debug('no class changed, skip hot swap');
+      return;
+    }
+
+    let count = 0;
+    for (const slot of this.pool.slots) {
+      count += await redefineClasses('localhost', slot.runner.jdwpPort, classFiles);
+    }
+    console.log(green(`hot swap success, ${classFiles.length} class files changed, ${count} loaded classes redefined.`));
+  }
+
+  async _swapRunnerPool() {
+    const oldPool = this.pool;
+    const tmpCodeDir = this.unzippedCodeDir;
+    const { codeMount, mounts } = this;
+
+    this.unzippedCodeDir = null;
+    try {
+      await this.init();
+      this.pool = await this._startRunnerPool();
+    } catch (error) {
+      // the old containers keep serving with their own code dir, the one unzipped for the new pool is dropped
+      if (this.unzippedCodeDir) {
+        rimraf.sync(this.unzippedCodeDir);
       }
+      Object.assign(this, { unzippedCodeDir: tmpCodeDir, codeMount, mounts });
+      throw error;
+    }
 
-      console.log(`detect code changes, file is ${name}, event is ${evt}, auto reloading...`);
+    console.log('reloading success, stop old containers background...');
 
-      oldRunner = this.runner;
+    // https://github.com/alibaba/funcraft/issues/527
+    require('promise.prototype.finally').shim();
 
-      this.runner = null;
-      this.containerName = docker.generateRamdomContainerName();
-      this._invokeInitializer = true;
+    oldPool.stop().catch(reason => {
+      console.error('stop container error, reason is ', reason);
+    }).finally(() => {
+      console.log('stopping old containers successfully\n');
 
-      setTimeout(() => {
-        this.init().then(() => {
-          console.log('reloading success, stop old container background...');
-          done();
-        });
-      }, 500); // for mvn, jar will be writen done after a while
-    }, (err, ret) => {
-      debug('stop container after lock released');
-
-      // https://github.com/alibaba/funcraft/issues/527
-      require('promise.prototype.finally').shim();
-
-      oldRunner.stop().catch(reason => {
-        console.error('stop container error, reason is ', reason);
-      }).finally(() => {
-        // release lock
-        console.log('stopping old container successfully\n');
-
-        if (tmpCodeDir) {
-          rimraf.sync(tmpCodeDir);
-          console.log(`clean tmp code dir ${tmpCodeDir} successfully.\n`);
-        }
-      });
+      if (this.profile) {
+        this.profile.collect(oldPool.slots.map(slot => slot.runner.recording));
+      }
+
+      if (tmpCodeDir) {
+        rimraf.sync(tmpCodeDir);
+        console.log(`clean tmp code dir ${tmpCodeDir} successfully.\n`);
+      }
     });
   }
 
   async beforeInvoke() {
     if (!this.debugPort) {
-      // reuse container
-      if (!this.runner) {
-
-        debug('runner not created, acquire beforeInvoke lock');
-
-        await lock.acquire('invoke', async () => {
-
-          if (!this.runner) {
-            debug('acquire invoke lock success, ready to create runner');
-
-            if (!this.watcher && !isCustomContainerRuntime(this.runtime)) {
-              // add file ignore when auto reloading
-              const ign = await ignore(this.baseDir);
-              this.watcher = watch(this.codeUri, { recursive: true, persistent: false, filter: (f) => {
-                return ign && !ign(f);
-              }}, (evt, name) => {
-                if (this.runner) {
-                  this._disableRunner(evt, name);
-                } else {
-                  debug('detect code changes, but no runner found, ignore....');
-                }
-              });
-            }
-
-            await this._startRunner();
+      // reuse containers
+      await this.warmUp();
+    }
+  }
+
+  async warmUp() {
+    if (this.pool) { return; }
+
+    debug('runner pool not created, acquire beforeInvoke lock');
+
+    await lock.acquire(`start ${this.serviceName}/${this.functionName}`, async () => {
+
+      if (this.pool) {
+        debug('acquire start lock success, but runner pool already created, skipping...');
+        return;
+      }
+
+      debug('acquire start lock success, ready to create runner pool');
+
+      if (!this.inited) {
+        await this.init();
+      }
+
+      if (!this.watcher && !isCustomContainerRuntime(this.runtime)) {
+        // add file ignore when auto reloading
+        const ign = await ignore(this.baseDir);
+        this.watcher = watch(this.codeUri, { recursive: true, persistent: false, filter: (f) => {
+          return ign && !ign(f);
+        }}, (evt, name) => {
+          if (this.pool) {
+            this._reloadRunnerPool(evt, name);
           } else {
-            debug('acquire invoke lock success, but runner already created, skipping...');
+            debug('detect code changes, but no runner found, ignore....');
           }
         });
       }
+
+      this.pool = await this._startRunnerPool();
+    });
+  }
+
+  async _startRunnerPool() {
+    if (this.poolSize > 1) {
+      console.log(`starting ${this.poolSize} containers for ${this.serviceName}/${this.functionName}...`);
     }
+
+    const pool = new RunnerPool(this.poolSize, () => this._startRunner(docker.generateRamdomContainerName()));
+    await pool.start();
+    return pool;
   }
 
-  async _startRunner() {
+  async _startRunner(containerName) {
     const envs = await docker.generateDockerEnvs(this.baseDir, this.serviceName, this.serviceRes.Properties, this.functionName, this.functionProps, this.debugPort, null, this.nasConfig, true, this.debugIde, this.debugArgs);
+
+    let jdwpPort;
+    if (this.hotSwap) {
+      jdwpPort = await getFreePort();
+      envs.DEBUG_OPTIONS = generateHotSwapDebugOptions(this.runtime, jdwpPort);
+    }
+
+    if (this.startupTrace) {
+      envs[STARTUP_TRACE_ENV] = 'true';
+    }
+
+    const runnerEnvs = this.profile ? this.profile.applyTo(envs, containerName) : envs;
+
     const cmd = docker.generateDockerCmd(this.runtime, true, { 
       functionProps: this.functionProps
     });
 
     const opts = await dockerOpts.generateLocalStartOpts(this.runtime,
-      this.containerName,
+      containerName,
       this.mounts,
       cmd,
-      envs,
+      runnerEnvs,
       {
-        debugPort: this.debugPort,
+        // the jdwp port is published the same way as the debug port
+        debugPort: this.debugPort || jdwpPort,
         dockerUser: this.dockerUser,
         imageName: this.imageName,
         caPort: this.functionProps.CAPort
       });
-    this.runner = await startContainer(opts, process.stdout, process.stderr, {
+    let outputStream = process.stdout;
+    let errorStream = process.stderr;
+    if (this.startupTrace) {
+      const pid = this.startupTrace.addProcess(`${this.serviceName}/${this.functionName} ${containerName}`);
+      outputStream = this.startupTrace.tap(outputStream, pid);
+      errorStream = this.startupTrace.tap(errorStream, pid);
+    }
+
+    const runner = await startContainer(opts, outputStream, errorStream, {
       serviceName: this.serviceName,
-      functionName: this.functionName
+      functionName: this.functionName,
+      stopGracefully: !!this.profile
     });
+    runner.jdwpPort = jdwpPort;
+    runner.recording = containerName;
+    return runner;
   }
 
   async initAndStartRunner() {
     await this.init();
-    await this._startRunner();
+    this.pool = await this._startRunnerPool();
     await this.showDebugIdeTips();
   }
 
   async doInvoke(req, res) {
-    // only one invoke can be processed
-    await lock.acquire('invoke', async () => {
-      debug('http doInvoke, aquire invoke lock success, processing...');
+    const event = await getHttpRawBody(req);
+    const httpParams = generateHttpParams(req, this.endpointPrefix);
+
+    const envs = await docker.generateDockerEnvs(this.baseDir, this.serviceName, this.serviceRes.Properties, this.functionName, this.functionProps, this.debugPort, httpParams, this.nasConfig, true, this.debugIde);
 
-      const outputStream = new streams.WritableStream();
-      const errorStream = new streams.WritableStream();
-      const event = await getHttpRawBody(req);
-      const httpParams = generateHttpParams(req, this.endpointPrefix);
+    if (this.debugPort && !this.pool) {
+      // don't reuse container, only one invoke can be processed
+      await lock.acquire('invoke', async () => {
+        debug('http doInvoke, aquire invoke lock success, processing...');
 
-      const envs = await docker.generateDockerEnvs(this.baseDir, this.serviceName, this.serviceRes.Properties, this.functionName, this.functionProps, this.debugPort, httpParams, this.nasConfig, true, this.debugIde);
+        const outputStream = new streams.WritableStream();
+        const errorStream = new streams.WritableStream();
 
-      if (this.debugPort && !this.runner) {                                                                                               
-        // don't reuse container
         const cmd = docker.generateDockerCmd(this.runtime, false, {
           functionProps: this.functionProps,
           httpMode: true
@@ -173,7 +292,7 @@ class HttpInvoke extends Invoke {
           this.mounts,
           cmd,
           this.debugPort,
-          envs,
+          this.profile ? this.profile.applyTo(envs, this.containerName) : envs,
           this.dockerUser,
           this.debugIde
         );
@@ -182,82 +301,123 @@ class HttpInvoke extends Invoke {
           event,
           outputStream, errorStream);
         this.response(outputStream, errorStream, res);
+
+        if (this.profile) {
+          await this.profile.collect([this.containerName]);
+        }
+      });
+      return;
+    }
+
+    if (!isCustomContainerRuntime(this.runtime) && !this.isAnonymous) {
+      // check signature
+      if (!await validateSignature(req, res, req.method)) { return; }
+    }
+
+    // reuse container, the pool may be swapped by a reload in the meantime
+    debug('http doInvoke, acquire runner');
+    const pool = this.pool;
+    const slot = await pool.acquire();
+    debug('http doInvoke, acquire runner success, processing...');
+
+    let exited = false;
+    try {
+      if (isCustomContainerRuntime(this.runtime)) {
+        await this._invokeCustomContainer(slot, req, res, envs, event);
       } else {
-        // reuse container
-        debug('http doInvoke, acquire invoke lock');
-        if (isCustomContainerRuntime(this.runtime)) {
-          const fcReqHeaders = getFcReqHeaders(req.headers, uuid.v4(), envs);
-          if (this.functionProps.Initializer && this._invokeInitializer) {
-            console.log('Initializing...');
-            const initRequestOpts = generateInitRequestOpts(req, this.functionProps.CAPort, fcReqHeaders);
-
-            const initResp = await requestUntilServerUp(initRequestOpts, this.functionProps.InitializationTimeout || 3);
-            this._invokeInitializer = false;
-            console.log(green(`Initializing done. StatusCode of response is ${initResp.statusCode}`));
-            debug(`Response of initialization is: ${JSON.stringify(initResp)}`);
-          }
-          const requestOpts = generateRequestOpts(req, this.functionProps.CAPort, fcReqHeaders, event);
+        exited = !await this._invokeRunner(slot, res, envs, event);
+      }
+      debug('http doInvoke exec end, begin to response');
+    } finally {
+      if (exited) {
+        pool.discard(slot);
+      } else {
+        pool.release(slot);
+      }
+    }
+  }
 
-          const respOfCustomContainer = await requestUntilServerUp(requestOpts, this.functionProps.Timeout || 3);
-          this.responseOfCustomContainer(res, respOfCustomContainer);
-        } else {
-          const cmd = [dockerOpts.resolveMockScript(this.runtime), ...docker.generateDockerCmd(this.runtime, false, {
-            functionProps: this.functionProps, 
-            httpMode: true, 
-            invokeInitializer: this._invokeInitializer, 
-            event: isWin ? event : null
-          })];
-
-          debug(`http doInvoke, cmd is : ${cmd}`);
-
-          if (!this.isAnonymous) {
-            // check signature
-            if (!await validateSignature(req, res, req.method)) { return; }
-          }
+  async _invokeCustomContainer(slot, req, res, envs, event) {
+    const fcReqHeaders = getFcReqHeaders(req.headers, uuid.v4(), envs);
+    if (this.functionProps.Initializer && slot.invokeInitializer) {
+      console.log('Initializing...');
+      const initRequestOpts = generateInitRequestOpts(req, this.functionProps.CAPort, fcReqHeaders);
 
-          try {
-            await this.runner.exec(cmd, {
-              env: envs,
-              outputStream,
-              errorStream,
-              verbose: true,
-              context: {
-                serviceName: this.serviceName,
-                functionName: this.functionName
-              },
-              event: !isWin ? event : null
-            });
-
-            this._invokeInitializer = false;
-          } catch (error) {
-            console.log(red('Fun Error: ', errorStream.toString()));
-
-            // errors for runtime error
-            // for example, when using nodejs, use response.send(new Error('haha')) will lead to runtime error
-            // and container will auto exit, exec will receive no message
-            res.status(500);
-            res.setHeader('Content-Type', 'application/json');
-
-            res.send({
-              'errorMessage': `Process exited unexpectedly before completing request`
-            });
-
-            // for next invoke
-            this.runner = null;
-            this.containerName = docker.generateRamdomContainerName();
-            if (error.indexOf && error.indexOf('exited with code 137') > -1) { // receive signal SIGKILL http://tldp.org/LDP/abs/html/exitcodes.html
-              debug(error);
-            } else {
-              console.error(error);
-            }
-            return;
-          }
-          this.response(outputStream, errorStream, res);
-        }
-        debug('http doInvoke exec end, begin to response');
+      const initResp = await requestUntilServerUp(initRequestOpts, this.functionProps.InitializationTimeout || 3);
+      slot.invokeInitializer = false;
+      console.log(green(`Initializing done. StatusCode of response is ${initResp.statusCode}`));
+      debug(`Response of initialization is: ${JSON.stringify(initResp)}`);
+    }
+    const requestOpts = generateRequestOpts(req, this.functionProps.CAPort, fcReqHeaders, event);
+
+    const respOfCustomContainer = await requestUntilServerUp(requestOpts, this.functionProps.Timeout || 3);
+    this.responseOfCustomContainer(res, respOfCustomContainer);
+  }
+
+  // returns false if the container exited during the invocation
+  async _invokeRunner(slot, res, envs, event) {
+    const outputStream = new HttpOutputStream();
+    const errorStream = new streams.WritableStream();
+
+    const responded = this.streamResponse(outputStream, errorStream, res);
+
+    const cmd = [dockerOpts.resolveMockScript(this.runtime), ...docker.generateDockerCmd(this.runtime, false, {
+      functionProps: this.functionProps, 
+      httpMode: true, 
+      invokeInitializer: slot.invokeInitializer, 
+      event: isWin ? event : null
+    })];
+
+    debug(`http doInvoke, cmd is : ${cmd}`);
+
+    try {
+      await slot.runner.exec(cmd, {
+        env: envs,
+        outputStream,
+        errorStream,
+        verbose: true,
+        context: {
+          serviceName: this.serviceName,
+          functionName: this.functionName
+        },
+        event: !isWin ? event : null,
+        waitForOutput: true
+      });
+
+      slot.invokeInitializer = false;
+    } catch (error) {
+      console.log(red('Fun Error: ', errorStream.toString()));
+
+      outputStream.removeAllListeners('head');
+      if (res.headersSent) {
+        // part of the body has been streamed, the client could only see a broken connection
+        outputStream.body.unpipe(res);
+        res.destroy();
+        console.error(error);
+        return false;
       }
 
-    });
+      // errors for runtime error
+      // for example, when using nodejs, use response.send(new Error('haha')) will lead to runtime error
+      // and container will auto exit, exec will receive no message
+      res.status(500);
+      res.setHeader('Content-Type', 'application/json');
+
+      res.send({
+        'errorMessage': `Process exited unexpectedly before completing request`
+      });
+
+      if (error.indexOf && error.indexOf('exited with code 137') > -1) { // receive signal SIGKILL http://tldp.org/LDP/abs/html/exitcodes.html
+        debug(error);
+      } else {
+        console.error(error);
+      }
+      return false;
+    }
+
+    outputStream.end();
+    await responded;
+    return true;
   }
 
   async afterInvoke() {
@@ -272,6 +432,93 @@ class HttpInvoke extends Invoke {
     res.send(body);
   }
 
+  // writes the status and headers as soon as they are parsed from outputStream, then pipes the body to res.
+  // responses of failed invocations are small and sent with the execution info when the output ends.
+  // returns a promise resolved when the response is complete.
+  streamResponse(outputStream, errorStream, res) {
+    let statusCode;
+    let headers = {};
+    let streamed = false;
+
+    outputStream.once('head', (head) => {
+      statusCode = head.statusCode;
+      headers = head.headers;
+
+      if (this.runtime === 'custom') {
+        res.status(statusCode);
+        res.set(headers);
+      } else if (is2xxStatusCode(statusCode)) {
+        this._setHttpTriggerHeaders(res, statusCode, headers);
+      } else {
+        return;
+      }
+
+      if (!res.getHeader('Content-Type')) {
+        res.setHeader('Content-Type', 'application/octet-stream');
+      }
+
+      streamed = true;
+      outputStream.body.pipe(res);
+    });
+
+    const chunks = [];
+    outputStream.body.on('data', (chunk) => {
+      if (!streamed) { chunks.push(chunk); }
+    });
+
+    return new Promise((resolve) => {
+      outputStream.body.once('end', () => {
+        const errorResponse = errorStream.toString();
+
+        if (streamed) {
+          if (errorResponse) {
+            console.log(red(errorResponse));
+          }
+        } else {
+          const { billedTime, memoryUsage } = outputStream.executionInfo;
+          const body = _.isEmpty(chunks) ? null : Buffer.concat(chunks);
+          this._responseError(res, errorResponse, statusCode, body, billedTime, memoryUsage);
+        }
+        resolve();
+      });
+    });
+  }
+
+  _setHttpTriggerHeaders(res, statusCode, headers) {
+    const base64HttpParams = headers[FC_HTTP_PARAMS];
+
+    const httpParams = parseHttpTriggerHeaders(base64HttpParams) || {};
+
+    res.status(httpParams.status || statusCode);
+
+    const httpParamsHeaders = httpParams.headersMap || httpParams.headers || headers;
+    for (const headerKey in httpParamsHeaders) {
+      if (!{}.hasOwnProperty.call(httpParamsHeaders, headerKey)) { continue; }
+
+      const headerValue = httpParamsHeaders[headerKey];
+
+      if (validateHeader(headerKey, headerValue)) {
+        res.setHeader(headerKey, headerValue);
+      }
+    }
+  }
+
+  _responseError(res, errorResponse, statusCode, body, billedTime, memoryUsage) {
+    console.log(red(errorResponse));
+    console.log(red(body));
+
+    res.status(statusCode || 500);
+    res.setHeader('Content-Type', 'application/json');
+
+    if (body) {
+      res.send(body);
+    } else {
+      res.send({
+        'errorMessage': `Process exited unexpectedly before completing request (duration: ${billedTime}ms, maxMemoryUsage: ${memoryUsage}MB)`
+      });
+    }
+  }
+
   // responseHttpTriggers
   response(outputStream, errorStream, res) {
     // todo: real-time processing ?
@@ -286,22 +533,7 @@ class HttpInvoke extends Invoke {
     } else { // non custom http request
       // it's function status code and is not http trigger response status code
       if (is2xxStatusCode(statusCode)) {
-        const base64HttpParams = headers[FC_HTTP_PARAMS];
-
-        const httpParams = parseHttpTriggerHeaders(base64HttpParams) || {};
-
-        res.status(httpParams.status || statusCode);
-
-        const httpParamsHeaders = httpParams.headersMap || httpParams.headers || headers;
-        for (const headerKey in httpParamsHeaders) {
-          if (!{}.hasOwnProperty.call(httpParamsHeaders, headerKey)) { continue; }
-
-          const headerValue = httpParamsHeaders[headerKey];
-
-          if (validateHeader(headerKey, headerValue)) {
-            res.setHeader(headerKey, headerValue);
-          }
-        }
+        this._setHttpTriggerHeaders(res, statusCode, headers);
         res.send(body);
 
         if (errorResponse) {
@@ -309,19 +541,7 @@ class HttpInvoke extends Invoke {
         }
 
       } else {
-        console.log(red(errorResponse));
-        console.log(red(body));
-
-        res.status(statusCode || 500);
-        res.setHeader('Content-Type', 'application/json');
-
-        if (body) {
-          res.send(body);
-        } else {
-          res.send({
-            'errorMessage': `Process exited unexpectedly before completing request (duration: ${billedTime}ms, maxMemoryUsage: ${memoryUsage}MB)`
-          });
-        }
+        this._responseError(res, errorResponse, statusCode, body, billedTime, memoryUsage);
       }
     }
   }
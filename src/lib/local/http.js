@@ -7,6 +7,8 @@ const FC = require('@alicloud/fc2');
 const debug = require('debug')('fun:local');
 const { parseHeaders, parseStatusLine } = require('http-string-parser');
 const rp = require('request-promise');
+const { Writable, PassThrough } = require('stream');
+const { StringDecoder } = require('string_decoder');
 // rp.debug = true;
 const { red } = require('colors');
 const { sleep } = require('../time');
@@ -114,6 +116,13 @@ function parseHttpTriggerHeaders(base64Headers) {
   return headers;
 }
 
+const RESPONSE_BEGIN = '--------------------response begin-----------------';
+const RESPONSE_END = '--------------------response end-----------------';
+const EXECUTION_INFO_BEGIN = '--------------------execution info begin-----------------';
+const EXECUTION_INFO_END = '--------------------execution info end-----------------';
+
+const HEADERS_END = '\r\n\r\n';
+
 function filterFunctionResponseAndExecutionInfo(response) {
   let responseBegin = false;
   let executionInfoBegin = false;
@@ -124,16 +133,16 @@ function filterFunctionResponseAndExecutionInfo(response) {
   debug('response is');
   for (let line of response) {
     debug(line);
-    if (line.startsWith('--------------------response begin-----------------')) {
+    if (line.startsWith(RESPONSE_BEGIN)) {
       responseBegin = true;
       continue;
-    } else if (line.startsWith('--------------------response end-----------------')) {
+    } else if (line.startsWith(RESPONSE_END)) {
       responseBegin = false;
       continue;
-    } else if (line.startsWith('--------------------execution info begin-----------------')) {
+    } else if (line.startsWith(EXECUTION_INFO_BEGIN)) {
       executionInfoBegin = true;
       continue;
-    } else if (line.startsWith('--------------------execution info end-----------------')) {
+    } else if (line.startsWith(EXECUTION_INFO_END)) {
       executionInfoBegin = false;
       continue;
     }
@@ -177,6 +186,21 @@ function parseResponse(responseString) {
   return response;
 }
 
+function parseExecutionInfo(executionRawInfo) {
+  const rawExecutionInfo = Buffer.from(executionRawInfo, 'base64').toString();
+  const infos = rawExecutionInfo.split('\n');
+
+  const executionInfo = {
+    requestId: infos[0],
+    billedTime: infos[1],
+    memoryLimit: infos[2],
+    memoryUsage: infos[3]
+  };
+
+  debug('exectionInfo: %j', executionInfo);
+  return executionInfo;
+}
+
 function parseOutputStream(outputStream) {
   // 这里的 outputStream 包含 mock.sh 原始内容，以及 base64 后的 curl 的 response，因此可以直接按照 utf8 toString
   const response = outputStream.toString().split('\n');
@@ -195,19 +219,7 @@ function parseOutputStream(outputStream) {
 
   // parse requestId
 
-  const executionInfo = {};
-
-  if (executionInfo) {
-    const rawExecutionInfo = Buffer.from(executionRawInfo, 'base64').toString();
-    const infos = rawExecutionInfo.split('\n');
-
-    executionInfo.requestId = infos[0];
-    executionInfo.billedTime = infos[1];
-    executionInfo.memoryLimit = infos[2];
-    executionInfo.memoryUsage = infos[3];
-
-    debug('exectionInfo: %j', executionInfo);
-  }
+  const executionInfo = parseExecutionInfo(executionRawInfo);
 
   return Object.assign({
     statusCode: parsedResponse.statusCode,
@@ -216,6 +228,151 @@ function parseOutputStream(outputStream) {
   }, executionInfo);
 }
 
+// The streaming counterpart of parseOutputStream.
+// The output of mock.sh is parsed as it arrives: the base64 response is decoded in groups of 4 characters,
+// 'head' is emitted with the status code and headers as soon as the blank line after them is decoded,
+// and the body is written to this.body. The output is not consumed further while this.body is full,
+// so that a slow client slows down the function instead of the whole body being buffered in memory.
+class HttpOutputStream extends Writable {
+  constructor() {
+    super();
+
+    this.body = new PassThrough();
+    this.executionInfo = {};
+
+    this._decoder = new StringDecoder('utf8');
+    this._line = '';
+    this._section = null;
+    this._base64 = '';
+    this._head = Buffer.alloc(0);
+    this._executionRawInfo = '';
+  }
+
+  _write(chunk, encoding, callback) {
+    this._line += this._decoder.write(chunk);
+
+    let index;
+    while ((index = this._line.indexOf('\n')) !== -1) {
+      const line = this._line.substring(0, index);
+      this._line = this._line.substring(index + 1);
+      this._onLine(line);
+    }
+
+    // base64 lines may be very long, decode them before they end. markers start with '-', which is not base64
+    if (this._section === 'response' && this._line && !this._line.startsWith('-')) {
+      this._onBase64(this._line);
+      this._line = '';
+    }
+
+    this._waitForBody(callback);
+  }
+
+  _final(callback) {
+    const rest = this._line + this._decoder.end();
+    this._line = '';
+    if (rest) { this._onLine(rest); }
+
+    this._endResponse();
+    this._endBody();
+    this._waitForBody(callback);
+  }
+
+  _waitForBody(callback) {
+    if (this._bodyFull) {
+      this.body.once('drain', () => {
+        this._bodyFull = false;
+        callback();
+      });
+    } else {
+      callback();
+    }
+  }
+
+  _onLine(line) {
+    debug(line);
+    if (line.startsWith(RESPONSE_BEGIN)) {
+      this._section = 'response';
+    } else if (line.startsWith(RESPONSE_END)) {
+      this._endResponse();
+    } else if (line.startsWith(EXECUTION_INFO_BEGIN)) {
+      this._section = 'executionInfo';
+    } else if (line.startsWith(EXECUTION_INFO_END)) {
+      this._section = null;
+      this.executionInfo = parseExecutionInfo(this._executionRawInfo);
+      this._endBody();
+    } else if (this._section === 'response') {
+      this._onBase64(line);
+    } else if (this._section === 'executionInfo') {
+      this._executionRawInfo = line;
+    } else {
+      console.log(line);
+    }
+  }
+
+  _onBase64(text) {
+    const chars = this._base64 + text.replace(/\s/g, '');
+    const length = chars.length - chars.length % 4;
+
+    this._base64 = chars.substring(length);
+    if (length) {
+      this._onResponseBytes(Buffer.from(chars.substring(0, length), 'base64'));
+    }
+  }
+
+  _onResponseBytes(bytes) {
+    if (!this._head) {
+      this._writeBody(bytes);
+      return;
+    }
+
+    this._head = Buffer.concat([this._head, bytes]);
+
+    const end = this._head.indexOf(HEADERS_END);
+    if (end !== -1) {
+      const rest = this._head.slice(end + HEADERS_END.length);
+      this._emitHead(this._head.toString('binary', 0, end));
+      this._writeBody(rest);
+    }
+  }
+
+  _emitHead(rawHead) {
+    this._head = null;
+
+    // headers are kept as binary like parseOutputStream does
+    const { statusCode, headers } = parseResponse(rawHead + HEADERS_END);
+    this.emit('head', { statusCode, headers });
+  }
+
+  _endResponse() {
+    if (this._section !== 'response') { return; }
+    this._section = null;
+
+    if (this._base64) {
+      const rest = this._base64;
+      this._base64 = '';
+      this._onResponseBytes(Buffer.from(rest, 'base64'));
+    }
+
+    // the response has no body
+    if (this._head && this._head.length) {
+      this._emitHead(this._head.toString('binary').replace(/(\r\n)*$/, ''));
+    }
+  }
+
+  _writeBody(bytes) {
+    if (bytes.length && !this.body.write(bytes)) {
+      this._bodyFull = true;
+    }
+  }
+
+  _endBody() {
+    if (!this._bodyEnded) {
+      this._bodyEnded = true;
+      this.body.end();
+    }
+  }
+}
+
 function validateHeader(headerKey, headerValue) {
 
   if (!headerKey.trim() || !headerFieldRe.test(headerKey)) {
@@ -348,7 +505,7 @@ function generateRequestOpts(req, port, fcReqHeaders, event) {
 
 module.exports = {
   generateHttpParams, getHttpRawBody,
-  validateSignature, parseOutputStream,
+  validateSignature, parseOutputStream, parseExecutionInfo, HttpOutputStream,
   parseHttpTriggerHeaders, validateHeader, filterFunctionResponseAndExecutionInfo,
   normalizeMultiValues, normalizeRawHeaders,
   parseResponse, getFcReqHeaders, requestUntilServerUp, 
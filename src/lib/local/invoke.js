@@ -92,6 +92,12 @@ class Invoke {
       allMount.push(this.debuggerMount);
     }
 
+    // mounted after /tmp, the profile directory is inside it
+    if (this.profile) {
+      await this.profile.init();
+      allMount.push(...this.profile.mounts());
+    }
+
     const isDockerToolBox = await docker.isDockerToolBoxAndEnsureDockerVersion();
 
     if (isDockerToolBox) {
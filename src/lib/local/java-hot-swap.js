@@ -0,0 +1,305 @@
+'use strict';
+
+const fs = require('fs-extra');
+const net = require('net');
+const path = require('path');
+const debug = require('debug')('fun:local:hot-swap');
+
+const _ = require('lodash');
+
+const HOT_SWAP_RUNTIMES = ['java8', 'java11'];
+
+// changes of these files could not be applied by redefining classes
+const RESTART_FILES = ['pom.xml'];
+const RESTART_EXTENSIONS = ['.jar', '.war', '.zip'];
+
+const HANDSHAKE = 'JDWP-Handshake';
+const HEADER_LENGTH = 11;
+const REPLY_FLAG = 0x80;
+
+const VIRTUAL_MACHINE = 1;
+const CLASSES_BY_SIGNATURE = 2;
+const DISPOSE = 6;
+const ID_SIZES = 7;
+const REDEFINE_CLASSES = 18;
+
+// https://docs.oracle.com/javase/8/docs/platform/jpda/jdwp/jdwp-protocol.html#JDWP_Error
+const JDWP_ERRORS = {
+  60: 'INVALID_CLASS_FORMAT',
+  62: 'FAILS_VERIFICATION',
+  63: 'ADD_METHOD_NOT_IMPLEMENTED',
+  64: 'SCHEMA_CHANGE_NOT_IMPLEMENTED',
+  66: 'HIERARCHY_CHANGE_NOT_IMPLEMENTED',
+  67: 'DELETE_METHOD_NOT_IMPLEMENTED',
+  68: 'UNSUPPORTED_VERSION',
+  70: 'CLASS_MODIFIERS_CHANGE_NOT_IMPLEMENTED',
+  71: 'METHOD_MODIFIERS_CHANGE_NOT_IMPLEMENTED',
+  99: 'NOT_IMPLEMENTED'
+};
+
+function isHotSwapSupported(runtime) {
+  return _.includes(HOT_SWAP_RUNTIMES, runtime);
+}
+
+// the jdwp agent of the runtime jvm, which does not wait for a debugger to attach
+function generateHotSwapDebugOptions(runtime, port) {
+  // since java 9 the agent only listens on localhost unless a host is given
+  const address = runtime === 'java8' ? `${port}` : `*:${port}`;
+  return `-agentlib:jdwp=transport=dt_socket,server=y,suspend=n,quiet=y,address=${address}`;
+}
+
+// a free port on the host, bound to the same port of the container
+function getFreePort() {
+  return new Promise((resolve, reject) => {
+    const server = net.createServer();
+    server.unref();
+    server.on('error', reject);
+    server.listen(0, () => {
+      const { port } = server.address();
+      server.close(() => resolve(port));
+    });
+  });
+}
+
+function requiresRestart(changedFile) {
+  return _.includes(RESTART_FILES, path.basename(changedFile))
+    || _.includes(RESTART_EXTENSIONS, path.extname(changedFile));
+}
+
+// reads this_class from the constant pool, see https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html
+function readClassName(bytes) {
+  if (bytes.readUInt32BE(0) !== 0xCAFEBABE) {
+    throw new Error('not a class file');
+  }
+
+  const count = bytes.readUInt16BE(8);
+  const utf8s = {};
+  const classes = {};
+
+  let offset = 10;
+  for (let i = 1; i < count; i++) {
+    const tag = bytes.readUInt8(offset);
+    switch (tag) {
+    case 1: { // Utf8
+      const length = bytes.readUInt16BE(offset + 1);
+      utf8s[i] = bytes.toString('utf8', offset + 3, offset + 3 + length);
+      offset += 3 + length;
+      break;
+    }
+    case 7: // Class
+      classes[i] = bytes.readUInt16BE(offset + 1);
+      offset += 3;
+      break;
+    case 8: // String
+    case 16: // MethodType
+    case 19: // Module
+    case 20: // Package
+      offset += 3;
+      break;
+    case 15: // MethodHandle
+      offset += 4;
+      break;
+    case 3: // Integer
+    case 4: // Float
+    case 9: // Fieldref
+    case 10: // Methodref
+    case 11: // InterfaceMethodref
+    case 12: // NameAndType
+    case 17: // Dynamic
+    case 18: // InvokeDynamic
+      offset += 5;
+      break;
+    case 5: // Long
+    case 6: // Double
+      offset += 9;
+      i++; // takes two entries
+      break;
+    default:
+      throw new Error(`unknown constant pool tag ${tag}`);
+    }
+  }
+
+  // access_flags, then this_class
+  const thisClass = bytes.readUInt16BE(offset + 2);
+  return utf8s[classes[thisClass]];
+}
+
+class JdwpClient {
+  constructor(socket) {
+    this.socket = socket;
+    this.nextId = 1;
+    this.pending = new Map();
+    this.buffer = Buffer.alloc(0);
+
+    socket.on('data', (data) => this._onData(data));
+    socket.on('error', (error) => this._failAll(error));
+    socket.on('close', () => this._failAll(new Error('jdwp connection closed')));
+  }
+
+  static connect(host, port) {
+    return new Promise((resolve, reject) => {
+      const socket = net.connect(port, host);
+      socket.once('error', reject);
+      socket.once('connect', () => {
+        socket.write(HANDSHAKE);
+
+        let received = Buffer.alloc(0);
+        const onHandshake = (data) => {
+          received = Buffer.concat([received, data]);
+          if (received.length < HANDSHAKE.length) { return; }
+
+          socket.removeListener('data', onHandshake);
+          socket.removeListener('error', reject);
+
+          if (received.toString('ascii', 0, HANDSHAKE.length) !== HANDSHAKE) {
+            socket.destroy();
+            reject(new Error('invalid jdwp handshake'));
+            return;
+          }
+
+          const client = new JdwpClient(socket);
+          if (received.length > HANDSHAKE.length) {
+            client._onData(received.slice(HANDSHAKE.length));
+          }
+          resolve(client);
+        };
+        socket.on('data', onHandshake);
+      });
+    });
+  }
+
+  _onData(data) {
+    this.buffer = Buffer.concat([this.buffer, data]);
+
+    while (this.buffer.length >= HEADER_LENGTH) {
+      const length = this.buffer.readUInt32BE(0);
+      if (this.buffer.length < length) { return; }
+
+      const packet = this.buffer.slice(0, length);
+      this.buffer = this.buffer.slice(length);
+
+      const id = packet.readUInt32BE(4);
+      const flags = packet.readUInt8(8);
+
+      // events sent by the vm, such as VM_START, are not requested and ignored
+      if (!(flags & REPLY_FLAG) || !this.pending.has(id)) { continue; }
+
+      const { resolve, reject } = this.pending.get(id);
+      this.pending.delete(id);
+
+      const errorCode = packet.readUInt16BE(9);
+      if (errorCode) {
+        const error = new Error(`jdwp error ${JDWP_ERRORS[errorCode] || errorCode}`);
+        error.code = errorCode;
+        reject(error);
+      } else {
+        resolve(packet.slice(HEADER_LENGTH));
+      }
+    }
+  }
+
+  _failAll(error) {
+    for (const { reject } of this.pending.values()) {
+      reject(error);
+    }
+    this.pending.clear();
+  }
+
+  command(commandSet, command, data = Buffer.alloc(0)) {
+    const id = this.nextId++;
+
+    const header = Buffer.alloc(HEADER_LENGTH);
+    header.writeUInt32BE(HEADER_LENGTH + data.length, 0);
+    header.writeUInt32BE(id, 4);
+    header.writeUInt8(0, 8);
+    header.writeUInt8(commandSet, 9);
+    header.writeUInt8(command, 10);
+
+    return new Promise((resolve, reject) => {
+      this.pending.set(id, { resolve, reject });
+      this.socket.write(Buffer.concat([header, data]));
+    });
+  }
+
+  async idSizes() {
+    const reply = await this.command(VIRTUAL_MACHINE, ID_SIZES);
+    this.referenceTypeIdSize = reply.readInt32BE(12);
+  }
+
+  // returns the ids of the loaded classes with the name, there may be one per class loader
+  async classesBySignature(className) {
+    const signature = Buffer.from(`L${className};`, 'utf8');
+    const data = Buffer.alloc(4 + signature.length);
+    data.writeInt32BE(signature.length, 0);
+    signature.copy(data, 4);
+
+    const reply = await this.command(VIRTUAL_MACHINE, CLASSES_BY_SIGNATURE, data);
+
+    const ids = [];
+    let offset = 4;
+    for (let i = 0; i < reply.readInt32BE(0); i++) {
+      offset += 1; // refTypeTag
+      ids.push(reply.slice(offset, offset + this.referenceTypeIdSize));
+      offset += this.referenceTypeIdSize + 4; // status
+    }
+    return ids;
+  }
+
+  async redefineClasses(classes) {
+    const buffers = [Buffer.alloc(4)];
+    buffers[0].writeInt32BE(classes.length, 0);
+
+    for (const { id, bytes } of classes) {
+      const length = Buffer.alloc(4);
+      length.writeInt32BE(bytes.length, 0);
+      buffers.push(id, length, bytes);
+    }
+    await this.command(VIRTUAL_MACHINE, REDEFINE_CLASSES, Buffer.concat(buffers));
+  }
+
+  async dispose() {
+    try {
+      await this.command(VIRTUAL_MACHINE, DISPOSE);
+    } finally {
+      this.socket.destroy();
+    }
+  }
+}
+
+async function readClassFiles(classFiles) {
+  return await Promise.all(classFiles.map(async (file) => {
+    const bytes = await fs.readFile(file);
+    return { file, bytes, className: readClassName(bytes) };
+  }));
+}
+
+// redefines the loaded classes of the jvm listening on host:port, classes that are not loaded yet
+// will be read from the mounted code when they are first used.
+async function redefineClasses(host, port, classFiles) {
+  const classes = await readClassFiles(classFiles);
+
+  const client = await JdwpClient.connect(host, port);
+  try {
+    await client.idSizes();
+
+    const redefinitions = [];
+    for (const { className, bytes } of classes) {
+      for (const id of await client.classesBySignature(className)) {
+        redefinitions.push({ id, bytes });
+      }
+    }
+
+    if (!_.isEmpty(redefinitions)) {
+      await client.redefineClasses(redefinitions);
+    }
+    debug(`redefined ${redefinitions.length} classes on ${host}:${port}`);
+    return redefinitions.length;
+  } finally {
+    await client.dispose().catch(error => debug('dispose jdwp connection error: %s', error));
+  }
+}
+
+module.exports = {
+  isHotSwapSupported, generateHotSwapDebugOptions, getFreePort, requiresRestart,
+  readClassName, redefineClasses, JdwpClient
+};
@@ -0,0 +1,158 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const debug = require('debug')('fun:local:profile');
+
+const { DEFAULT_PROFILE_PATH_SUFFIX } = require('../tpl');
+const { readSamples, toCollapsed, topFrames } = require('./jfr');
+const { green, yellow } = require('colors');
+
+const _ = require('lodash');
+
+const PROFILE_RUNTIMES = ['java8', 'java11'];
+
+// the recordings are written into the profile directory of the function on the host through this mount
+const CONTAINER_PROFILE_DIR = '/tmp/fun-profile';
+const CONTAINER_ASYNC_PROFILER_DIR = '/opt/fun-async-profiler';
+
+// async-profiler 2.x builds its library into build, 3.x into lib
+const ASYNC_PROFILER_LIBS = ['lib/libasyncProfiler.so', 'build/libasyncProfiler.so'];
+
+function isProfileSupported(runtime) {
+  return _.includes(PROFILE_RUNTIMES, runtime);
+}
+
+async function resolveAsyncProfilerLib(asyncProfilerPath) {
+  for (const lib of ASYNC_PROFILER_LIBS) {
+    if (await fs.pathExists(path.join(asyncProfilerPath, lib))) {
+      return lib;
+    }
+  }
+  throw new Error(`could not find ${ASYNC_PROFILER_LIBS.join(' or ')} in ${asyncProfilerPath}, it should be a linux build of async-profiler.`);
+}
+
+// Records the jvm of every container started for a function, with JDK Flight Recorder or the async-profiler agent.
+// The jvm writes its recording when it exits, which is then folded into collapsed stacks next to it.
+class JavaProfile {
+  constructor(outputDir, { asyncProfilerPath = null } = {}) {
+    this.outputDir = outputDir;
+    this.asyncProfilerPath = asyncProfilerPath ? path.resolve(asyncProfilerPath) : null;
+    this.recordings = [];
+  }
+
+  async init() {
+    await fs.ensureDir(this.outputDir);
+    if (this.asyncProfilerPath) {
+      this.asyncProfilerLib = await resolveAsyncProfilerLib(this.asyncProfilerPath);
+    }
+  }
+
+  mounts() {
+    const mounts = [{
+      Type: 'bind',
+      Source: this.outputDir,
+      Target: CONTAINER_PROFILE_DIR,
+      ReadOnly: false
+    }];
+
+    if (this.asyncProfilerPath) {
+      mounts.push({
+        Type: 'bind',
+        Source: this.asyncProfilerPath,
+        Target: CONTAINER_ASYNC_PROFILER_DIR,
+        ReadOnly: true
+      });
+    }
+    return mounts;
+  }
+
+  _jvmOptions(recording) {
+    const file = `${CONTAINER_PROFILE_DIR}/${recording}.jfr`;
+    if (this.asyncProfilerLib) {
+      // itimer doesn't need perf events, which are denied by the default seccomp profile of docker
+      return `-agentpath:${CONTAINER_ASYNC_PROFILER_DIR}/${this.asyncProfilerLib}=start,event=itimer,alloc,jfr,file=${file}`;
+    }
+    return `-XX:StartFlightRecording=settings=profile,dumponexit=true,filename=${file}`;
+  }
+
+  // the envs of a container recording into its own file, the runtimes pass DEBUG_OPTIONS to the jvm
+  applyTo(envs, recording) {
+    this.recordings.push(recording);
+
+    const debugOptions = _.compact([envs.DEBUG_OPTIONS, this._jvmOptions(recording)]).join(' ');
+    return Object.assign({}, envs, { DEBUG_OPTIONS: debugOptions });
+  }
+
+  async _fold(recording) {
+    const jfrPath = path.join(this.outputDir, `${recording}.jfr`);
+    if (!await fs.pathExists(jfrPath)) {
+      console.warn(yellow(`no recording found at ${jfrPath}, the jvm writes it only when it exits normally.`));
+      return;
+    }
+
+    const samples = readSamples(await fs.readFile(jfrPath));
+    const collapsedPaths = [];
+    for (const kind of _.keys(samples)) {
+      if (samples[kind].size) {
+        const collapsedPath = path.join(this.outputDir, `${recording}.${kind}.collapsed`);
+        await fs.writeFile(collapsedPath, toCollapsed(samples[kind]));
+        collapsedPaths.push(collapsedPath);
+      }
+    }
+    debug(`${recording}: ${samples.cpu.size} cpu stacks, ${samples.alloc.size} allocation stacks`);
+
+    printProfile(recording, samples);
+    console.log(green(`  recording is saved to ${jfrPath}`));
+    for (const collapsedPath of collapsedPaths) {
+      console.log(green(`  collapsed stacks are saved to ${collapsedPath}`));
+    }
+  }
+
+  // folds the recordings of stopped containers, all the recordings not folded yet by default
+  async collect(recordings = this.recordings.slice()) {
+    this.recordings = _.difference(this.recordings, recordings);
+
+    for (const recording of recordings) {
+      try {
+        await this._fold(recording);
+      } catch (error) {
+        console.error(`read recording ${recording} error: ${error.message}`);
+      }
+    }
+  }
+}
+
+function printProfile(recording, { cpu, alloc }) {
+  const sum = stacks => _.sum(Array.from(stacks.values()));
+
+  console.log(`\nprofile of ${recording}: ${sum(cpu)} cpu samples, ${_.round(sum(alloc) / 1024 / 1024, 1)} MB of sampled allocations`);
+  const printTop = (title, stacks) => {
+    if (!stacks.size) { return; }
+    console.log(`  ${title}:`);
+    for (const { frame, percent } of topFrames(stacks, 5)) {
+      console.log(`    ${_.padStart(percent.toFixed(1), 5)}%  ${frame}`);
+    }
+  };
+  printTop('hot methods', cpu);
+  printTop('allocation sites', alloc);
+}
+
+// the profile options of the commands, --async-profiler implies --profile
+function getProfileOptions(options = {}) {
+  if (!options.profile && !options.asyncProfiler) { return null; }
+  return { asyncProfilerPath: options.asyncProfiler || null };
+}
+
+// null if the function could not be profiled, only the jvm runtimes are supported
+function createJavaProfile(baseDir, serviceName, functionName, runtime, options) {
+  if (!options) { return null; }
+
+  if (!isProfileSupported(runtime)) {
+    console.warn(yellow(`skip profiling ${serviceName}/${functionName}, the runtime ${runtime} is not one of ${PROFILE_RUNTIMES.join(', ')}.`));
+    return null;
+  }
+  return new JavaProfile(path.join(baseDir, DEFAULT_PROFILE_PATH_SUFFIX, serviceName, functionName), options);
+}
+
+module.exports = { JavaProfile, createJavaProfile, getProfileOptions, isProfileSupported };
@@ -0,0 +1,381 @@
+'use strict';
+
+const debug = require('debug')('fun:local:jfr');
+
+const _ = require('lodash');
+
+// A reader of the samples in JDK Flight Recorder files, both those of the jvm and those written by async-profiler.
+// See the chunk layout in jdk.jfr.internal.consumer.ChunkHeader and jdk.jfr.internal.MetadataReader of OpenJDK.
+const MAGIC = 'FLR\0';
+const HEADER_SIZE = 68;
+const COMPRESSED_INTS = 1;
+
+const METADATA_EVENT = 0;
+const CONSTANT_POOL_EVENT = 1;
+
+// the frame of the allocated class on top of an allocation stack, as async-profiler names it
+const ALLOC_SUFFIX = '_[k]';
+
+// the weight of an allocation sample is the number of bytes it stands for
+const SAMPLE_EVENTS = {
+  'jdk.ExecutionSample': { kind: 'cpu', weight: () => 1 },
+  'jdk.ObjectAllocationInNewTLAB': { kind: 'alloc', weight: event => event.tlabSize },
+  'jdk.ObjectAllocationOutsideTLAB': { kind: 'alloc', weight: event => event.allocationSize },
+  'jdk.ObjectAllocationSample': { kind: 'alloc', weight: event => event.weight }
+};
+
+class ChunkReader {
+  constructor(buffer, offset, compressed) {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.compressed = compressed;
+  }
+
+  readByte() {
+    return this.buffer.readInt8(this.offset++);
+  }
+
+  // integers are LEB128 encoded when compressed, the ninth byte holds all of its 8 bits. The low 28 and the high
+  // 36 bits are decoded apart, so that negative longs like the deltas of constant pools stay exact.
+  _readVarlong() {
+    let low = 0;
+    let high = 0;
+    for (let i = 0; i < 8; i++) {
+      const b = this.buffer[this.offset++];
+      if (i < 4) {
+        low += (b & 0x7f) * Math.pow(2, 7 * i);
+      } else {
+        high += (b & 0x7f) * Math.pow(2, 7 * (i - 4));
+      }
+      if (!(b & 0x80)) { return high * Math.pow(2, 28) + low; }
+    }
+    high += this.buffer[this.offset++] * Math.pow(2, 28);
+    if (high >= Math.pow(2, 35)) {
+      high -= Math.pow(2, 36);
+    }
+    return high * Math.pow(2, 28) + low;
+  }
+
+  readShort() {
+    if (this.compressed) { return this._readVarlong(); }
+    const value = this.buffer.readInt16BE(this.offset);
+    this.offset += 2;
+    return value;
+  }
+
+  readInt() {
+    if (this.compressed) { return this._readVarlong(); }
+    const value = this.buffer.readInt32BE(this.offset);
+    this.offset += 4;
+    return value;
+  }
+
+  readLong() {
+    if (this.compressed) { return this._readVarlong(); }
+    const value = this.buffer.readInt32BE(this.offset) * Math.pow(2, 32) + this.buffer.readUInt32BE(this.offset + 4);
+    this.offset += 8;
+    return value;
+  }
+
+  readFloat() {
+    const value = this.buffer.readFloatBE(this.offset);
+    this.offset += 4;
+    return value;
+  }
+
+  readDouble() {
+    const value = this.buffer.readDoubleBE(this.offset);
+    this.offset += 8;
+    return value;
+  }
+
+  // strings refer to the constant pool of java.lang.String when their encoding is 2
+  readString() {
+    const encoding = this.readByte();
+    switch (encoding) {
+    case 0:
+      return null;
+    case 1:
+      return '';
+    case 2:
+      return { ref: this.readLong() };
+    case 3:
+    case 5: {
+      const length = this.readInt();
+      const value = this.buffer.toString(encoding === 3 ? 'utf8' : 'latin1', this.offset, this.offset + length);
+      this.offset += length;
+      return value;
+    }
+    case 4: {
+      const length = this.readInt();
+      let value = '';
+      for (let i = 0; i < length; i++) {
+        value += String.fromCharCode(this.readShort());
+      }
+      return value;
+    }
+    default:
+      throw new Error(`invalid string encoding ${encoding} at ${this.offset - 1}`);
+    }
+  }
+}
+
+// the metadata is a tree of elements, whose names and attributes are indexes of the strings before it
+function readElement(reader, strings) {
+  const element = { name: strings[reader.readInt()], attributes: {}, children: [] };
+
+  const attributeCount = reader.readInt();
+  for (let i = 0; i < attributeCount; i++) {
+    element.attributes[strings[reader.readInt()]] = strings[reader.readInt()];
+  }
+
+  const childCount = reader.readInt();
+  for (let i = 0; i < childCount; i++) {
+    element.children.push(readElement(reader, strings));
+  }
+  return element;
+}
+
+function readMetadata(reader) {
+  reader.readInt(); // size
+  reader.readLong(); // type
+  reader.readLong(); // start time
+  reader.readLong(); // duration
+  reader.readLong(); // metadata id
+
+  const strings = [];
+  const stringCount = reader.readInt();
+  for (let i = 0; i < stringCount; i++) {
+    strings.push(reader.readString());
+  }
+
+  const types = new Map();
+  const root = readElement(reader, strings);
+  const classes = _.flatMap(root.children.filter(child => child.name === 'metadata'), metadata => metadata.children);
+  for (const element of classes.filter(child => child.name === 'class')) {
+    const { id, name, simpleType } = element.attributes;
+    types.set(Number(id), {
+      name,
+      simpleType: simpleType === 'true',
+      fields: element.children.filter(child => child.name === 'field').map(field => ({
+        name: field.attributes.name,
+        type: Number(field.attributes.class),
+        constantPool: field.attributes.constantPool === 'true',
+        array: field.attributes.dimension === '1'
+      }))
+    });
+  }
+  return types;
+}
+
+function readValue(reader, types, typeId) {
+  const type = types.get(typeId);
+  if (!type) {
+    throw new Error(`unknown type ${typeId} at ${reader.offset}`);
+  }
+
+  switch (type.name) {
+  case 'boolean':
+    return reader.readByte() !== 0;
+  case 'byte':
+    return reader.readByte();
+  case 'char':
+  case 'short':
+    return reader.readShort();
+  case 'int':
+    return reader.readInt();
+  case 'long':
+    return reader.readLong();
+  case 'float':
+    return reader.readFloat();
+  case 'double':
+    return reader.readDouble();
+  case 'java.lang.String':
+    return reader.readString();
+  }
+
+  const value = {};
+  for (const field of type.fields) {
+    const readField = () => field.constantPool ? { ref: reader.readLong() } : readValue(reader, types, field.type);
+    if (field.array) {
+      const count = reader.readInt();
+      value[field.name] = _.times(count, readField);
+    } else {
+      value[field.name] = readField();
+    }
+  }
+  return value;
+}
+
+// the constant pool events are linked from the last one by their deltas, values may refer to later pools
+function readConstantPools(buffer, chunkStart, cpOffset, compressed, types) {
+  const pools = new Map();
+
+  let offset = cpOffset;
+  for (;;) {
+    const reader = new ChunkReader(buffer, chunkStart + offset, compressed);
+    reader.readInt(); // size
+    reader.readLong(); // type
+    reader.readLong(); // start time
+    reader.readLong(); // duration
+    const delta = reader.readLong();
+    reader.readByte(); // flush or type mask
+
+    const poolCount = reader.readInt();
+    for (let i = 0; i < poolCount; i++) {
+      const typeId = reader.readLong();
+      const pool = pools.get(typeId) || new Map();
+      pools.set(typeId, pool);
+
+      const count = reader.readInt();
+      for (let j = 0; j < count; j++) {
+        const id = reader.readLong();
+        pool.set(id, readValue(reader, types, typeId));
+      }
+    }
+
+    if (!delta) { break; }
+    offset += delta;
+  }
+  return pools;
+}
+
+class Chunk {
+  constructor(types, pools) {
+    this.types = types;
+    this.pools = pools;
+    this.typeIds = new Map(Array.from(types.entries()).map(([id, type]) => [type.name, id]));
+    this.frameNames = new Map();
+  }
+
+  constant(typeName, value) {
+    if (!value || value.ref === undefined) { return value; }
+    const pool = this.pools.get(this.typeIds.get(typeName));
+    return pool ? pool.get(value.ref) : undefined;
+  }
+
+  string(value) {
+    return value && value.ref !== undefined ? this.constant('java.lang.String', value) : value;
+  }
+
+  symbol(value) {
+    const symbol = this.constant('jdk.types.Symbol', value);
+    return symbol ? this.string(symbol.string) : null;
+  }
+
+  className(value) {
+    const clazz = this.constant('java.lang.Class', value);
+    const name = clazz ? this.symbol(clazz.name) : null;
+    return name ? name.replace(/\//g, '.') : 'unknown';
+  }
+
+  frameName(methodRef) {
+    const key = methodRef && methodRef.ref;
+    if (!this.frameNames.has(key)) {
+      const method = this.constant('jdk.types.Method', methodRef);
+      const name = method ? `${this.className(method.type)}.${this.symbol(method.name)}` : 'unknown';
+      this.frameNames.set(key, name);
+    }
+    return this.frameNames.get(key);
+  }
+
+  // the frames of a stack trace from the top one
+  stack(stackTraceRef) {
+    const stackTrace = this.constant('jdk.types.StackTrace', stackTraceRef);
+    if (!stackTrace) { return []; }
+    return stackTrace.frames.map(frame => this.frameName(frame.method));
+  }
+}
+
+function readChunk(buffer, chunkStart, onSample) {
+  const chunkSize = buffer.readUInt32BE(chunkStart + 8) * Math.pow(2, 32) + buffer.readUInt32BE(chunkStart + 12);
+  const cpOffset = buffer.readUInt32BE(chunkStart + 20);
+  const metadataOffset = buffer.readUInt32BE(chunkStart + 28);
+  const compressed = (buffer.readUInt32BE(chunkStart + 64) & COMPRESSED_INTS) !== 0;
+
+  const types = readMetadata(new ChunkReader(buffer, chunkStart + metadataOffset, compressed));
+  const chunk = new Chunk(types, readConstantPools(buffer, chunkStart, cpOffset, compressed, types));
+
+  const sampleTypes = new Map();
+  for (const [id, type] of types.entries()) {
+    if (SAMPLE_EVENTS[type.name]) { sampleTypes.set(id, SAMPLE_EVENTS[type.name]); }
+  }
+
+  let offset = chunkStart + HEADER_SIZE;
+  const end = chunkStart + chunkSize;
+  while (offset < end) {
+    const reader = new ChunkReader(buffer, offset, compressed);
+    const size = reader.readInt();
+    const typeId = reader.readLong();
+
+    const sample = sampleTypes.get(typeId);
+    if (sample && typeId !== METADATA_EVENT && typeId !== CONSTANT_POOL_EVENT) {
+      const event = readValue(reader, types, typeId);
+      const stack = chunk.stack(event.stackTrace);
+      if (sample.kind === 'alloc') {
+        stack.unshift(chunk.className(event.objectClass) + ALLOC_SUFFIX);
+      }
+      onSample(sample.kind, stack, sample.weight(event));
+    }
+
+    if (size <= 0) {
+      throw new Error(`invalid event size ${size} at ${offset}`);
+    }
+    offset += size;
+  }
+  return chunkSize;
+}
+
+// Folds the cpu and allocation samples of a recording into stacks from the root frame, joined by ';', and
+// their weights: the number of cpu samples, or the bytes allocated.
+function readSamples(buffer) {
+  const samples = { cpu: new Map(), alloc: new Map() };
+
+  let chunkStart = 0;
+  while (chunkStart + HEADER_SIZE <= buffer.length) {
+    if (buffer.toString('latin1', chunkStart, chunkStart + 4) !== MAGIC) {
+      throw new Error(`not a JFR file, invalid chunk magic at ${chunkStart}`);
+    }
+    const major = buffer.readUInt16BE(chunkStart + 4);
+    if (major !== 2) {
+      throw new Error(`unsupported JFR version ${major}.${buffer.readUInt16BE(chunkStart + 6)}`);
+    }
+
+    const chunkSize = readChunk(buffer, chunkStart, (kind, stack, weight) => {
+      const folded = stack.slice().reverse().join(';');
+      samples[kind].set(folded, (samples[kind].get(folded) || 0) + (weight || 0));
+    });
+    debug(`read JFR chunk of ${chunkSize} bytes at ${chunkStart}`);
+    chunkStart += chunkSize;
+  }
+  return samples;
+}
+
+// the collapsed stack format of FlameGraph and async-profiler, one 'root;...;leaf weight' line per stack
+function toCollapsed(stacks) {
+  return _.sortBy(Array.from(stacks.entries()), ([folded]) => folded)
+    .map(([folded, weight]) => `${folded} ${weight}`)
+    .join('\n');
+}
+
+// the frames on top of the most weight, with their share of the total. Allocations are attributed to the
+// allocating frame, followed by the allocated class.
+function topFrames(stacks, limit = 10) {
+  const self = new Map();
+  let total = 0;
+  for (const [folded, weight] of stacks.entries()) {
+    const frames = folded.split(';');
+    let leaf = frames[frames.length - 1];
+    if (leaf.endsWith(ALLOC_SUFFIX)) {
+      leaf = `${frames[frames.length - 2] || 'unknown'} (${leaf.substring(0, leaf.length - ALLOC_SUFFIX.length)})`;
+    }
+    self.set(leaf, (self.get(leaf) || 0) + weight);
+    total += weight;
+  }
+
+  return _.sortBy(Array.from(self.entries()), ([, weight]) => -weight)
+    .slice(0, limit)
+    .map(([frame, weight]) => ({ frame, weight, percent: total ? _.round(weight * 100 / total, 1) : 0 }));
+}
+
+module.exports = { readSamples, toCollapsed, topFrames };
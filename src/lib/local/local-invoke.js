@@ -6,19 +6,31 @@ const dockerOpts = require('../docker-opts');
 const { getFcReqHeaders, generateInitRequestOpts, requestUntilServerUp, generateInvokeRequestOpts } = require('./http');
 const uuid = require('uuid');
 const { isCustomContainerRuntime } = require('../common/model/runtime');
+const { STARTUP_TRACE_ENV } = require('./startup-trace');
+const { createJavaProfile } = require('./java-profile');
 const debug = require('debug')('fun:local');
 
 
 class LocalInvoke extends Invoke {
-  constructor(serviceName, serviceRes, functionName, functionRes, debugPort, debugIde, baseDir, tmpDir, debuggerPath, debugArgs, reuse, nasBaseDir) {
+  constructor(serviceName, serviceRes, functionName, functionRes, debugPort, debugIde, baseDir, tmpDir, debuggerPath, debugArgs, reuse, nasBaseDir, { startupTrace, profile } = {}) {
     super(serviceName, serviceRes, functionName, functionRes, debugPort, debugIde, baseDir, tmpDir, debuggerPath, debugArgs, nasBaseDir);
-    this.reuse = reuse;
+    this.startupTrace = startupTrace;
+    this.profile = createJavaProfile(baseDir, serviceName, functionName, this.runtime, profile);
+
+    // the recording is written when the jvm exits, which the containers of 'fun local start' don't
+    this.reuse = reuse && !this.profile;
   }
 
   async init() {
     await super.init();
 
     this.envs = await docker.generateDockerEnvs(this.baseDir, this.serviceName, this.serviceRes.Properties, this.functionName, this.functionProps, this.debugPort, null, this.nasConfig, false, this.debugIde, this.debugArgs);
+    if (this.startupTrace) {
+      this.envs[STARTUP_TRACE_ENV] = 'true';
+    }
+    if (this.profile) {
+      this.envs = this.profile.applyTo(this.envs, this.containerName);
+    }
     this.cmd = docker.generateDockerCmd(this.runtime, false, {
       functionProps: this.functionProps,
       httpMode: false
@@ -126,6 +138,11 @@ class LocalInvoke extends Invoke {
         await docker.exitContainer(container);
       }
     } else {
+      if (this.startupTrace) {
+        const pid = this.startupTrace.addProcess(`${this.serviceName}/${this.functionName}`);
+        outputStream = this.startupTrace.tap(outputStream || process.stdout, pid);
+        errorStream = this.startupTrace.tap(errorStream || process.stderr, pid);
+      }
       await docker.run(this.opts,
         event,
         outputStream,
@@ -138,6 +155,12 @@ class LocalInvoke extends Invoke {
     }
     
   }
+
+  async afterInvoke() {
+    if (this.profile) {
+      await this.profile.collect();
+    }
+  }
 }
 
 module.exports = LocalInvoke;
\ No newline at end of file
@@ -0,0 +1,107 @@
+'use strict';
+
+const debug = require('debug')('fun:local:pool');
+
+const _ = require('lodash');
+
+// A fixed number of started containers of one function.
+// Every request borrows an idle runner and gives it back when done, requests beyond the pool size wait in line.
+class RunnerPool {
+  constructor(size, startRunner) {
+    this.size = size;
+    this.startRunner = startRunner;
+    this.slots = [];
+    this.idle = [];
+    this.waiters = [];
+    this.stopping = false;
+    this.stopped = false;
+  }
+
+  async _startSlot() {
+    // the initializer runs on the first invocation of each container
+    return { runner: await this.startRunner(), invokeInitializer: true };
+  }
+
+  async start() {
+    const results = await Promise.all(_.range(this.size).map(() => this._startSlot().then(
+      slot => ({ slot }),
+      error => ({ error }))));
+
+    this.slots = _.compact(results.map(result => result.slot));
+    this.idle = this.slots.slice();
+
+    const failed = _.find(results, result => result.error);
+    if (failed) {
+      await this.stop();
+      throw failed.error;
+    }
+    debug(`${this.size} runners started`);
+  }
+
+  acquire() {
+    if (this.stopped) {
+      return Promise.reject(new Error('runner pool has been stopped'));
+    }
+
+    const slot = this.idle.shift();
+    if (slot) {
+      return Promise.resolve(slot);
+    }
+    return new Promise((resolve, reject) => {
+      this.waiters.push({ resolve, reject });
+    });
+  }
+
+  release(slot) {
+    const waiter = this.waiters.shift();
+    if (waiter) {
+      waiter.resolve(slot);
+      return;
+    }
+    this.idle.push(slot);
+    this._notifyDrained();
+  }
+
+  // the container of slot exited unexpectedly, a new one takes its place in the background
+  discard(slot) {
+    _.pull(this.slots, slot);
+    slot.runner.stop().catch(reason => debug('stop exited container error: %s', reason));
+
+    if (this.stopping) {
+      this._notifyDrained();
+      return;
+    }
+
+    this._startSlot().then(newSlot => {
+      this.slots.push(newSlot);
+      this.release(newSlot);
+    }, error => {
+      console.error('restart container error, reason is ', error);
+      if (_.isEmpty(this.slots)) {
+        this.waiters.splice(0).forEach(waiter => waiter.reject(error));
+      }
+    });
+  }
+
+  _notifyDrained() {
+    if (this._onDrained && _.isEmpty(this.waiters) && this.idle.length === this.slots.length) {
+      this._onDrained();
+    }
+  }
+
+  // waits for the borrowed runners to come back, then stops all containers
+  async stop() {
+    this.stopping = true;
+
+    await new Promise(resolve => {
+      this._onDrained = resolve;
+      this._notifyDrained();
+    });
+
+    this.stopped = true;
+    await Promise.all(this.slots.map(slot => slot.runner.stop()));
+    debug(`${this.slots.length} runners stopped`);
+  }
+}
+
+module.exports = RunnerPool;
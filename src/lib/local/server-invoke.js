@@ -0,0 +1,111 @@
+'use strict';
+
+const Invoke = require('./invoke');
+const docker = require('../docker');
+const dockerOpts = require('../docker-opts');
+const streams = require('memory-streams');
+
+const { generateHttpParams } = require('./http');
+const { isCustomContainerRuntime } = require('../common/model/runtime');
+const { parseInvokeDuration } = require('./duration');
+
+const isWin = process.platform === 'win32';
+
+// a POST request to the root path, the body of each request is the event
+function generateServerHttpParams() {
+  return generateHttpParams({
+    originalUrl: '/',
+    method: 'POST',
+    path: '/',
+    ip: '127.0.0.1',
+    hostname: 'localhost',
+    rawHeaders: ['Content-Type', 'application/octet-stream'],
+    query: {}
+  }, '');
+}
+
+// Invokes a function through containers started in server mode, like `fun local start`, so that the runtime
+// and the function stay warm between invocations. Every invocation is a docker exec of the mock script.
+class ServerInvoke extends Invoke {
+  constructor(serviceName, serviceRes, functionName, functionRes, baseDir, tmpDir, nasBaseDir, { httpTrigger = false } = {}) {
+    super(serviceName, serviceRes, functionName, functionRes, null, null, baseDir, tmpDir, null, null, nasBaseDir);
+
+    if (isCustomContainerRuntime(this.runtime)) {
+      throw new Error(`the runtime ${this.runtime} of ${serviceName}/${functionName} could not be invoked in server mode.`);
+    }
+    this.httpTrigger = httpTrigger;
+  }
+
+  async init() {
+    await super.init();
+
+    const httpParams = this.httpTrigger ? generateServerHttpParams() : null;
+    this.envs = await docker.generateDockerEnvs(this.baseDir, this.serviceName, this.serviceRes.Properties, this.functionName, this.functionProps, null, httpParams, this.nasConfig, this.httpTrigger, null, null);
+  }
+
+  // the startup time of the container is recorded on the runner
+  async startRunner() {
+    const cmd = docker.generateDockerCmd(this.runtime, true, { functionProps: this.functionProps });
+    const opts = await dockerOpts.generateLocalStartOpts(this.runtime,
+      docker.generateRamdomContainerName(),
+      this.mounts,
+      cmd,
+      this.envs,
+      {
+        dockerUser: this.dockerUser,
+        imageName: this.imageName
+      });
+
+    const start = Date.now();
+    const runner = await docker.startContainer(opts, null, null, {
+      serviceName: this.serviceName,
+      functionName: this.functionName
+    });
+    runner.startupTime = Date.now() - start;
+    return runner;
+  }
+
+  // Resolves the exit code, outputs and elapsed time of the invocation, or rejects if the container exited.
+  // The runtime reports the duration of the invocation in the outputs, if it could be parsed.
+  async execRunner(runner, event, invokeInitializer) {
+    const outputStream = new streams.WritableStream();
+    const errorStream = new streams.WritableStream();
+
+    const cmd = [dockerOpts.resolveMockScript(this.runtime), ...docker.generateDockerCmd(this.runtime, false, {
+      functionProps: this.functionProps,
+      httpMode: this.httpTrigger,
+      invokeInitializer,
+      event: isWin ? event : null
+    })];
+
+    const start = process.hrtime();
+    let exitCode;
+    try {
+      exitCode = await runner.exec(cmd, {
+        env: this.envs,
+        outputStream,
+        errorStream,
+        verbose: true,
+        event: !isWin ? event : null,
+        waitForOutput: true
+      });
+    } catch (error) {
+      error = error instanceof Error ? error : new Error(error);
+      error.stderr = errorStream.toString();
+      throw error;
+    }
+    const [seconds, nanos] = process.hrtime(start);
+
+    const output = outputStream.toString();
+    const stderr = errorStream.toString();
+    return {
+      exitCode,
+      output,
+      stderr,
+      elapsed: seconds * 1000 + nanos / 1e6,
+      reportedDuration: parseInvokeDuration(`${output}\n${stderr}`)
+    };
+  }
+}
+
+module.exports = ServerInvoke;
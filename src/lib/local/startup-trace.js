@@ -0,0 +1,124 @@
+'use strict';
+
+const fs = require('fs-extra');
+const stream = require('stream');
+const debug = require('debug')('fun:local:trace');
+
+const _ = require('lodash');
+
+// the java shims only record their startup phases when this environment variable is true
+const STARTUP_TRACE_ENV = 'FUN_STARTUP_TRACE';
+const TRACE_LINE_PREFIX = 'FUN_STARTUP_TRACE ';
+
+const FLUSH_DELAY = 1000;
+
+// a phase printed by the shims: FUN_STARTUP_TRACE {"name":"...","ts":micros,"dur":micros,"classes":count}
+function parseTraceLine(line) {
+  const index = line.indexOf(TRACE_LINE_PREFIX);
+  if (index === -1) { return null; }
+
+  try {
+    const phase = JSON.parse(line.substring(index + TRACE_LINE_PREFIX.length));
+    if (!_.isString(phase.name) || !_.isFinite(phase.ts) || !_.isFinite(phase.dur)) { return null; }
+    return phase;
+  } catch (e) {
+    debug('ignore invalid trace line %s: %s', line, e);
+    return null;
+  }
+}
+
+// Collects the startup phases from the log streams of containers and writes them as a Chrome trace,
+// which could be opened in chrome://tracing or https://ui.perfetto.dev. Every container is a process.
+class StartupTrace {
+  constructor(outputPath) {
+    this.outputPath = outputPath;
+    this.processes = [];
+    this.phases = [];
+  }
+
+  addProcess(label) {
+    this.processes.push(label);
+    return this.processes.length;
+  }
+
+  // passes the log stream through to target and collects its trace lines as the phases of pid
+  tap(target, pid) {
+    let rest = '';
+    const collect = (lines) => {
+      for (const line of lines) {
+        const phase = parseTraceLine(line);
+        if (phase) {
+          this.phases.push(Object.assign({ pid }, phase));
+          this._scheduleFlush();
+        }
+      }
+    };
+
+    return new stream.Writable({
+      write(chunk, encoding, callback) {
+        const lines = (rest + chunk.toString()).split('\n');
+        rest = lines.pop();
+        collect(lines);
+        target.write(chunk, encoding, callback);
+      },
+      final(callback) {
+        collect([rest]);
+        rest = '';
+        callback();
+      }
+    });
+  }
+
+  toChromeTrace() {
+    const metadata = this.processes.map((label, index) => ({
+      name: 'process_name', ph: 'M', pid: index + 1, tid: 0, args: { name: label }
+    }));
+
+    const events = _.sortBy(this.phases, 'ts').map(({ pid, name, ts, dur, classes }) => ({
+      name,
+      cat: 'startup',
+      ph: 'X',
+      pid,
+      tid: 0,
+      ts,
+      dur,
+      args: _.isFinite(classes) && classes >= 0 ? { loadedClasses: classes } : {}
+    }));
+
+    return { traceEvents: metadata.concat(events), displayTimeUnit: 'ms' };
+  }
+
+  // long running containers report their first requests later, the trace is rewritten when they arrive
+  _scheduleFlush() {
+    if (this._flushTimer) { return; }
+
+    this._flushTimer = setTimeout(() => {
+      this._flushTimer = null;
+      this.flush().catch(error => console.error(`write startup trace error: ${error}`));
+    }, FLUSH_DELAY);
+    this._flushTimer.unref();
+  }
+
+  async flush() {
+    clearTimeout(this._flushTimer);
+    this._flushTimer = null;
+
+    await fs.outputJson(this.outputPath, this.toChromeTrace());
+    debug(`${this.phases.length} startup phases are written to ${this.outputPath}`);
+  }
+
+  printSummary() {
+    for (let pid = 1; pid <= this.processes.length; pid++) {
+      const phases = _.sortBy(this.phases.filter(phase => phase.pid === pid), 'ts');
+      if (_.isEmpty(phases)) { continue; }
+
+      console.log(`\nstartup phases of ${this.processes[pid - 1]}:`);
+      for (const { name, dur, classes } of phases) {
+        const loaded = _.isFinite(classes) && classes >= 0 ? `, ${classes} classes loaded` : '';
+        console.log(`  ${_.padEnd(name, 36)} ${_.padStart((dur / 1000).toFixed(1), 9)} ms${loaded}`);
+      }
+    }
+  }
+}
+
+module.exports = { StartupTrace, parseTraceLine, STARTUP_TRACE_ENV };
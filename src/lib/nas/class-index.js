@@ -0,0 +1,97 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const debug = require('debug')('fun:nas:class-index');
+const constants = require('./constants');
+
+const { chunk } = require('./support');
+const { readDirRecursive } = require('./path');
+const { listZipEntries } = require('../package/zip');
+
+const _ = require('lodash');
+
+// keep in sync with examples/nas/java/src/main/java/example/ClassIndex.java
+const CLASS_INDEX_FILE_NAME = '.fun-class-index';
+const ROOT_PACKAGE = '/';
+const JAR_PREFIX = '@';
+
+function packageOf(entryName) {
+  return entryName.substring(0, entryName.lastIndexOf('/') + 1);
+}
+
+function isTopLevelPackage(pkg) {
+  return pkg.indexOf('/') === pkg.length - 1;
+}
+
+// 每个文件所在的目录及其所有上级目录都会被记录，以支持 getResources('com/example/') 这类目录查找
+function packagesOf(entryNames) {
+  const packages = new Set();
+  for (const entryName of entryNames) {
+    if (entryName.endsWith('/')) { continue; }
+
+    let pkg = packageOf(entryName);
+    while (!packages.has(pkg)) {
+      packages.add(pkg);
+      if (isTopLevelPackage(pkg)) { break; }
+      pkg = packageOf(pkg.substring(0, pkg.length - 1));
+    }
+  }
+  return Array.from(packages).sort();
+}
+
+async function indexJar(jarPath) {
+  const entryNames = await listZipEntries(jarPath);
+  const { size, mtimeMs } = await fs.stat(jarPath);
+  return { name: path.basename(jarPath), size, mtime: Math.floor(mtimeMs / 1000), packages: packagesOf(entryNames) };
+}
+
+// the index is written to indexDir, next to the jars unless it is given
+async function writeClassIndex(libDir, jarNames, indexDir = libDir) {
+  const indexedJars = [];
+  for (const jars of chunk(_.sortBy(jarNames), constants.FUN_NAS_CLASS_INDEX_PARALLEL_COUNT)) {
+    indexedJars.push(...await Promise.all(jars.map(async (jar) => {
+      try {
+        return await indexJar(path.join(libDir, jar));
+      } catch (error) {
+        // 无法解析的 jar 不写入索引，运行时会退回到逐个扫描
+        debug(`skip indexing ${jar}: ${error}`);
+        return null;
+      }
+    })));
+  }
+
+  const lines = [];
+  for (const jar of _.compact(indexedJars)) {
+    lines.push(`${JAR_PREFIX}${jar.name} ${jar.size} ${jar.mtime}`);
+    for (const pkg of jar.packages) {
+      lines.push(pkg === '' ? ROOT_PACKAGE : pkg);
+    }
+  }
+
+  const indexPath = path.join(indexDir, CLASS_INDEX_FILE_NAME);
+  await fs.outputFile(indexPath, lines.join('\n') + '\n');
+  debug(`class index written to ${indexPath}`);
+  return indexPath;
+}
+
+// 为 localNasDir 下每个包含 jar 的目录生成类索引，供 Java NAS Entrypoint 的 ChildFirstURLClassLoader 使用
+// 索引按相同的相对路径写入 outputDir，不修改 localNasDir
+async function writeClassIndexes(localNasDir, outputDir = localNasDir) {
+  if (!await fs.pathExists(localNasDir)) { return []; }
+
+  const files = await readDirRecursive(localNasDir);
+  const jarsByDir = _.groupBy(files.filter(f => f.endsWith('.jar')), f => path.posix.dirname(f));
+
+  const indexPaths = [];
+  for (const [dir, jars] of Object.entries(jarsByDir)) {
+    const libDir = path.join(localNasDir, dir);
+    indexPaths.push(await writeClassIndex(libDir, jars.map(jar => path.posix.basename(jar)), path.join(outputDir, dir)));
+  }
+  return indexPaths;
+}
+
+module.exports = {
+  CLASS_INDEX_FILE_NAME,
+  packagesOf, writeClassIndex, writeClassIndexes
+};
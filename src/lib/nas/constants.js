@@ -6,5 +6,15 @@ module.exports = {
   FUN_NAS_TIMEOUT: 600 * 1000,
   FUN_NAS_UPLOAD_PARALLEL_COUNT: 5,
   FUN_NAS_FILE_COUNT_PER_REQUEST: 248,
-  FUN_NAS_CHUNK_SIZE: 5 * 1024 * 1024
+  // chunk uploads start with FUN_NAS_UPLOAD_PARALLEL_COUNT and FUN_NAS_CHUNK_SIZE and adapt to the network,
+  // the chunk size never grows over FUN_NAS_CHUNK_SIZE because of the 6MB request limit of http triggers
+  FUN_NAS_CHUNK_SIZE: 5 * 1024 * 1024,
+  FUN_NAS_MIN_CHUNK_SIZE: 256 * 1024,
+  FUN_NAS_UPLOAD_MAX_PARALLEL_COUNT: 16,
+  FUN_NAS_UPLOAD_RETRY_COUNT: 5,
+  FUN_NAS_UPLOAD_RETRY_DELAY: 1000,
+  FUN_NAS_CLASS_INDEX_PARALLEL_COUNT: 8,
+  // changed files from this size are patched with rolling checksums instead of being uploaded again
+  FUN_NAS_DELTA_MIN_SIZE: 1024 * 1024,
+  FUN_NAS_DELTA_BLOCK_SIZE: 16 * 1024
 };
\ No newline at end of file
@@ -166,9 +166,9 @@ async function cpFromLocalToNas({
   }
 
   if (srcPathIsDir) {
-    await uploadFolder(resolvedSrc, actualDstPath, nasHttpTriggerPath, localNasTmpDir, noClobber);
+    await uploadFolder(resolvedSrc, actualDstPath, nasHttpTriggerPath, localNasTmpDir, noClobber, isSync);
   } else if (srcPathIsFile) {
-    await uploadFile(resolvedSrc, actualDstPath, nasHttpTriggerPath);
+    await uploadFile(resolvedSrc, actualDstPath, nasHttpTriggerPath, localNasTmpDir);
   } else {
     throw new Error(`${localPath} has the same file stat and folder stat`);
   }
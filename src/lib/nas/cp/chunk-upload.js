@@ -0,0 +1,247 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const crypto = require('crypto');
+const debug = require('debug')('fun:nas:chunk-upload');
+const constants = require('../constants');
+
+const { green, yellow } = require('colors');
+const { createProgressBar } = require('../../import/utils');
+const { uploadChunkBuffer } = require('../request');
+
+const _ = require('lodash');
+
+function md5(content) {
+  return crypto.createHash('md5').update(content).digest('hex');
+}
+
+function sleep(ms) {
+  return new Promise(resolve => setTimeout(resolve, ms));
+}
+
+// additive increase and multiplicative decrease like tcp. After every round of chunks, one more request is sent
+// in parallel as long as the throughput doesn't drop. Failures halve both the concurrency and the chunk size.
+class ChunkScheduler {
+  constructor() {
+    this.concurrency = constants.FUN_NAS_UPLOAD_PARALLEL_COUNT;
+    this.chunkSize = constants.FUN_NAS_CHUNK_SIZE;
+    this.lastThroughput = 0;
+    this.startRound();
+  }
+
+  startRound() {
+    this.roundBytes = 0;
+    this.roundChunks = 0;
+    this.roundStart = Date.now();
+  }
+
+  onSuccess(size) {
+    this.roundBytes += size;
+    this.roundChunks++;
+    if (this.roundChunks < this.concurrency) { return; }
+
+    const throughput = this.roundBytes / Math.max(Date.now() - this.roundStart, 1);
+    if (throughput >= this.lastThroughput * 0.9) {
+      this.concurrency = Math.min(this.concurrency + 1, constants.FUN_NAS_UPLOAD_MAX_PARALLEL_COUNT);
+    } else {
+      this.concurrency = Math.max(this.concurrency - 1, 1);
+    }
+    this.chunkSize = Math.min(this.chunkSize * 2, constants.FUN_NAS_CHUNK_SIZE);
+    this.lastThroughput = throughput;
+
+    debug(`throughput ${Math.round(throughput)} KB/s, concurrency ${this.concurrency}, chunk size ${this.chunkSize}`);
+    this.startRound();
+  }
+
+  onFailure() {
+    this.concurrency = Math.max(Math.floor(this.concurrency / 2), 1);
+    this.chunkSize = Math.max(Math.floor(this.chunkSize / 2), constants.FUN_NAS_MIN_CHUNK_SIZE);
+    this.lastThroughput = 0;
+
+    debug(`chunk failed, concurrency ${this.concurrency}, chunk size ${this.chunkSize}`);
+    this.startRound();
+  }
+}
+
+// records the acknowledged ranges of an upload under localNasTmpDir, so that an interrupted upload
+// could continue from them. The journal is only kept in memory if journalPath is null.
+class UploadJournal {
+  constructor(journalPath = null, meta = {}, saved = {}) {
+    this.journalPath = journalPath;
+    this.meta = meta;
+    this.acked = saved.acked || [];
+    this.unverified = !!saved.unverified;
+    this.extra = saved.extra || {};
+    this.saving = Promise.resolve();
+  }
+
+  // the saved journal is dropped if meta changes, such as the size and mtime of the local file
+  static async open(localNasTmpDir, key, meta) {
+    const journalPath = path.join(localNasTmpDir, `.fun-nas-upload-${md5(key)}.json`);
+
+    let saved = {};
+    if (await fs.pathExists(journalPath)) {
+      try {
+        const journal = JSON.parse(await fs.readFile(journalPath, 'utf8'));
+        if (_.isEqual(journal.meta, meta)) { saved = journal; }
+      } catch (e) {
+        debug(`ignore invalid upload journal ${journalPath}: ${e}`);
+      }
+    }
+    return new UploadJournal(journalPath, meta, saved);
+  }
+
+  ackedBytes() {
+    return _.sumBy(this.acked, ([start, end]) => end - start);
+  }
+
+  // the ranges of [start, end) which have not been acknowledged
+  unacked(start, end) {
+    const ranges = [];
+    for (const [ackedStart, ackedEnd] of this.acked) {
+      if (ackedEnd <= start) { continue; }
+      if (ackedStart >= end) { break; }
+      if (ackedStart > start) { ranges.push([start, ackedStart]); }
+      start = Math.max(start, ackedEnd);
+    }
+    if (start < end) { ranges.push([start, end]); }
+    return ranges;
+  }
+
+  async ack(start, end, verified) {
+    const ranges = _.sortBy(this.acked.concat([[start, end]]), ([rangeStart]) => rangeStart);
+
+    this.acked = ranges.reduce((merged, range) => {
+      const last = _.last(merged);
+      if (last && range[0] <= last[1]) {
+        last[1] = Math.max(last[1], range[1]);
+      } else {
+        merged.push(range.slice());
+      }
+      return merged;
+    }, []);
+    this.unverified = this.unverified || !verified;
+
+    await this.save();
+  }
+
+  async reset() {
+    this.acked = [];
+    this.unverified = false;
+    this.extra = {};
+    await this.save();
+  }
+
+  save() {
+    if (!this.journalPath) { return this.saving; }
+
+    // writes are serialized and atomic, an interrupted upload must not leave a broken journal
+    const content = JSON.stringify({ meta: this.meta, acked: this.acked, unverified: this.unverified, extra: this.extra });
+    const tmpPath = `${this.journalPath}.tmp`;
+    this.saving = this.saving.then(async () => {
+      await fs.outputFile(tmpPath, content);
+      await fs.rename(tmpPath, this.journalPath);
+    });
+    return this.saving;
+  }
+
+  async remove() {
+    if (!this.journalPath) { return; }
+
+    await this.saving;
+    await fs.remove(this.journalPath);
+  }
+}
+
+// Reads localFile once from the beginning. Each chunk is hashed into the md5 of the whole file,
+// then uploaded in parallel unless the journal has acknowledged it. The md5 of every chunk is sent
+// along, so fun-nas-server could verify it before writing.
+// returns the md5 of the file, and whether fun-nas-server has verified all chunks
+async function uploadFileByChunk(nasHttpTriggerPath, nasFile, localFile, journal = new UploadJournal()) {
+  const { size } = await fs.lstat(localFile);
+  const scheduler = new ChunkScheduler();
+  const fileHash = crypto.createHash('md5');
+
+  const bar = createProgressBar(`${green(':uploading')} :bar :percent :elapsed s`, { total: Math.max(size, 1) });
+  bar.tick(journal.ackedBytes());
+
+  const inflight = new Set();
+  let failure;
+
+  const sendChunk = async (start, buf) => {
+    const chunkHash = md5(buf);
+
+    for (let attempt = 1; ; attempt++) {
+      let res;
+      try {
+        res = await uploadChunkBuffer(nasHttpTriggerPath, nasFile, start, buf, chunkHash);
+      } catch (error) {
+        scheduler.onFailure();
+        if (attempt >= constants.FUN_NAS_UPLOAD_RETRY_COUNT) { throw error; }
+
+        console.log(yellow(`upload chunk at ${start} of ${nasFile} error: ${error.message}, retrying`));
+        await sleep(Math.min(constants.FUN_NAS_UPLOAD_RETRY_DELAY * Math.pow(2, attempt - 1), 30 * 1000));
+
+        if (buf.length > scheduler.chunkSize) {
+          // retry with smaller chunks on bad networks
+          const chunkSize = scheduler.chunkSize;
+          for (let offset = 0; offset < buf.length; offset += chunkSize) {
+            await sendChunk(start + offset, buf.slice(offset, offset + chunkSize));
+          }
+          return;
+        }
+        continue;
+      }
+
+      scheduler.onSuccess(buf.length);
+      // old fun-nas-servers don't verify chunks, the hash of the whole file must be checked then
+      await journal.ack(start, start + buf.length, ((res && res.data) || {}).chunkHash === chunkHash);
+      bar.tick(buf.length);
+      return;
+    }
+  };
+
+  const dispatch = (start, buf) => {
+    const task = sendChunk(start, buf)
+      .catch((error) => { failure = failure || error; })
+      .then(() => inflight.delete(task));
+    inflight.add(task);
+  };
+
+  const fd = await fs.open(localFile, 'r');
+  try {
+    let position = 0;
+    while (position < size && !failure) {
+      while (inflight.size >= scheduler.concurrency && !failure) {
+        await Promise.race(inflight);
+      }
+      if (failure) { break; }
+
+      const length = Math.min(scheduler.chunkSize, size - position);
+      const buf = Buffer.alloc(length);
+      const { bytesRead } = await fs.read(fd, buf, 0, length, position);
+      if (bytesRead !== length) {
+        throw new Error(`${localFile} changed while uploading`);
+      }
+      fileHash.update(buf);
+
+      for (const [start, end] of journal.unacked(position, position + length)) {
+        dispatch(start, buf.slice(start - position, end - position));
+      }
+      position += length;
+    }
+    await Promise.all(inflight);
+  } finally {
+    await fs.close(fd);
+  }
+
+  if (failure) { throw failure; }
+
+  console.log(`${green('✔')} upload done`);
+  return { fileHash: fileHash.digest('hex'), verified: !journal.unverified };
+}
+
+module.exports = {
+  ChunkScheduler, UploadJournal, uploadFileByChunk
+};
@@ -0,0 +1,113 @@
+'use strict';
+
+const crypto = require('crypto');
+
+const _ = require('lodash');
+
+// the weak checksum of rsync, must be the same as the one of fun-nas-server
+function weakChecksum(buf, start, end) {
+  let a = 0;
+  let b = 0;
+  const length = end - start;
+  for (let i = start; i < end; i++) {
+    a = (a + buf[i]) & 0xffff;
+    b = (b + (length - (i - start)) * buf[i]) & 0xffff;
+  }
+  return ((b << 16) | a) >>> 0;
+}
+
+function strongChecksum(buf, start, end) {
+  return crypto.createHash('md5').update(buf.slice(start, end)).digest('hex');
+}
+
+function pushCopy(ops, index) {
+  const last = _.last(ops);
+  if (last && last.count !== undefined && last.index + last.count === index) {
+    last.count++;
+  } else {
+    ops.push({ index, count: 1 });
+  }
+}
+
+function pushLiteral(ops, literals, buf, start, end) {
+  if (start >= end) { return; }
+
+  const last = _.last(ops);
+  const length = end - start;
+  if (last && last.length !== undefined) {
+    last.length += length;
+  } else {
+    ops.push({ offset: literals.size, length });
+  }
+  literals.buffers.push(buf.slice(start, end));
+  literals.size += length;
+}
+
+// rolls the weak checksum over buf to find the blocks the remote file already has,
+// returns the ops for fun-nas-server to rebuild buf and the bytes which must be uploaded
+function computeDelta(buf, signatures, blockSize) {
+  const blocks = new Map();
+  for (const signature of signatures) {
+    const sameWeak = blocks.get(signature.weak) || [];
+    sameWeak.push(signature);
+    blocks.set(signature.weak, sameWeak);
+  }
+
+  const ops = [];
+  const literals = { buffers: [], size: 0 };
+
+  let literalStart = 0;
+  let pos = 0;
+  let a;
+  let b;
+  let hasWindow = false;
+
+  while (pos + blockSize <= buf.length) {
+    if (!hasWindow) {
+      const weak = weakChecksum(buf, pos, pos + blockSize);
+      a = weak & 0xffff;
+      b = weak >>> 16;
+      hasWindow = true;
+    }
+
+    const weak = ((b << 16) | a) >>> 0;
+    const candidates = blocks.get(weak);
+    let matched;
+    if (candidates) {
+      const strong = strongChecksum(buf, pos, pos + blockSize);
+      const sameBlocks = candidates.filter(candidate => candidate.strong === strong);
+
+      // prefer the block right after the last copied one, so that the copy ops could be merged
+      const last = _.last(ops);
+      const nextIndex = last && last.count !== undefined ? last.index + last.count : -1;
+      matched = _.find(sameBlocks, candidate => candidate.index === nextIndex) || sameBlocks[0];
+    }
+
+    if (matched) {
+      pushLiteral(ops, literals, buf, literalStart, pos);
+      pushCopy(ops, matched.index);
+
+      pos += blockSize;
+      literalStart = pos;
+      hasWindow = false;
+      continue;
+    }
+
+    // slide the window one byte
+    const out = buf[pos];
+    if (pos + blockSize < buf.length) {
+      const inByte = buf[pos + blockSize];
+      a = (a - out + inByte) & 0xffff;
+      b = (b - blockSize * out + a) & 0xffff;
+    }
+    pos++;
+  }
+
+  pushLiteral(ops, literals, buf, literalStart, buf.length);
+
+  return { ops, literal: Buffer.concat(literals.buffers, literals.size) };
+}
+
+module.exports = {
+  weakChecksum, computeDelta
+};
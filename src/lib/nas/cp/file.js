@@ -7,7 +7,7 @@ const md5File = require('md5-file/promise');
 
 const _ = require('lodash');
 
-async function zipWithArchiver(srcPath, localNasTmpDir) {
+async function zipWithArchiver(srcPath, localNasTmpDir, funignore = null) {
 
   if (!await fs.pathExists(srcPath)) { throw new Error('folder not exist: ' + srcPath); }
   if (await isFile(srcPath)) { throw new Error('zipWithArchiver not support a file'); }
@@ -19,7 +19,7 @@ async function zipWithArchiver(srcPath, localNasTmpDir) {
   const zipDst = path.join(zipDstDir, `.fun-nas-generated-${targetName}.zip`);
 
   await fs.ensureDir(zipDstDir);
-  await zip.packTo(srcPath, null, zipDst);
+  await zip.packTo(srcPath, funignore, zipDst);
 
   return zipDst;
 }
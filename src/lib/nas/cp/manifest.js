@@ -0,0 +1,98 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const crypto = require('crypto');
+const debug = require('debug')('fun:nas:manifest');
+
+const { getFileHash } = require('./file');
+const { readDirRecursive } = require('../path');
+const { CLASS_INDEX_FILE_NAME } = require('../class-index');
+
+const _ = require('lodash');
+
+function manifestCachePath(localNasTmpDir, srcPath) {
+  const key = crypto.createHash('md5').update(path.resolve(srcPath)).digest('hex');
+  return path.join(localNasTmpDir, 'manifests', `${key}.json`);
+}
+
+async function readCachedManifest(cachePath) {
+  if (!await fs.pathExists(cachePath)) { return {}; }
+
+  try {
+    return JSON.parse(await fs.readFile(cachePath, 'utf8'));
+  } catch (e) {
+    debug(`ignore invalid manifest cache ${cachePath}: ${e}`);
+    return {};
+  }
+}
+
+// the same layout as the manifest of fun-nas-server, hashes of files unchanged since the last sync are reused
+async function buildLocalManifest(srcPath, cachePath) {
+  const cached = await readCachedManifest(cachePath);
+  const files = {};
+
+  for (const relative of await readDirRecursive(srcPath)) {
+    if (relative.endsWith('/')) {
+      files[relative] = { dir: true };
+      continue;
+    }
+
+    const filePath = path.join(srcPath, ...relative.split('/'));
+    const stats = await fs.lstat(filePath);
+
+    if (stats.isSymbolicLink()) {
+      files[relative] = { link: await fs.readlink(filePath) };
+    } else if (stats.isFile()) {
+      const mtime = stats.mtime.getTime();
+      const old = cached[relative];
+
+      const hash = old && old.size === stats.size && old.mtime === mtime ? old.hash : await getFileHash(filePath);
+      files[relative] = { size: stats.size, mtime, hash };
+    }
+  }
+
+  await fs.outputFile(cachePath, JSON.stringify(files));
+  return files;
+}
+
+function isSameEntry(local, remote) {
+  if (local.dir) { return !!remote.dir; }
+  if (local.link) { return local.link === remote.link; }
+  return local.hash === remote.hash;
+}
+
+// written on NAS by fun nas sync apart from the local directory, so they are never extraneous
+function isGeneratedFile(relative) {
+  return path.posix.basename(relative) === CLASS_INDEX_FILE_NAME;
+}
+
+// added and changed are uploaded, removed only when the remote directory should mirror the local one
+function diffManifests(localFiles, remoteFiles, { noClobber = false, deleteExtraneous = false } = {}) {
+  const added = [];
+  const changed = [];
+  let unchanged = 0;
+
+  _.forEach(localFiles, (local, relative) => {
+    const remote = remoteFiles[relative];
+
+    if (!remote) {
+      added.push(relative);
+    } else if (isSameEntry(local, remote)) {
+      unchanged++;
+    } else if (noClobber) {
+      debug(`${relative} changed, skipped because of no clobber`);
+      unchanged++;
+    } else {
+      changed.push(relative);
+    }
+  });
+
+  const removed = deleteExtraneous ? _.keys(remoteFiles).filter(relative => !localFiles[relative] && !isGeneratedFile(relative)) : [];
+
+  return { added, changed, removed, unchanged };
+}
+
+module.exports = {
+  manifestCachePath, buildLocalManifest, diffManifests
+};
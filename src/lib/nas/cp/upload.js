@@ -1,85 +1,282 @@
 'use strict';
 
+const fs = require('fs-extra');
 const path = require('path');
+const crypto = require('crypto');
 const debug = require('debug')('fun:nas:upload');
 const rimraf = require('rimraf');
 const async = require('async');
 const constants = require('../constants');
 
-const { green, red } = require('colors');
+const { green, red, yellow } = require('colors');
 const { readDirRecursive } = require('../path');
 const { createProgressBar } = require('../../import/utils');
-const { chunk, splitRangeBySize } = require('../support');
+const { chunk } = require('../support');
+const { computeDelta } = require('./delta');
+const { UploadJournal, uploadFileByChunk } = require('./chunk-upload');
+const { manifestCachePath, buildLocalManifest, diffManifests } = require('./manifest');
 const { getFileHash, zipWithArchiver, getFileSize, getFilePermission } = require('./file');
 
 const {
   sendUnzipRequest,
+  sendExtractRequest,
   sendCleanRequest,
   createSizedNasFile,
-  uploadChunkFile,
   checkFileHash,
+  statsRequest,
   checkRemoteNasTmpDir,
-  changeNasFilePermission
+  changeNasFilePermission,
+  getManifest,
+  removeNasFiles,
+  getFileSignatures,
+  sendPatchRequest
 } = require('../request');
 
-async function uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber) {
-  console.log('zipping ' + srcPath);
-  const zipFilePath = await zipWithArchiver(srcPath, localNasTmpDir);
-  const zipFileSize = await getFileSize(zipFilePath);
-  const fileOffSetCutByChunkSize = splitRangeBySize(0, zipFileSize, constants.FUN_NAS_CHUNK_SIZE);
-  const zipHash = await getFileHash(zipFilePath);
+async function getRemoteManifest(nasHttpTriggerPath, dstPath) {
+  try {
+    const res = await getManifest(nasHttpTriggerPath, dstPath);
+    return (res.data || {}).files;
+  } catch (error) {
+    debug(`get manifest of ${dstPath} error: ${error}`);
+    return undefined;
+  }
+}
+
+// only the paths of relativeFiles and their parent directories are zipped
+function onlyFilesIgnore(srcPath, relativeFiles) {
+  const included = new Set(['']);
+  for (const relative of relativeFiles) {
+    const parts = relative.replace(/\/$/, '').split('/');
+    for (let i = 1; i <= parts.length; i++) {
+      included.add(parts.slice(0, i).join('/'));
+    }
+  }
+  return (fPath) => {
+    const relative = path.relative(srcPath, fPath).split(path.sep).join('/');
+    return !included.has(relative);
+  };
+}
+
+// rebuilds a large changed file on NAS from the blocks it already has, returns false if it is not worth it
+async function patchFile(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, relative) {
+  const filePath = path.join(srcPath, ...relative.split('/'));
+  const nasFile = path.posix.join(dstPath, relative);
+  const blockSize = constants.FUN_NAS_DELTA_BLOCK_SIZE;
 
-  const fileName = path.basename(zipFilePath);
+  const signatures = (await getFileSignatures(nasHttpTriggerPath, nasFile, blockSize)).data.signatures;
+  const content = await fs.readFile(filePath);
+  const { ops, literal } = computeDelta(content, signatures, blockSize);
+
+  if (literal.length > content.length / 2) {
+    debug(`${relative} changed too much, ${literal.length} of ${content.length} bytes are different`);
+    return false;
+  }
 
   const remoteNasTmpDir = path.posix.join(dstPath, '.fun_nas_tmp');
-  debug(`checking NAS tmp dir ${remoteNasTmpDir}`);
-  await checkRemoteNasTmpDir(nasHttpTriggerPath, remoteNasTmpDir);
-  debug(`${green('✔')} check done`);
-  const nasZipFile = path.posix.join(remoteNasTmpDir, fileName);
-  debug(`Creating ${zipFileSize} bytes size file: ${nasZipFile}`);
-  await createSizedNasFile(nasHttpTriggerPath, nasZipFile, zipFileSize);
+  const nasLiteralFile = path.posix.join(remoteNasTmpDir, `.fun-nas-literal-${Date.now()}-${path.basename(relative)}`);
+
+  await createSizedNasFile(nasHttpTriggerPath, nasLiteralFile, literal.length);
+  if (literal.length > 0) {
+    const localLiteralFile = path.join(localNasTmpDir, path.basename(nasLiteralFile));
+    await fs.outputFile(localLiteralFile, literal);
+    try {
+      await uploadFileByChunk(nasHttpTriggerPath, nasLiteralFile, localLiteralFile);
+    } finally {
+      rimraf.sync(localLiteralFile);
+    }
+  }
+
+  await sendPatchRequest(nasHttpTriggerPath, nasFile, nasLiteralFile, blockSize, ops, await getFileHash(filePath));
+  await changeNasFilePermission(nasHttpTriggerPath, nasFile, await getFilePermission(filePath));
+
+  debug(`${green('✔')} patched ${relative} with ${literal.length} bytes`);
+  return true;
+}
+
+// compares the manifests of the local and the NAS directory, and only uploads what differs,
+// large changed files are patched by blocks, the others are zipped and unzipped on NAS as before
+async function uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber, isSync = false) {
+  const remoteFiles = await getRemoteManifest(nasHttpTriggerPath, dstPath);
+  if (!remoteFiles) {
+    debug('fun-nas-server does not support manifest, upload the whole folder');
+    await uploadFolderByZip(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber);
+    return;
+  }
+
+  const localFiles = await buildLocalManifest(srcPath, manifestCachePath(localNasTmpDir, srcPath));
+  const { added, changed, removed, unchanged } = diffManifests(localFiles, remoteFiles, {
+    noClobber, deleteExtraneous: isSync
+  });
+
+  console.log(`${added.length} added, ${changed.length} changed, ${removed.length} removed, ${unchanged} unchanged`);
+
+  // creates dstPath if it doesn't exist, and the tmp dir for the literal data of patches
+  await checkRemoteNasTmpDir(nasHttpTriggerPath, path.posix.join(dstPath, '.fun_nas_tmp'));
 
-  debug(`${green('✔')} create done`);
+  if (removed.length) {
+    await removeNasFiles(nasHttpTriggerPath, dstPath, removed);
+    debug(`${green('✔')} remove done`);
+  }
 
-  await uploadFileByChunk(nasHttpTriggerPath, nasZipFile, zipFilePath, fileOffSetCutByChunkSize);
+  const zipFiles = added.slice();
+  for (const relative of changed) {
+    const local = localFiles[relative];
+    const remote = remoteFiles[relative];
+    const patchable = local.hash && remote.hash && local.size >= constants.FUN_NAS_DELTA_MIN_SIZE;
 
-  debug(`checking uploaded NAS zip file ${nasZipFile} hash`);
-  await checkFileHash(nasHttpTriggerPath, nasZipFile, zipHash);
+    let patched = false;
+    if (patchable) {
+      try {
+        patched = await patchFile(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, relative);
+      } catch (error) {
+        console.log(yellow(`patch ${relative} error: ${error.message}, upload the whole file`));
+      }
+    }
+    if (!patched) { zipFiles.push(relative); }
+  }
+
+  if (zipFiles.length) {
+    await uploadFolderByZip(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber, zipFiles);
+  } else {
+    console.log(`${green('✔')} upload completed!`);
+  }
+}
+
+// size and mtime of files, an interrupted upload of the same files could be resumed
+async function filesDigest(srcPath, files) {
+  const hash = crypto.createHash('md5');
+  for (const relative of files) {
+    const stats = await fs.lstat(path.join(srcPath, ...relative.split('/')));
+    hash.update(`${relative}:${stats.size}:${stats.mtime.getTime()}\n`);
+  }
+  return hash.digest('hex');
+}
+
+async function isRemoteFile(nasHttpTriggerPath, nasFile) {
+  if (!nasFile) { return false; }
+
+  const stats = (await statsRequest(nasFile, nasHttpTriggerPath)).data;
+  return stats.isFile;
+}
+
+// checks the hash of the whole file, unless fun-nas-server has verified every chunk
+async function checkUploadedFile(nasHttpTriggerPath, nasFile, journal, { fileHash, verified }) {
+  if (verified) { return; }
+
+  debug(`checking uploaded file ${nasFile} hash`);
+  try {
+    await checkFileHash(nasHttpTriggerPath, nasFile, fileHash);
+  } catch (error) {
+    // the acknowledged chunks could not be trusted any more
+    await journal.remove();
+    throw error;
+  }
   debug(`${green('✔')} hash unchanged`);
+}
+
+// files are the relative paths to upload, all files of srcPath are uploaded if it is null
+async function uploadFolderByZip(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber, files = null) {
+  const srcPathFiles = files || await readDirRecursive(srcPath);
+
+  const journal = await UploadJournal.open(localNasTmpDir, `${path.resolve(srcPath)}:${dstPath}`, {
+    files: await filesDigest(srcPath, srcPathFiles)
+  });
+  let { zipFilePath, nasZipFile } = journal.extra;
+
+  if (zipFilePath && await fs.pathExists(zipFilePath) && await isRemoteFile(nasHttpTriggerPath, nasZipFile)) {
+    console.log(`resuming upload of ${srcPath} from ${journal.ackedBytes()} bytes`);
+  } else {
+    await journal.reset();
+
+    console.log('zipping ' + srcPath);
+    const funignore = files ? onlyFilesIgnore(srcPath, files) : null;
+    zipFilePath = await zipWithArchiver(srcPath, localNasTmpDir, funignore);
+    const zipFileSize = await getFileSize(zipFilePath);
+
+    const fileName = path.basename(zipFilePath);
+
+    const remoteNasTmpDir = path.posix.join(dstPath, '.fun_nas_tmp');
+    debug(`checking NAS tmp dir ${remoteNasTmpDir}`);
+    await checkRemoteNasTmpDir(nasHttpTriggerPath, remoteNasTmpDir);
+    debug(`${green('✔')} check done`);
+    nasZipFile = path.posix.join(remoteNasTmpDir, fileName);
+    debug(`Creating ${zipFileSize} bytes size file: ${nasZipFile}`);
+    await createSizedNasFile(nasHttpTriggerPath, nasZipFile, zipFileSize);
+
+    debug(`${green('✔')} create done`);
+
+    journal.extra = { zipFilePath, nasZipFile };
+    await journal.save();
+  }
+
+  const uploaded = await uploadFileByChunk(nasHttpTriggerPath, nasZipFile, zipFilePath, journal);
+  await checkUploadedFile(nasHttpTriggerPath, nasZipFile, journal, uploaded);
 
   console.log('unzipping file');
-  const srcPathFiles = await readDirRecursive(srcPath);
-  const unzipFilesCount = srcPathFiles.length;
-  const filesArrSlicedBySize = chunk(srcPathFiles, constants.FUN_NAS_FILE_COUNT_PER_REQUEST);
-  await unzipNasFileParallel(nasHttpTriggerPath, dstPath, nasZipFile, filesArrSlicedBySize, unzipFilesCount, noClobber);
+  await extractNasZipFile(nasHttpTriggerPath, dstPath, nasZipFile, srcPathFiles, noClobber);
   debug('cleaning');
   await sendCleanRequest(nasHttpTriggerPath, nasZipFile);
   debug(`${green('✔')} clean done`);
 
+  await journal.remove();
   rimraf.sync(zipFilePath);
   console.log(`${green('✔')} upload completed!`);
 }
 
-async function uploadFile(resolvedSrc, actualDstPath, nasHttpTriggerPath) {
-  const fileSize = await getFileSize(resolvedSrc);
-  const fileOffSetCutByChunkSize = splitRangeBySize(0, fileSize, constants.FUN_NAS_CHUNK_SIZE);
-  const fileHash = await getFileHash(resolvedSrc);
+// resumes from the journal under localNasTmpDir if the same file was being uploaded to actualDstPath
+async function uploadFile(resolvedSrc, actualDstPath, nasHttpTriggerPath, localNasTmpDir) {
+  const stats = await fs.lstat(resolvedSrc);
   const filePermission = await getFilePermission(resolvedSrc);
 
-  debug(`Creating ${fileSize} bytes size file: ${actualDstPath}`);
-  await createSizedNasFile(nasHttpTriggerPath, actualDstPath, fileSize);
-  debug(`${green('✔')} create done`);
+  const journal = localNasTmpDir
+    ? await UploadJournal.open(localNasTmpDir, `${path.resolve(resolvedSrc)}:${actualDstPath}`, { size: stats.size, mtime: stats.mtime.getTime() })
+    : new UploadJournal();
 
-  await uploadFileByChunk(nasHttpTriggerPath, actualDstPath, resolvedSrc, fileOffSetCutByChunkSize);
-  await changeNasFilePermission(nasHttpTriggerPath, actualDstPath, filePermission);
+  if (journal.acked.length && await isRemoteFile(nasHttpTriggerPath, actualDstPath)) {
+    console.log(`resuming upload of ${resolvedSrc} from ${journal.ackedBytes()} bytes`);
+  } else {
+    await journal.reset();
 
-  debug(`checking uploaded file ${actualDstPath} hash`);
-  await checkFileHash(nasHttpTriggerPath, actualDstPath, fileHash);
-  debug(`${green('✔')} hash unchanged`);
+    debug(`Creating ${stats.size} bytes size file: ${actualDstPath}`);
+    await createSizedNasFile(nasHttpTriggerPath, actualDstPath, stats.size);
+    debug(`${green('✔')} create done`);
+  }
 
+  const uploaded = await uploadFileByChunk(nasHttpTriggerPath, actualDstPath, resolvedSrc, journal);
+  await changeNasFilePermission(nasHttpTriggerPath, actualDstPath, filePermission);
+  await checkUploadedFile(nasHttpTriggerPath, actualDstPath, journal, uploaded);
+
+  await journal.remove();
   console.log(`${green('✔')} upload completed!`);
 }
 
+// fun-nas-server extracts the whole zip in process, older versions without the unzip api
+// fall back to the unzip command with lists of files
+async function extractNasZipFile(nasHttpTriggerPath, dstDir, nasZipFile, files, noClobber) {
+  let result;
+  try {
+    result = await sendExtractRequest(nasHttpTriggerPath, nasZipFile, dstDir, noClobber, 0);
+  } catch (error) {
+    if (error.statusCode !== 404) { throw error; }
+
+    debug(`unzip api is not supported by fun-nas-server: ${error.message}`);
+    const filesArrSlicedBySize = chunk(files, constants.FUN_NAS_FILE_COUNT_PER_REQUEST);
+    await unzipNasFileParallel(nasHttpTriggerPath, dstDir, nasZipFile, filesArrSlicedBySize, files.length, noClobber);
+    return;
+  }
+
+  const bar = createProgressBar(`${green(':unzipping')} :bar :current/:total :rate files/s, :percent :elapsed s`, { total: Math.max(result.total, 1) });
+  bar.tick(result.next);
+
+  // the entries left after the time budget of a request are extracted by the next one
+  while (!result.done) {
+    const start = result.next;
+    result = await sendExtractRequest(nasHttpTriggerPath, nasZipFile, dstDir, noClobber, start);
+    bar.tick(result.next - start);
+  }
+  console.log(`${green('✔')} unzip done`);
+}
+
 function unzipNasFileParallel(nasHttpTriggerPath, dstDir, nasZipFile, filesArrQueue, unzipFilesCount, noClobber) {
   return new Promise((resolve, reject) => {
     const bar = createProgressBar(`${green(':unzipping')} :bar :current/:total :rate files/s, :percent :elapsed s`, { total: unzipFilesCount });
@@ -124,29 +321,6 @@ function unzipNasFileParallel(nasHttpTriggerPath, dstDir, nasZipFile, filesArrQu
     unzipQueue.push(filesArrQueue);
   });
 }
-function uploadFileByChunk(nasHttpTriggerPath, nasZipFile, zipFilePath, fileOffSet) {
-  return new Promise((resolve, reject) => {
-    let chunks = fileOffSet.length;
-    const bar = createProgressBar(`${green(':uploading')} :bar :current/:total :rate files/s, :percent :elapsed s`, { total: chunks });
-    let uploadQueue = async.queue(async(offSet, callback) => {
-      try {
-        await uploadChunkFile(nasHttpTriggerPath, nasZipFile, zipFilePath, offSet);
-      } catch (error) {
-        console.log(red(`upload error : ${error.message}`));
-        return;
-      // TO DO：RETRY
-      }
-      bar.tick();
-      callback();
-    }, constants.FUN_NAS_UPLOAD_PARALLEL_COUNT);
-    uploadQueue.drain = () => {
-      console.log(`${green('✔')} upload done`);
-      resolve();
-    };
-
-    uploadQueue.push(fileOffSet);
-  });
-}
 
 module.exports = {
   uploadFolder,
@@ -36,7 +36,15 @@ async function request(method, path, query, body, headers, opts) {
     'X-Fc-Log-Type': 'Tail'
   });
 
-  const res = await fcClient.request(method, path, query, body, headers, opts || {});
+  let res;
+  try {
+    res = await fcClient.request(method, path, query, body, headers, opts || {});
+  } catch (error) {
+    // the client only tells the http status of a failed request in the message, e.g. 'POST /path failed with 404. ...'
+    const matched = /failed with (\d{3})\b/.exec(error.message || '');
+    if (matched) { error.statusCode = parseInt(matched[1], 10); }
+    throw error;
+  }
 
   const data = (res && res.data) || {};
 
@@ -103,6 +111,15 @@ async function sendUnzipRequest(nasHttpTriggerPath, dstDir, nasZipFile, unzipFil
   return await sendCmdRequest(nasHttpTriggerPath, _.escapeRegExp(cmd));
 }
 
+// extracts nasZipFile from the entry at index start, returns where to continue if the time budget runs out
+async function sendExtractRequest(nasHttpTriggerPath, nasZipFile, dstDir, noClobber, start) {
+  const urlPath = nasHttpTriggerPath + 'unzip';
+  const query = {};
+  const body = { nasZipFile, dstDir, noClobber, start };
+  const res = await postRequest(urlPath, query, body);
+  return res.data;
+}
+
 async function sendCleanRequest(nasHttpTriggerPath, nasZipFile) {
   const urlPath = nasHttpTriggerPath + 'clean';
   const query = { nasZipFile };
@@ -115,15 +132,18 @@ async function createSizedNasFile(nasHttpTriggerPath, nasZipFile, fileSize) {
 }
 
 async function uploadChunkFile(nasHttpTriggerPath, nasFile, zipFilePath, offSet) {
+  const body = await readFileChunk(zipFilePath, offSet.start, offSet.size);
+  return await uploadChunkBuffer(nasHttpTriggerPath, nasFile, offSet.start, body);
+}
+
+// fun-nas-server verifies the md5 of the chunk before writing it if chunkHash is given
+async function uploadChunkBuffer(nasHttpTriggerPath, nasFile, fileStart, body, chunkHash) {
   const urlPath = nasHttpTriggerPath + 'file/chunk/upload';
-  const fileStart = offSet.start;
-  const fileSize = offSet.size;
   const query = {
     nasFile,
     fileStart: fileStart.toString()
   };
-
-  const body = await readFileChunk(zipFilePath, fileStart, fileSize);
+  if (chunkHash) { query.chunkHash = chunkHash; }
 
   const headers = {};
   return await postRequest(urlPath, query, body, headers);
@@ -152,9 +172,36 @@ async function changeNasFilePermission(nasHttpTriggerPath, filePath, filePermiss
   return await sendCmdRequest(nasHttpTriggerPath, cmd);
 }
 
+async function getManifest(nasHttpTriggerPath, dir) {
+  const urlPath = nasHttpTriggerPath + 'manifest';
+  const query = { dir };
+  return await getRequest(urlPath, query);
+}
+
+async function removeNasFiles(nasHttpTriggerPath, dir, files) {
+  const urlPath = nasHttpTriggerPath + 'files/remove';
+  const query = {};
+  const body = { dir, files };
+  return await postRequest(urlPath, query, body);
+}
+
+async function getFileSignatures(nasHttpTriggerPath, nasFile, blockSize) {
+  const urlPath = nasHttpTriggerPath + 'file/signatures';
+  const query = { nasFile, blockSize: blockSize.toString() };
+  return await getRequest(urlPath, query);
+}
+
+async function sendPatchRequest(nasHttpTriggerPath, nasFile, literalFile, blockSize, ops, fileHash) {
+  const urlPath = nasHttpTriggerPath + 'file/patch';
+  const query = {};
+  const body = { nasFile, literalFile, blockSize, ops, fileHash };
+  return await postRequest(urlPath, query, body);
+}
+
 module.exports = {
   getVersion, getNasConfig, getNasHttpTriggerPath,
-  createSizedNasFile, uploadChunkFile, statsRequest,
+  createSizedNasFile, uploadChunkFile, uploadChunkBuffer, statsRequest,
   checkRemoteNasTmpDir, checkFileHash, changeNasFilePermission, nasPathExsit,
-  sendZipRequest, sendDownLoadRequest, sendCleanRequest, sendCmdRequest, sendUnzipRequest
+  sendZipRequest, sendDownLoadRequest, sendCleanRequest, sendCmdRequest, sendUnzipRequest, sendExtractRequest,
+  getManifest, removeNasFiles, getFileSignatures, sendPatchRequest
 };
\ No newline at end of file
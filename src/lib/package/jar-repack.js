@@ -0,0 +1,246 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const zlib = require('zlib');
+const debug = require('debug')('fun:package:jar-repack');
+
+// https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT
+const LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+const CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+const END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+const DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+const LOCAL_FILE_HEADER_LENGTH = 30;
+const CENTRAL_DIRECTORY_HEADER_LENGTH = 46;
+const END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+const MAX_COMMENT_LENGTH = 0xFFFF;
+
+const FLAG_DATA_DESCRIPTOR = 0x08;
+
+const METHOD_STORED = 0;
+const METHOD_DEFLATED = 8;
+
+const COPY_BUFFER_SIZE = 1024 * 1024;
+
+// the jar could not be repacked by copying entries, such as zip64 archives
+class UnsupportedJarError extends Error {
+  constructor(message) {
+    super(message);
+    this.name = 'UnsupportedJarError';
+  }
+}
+
+async function readAt(fd, position, length) {
+  const buffer = Buffer.alloc(length);
+  const { bytesRead } = await fs.read(fd, buffer, 0, length, position);
+  return buffer.slice(0, bytesRead);
+}
+
+async function readEndOfCentralDirectory(fd, size) {
+  const length = Math.min(size, END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+  const tail = await readAt(fd, size - length, length);
+
+  for (let i = tail.length - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+    if (tail.readUInt32LE(i) !== END_OF_CENTRAL_DIRECTORY_SIGNATURE) { continue; }
+
+    const record = {
+      entries: tail.readUInt16LE(i + 10),
+      size: tail.readUInt32LE(i + 12),
+      offset: tail.readUInt32LE(i + 16),
+      comment: tail.slice(i + END_OF_CENTRAL_DIRECTORY_LENGTH)
+    };
+
+    if (record.entries === 0xFFFF || record.size === 0xFFFFFFFF || record.offset === 0xFFFFFFFF) {
+      throw new UnsupportedJarError('zip64 archives are not supported');
+    }
+    return record;
+  }
+  throw new Error('could not find the end of central directory, not a zip file');
+}
+
+// the central directory is the only place with reliable sizes, local headers may defer them to a data descriptor
+function parseCentralDirectory(buffer, count) {
+  const entries = [];
+
+  let offset = 0;
+  for (let i = 0; i < count; i++) {
+    if (buffer.readUInt32LE(offset) !== CENTRAL_DIRECTORY_SIGNATURE) {
+      throw new Error(`invalid central directory entry at ${offset}`);
+    }
+
+    const nameLength = buffer.readUInt16LE(offset + 28);
+    const extraLength = buffer.readUInt16LE(offset + 30);
+    const commentLength = buffer.readUInt16LE(offset + 32);
+    const recordLength = CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength + extraLength + commentLength;
+
+    const entry = {
+      record: buffer.slice(offset, offset + recordLength),
+      flags: buffer.readUInt16LE(offset + 8),
+      method: buffer.readUInt16LE(offset + 10),
+      compressedSize: buffer.readUInt32LE(offset + 20),
+      uncompressedSize: buffer.readUInt32LE(offset + 24),
+      localHeaderOffset: buffer.readUInt32LE(offset + 42),
+      name: buffer.toString('utf8', offset + CENTRAL_DIRECTORY_HEADER_LENGTH, offset + CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength)
+    };
+
+    if (entry.compressedSize === 0xFFFFFFFF || entry.uncompressedSize === 0xFFFFFFFF || entry.localHeaderOffset === 0xFFFFFFFF) {
+      throw new UnsupportedJarError(`zip64 entry ${entry.name} is not supported`);
+    }
+
+    entries.push(entry);
+    offset += recordLength;
+  }
+  return entries;
+}
+
+// returns the position and length of the data of entry, and the length of the whole local record
+async function locateEntryData(fd, entry) {
+  const header = await readAt(fd, entry.localHeaderOffset, LOCAL_FILE_HEADER_LENGTH);
+  if (header.length < LOCAL_FILE_HEADER_LENGTH || header.readUInt32LE(0) !== LOCAL_FILE_HEADER_SIGNATURE) {
+    throw new Error(`invalid local file header of ${entry.name}`);
+  }
+
+  const dataOffset = entry.localHeaderOffset + LOCAL_FILE_HEADER_LENGTH
+    + header.readUInt16LE(26) + header.readUInt16LE(28);
+
+  let recordLength = dataOffset - entry.localHeaderOffset + entry.compressedSize;
+
+  if (entry.flags & FLAG_DATA_DESCRIPTOR) {
+    // crc and sizes, optionally preceded by a signature
+    const descriptor = await readAt(fd, dataOffset + entry.compressedSize, 4);
+    const hasSignature = descriptor.length === 4 && descriptor.readUInt32LE(0) === DATA_DESCRIPTOR_SIGNATURE;
+    recordLength += hasSignature ? 16 : 12;
+  }
+
+  return { dataOffset, recordLength };
+}
+
+async function copyRange(fdIn, position, length, fdOut) {
+  const buffer = Buffer.alloc(Math.min(length, COPY_BUFFER_SIZE));
+
+  let remaining = length;
+  while (remaining > 0) {
+    const { bytesRead } = await fs.read(fdIn, buffer, 0, Math.min(remaining, buffer.length), position);
+    if (bytesRead === 0) {
+      throw new Error('unexpected end of file');
+    }
+    await fs.write(fdOut, buffer, 0, bytesRead);
+
+    position += bytesRead;
+    remaining -= bytesRead;
+  }
+}
+
+// writes the uncompressed content of entry to targetPath
+async function extractEntry(jarPath, fd, entry, dataOffset, targetPath) {
+  await fs.ensureDir(path.dirname(targetPath));
+
+  if (entry.method === METHOD_STORED) {
+    const fdOut = await fs.open(targetPath, 'w');
+    try {
+      await copyRange(fd, dataOffset, entry.compressedSize, fdOut);
+    } finally {
+      await fs.close(fdOut);
+    }
+    return;
+  }
+
+  if (entry.method !== METHOD_DEFLATED) {
+    throw new UnsupportedJarError(`compression method ${entry.method} of ${entry.name} is not supported`);
+  }
+
+  if (entry.compressedSize === 0) {
+    await fs.writeFile(targetPath, Buffer.alloc(0));
+    return;
+  }
+
+  await new Promise((resolve, reject) => {
+    const output = fs.createWriteStream(targetPath);
+    output.on('error', reject);
+    output.on('finish', resolve);
+
+    fs.createReadStream(jarPath, { start: dataOffset, end: dataOffset + entry.compressedSize - 1 })
+      .on('error', reject)
+      .pipe(zlib.createInflateRaw())
+      .on('error', reject)
+      .pipe(output);
+  });
+}
+
+function isUnderLibDir(name, libPrefix) {
+  return name.startsWith(libPrefix) && name !== libPrefix;
+}
+
+// Moves the entries under libRelativePath of the jar or war to targetLibAbsPath, and rewrites the jar without them.
+// The remaining entries are copied as they are, compressed data is never inflated and deflated again,
+// so STORED entries such as nested jars stay STORED. Only the central directory is rewritten with the new offsets.
+async function repackJar(absJarfilePath, libRelativePath, targetLibAbsPath) {
+  const libPrefix = `${libRelativePath.split(path.sep).join('/').replace(/\/$/, '')}/`;
+  const tmpJarfilePath = `${absJarfilePath}.${process.pid}.repack`;
+
+  const { size } = await fs.stat(absJarfilePath);
+  const fd = await fs.open(absJarfilePath, 'r');
+
+  let moved = 0;
+  try {
+    const eocd = await readEndOfCentralDirectory(fd, size);
+    const entries = parseCentralDirectory(await readAt(fd, eocd.offset, eocd.size), eocd.entries);
+
+    const fdOut = await fs.open(tmpJarfilePath, 'w');
+    try {
+      const centralDirectory = [];
+      let offset = 0;
+
+      for (const entry of entries) {
+        const { dataOffset, recordLength } = await locateEntryData(fd, entry);
+
+        if (isUnderLibDir(entry.name, libPrefix)) {
+          if (!entry.name.endsWith('/')) {
+            const relative = entry.name.substring(libPrefix.length);
+            await extractEntry(absJarfilePath, fd, entry, dataOffset, path.join(targetLibAbsPath, ...relative.split('/')));
+            moved++;
+          }
+          continue;
+        }
+
+        await copyRange(fd, entry.localHeaderOffset, recordLength, fdOut);
+
+        const record = Buffer.from(entry.record);
+        record.writeUInt32LE(offset, 42);
+        centralDirectory.push(record);
+
+        offset += recordLength;
+      }
+
+      const centralDirectoryBuffer = Buffer.concat(centralDirectory);
+
+      const end = Buffer.alloc(END_OF_CENTRAL_DIRECTORY_LENGTH);
+      end.writeUInt32LE(END_OF_CENTRAL_DIRECTORY_SIGNATURE, 0);
+      end.writeUInt16LE(centralDirectory.length, 8);
+      end.writeUInt16LE(centralDirectory.length, 10);
+      end.writeUInt32LE(centralDirectoryBuffer.length, 12);
+      end.writeUInt32LE(offset, 16);
+      end.writeUInt16LE(eocd.comment.length, 20);
+
+      const trailer = Buffer.concat([centralDirectoryBuffer, end, eocd.comment]);
+      await fs.write(fdOut, trailer, 0, trailer.length);
+    } finally {
+      await fs.close(fdOut);
+    }
+  } catch (e) {
+    await fs.remove(tmpJarfilePath);
+    throw e;
+  } finally {
+    await fs.close(fd);
+  }
+
+  await fs.rename(tmpJarfilePath, absJarfilePath);
+
+  debug(`moved ${moved} entries of ${libPrefix} from ${absJarfilePath} to ${targetLibAbsPath}`);
+  return moved;
+}
+
+module.exports = {
+  repackJar, UnsupportedJarError
+};
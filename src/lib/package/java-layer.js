@@ -0,0 +1,129 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const uuid = require('uuid');
+const bytes = require('bytes');
+const crypto = require('crypto');
+const tmpDir = require('temp-dir');
+const debug = require('debug')('fun:package:java-layer');
+
+const { pack } = require('./zip');
+const { green, yellow } = require('colors');
+const { writeClassIndex } = require('../nas/class-index');
+const { zipFileBodyStream } = require('../import/utils');
+
+const _ = require('lodash');
+
+// FC extracts layers to /opt, and puts /opt/java/lib on the classpath of the java runtimes
+const JAVA_LAYER_LIB_DIR = '/opt/java/lib';
+
+const LAYER_NAME_PREFIX = 'fun-java-deps-';
+const LAYER_DESCRIPTION_PREFIX = 'fun java dependencies ';
+const LAYER_COMPATIBLE_RUNTIMES = ['java8', 'java11', 'custom'];
+
+async function listDependencyJars(libDir) {
+  if (!await fs.pathExists(libDir)) { return []; }
+  return _.sortBy((await fs.readdir(libDir)).filter(name => name.endsWith('.jar')));
+}
+
+function hashFile(filePath) {
+  return new Promise((resolve, reject) => {
+    const hash = crypto.createHash('sha256');
+    fs.createReadStream(filePath)
+      .on('error', reject)
+      .on('data', (chunk) => hash.update(chunk))
+      .on('end', () => resolve(hash.digest('hex')));
+  });
+}
+
+// the layer is addressed by the content of its jars, not by their mtimes,
+// so that identical dependencies of different functions or builds share one layer version
+async function hashDependencies(libDir, jars) {
+  const hash = crypto.createHash('sha256');
+  for (const jar of jars) {
+    hash.update(`${jar}\0${await hashFile(path.join(libDir, jar))}\0`);
+  }
+  return hash.digest('hex');
+}
+
+function dependencyLayerName(hash) {
+  return `${LAYER_NAME_PREFIX}${hash.substring(0, 16)}`;
+}
+
+async function findDependencyLayerVersion(fc, layerName, hash) {
+  let res;
+  try {
+    res = await fc.listLayerVersions(layerName);
+  } catch (ex) {
+    if (ex.code === 'LayerNotFound') {
+      return null;
+    }
+    throw ex;
+  }
+
+  const layers = (res.data || {}).layers || [];
+  return _.find(layers, layer => layer.description === `${LAYER_DESCRIPTION_PREFIX}${hash}`) || null;
+}
+
+// stage the jars as java/lib with a class index, in the layout that ends up under /opt.
+// the zip is returned as zip.pack does, its randomDir is removed by the caller
+async function packDependencyLayer(libDir, jars) {
+  const stagingDir = path.join(tmpDir, uuid.v4());
+  const stagingLibDir = path.join(stagingDir, 'java', 'lib');
+
+  try {
+    await fs.ensureDir(stagingLibDir);
+    for (const jar of jars) {
+      await fs.copy(path.join(libDir, jar), path.join(stagingLibDir, jar));
+    }
+    await writeClassIndex(stagingLibDir, jars);
+
+    return await pack(stagingDir, null);
+  } finally {
+    await fs.remove(stagingDir);
+  }
+}
+
+// returns the arn of the layer holding the jars of libDir, publishing a new version only if no
+// version with the same content exists
+async function publishDependencyLayer(fc, libDir) {
+  const jars = await listDependencyJars(libDir);
+  if (_.isEmpty(jars)) { return null; }
+
+  const hash = await hashDependencies(libDir, jars);
+  const layerName = dependencyLayerName(hash);
+
+  const existing = await findDependencyLayerVersion(fc, layerName, hash);
+  if (existing) {
+    debug(`dependency layer ${existing.arn} is up to date`);
+    console.log(green(`\t\tThe dependencies are unchanged, reusing layer ${layerName} version ${existing.version}.`));
+    return { arn: existing.arn, hash, uploaded: false };
+  }
+
+  console.log(`\t\tWaiting for packaging ${jars.length} dependencies as layer ${layerName}...`);
+  const { zipPath, randomDir, compressedSize } = await packDependencyLayer(libDir, jars);
+
+  let res;
+  let body;
+  try {
+    ({ body } = await zipFileBodyStream({
+      code: {},
+      description: `${LAYER_DESCRIPTION_PREFIX}${hash}`,
+      compatibleRuntime: LAYER_COMPATIBLE_RUNTIMES
+    }, zipPath));
+    res = await fc.publishLayerVersion(layerName, body);
+  } finally {
+    if (body) { body.destroy(); }
+    await fs.remove(randomDir);
+  }
+
+  console.log(green(`\t\tThe dependency layer ${layerName} has been published, the size was`) + yellow(` ${bytes(compressedSize, { unitSeparator: ' ' })}`));
+  return { arn: res.data.arn, hash, uploaded: true };
+}
+
+module.exports = {
+  JAVA_LAYER_LIB_DIR,
+  listDependencyJars, hashDependencies, dependencyLayerName,
+  findDependencyLayerVersion, packDependencyLayer, publishDependencyLayer
+};
@@ -32,6 +32,14 @@ function globAsync(pattern, cwd) {
   });
 }
 
+// deflating them again costs cpu time but saves nothing, which dominates packaging java functions
+const COMPRESSED_EXTNAMES = new Set(['.jar', '.war', '.zip', '.gz', '.tgz', '.bz2', '.xz', '.7z', '.whl', '.egg',
+  '.png', '.jpg', '.jpeg', '.gif', '.webp', '.mp3', '.mp4']);
+
+function isCompressedFile(filePath) {
+  return COMPRESSED_EXTNAMES.has(path.extname(filePath).toLowerCase());
+}
+
 function permStr(mode) {
   return (mode & 0o777).toString(8);
 }
@@ -42,7 +50,7 @@ async function compress(func, rootDir, type) {
   const zip = new JSZip();
   if (deps) {
     debug('load deps zip');
-    zip.loadAsync(deps, {
+    await zip.loadAsync(deps, {
       base64: true
     });
   }
@@ -73,7 +81,17 @@ async function compress(func, rootDir, type) {
     }
   }
 
-  return zip.generateAsync({ type: 'base64', platform: 'UNIX' });
+  const { randomDir, zipPath } = await generateRandomZipPath();
+
+  await new Promise((resolve, reject) => {
+    zip.generateNodeStream({ platform: 'UNIX', streamFiles: true })
+      .on('error', reject)
+      .pipe(fs.createWriteStream(zipPath))
+      .on('error', reject)
+      .on('finish', resolve);
+  });
+
+  return { zipPath, randomDir };
 }
 
 function isBootstrapPath(absFilePath, absCodeUri, isFile = true) {
@@ -142,6 +160,7 @@ async function zipFolder(zipArchiver, folder, folders, funignore, codeUri, prefi
         name: relative,
         prefix,
         mode: (isBootstrap || isWindows) ? s.mode | 73 : s.mode,
+        store: isCompressedFile(fPath),
         stats: s // The archiver uses fs.stat by default, and pasing the result of lstat to ensure that the symbolic link is properly packaged
       });
 
@@ -244,6 +263,7 @@ async function packTo(file, funignore, targetPath, prefix = '', zlibOptions = {}
     zipArchiver.file(asbFilePath, {
       name: path.basename(file),
       prefix,
+      store: isCompressedFile(asbFilePath),
       mode: (isBootstrap || isWindows) ? stats.mode | 73 : stats.mode // add execution permission, the binary of 73 is 001001001
     });
 
@@ -268,21 +288,18 @@ async function packTo(file, funignore, targetPath, prefix = '', zlibOptions = {}
   });
 }
 
+// the zip is kept in a temporary directory, which should be removed by the caller after uploading
 async function pack(file, funignore) {
 
   const { randomDir, zipPath } = await generateRandomZipPath();
 
-  const { count, compressedSize } = await packTo(file, funignore, zipPath);
-
-  const base64 = fs.readFileSync(zipPath, { encoding: 'base64' });
-
-  await fs.remove(randomDir);
-
-  return {
-    base64,
-    count,
-    compressedSize
-  };
+  try {
+    const { count, compressedSize } = await packTo(file, funignore, zipPath);
+    return { zipPath, randomDir, count, compressedSize };
+  } catch (e) {
+    await fs.remove(randomDir);
+    throw e;
+  }
 }
 
 function readZipFile(zipPath, filePath) {
@@ -297,6 +314,18 @@ function readZipFile(zipPath, filePath) {
   });
 }
 
+function listZipEntries(zipPath) {
+  return new Promise((resolve, reject) => {
+    lsArchive.list(zipPath, (error, entries) => {
+      if (error) {
+        reject(error);
+      } else {
+        resolve(entries.map(entry => entry.isDirectory() ? `${entry.getPath().replace(/\/$/, '')}/` : entry.getPath()));
+      }
+    });
+  });
+}
+
 function extractZipTo(zipPath, dest) {
   return new Promise((resolve, reject) => {
     // use extract-zip instead of unzipper  https://github.com/alibaba/funcraft/issues/756
@@ -311,5 +340,5 @@ function extractZipTo(zipPath, dest) {
 }
 
 module.exports = {
-  pack, packTo, packFromJson, compress, readZipFile, extractZipTo
+  pack, packTo, packFromJson, compress, readZipFile, listZipEntries, extractZipTo
 };
\ No newline at end of file
@@ -8,6 +8,7 @@ const { red, yellow } = require('colors');
 const DEFAULT_BUILD_ARTIFACTS_PATH_SUFFIX = path.join('.fun', 'build', 'artifacts');
 const DEFAULT_NAS_PATH_SUFFIX = path.join('.fun', 'nas');
 const DEFAULT_LOCAL_TMP_PATH_SUFFIX = path.join('.fun', 'tmp', 'local');
+const DEFAULT_PROFILE_PATH_SUFFIX = path.join('.fun', 'profile');
 const validate = require('../lib/validate/validate');
 const { mergeTpl } = require('./utils/tpl');
 
@@ -163,6 +164,6 @@ function detectNasBaseDir(tplPath) {
 module.exports = {
   getTpl, detectTplPath, validateTplName,
   detectNasBaseDir, DEFAULT_BUILD_ARTIFACTS_PATH_SUFFIX, DEFAULT_NAS_PATH_SUFFIX,
-  detectTmpDir, DEFAULT_LOCAL_TMP_PATH_SUFFIX, getBaseDir, getNasYmlPath, getRootBaseDir,
+  detectTmpDir, DEFAULT_LOCAL_TMP_PATH_SUFFIX, DEFAULT_PROFILE_PATH_SUFFIX, getBaseDir, getNasYmlPath, getRootBaseDir,
   getRootTplPath, detectOverrideTplPath, generateMergedTpl, getProjectTpl
 };
\ No newline at end of file
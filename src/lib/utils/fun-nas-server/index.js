@@ -12,17 +12,21 @@ const exec = require('child_process').exec;
 const uuid = require('uuid');
 
 const { makeTmpDir } = require('./lib/path');
+const { buildManifest, removeFiles } = require('./lib/manifest');
+const { blockSignatures, applyPatch } = require('./lib/delta');
+const { extractZip } = require('./lib/unzip');
 const { Server } = require('@webserverless/fc-express');
 
 const {
   getFileHash,
+  getBufHash,
   writeBufToFile,
   exists,
   isDir } = require('./lib/file');
 
 const app = express();
 app.use(bodyParser.raw({ limit: '6mb' }));
-app.use(bodyParser.json());
+app.use(bodyParser.json({ limit: '6mb' }));
 
 app.get('/version', (req, res) => {
   console.log('received version request');
@@ -79,6 +83,76 @@ app.get('/file/check', async(req, res) => {
   }
 });
 
+// size, mtime, mode and md5 of every file under dir, for syncing only the changed files
+app.get('/manifest', async (req, res) => {
+  console.log('received manifest request, query is: ' + JSON.stringify(req.query));
+
+  const dir = req.query.dir;
+  if (!dir) { throw new Error('missing dir parameter'); }
+
+  res.send({
+    files: await buildManifest(dir)
+  });
+});
+
+app.post('/files/remove', async (req, res) => {
+  console.log('received files/remove request, query is: ' + JSON.stringify(req.query));
+
+  const { dir, files } = req.body;
+  if (!dir || !files) { throw new Error('missing dir or files parameter'); }
+
+  await removeFiles(dir, files);
+
+  res.send({
+    desc: 'remove done'
+  });
+});
+
+// block checksums of nasFile, the client sends back only the blocks that it could not find in them
+app.get('/file/signatures', async (req, res) => {
+  console.log('received file/signatures request, query is: ' + JSON.stringify(req.query));
+
+  const nasFile = req.query.nasFile;
+  const blockSize = parseInt(req.query.blockSize, 10);
+  if (!nasFile || !blockSize) { throw new Error('missing nasFile or blockSize parameter'); }
+
+  res.send({
+    signatures: await blockSignatures(nasFile, blockSize)
+  });
+});
+
+app.post('/file/patch', async (req, res) => {
+  console.log('received file/patch request, query is: ' + JSON.stringify(req.query));
+
+  const { nasFile, literalFile, blockSize, ops, fileHash } = req.body;
+
+  await applyPatch(nasFile, literalFile, blockSize, ops, fileHash);
+  rimraf.sync(literalFile);
+
+  res.send({
+    desc: 'patch done'
+  });
+});
+
+// the function times out after 600s, the entries left after the budget are extracted by the next request.
+// the response of a request is only read when it ends, the budget keeps the progress of large zips moving
+const UNZIP_TIME_BUDGET = 60 * 1000;
+
+// extracts the zip in process from the entry at index start
+app.post('/unzip', async (req, res) => {
+  console.log('received unzip request, query is: ' + JSON.stringify(req.query));
+
+  const { nasZipFile, dstDir, noClobber, start } = req.body;
+  if (!nasZipFile || !dstDir) { throw new Error('missing nasZipFile or dstDir parameter'); }
+
+  const result = await extractZip(nasZipFile, dstDir, {
+    noClobber: !!noClobber,
+    start: start || 0,
+    deadline: Date.now() + UNZIP_TIME_BUDGET
+  });
+  res.send(result);
+});
+
 // exec commands
 app.post('/commands', async (req, res) => {
   console.log('received commands request, query is: ' + JSON.stringify(req.query));
@@ -108,12 +182,20 @@ app.post('/file/chunk/upload', async(req, res) => {
   const nasFile = req.query.nasFile;
   const fileStart = parseInt(req.query.fileStart, 10);
 
+  const chunkHash = req.query.chunkHash;
+
   const chunkFileBuf = req.body;
 
+  // the chunk is verified in memory, so that the client needn't check the hash of the whole file again
+  if (chunkHash && getBufHash(chunkFileBuf) !== chunkHash) {
+    throw new Error('chunk hash changes, you need to re-upload');
+  }
+
   await writeBufToFile(nasFile, chunkFileBuf, fileStart);
 
   res.send({
-    desc: 'chunk file write done'
+    desc: 'chunk file write done',
+    chunkHash
   });
 });
 
@@ -203,20 +285,13 @@ function downloadFromOSSAndExtractToNas(bucket, objectName, dst, context) {
         }).on('finish', resolve);
     });
   }).then(() => {
-    return new Promise((resolve, reject) => {
-      exec(`unzip -q -n ${nasZipPath} -d ${dst} && rm ${nasZipPath} && ls -al ${dst}`, {
-        encoding: 'utf8',
-        timeout: 0,
-        maxBuffer: 1024 * 1024 * 1024,
-        killSignal: 'SIGTERM'
-      }, (error, stdout, stderr) => {
-        if (error) { reject(error); }
-        resolve({
-          stdout,
-          stderr
-        });
-      });
-    });
+    return extractZip(nasZipPath, dst, { noClobber: true });
+  }).then((result) => {
+    rimraf.sync(nasZipPath);
+    return {
+      stdout: `${result.extracted} extracted, ${result.skipped} skipped to ${dst}`,
+      stderr: ''
+    };
   });
 }
 
@@ -0,0 +1,91 @@
+'use strict';
+
+const fs = require('fs-extra');
+const crypto = require('crypto');
+const md5File = require('md5-file/promise');
+
+// the weak checksum of rsync, which could be rolled over the file of the client byte by byte
+function weakChecksum(buf, start, end) {
+  let a = 0;
+  let b = 0;
+  const length = end - start;
+  for (let i = start; i < end; i++) {
+    a = (a + buf[i]) & 0xffff;
+    b = (b + (length - (i - start)) * buf[i]) & 0xffff;
+  }
+  return ((b << 16) | a) >>> 0;
+}
+
+function strongChecksum(buf) {
+  return crypto.createHash('md5').update(buf).digest('hex');
+}
+
+// the checksums of every full block of file
+async function blockSignatures(file, blockSize) {
+  const fd = await fs.open(file, 'r');
+  const buf = Buffer.alloc(blockSize);
+  const signatures = [];
+
+  try {
+    for (let index = 0; ; index++) {
+      const { bytesRead } = await fs.read(fd, buf, 0, blockSize, index * blockSize);
+      if (bytesRead < blockSize) { break; }
+
+      signatures.push({ index, weak: weakChecksum(buf, 0, blockSize), strong: strongChecksum(buf) });
+    }
+  } finally {
+    await fs.close(fd);
+  }
+  return signatures;
+}
+
+async function copyRange(fdIn, position, length, fdOut) {
+  const buf = Buffer.alloc(Math.min(length, 1024 * 1024));
+
+  let remaining = length;
+  while (remaining > 0) {
+    const { bytesRead } = await fs.read(fdIn, buf, 0, Math.min(remaining, buf.length), position);
+    if (bytesRead === 0) { throw new Error('unexpected end of file when patching'); }
+
+    await fs.write(fdOut, buf, 0, bytesRead);
+    position += bytesRead;
+    remaining -= bytesRead;
+  }
+}
+
+// rebuilds nasFile from the blocks of itself and the uploaded literal data,
+// ops are { index, count } to copy blocks of the old file, or { offset, length } to copy from literalFile
+async function applyPatch(nasFile, literalFile, blockSize, ops, fileHash) {
+  const patchedFile = `${nasFile}.fun-nas-patch`;
+  const stats = await fs.lstat(nasFile);
+
+  const fdOld = await fs.open(nasFile, 'r');
+  const fdLiteral = await fs.open(literalFile, 'r');
+  const fdOut = await fs.open(patchedFile, 'w');
+
+  try {
+    for (const op of ops) {
+      if (op.length !== undefined) {
+        await copyRange(fdLiteral, op.offset, op.length, fdOut);
+      } else {
+        await copyRange(fdOld, op.index * blockSize, op.count * blockSize, fdOut);
+      }
+    }
+  } finally {
+    await fs.close(fdOut);
+    await fs.close(fdLiteral);
+    await fs.close(fdOld);
+  }
+
+  if (await md5File(patchedFile) !== fileHash) {
+    await fs.remove(patchedFile);
+    throw new Error(`patched file hash of ${nasFile} changes, you need to re-sync`);
+  }
+
+  await fs.chmod(patchedFile, stats.mode);
+  await fs.rename(patchedFile, nasFile);
+}
+
+module.exports = {
+  weakChecksum, blockSignatures, applyPatch
+};
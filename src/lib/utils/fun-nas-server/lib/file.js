@@ -1,6 +1,7 @@
 'use strict';
 
 const fs = require('fs-extra');
+const crypto = require('crypto');
 const md5File = require('md5-file/promise');
 
 async function pathJudge(inputPath, type) {
@@ -40,6 +41,10 @@ async function getFileHash(filePath) {
   
 }
 
+function getBufHash(buf) {
+  return crypto.createHash('md5').update(buf).digest('hex');
+}
+
 function writeBufToFile(dstPath, buf, start) {
   return new Promise((resolve, reject) => {
     const ws = fs.createWriteStream(dstPath, {start: start, flags: 'r+'});
@@ -61,5 +66,6 @@ module.exports = {
   isFile,
   exists,
   getFileHash,
+  getBufHash,
   writeBufToFile
 };
\ No newline at end of file
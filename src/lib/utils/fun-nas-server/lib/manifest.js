@@ -0,0 +1,83 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const md5File = require('md5-file/promise');
+
+const NAS_TMP_DIR = '.fun_nas_tmp';
+const MANIFEST_CACHE_NAME = '.fun-nas-manifest.json';
+
+async function readCachedManifest(cachePath) {
+  try {
+    return JSON.parse(await fs.readFile(cachePath, 'utf8'));
+  } catch (error) {
+    return {};
+  }
+}
+
+async function walk(rootDir, dir, files, cached) {
+  const items = await fs.readdir(dir);
+
+  if (items.length === 0 && dir !== rootDir) {
+    files[`${path.posix.relative(rootDir, dir)}/`] = { dir: true };
+    return;
+  }
+
+  for (const item of items) {
+    const itemPath = path.posix.join(dir, item);
+    if (dir === rootDir && item === NAS_TMP_DIR) { continue; }
+
+    const stats = await fs.lstat(itemPath);
+    if (stats.isDirectory()) {
+      await walk(rootDir, itemPath, files, cached);
+    } else if (stats.isSymbolicLink()) {
+      files[path.posix.relative(rootDir, itemPath)] = { link: await fs.readlink(itemPath) };
+    } else if (stats.isFile()) {
+      const relative = path.posix.relative(rootDir, itemPath);
+      const mtime = stats.mtime.getTime();
+      const old = cached[relative];
+
+      // hashing the whole NAS directory is slow, only files changed since the last manifest are hashed again
+      const hash = old && old.size === stats.size && old.mtime === mtime ? old.hash : await md5File(itemPath);
+
+      files[relative] = { size: stats.size, mtime, mode: stats.mode, hash };
+    }
+  }
+}
+
+// returns { path: { size, mtime, mode, hash } } of the files under dir,
+// empty directories end with '/' and symbolic links are { link }
+async function buildManifest(dir) {
+  if (!await fs.pathExists(dir)) { return {}; }
+
+  const cachePath = path.posix.join(dir, NAS_TMP_DIR, MANIFEST_CACHE_NAME);
+  const cached = await readCachedManifest(cachePath);
+
+  const files = {};
+  await walk(dir, dir, files, cached);
+
+  try {
+    await fs.outputFile(cachePath, JSON.stringify(files));
+  } catch (error) {
+    console.log(`write manifest cache ${cachePath} error: ${error}`);
+  }
+
+  return files;
+}
+
+// removes the files of dir, which are relative paths from the manifest
+async function removeFiles(dir, files) {
+  const root = path.posix.resolve(dir);
+
+  for (const file of files) {
+    const filePath = path.posix.resolve(root, file);
+    if (!filePath.startsWith(`${root}/`)) {
+      throw new Error(`${file} is not under ${dir}`);
+    }
+    await fs.remove(filePath);
+  }
+}
+
+module.exports = {
+  buildManifest, removeFiles
+};
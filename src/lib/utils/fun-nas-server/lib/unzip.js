@@ -0,0 +1,348 @@
+'use strict';
+
+const fs = require('fs-extra');
+const path = require('path');
+const zlib = require('zlib');
+
+// https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT
+const LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+const CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+const END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+const ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+const ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+const LOCAL_FILE_HEADER_LENGTH = 30;
+const CENTRAL_DIRECTORY_HEADER_LENGTH = 46;
+const END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+const ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH = 56;
+const ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH = 20;
+const MAX_COMMENT_LENGTH = 0xFFFF;
+const ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+const METHOD_STORED = 0;
+const METHOD_DEFLATED = 8;
+
+const HOST_UNIX = 3;
+const S_IFMT = 0o170000;
+const S_IFLNK = 0o120000;
+
+const CRC32_TABLE = (() => {
+  const table = new Int32Array(256);
+  for (let n = 0; n < 256; n++) {
+    let c = n;
+    for (let k = 0; k < 8; k++) {
+      c = c & 1 ? 0xEDB88320 ^ (c >>> 1) : c >>> 1;
+    }
+    table[n] = c;
+  }
+  return table;
+})();
+
+// zlib.crc32 is not available on the nodejs10 runtime of the function
+function crc32(crc, buf) {
+  let c = ~crc;
+  for (let i = 0; i < buf.length; i++) {
+    c = CRC32_TABLE[(c ^ buf[i]) & 0xFF] ^ (c >>> 8);
+  }
+  return ~c >>> 0;
+}
+
+function checkEntry(entry, crc, size) {
+  if (size !== entry.uncompressedSize || crc !== entry.crc32) {
+    throw new Error(`${entry.name} is corrupted, crc32 ${crc.toString(16)} and size ${size} don't match the zip`);
+  }
+}
+
+async function readAt(fd, position, length) {
+  const buf = Buffer.alloc(length);
+  const { bytesRead } = await fs.read(fd, buf, 0, length, position);
+  return buf.slice(0, bytesRead);
+}
+
+function readUInt64LE(buf, offset) {
+  return buf.readUInt32LE(offset) + buf.readUInt32LE(offset + 4) * 0x100000000;
+}
+
+async function readEndOfCentralDirectory(fd, size) {
+  const length = Math.min(size, END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+  const tailPosition = size - length;
+  const tail = await readAt(fd, tailPosition, length);
+
+  for (let i = tail.length - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+    if (tail.readUInt32LE(i) !== END_OF_CENTRAL_DIRECTORY_SIGNATURE) { continue; }
+
+    const record = {
+      entries: tail.readUInt16LE(i + 10),
+      size: tail.readUInt32LE(i + 12),
+      offset: tail.readUInt32LE(i + 16)
+    };
+    if (record.entries !== 0xFFFF && record.size !== 0xFFFFFFFF && record.offset !== 0xFFFFFFFF) {
+      return record;
+    }
+
+    const locator = await readAt(fd, tailPosition + i - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_LENGTH);
+    if (locator.readUInt32LE(0) !== ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE) {
+      throw new Error('invalid zip64 end of central directory locator');
+    }
+
+    const zip64Record = await readAt(fd, readUInt64LE(locator, 8), ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH);
+    if (zip64Record.readUInt32LE(0) !== ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+      throw new Error('invalid zip64 end of central directory');
+    }
+    return {
+      entries: readUInt64LE(zip64Record, 32),
+      size: readUInt64LE(zip64Record, 40),
+      offset: readUInt64LE(zip64Record, 48)
+    };
+  }
+  throw new Error('could not find the end of central directory, not a zip file');
+}
+
+// the 64 bits values only exist for the fields which are 0xFFFFFFFF in the header
+function applyZip64ExtraField(entry, extra) {
+  for (let offset = 0; offset + 4 <= extra.length;) {
+    const id = extra.readUInt16LE(offset);
+    const length = extra.readUInt16LE(offset + 2);
+
+    if (id === ZIP64_EXTRA_FIELD_ID) {
+      let position = offset + 4;
+      for (const field of ['uncompressedSize', 'compressedSize', 'localHeaderOffset']) {
+        if (entry[field] === 0xFFFFFFFF) {
+          entry[field] = readUInt64LE(extra, position);
+          position += 8;
+        }
+      }
+      return;
+    }
+    offset += 4 + length;
+  }
+}
+
+function dosDateTimeToDate(date, time) {
+  return new Date((date >> 9) + 1980, ((date >> 5) & 0xF) - 1, date & 0x1F,
+    time >> 11, (time >> 5) & 0x3F, (time & 0x1F) * 2);
+}
+
+function parseCentralDirectory(buf, count) {
+  const entries = [];
+
+  let offset = 0;
+  for (let i = 0; i < count; i++) {
+    if (buf.readUInt32LE(offset) !== CENTRAL_DIRECTORY_SIGNATURE) {
+      throw new Error(`invalid central directory entry at ${offset}`);
+    }
+
+    const nameLength = buf.readUInt16LE(offset + 28);
+    const extraLength = buf.readUInt16LE(offset + 30);
+    const commentLength = buf.readUInt16LE(offset + 32);
+    const nameStart = offset + CENTRAL_DIRECTORY_HEADER_LENGTH;
+
+    const entry = {
+      name: buf.toString('utf8', nameStart, nameStart + nameLength),
+      method: buf.readUInt16LE(offset + 10),
+      mtime: dosDateTimeToDate(buf.readUInt16LE(offset + 14), buf.readUInt16LE(offset + 12)),
+      crc32: buf.readUInt32LE(offset + 16),
+      compressedSize: buf.readUInt32LE(offset + 20),
+      uncompressedSize: buf.readUInt32LE(offset + 24),
+      localHeaderOffset: buf.readUInt32LE(offset + 42),
+      // only archives made on unix keep the file mode in the high 16 bits of the external attributes
+      mode: (buf.readUInt16LE(offset + 4) >> 8) === HOST_UNIX ? buf.readUInt32LE(offset + 38) >>> 16 : 0
+    };
+    applyZip64ExtraField(entry, buf.slice(nameStart + nameLength, nameStart + nameLength + extraLength));
+
+    entries.push(entry);
+    offset += CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength + extraLength + commentLength;
+  }
+  return entries;
+}
+
+async function readEntries(fd, size) {
+  const eocd = await readEndOfCentralDirectory(fd, size);
+  return parseCentralDirectory(await readAt(fd, eocd.offset, eocd.size), eocd.entries);
+}
+
+async function locateEntryData(fd, entry) {
+  const header = await readAt(fd, entry.localHeaderOffset, LOCAL_FILE_HEADER_LENGTH);
+  if (header.length < LOCAL_FILE_HEADER_LENGTH || header.readUInt32LE(0) !== LOCAL_FILE_HEADER_SIGNATURE) {
+    throw new Error(`invalid local file header of ${entry.name}`);
+  }
+  return entry.localHeaderOffset + LOCAL_FILE_HEADER_LENGTH + header.readUInt16LE(26) + header.readUInt16LE(28);
+}
+
+function entryStream(zipPath, entry, dataOffset) {
+  if (entry.method !== METHOD_STORED && entry.method !== METHOD_DEFLATED) {
+    throw new Error(`compression method ${entry.method} of ${entry.name} is not supported`);
+  }
+
+  const raw = fs.createReadStream(zipPath, { start: dataOffset, end: dataOffset + entry.compressedSize - 1 });
+  if (entry.method === METHOD_STORED) { return raw; }
+
+  const inflate = zlib.createInflateRaw();
+  raw.on('error', (error) => inflate.emit('error', error));
+  return raw.pipe(inflate);
+}
+
+// the crc32 and size of what is written are checked against the central directory once it is finished
+function writeEntry(zipPath, entry, dataOffset, target) {
+  return new Promise((resolve, reject) => {
+    const input = entry.compressedSize > 0 ? entryStream(zipPath, entry, dataOffset) : null;
+
+    let crc = 0;
+    let size = 0;
+
+    const output = fs.createWriteStream(target);
+    output.on('error', reject);
+    output.on('finish', () => {
+      try {
+        checkEntry(entry, crc, size);
+        resolve();
+      } catch (error) {
+        reject(error);
+      }
+    });
+
+    if (!input) {
+      output.end();
+      return;
+    }
+
+    input.on('data', (chunk) => {
+      crc = crc32(crc, chunk);
+      size += chunk.length;
+    });
+    input.on('error', (error) => {
+      output.destroy();
+      reject(error);
+    });
+    input.pipe(output);
+  });
+}
+
+async function readEntry(zipPath, entry, dataOffset) {
+  const chunks = [];
+  if (entry.compressedSize > 0) {
+    await new Promise((resolve, reject) => {
+      entryStream(zipPath, entry, dataOffset)
+        .on('data', (chunk) => chunks.push(chunk))
+        .on('error', reject)
+        .on('end', resolve);
+    });
+  }
+  const data = Buffer.concat(chunks);
+  checkEntry(entry, crc32(0, data), data.length);
+  return data;
+}
+
+function resolveTarget(dst, name) {
+  const target = path.resolve(dst, name);
+  if (target !== dst && !target.startsWith(dst + path.sep)) {
+    throw new Error(`${name} is outside of ${dst}`);
+  }
+  return target;
+}
+
+async function pathExists(target) {
+  try {
+    await fs.lstat(target);
+    return true;
+  } catch (error) {
+    if (error.code === 'ENOENT') { return false; }
+    throw error;
+  }
+}
+
+// returns false if the entry is skipped because of noClobber, like unzip -n
+async function extractEntry(zipPath, fd, entry, dst, noClobber) {
+  const target = resolveTarget(dst, entry.name);
+
+  if (entry.name.endsWith('/')) {
+    await fs.ensureDir(target);
+    return true;
+  }
+
+  const exists = await pathExists(target);
+  if (exists && noClobber) { return false; }
+
+  // never write through an existing symbolic link
+  if (exists && (await fs.lstat(target)).isSymbolicLink()) {
+    await fs.remove(target);
+  }
+
+  await fs.ensureDir(path.dirname(target));
+  const dataOffset = await locateEntryData(fd, entry);
+
+  if ((entry.mode & S_IFMT) === S_IFLNK) {
+    const linkTarget = (await readEntry(zipPath, entry, dataOffset)).toString();
+    await fs.remove(target);
+    await fs.symlink(linkTarget, target);
+    return true;
+  }
+
+  try {
+    await writeEntry(zipPath, entry, dataOffset, target);
+  } catch (error) {
+    await fs.remove(target);
+    throw error;
+  }
+  if (entry.mode & 0o777) {
+    await fs.chmod(target, entry.mode & 0o777);
+  }
+  await fs.utimes(target, entry.mtime, entry.mtime);
+  return true;
+}
+
+// Extracts the entries of zipPath from index start with a pool of parallel workers, without spawning unzip.
+// No more entries are started after deadline, the result tells where to continue.
+async function extractZip(zipPath, dst, { noClobber = false, start = 0, deadline = Infinity, parallel = 8 } = {}) {
+  dst = path.resolve(dst);
+
+  const { size } = await fs.stat(zipPath);
+  const fd = await fs.open(zipPath, 'r');
+
+  try {
+    const entries = await readEntries(fd, size);
+
+    // directories first, so that the workers don't race on creating them
+    for (let i = start; i < entries.length; i++) {
+      if (entries[i].name.endsWith('/')) {
+        await fs.ensureDir(resolveTarget(dst, entries[i].name));
+      }
+    }
+
+    const progress = { total: entries.length, extracted: 0, skipped: 0 };
+    let next = start;
+    let failure;
+
+    const worker = async () => {
+      while (!failure && next < entries.length && Date.now() < deadline) {
+        const entry = entries[next++];
+
+        try {
+          if (await extractEntry(zipPath, fd, entry, dst, noClobber)) {
+            progress.extracted++;
+          } else {
+            progress.skipped++;
+          }
+        } catch (error) {
+          failure = failure || error;
+          return;
+        }
+      }
+    };
+
+    // the other workers must stop before fd is closed
+    const workers = [];
+    for (let i = 0; i < parallel; i++) { workers.push(worker()); }
+    await Promise.all(workers);
+
+    if (failure) { throw failure; }
+
+    return Object.assign(progress, { next, done: next >= entries.length });
+  } finally {
+    await fs.close(fd);
+  }
+}
+
+module.exports = {
+  readEntries, extractZip
+};
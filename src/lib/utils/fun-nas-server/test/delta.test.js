@@ -0,0 +1,58 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const crypto = require('crypto');
+const expect = require('expect.js');
+const rimraf = require('rimraf');
+const { weakChecksum, blockSignatures, applyPatch } = require('../lib/delta');
+
+describe('delta.js test', () => {
+  const dirName = path.join(os.tmpdir(), '.delta');
+  const nasFile = path.join(dirName, 'test.file');
+  const literalFile = path.join(dirName, 'literal');
+  const blockSize = 16;
+  const content = crypto.randomBytes(blockSize * 4 + 5);
+
+  beforeEach(async () => {
+    await fs.mkdirp(dirName);
+    await fs.writeFile(nasFile, content);
+    await fs.writeFile(literalFile, 'new');
+  });
+
+  afterEach(() => {
+    rimraf.sync(dirName);
+  });
+
+  it('function blockSignatures test', async () => {
+    const signatures = await blockSignatures(nasFile, blockSize);
+
+    expect(signatures.length).to.be(4);
+    expect(signatures[1].index).to.be(1);
+    expect(signatures[1].weak).to.be(weakChecksum(content, blockSize, blockSize * 2));
+    expect(signatures[1].strong).to.be(crypto.createHash('md5').update(content.slice(blockSize, blockSize * 2)).digest('hex'));
+  });
+
+  it('function applyPatch test', async () => {
+    const expected = Buffer.concat([content.slice(blockSize * 2, blockSize * 4), Buffer.from('new'), content.slice(0, blockSize)]);
+    const hash = crypto.createHash('md5').update(expected).digest('hex');
+
+    await applyPatch(nasFile, literalFile, blockSize, [
+      { index: 2, count: 2 }, { offset: 0, length: 3 }, { index: 0, count: 1 }
+    ], hash);
+
+    expect(await fs.readFile(nasFile)).to.eql(expected);
+  });
+
+  it('function applyPatch hash changed test', async () => {
+    try {
+      await applyPatch(nasFile, literalFile, blockSize, [{ offset: 0, length: 3 }], 'hash');
+      expect().fail();
+    } catch (error) {
+      expect(error.message).to.contain('re-sync');
+    }
+    expect(await fs.readFile(nasFile)).to.eql(content);
+    expect(await fs.pathExists(`${nasFile}.fun-nas-patch`)).to.be(false);
+  });
+});
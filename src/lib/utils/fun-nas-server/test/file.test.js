@@ -64,4 +64,7 @@ describe('file.js test', () => {
     const res = await file.exists(localNotExistPath);
     expect(res).to.eql(false);
   });
-});
\ No newline at end of file
+  it('function getBufHash test', () => {
+    expect(file.getBufHash(Buffer.from('this is a test'))).to.eql('54b0c58c7ce9f2a8b551351102ee0938');
+  });
+});
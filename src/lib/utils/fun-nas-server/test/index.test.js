@@ -3,6 +3,7 @@
 const os = require('os');
 const fs = require('fs-extra');
 const path = require('path');
+const crypto = require('crypto');
 const expect = require('expect.js');
 const rimraf = require('rimraf');
 const sinon = require('sinon');
@@ -223,3 +224,98 @@ describe('POST /file/chunk/upload', () => {
   });
 });
 
+
+describe('GET /manifest', () => {
+  const nasDir = path.posix.join(os.tmpdir(), '.manifestDir');
+  const nasFile = path.posix.join(nasDir, 'nasFile');
+
+  beforeEach(async() => {
+    await fs.mkdirp(nasDir);
+    await fs.writeFile(nasFile, 'this is a test');
+  });
+  afterEach(() => {
+    rimraf.sync(nasDir);
+    sandbox.reset();
+  });
+
+  it('manifest test', (done) => {
+    request.get('/manifest')
+      .query({ dir: nasDir })
+      .expect(200)
+      .end((err, res) => {
+        expect(Object.keys(res.body.files)).to.eql(['nasFile']);
+        expect(res.body.files.nasFile.size).to.be(14);
+        done(err);
+      });
+  });
+
+  it('missing dir test', (done) => {
+    request.get('/manifest')
+      .expect(200)
+      .expect({ error: 'missing dir parameter' }, done);
+  });
+});
+
+describe('POST /file/chunk/upload with chunkHash', () => {
+  const nasDir = path.posix.join(os.tmpdir(), '.chunkHashUpload');
+  const nasFile = path.posix.join(nasDir, 'nasFile');
+  const chunkBuf = Buffer.from('this is a chunk');
+  const chunkHash = crypto.createHash('md5').update(chunkBuf).digest('hex');
+
+  beforeEach(async() => {
+    await fs.mkdirp(nasDir);
+    await fs.writeFile(nasFile, Buffer.alloc(20));
+  });
+  afterEach(() => {
+    rimraf.sync(nasDir);
+    sandbox.reset();
+  });
+
+  it('chunk hash verified', (done) => {
+    request.post('/file/chunk/upload')
+      .send(chunkBuf)
+      .query({ nasFile, fileStart: 0, chunkHash })
+      .set('Content-Type', 'application/octet-stream')
+      .expect(200)
+      .expect({ desc: 'chunk file write done', chunkHash }, done);
+  });
+
+  it('chunk hash changed', (done) => {
+    request.post('/file/chunk/upload')
+      .send(chunkBuf)
+      .query({ nasFile, fileStart: 0, chunkHash: 'changed' })
+      .set('Content-Type', 'application/octet-stream')
+      .expect(200)
+      .expect({ error: 'chunk hash changes, you need to re-upload' }, done);
+  });
+});
+
+describe('POST /unzip', () => {
+  const nasZipFile = path.join(__dirname, 'unzip.test.zip');
+  const dstDir = path.posix.join(os.tmpdir(), '.unzipDir');
+
+  afterEach(() => {
+    rimraf.sync(dstDir);
+    sandbox.reset();
+  });
+
+  it('unzip test', (done) => {
+    request.post('/unzip')
+      .send({ nasZipFile, dstDir })
+      .expect(200)
+      .end((err, res) => {
+        const result = res.body;
+        expect(result.done).to.be(true);
+        expect(result.next).to.be(result.total);
+        expect(fs.readFileSync(path.join(dstDir, 'dir', 'b.txt'), 'utf8')).to.be('stored');
+        done(err);
+      });
+  });
+
+  it('missing nasZipFile test', (done) => {
+    request.post('/unzip')
+      .send({ dstDir })
+      .expect(200)
+      .expect({ error: 'missing nasZipFile or dstDir parameter' }, done);
+  });
+});
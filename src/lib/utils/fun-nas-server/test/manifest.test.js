@@ -0,0 +1,66 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const expect = require('expect.js');
+const rimraf = require('rimraf');
+const md5File = require('md5-file/promise');
+const { buildManifest, removeFiles } = require('../lib/manifest');
+
+describe('manifest.js test', () => {
+  const dirName = path.join(os.tmpdir(), '.manifest');
+  const filePath = path.join(dirName, 'sub', 'test.file');
+
+  beforeEach(async () => {
+    await fs.mkdirp(path.join(dirName, 'empty'));
+    await fs.outputFile(filePath, 'this is a test');
+  });
+
+  afterEach(() => {
+    rimraf.sync(dirName);
+  });
+
+  it('function buildManifest test', async () => {
+    const files = await buildManifest(dirName);
+
+    expect(Object.keys(files).sort()).to.eql(['empty/', 'sub/test.file']);
+    expect(files['empty/']).to.eql({ dir: true });
+    expect(files['sub/test.file'].size).to.be(14);
+    expect(files['sub/test.file'].hash).to.be(await md5File(filePath));
+  });
+
+  it('function buildManifest reuse cached hash test', async () => {
+    await buildManifest(dirName);
+
+    const cachePath = path.join(dirName, '.fun_nas_tmp', '.fun-nas-manifest.json');
+    const cached = JSON.parse(await fs.readFile(cachePath, 'utf8'));
+    cached['sub/test.file'].hash = 'cached';
+    await fs.writeFile(cachePath, JSON.stringify(cached));
+
+    const files = await buildManifest(dirName);
+    expect(files['sub/test.file'].hash).to.be('cached');
+    expect(files['.fun_nas_tmp/.fun-nas-manifest.json']).to.be(undefined);
+  });
+
+  it('function buildManifest not exist test', async () => {
+    expect(await buildManifest(path.join(dirName, 'not-exist'))).to.eql({});
+  });
+
+  it('function removeFiles test', async () => {
+    await removeFiles(dirName, ['sub/test.file', 'empty/']);
+
+    expect(await fs.pathExists(filePath)).to.be(false);
+    expect(await fs.pathExists(path.join(dirName, 'empty'))).to.be(false);
+  });
+
+  it('function removeFiles outside dir test', async () => {
+    try {
+      await removeFiles(path.join(dirName, 'sub'), ['../empty']);
+      expect().fail();
+    } catch (error) {
+      expect(error.message).to.contain('is not under');
+    }
+    expect(await fs.pathExists(path.join(dirName, 'empty'))).to.be(true);
+  });
+});
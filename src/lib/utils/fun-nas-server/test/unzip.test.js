@@ -0,0 +1,99 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const expect = require('expect.js');
+const rimraf = require('rimraf');
+const { extractZip } = require('../lib/unzip');
+
+//unzip.test.zip 中包含 dir/a.txt(deflated, 0755), dir/b.txt(stored, 0644), 空目录 empty/ 以及指向 dir/a.txt 的软链接 link
+const zipPath = path.join(__dirname, 'unzip.test.zip');
+const outsideZipPath = path.join(__dirname, 'unzip-outside.test.zip');
+
+describe('unzip.js test', () => {
+  const dst = path.join(os.tmpdir(), '.unzip', 'dst');
+
+  beforeEach(async () => {
+    await fs.mkdirp(dst);
+  });
+
+  afterEach(() => {
+    rimraf.sync(path.dirname(dst));
+  });
+
+  it('function extractZip test', async () => {
+    const result = await extractZip(zipPath, dst);
+
+    expect(result).to.eql({ total: 5, extracted: 5, skipped: 0, next: 5, done: true });
+    expect(await fs.readFile(path.join(dst, 'dir', 'a.txt'), 'utf8')).to.eql('this is a test '.repeat(100));
+    expect(await fs.readFile(path.join(dst, 'dir', 'b.txt'), 'utf8')).to.eql('stored');
+    expect((await fs.stat(path.join(dst, 'dir', 'a.txt'))).mode & 0o777).to.eql(0o755);
+    expect((await fs.stat(path.join(dst, 'dir', 'b.txt'))).mode & 0o777).to.eql(0o644);
+    expect(await fs.readdir(path.join(dst, 'empty'))).to.eql([]);
+    expect(await fs.readlink(path.join(dst, 'link'))).to.eql('dir/a.txt');
+  });
+
+  it('function extractZip no clobber test', async () => {
+    await fs.outputFile(path.join(dst, 'dir', 'b.txt'), 'existing');
+
+    const result = await extractZip(zipPath, dst, { noClobber: true });
+
+    expect(result.skipped).to.eql(1);
+    expect(await fs.readFile(path.join(dst, 'dir', 'b.txt'), 'utf8')).to.eql('existing');
+  });
+
+  it('function extractZip overwrite test', async () => {
+    await fs.outputFile(path.join(dst, 'dir', 'b.txt'), 'existing');
+
+    await extractZip(zipPath, dst);
+
+    expect(await fs.readFile(path.join(dst, 'dir', 'b.txt'), 'utf8')).to.eql('stored');
+  });
+
+  it('function extractZip deadline test', async () => {
+    const result = await extractZip(zipPath, dst, { deadline: 0 });
+    expect(result.done).to.eql(false);
+    expect(result.next).to.eql(0);
+
+    const resumed = await extractZip(zipPath, dst, { start: result.next, parallel: 1 });
+    expect(resumed.done).to.eql(true);
+    expect(await fs.pathExists(path.join(dst, 'link'))).to.eql(true);
+  });
+
+  it('function extractZip outside dst test', async () => {
+    try {
+      await extractZip(outsideZipPath, dst);
+      expect().fail();
+    } catch (error) {
+      expect(error.message).to.contain('is outside of');
+    }
+    expect(await fs.pathExists(path.join(path.dirname(dst), 'outside.txt'))).to.eql(false);
+  });
+
+  it('function extractZip corrupted entry test', async () => {
+    const corruptedZip = path.join(path.dirname(dst), 'corrupted.zip');
+    const content = await fs.readFile(zipPath);
+    content[content.indexOf('stored')] = 'S'.charCodeAt(0);
+    await fs.writeFile(corruptedZip, content);
+
+    try {
+      await extractZip(corruptedZip, dst, { parallel: 1 });
+      expect().fail();
+    } catch (error) {
+      expect(error.message).to.contain('dir/b.txt is corrupted');
+    }
+    expect(await fs.pathExists(path.join(dst, 'dir', 'b.txt'))).to.eql(false);
+  });
+
+  it('function extractZip not a zip test', async () => {
+    const notZip = path.join(dst, 'not.zip');
+    await fs.writeFile(notZip, 'not a zip');
+    try {
+      await extractZip(notZip, dst);
+      expect().fail();
+    } catch (error) {
+      expect(error.message).to.contain('not a zip file');
+    }
+  });
+});
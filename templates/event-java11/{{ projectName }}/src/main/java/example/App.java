@@ -7,20 +7,50 @@ import java.io.OutputStream;
 import com.aliyun.fc.runtime.Context;
 import com.aliyun.fc.runtime.StreamRequestHandler;
 import com.aliyun.fc.runtime.FunctionInitializer;
+import com.aliyun.fc.runtime.PreStopHandler;
+
+import example.starter.Pool;
+import example.starter.Resources;
+import example.starter.TextBuffer;
 
 /**
  * Hello world!
  *
+ * Resources created in initialize are reused by every invocation on the same
+ * instance and closed in preStop, see fc-java-starter/README.md.
  */
-public class App implements StreamRequestHandler, FunctionInitializer {
+public class App implements StreamRequestHandler, FunctionInitializer, PreStopHandler {
+
+    private Resources resources;
+    private Pool<TextBuffer> buffers;
 
     public void initialize(Context context) throws IOException {
-        //TODO
+        resources = new Resources();
+        buffers = resources.buffers("response buffers", 16, 1024);
+    }
+
+    private Pool<TextBuffer> buffers() {
+        if (buffers == null) {
+            throw new IllegalStateException("initialize has not been called, "
+                    + "it has to be configured as the Initializer of the function in template.yml");
+        }
+        return buffers;
     }
 
     @Override
     public void handleRequest(
             InputStream inputStream, OutputStream outputStream, Context context) throws IOException {
-        outputStream.write(new String("hello world\n").getBytes());
+        try (Pool.Lease<TextBuffer> lease = buffers().lease()) {
+            lease.get().append("hello world\n").writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public void preStop(Context context) throws IOException {
+        if (resources == null) {
+            return;
+        }
+        context.getLogger().info(resources.metrics());
+        resources.close();
     }
 }
@@ -6,18 +6,37 @@ import javax.servlet.ServletException;
 
 import com.aliyun.fc.runtime.Context;
 import com.aliyun.fc.runtime.FunctionInitializer;
+import com.aliyun.fc.runtime.PreStopHandler;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import com.aliyun.fc.runtime.HttpRequestHandler;
 
+import example.starter.Pool;
+import example.starter.Resources;
+import example.starter.TextBuffer;
+
 /**
  * Hello world!
  *
+ * Resources created in initialize are reused by every request to the same
+ * instance and closed in preStop, see fc-java-starter/README.md.
  */
-public class App implements HttpRequestHandler, FunctionInitializer {
+public class App implements HttpRequestHandler, FunctionInitializer, PreStopHandler {
+
+    private Resources resources;
+    private Pool<TextBuffer> buffers;
 
     public void initialize(Context context) throws IOException {
-        //TODO
+        resources = new Resources();
+        buffers = resources.buffers("response buffers", 16, 1024);
+    }
+
+    private Pool<TextBuffer> buffers() {
+        if (buffers == null) {
+            throw new IllegalStateException("initialize has not been called, "
+                    + "it has to be configured as the Initializer of the function in template.yml");
+        }
+        return buffers;
     }
 
     @Override
@@ -32,10 +51,24 @@ public class App implements HttpRequestHandler, FunctionInitializer {
         response.setHeader("header2", "value2");
         response.setHeader("Content-Type", "text/plain");
 
-        String body = String.format("Path: %s\n Uri: %s\n IP: %s\n", requestPath, requestURI, requestClientIP);
-        OutputStream out = response.getOutputStream();
-        out.write((body).getBytes());
-        out.flush();
-        out.close();
+        try (Pool.Lease<TextBuffer> lease = buffers().lease()) {
+            TextBuffer body = lease.get()
+                    .append("Path: ").append(requestPath)
+                    .append("\n Uri: ").append(requestURI)
+                    .append("\n IP: ").append(requestClientIP).append('\n');
+            OutputStream out = response.getOutputStream();
+            body.writeTo(out);
+            out.flush();
+            out.close();
+        }
+    }
+
+    @Override
+    public void preStop(Context context) throws IOException {
+        if (resources == null) {
+            return;
+        }
+        context.getLogger().info(resources.metrics());
+        resources.close();
     }
 }
@@ -1,7 +1,11 @@
 package hello;
 
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class Application {
@@ -10,4 +14,21 @@ public class Application {
         SpringApplication.run(Application.class, args);
     }
 
+    /**
+     * Creates the beans on first use instead of on startup, which shortens the initializer of the function.
+     * It's the same as spring.main.lazy-initialization of spring boot 2.2, which is not available in 2.1.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.main.lazy-initialization", havingValue = "true")
+    public static BeanFactoryPostProcessor lazyInitBeanFactoryPostProcessor() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                // infrastructure beans are needed to start the context anyway
+                if (definition.getRole() == BeanDefinition.ROLE_APPLICATION) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
 }
@@ -1,6 +1,8 @@
 package hello;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -13,11 +15,15 @@ import com.aliyun.fc.runtime.FunctionComputeLogger;
 import com.aliyun.fc.runtime.FunctionInitializer;
 import com.aliyun.fc.runtime.HttpRequestHandler;
 
+import example.starter.StartupTrace;
+
 /**
  * 
  * 1. In initialize we load the webapp package and init the webapp.
  * 2. In handleRequest we forward the request to the webapp loaded above.
  * 
+ * The time of each initialize stage is logged, see application.properties for the startup tuning.
+ * With FUN_STARTUP_TRACE=true the stages are also printed as trace lines, see StartupTrace.
  */
 public class FcHandler implements FunctionInitializer, HttpRequestHandler {
     private AppLoader fcAppLoader = new FcAppLoader();
@@ -30,8 +36,11 @@ public class FcHandler implements FunctionInitializer, HttpRequestHandler {
     // Webapp home directory after inited
     private String appBaseDir = System.getenv("APP_BASE_DIR");
     
+    private volatile boolean handled;
+    
     @Override
     public void initialize(Context context) throws IOException {
+        StartupTrace.recordSinceJvmStart("jvm and runtime startup");
         FunctionComputeLogger fcLogger = context.getLogger();
         
         // Config FcAppLoader
@@ -41,26 +50,87 @@ public class FcHandler implements FunctionInitializer, HttpRequestHandler {
         }
         
         // Load code from /code
+        long timeBegin = System.currentTimeMillis();
         fcLogger.info("Begin load code");
-        fcAppLoader.loadCodeFromLocalProject("");
-        fcLogger.info("End load code");
+        StartupTrace.Span loading = StartupTrace.begin("load code");
+        try {
+            fcAppLoader.loadCodeFromLocalProject("");
+        } finally {
+            loading.end();
+        }
+        long codeLoaded = System.currentTimeMillis();
+        fcLogger.info("End load code, elapsed: " + (codeLoaded - timeBegin) + "ms");
         
         // Init webapp from code
-        long timeBegin = System.currentTimeMillis();
         fcLogger.info("Begin load webapp");
-        boolean initSuccess = fcAppLoader.initApp(userContextPath, FcHandler.class.getClassLoader());
+        boolean initSuccess;
+        StartupTrace.Span initializing = StartupTrace.begin("FcAppLoader.initApp");
+        try {
+            initSuccess = fcAppLoader.initApp(userContextPath, FcHandler.class.getClassLoader());
+        } finally {
+            initializing.end();
+        }
         if(!initSuccess) {
             throw new IOException("Init web app failed");
         }
-        fcLogger.info("End load webapp, elapsed: " + (System.currentTimeMillis() - timeBegin) + "ms");
+        long appInited = System.currentTimeMillis();
+        fcLogger.info("End load webapp, elapsed: " + (appInited - codeLoaded) + "ms");
+        
+        logStages(fcLogger, timeBegin, codeLoaded, appInited);
+    }
+    
+    private void logStages(FunctionComputeLogger fcLogger, long timeBegin, long codeLoaded, long appInited) {
+        StringBuilder stages = new StringBuilder("Initialize stages:");
+        stages.append(String.format("%n  %-24s %6d ms", "load code", codeLoaded - timeBegin));
+        
+        long last = codeLoaded;
+        for (Map.Entry<String, Long> phase : drainStartupPhases().entrySet()) {
+            stages.append(String.format("%n  %-24s %6d ms", "spring " + phase.getKey(), phase.getValue() - last));
+            StartupTrace.record("spring " + phase.getKey(), last, phase.getValue());
+            last = phase.getValue();
+        }
+        stages.append(String.format("%n  %-24s %6d ms", "webapp ready", appInited - last));
+        stages.append(String.format("%n  %-24s %6d ms", "total", appInited - timeBegin));
+        
+        fcLogger.info(stages.toString());
+    }
+    
+    // only the constant of StartupPhases is used here, it's inlined and loads no spring classes
+    private Map<String, Long> drainStartupPhases() {
+        Map<String, Long> phases = new LinkedHashMap<>();
+        
+        String recorded = System.getProperty(StartupPhases.PROPERTY);
+        System.clearProperty(StartupPhases.PROPERTY);
+        if (recorded == null) {
+            return phases;
+        }
+        
+        for (String item : recorded.split(",")) {
+            int index = item.lastIndexOf('=');
+            phases.put(item.substring(0, index), Long.parseLong(item.substring(index + 1)));
+        }
+        return phases;
     }
     
     @Override
     public void handleRequest(HttpServletRequest request, HttpServletResponse response, Context context) {
+        // only the first request of the container is traced
+        StartupTrace.Span firstRequest = handled ? StartupTrace.NOOP : StartupTrace.begin("first handleRequest");
+        handled = true;
+        
         try {
             fcAppLoader.forward(request, response);
         } catch (Exception e) {
-            e.printStackTrace();
+            context.getLogger().error("Forward request " + request.getRequestURI() + " failed: " + e);
+            if (!response.isCommitted()) {
+                try {
+                    response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                } catch (IOException ignored) {
+                    // the client has gone
+                }
+            }
+        } finally {
+            firstRequest.end();
         }
     }
 }
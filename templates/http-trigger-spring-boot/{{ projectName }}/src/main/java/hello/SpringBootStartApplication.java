@@ -7,6 +7,6 @@ public class SpringBootStartApplication extends SpringBootServletInitializer {
 
     @Override
     protected SpringApplicationBuilder configure(SpringApplicationBuilder builder) {
-        return builder.sources(Application.class);
+        return builder.sources(Application.class).listeners(new StartupPhases());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package hello;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * Records when the spring application reaches each phase of its startup.
+ *
+ * The webapp is loaded by FcAppLoader in its own class loader, so the timestamps are passed
+ * to FcHandler through a system property instead of a static field.
+ * The format is "phase=millis,phase=millis".
+ */
+public class StartupPhases implements ApplicationListener<ApplicationEvent> {
+    static final String PROPERTY = "hello.startup.phases";
+
+    private static final Map<Class<?>, String> PHASES = new HashMap<>();
+
+    static {
+        PHASES.put(ApplicationStartingEvent.class, "starting");
+        PHASES.put(ApplicationEnvironmentPreparedEvent.class, "environment prepared");
+        PHASES.put(ApplicationPreparedEvent.class, "context prepared");
+        PHASES.put(ContextRefreshedEvent.class, "context refreshed");
+        PHASES.put(ApplicationStartedEvent.class, "started");
+        PHASES.put(ApplicationReadyEvent.class, "ready");
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        String phase = PHASES.get(event.getClass());
+        if (phase == null) {
+            return;
+        }
+
+        String recorded = System.getProperty(PROPERTY);
+        String current = phase + "=" + System.currentTimeMillis();
+        System.setProperty(PROPERTY, recorded == null ? current : recorded + "," + current);
+    }
+}
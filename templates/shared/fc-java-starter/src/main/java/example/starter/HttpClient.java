@@ -0,0 +1,181 @@
+package example.starter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An HTTP client over HttpURLConnection that keeps its connections alive
+ * across invocations on a warm instance.
+ *
+ * <p>The JDK caches a connection for reuse once its response body has been
+ * read to the end and closed, which every request here does, errors
+ * included. Warm invocations calling the same host then skip the TCP and TLS
+ * handshakes. Concurrent requests are limited to maxConnections, which is
+ * also how many idle connections the JDK keeps per host unless
+ * http.maxConnections has been set.
+ */
+public final class HttpClient implements Metered, AutoCloseable {
+
+    private final String name;
+    private final int maxConnections;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final Semaphore permits;
+    private final PoolMetrics metrics = new PoolMetrics();
+
+    private volatile boolean closed;
+
+    public HttpClient(String name, int maxConnections, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.name = name;
+        this.maxConnections = maxConnections;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.permits = new Semaphore(maxConnections, true);
+
+        // read once by the JDK when the first connection is cached, it keeps 5 by default
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(maxConnections));
+        }
+    }
+
+    public Response get(String url) throws IOException {
+        return send("GET", url, Collections.<String, String>emptyMap(), null);
+    }
+
+    public Response post(String url, String contentType, byte[] body) throws IOException {
+        return send("POST", url, Collections.singletonMap("Content-Type", contentType), body);
+    }
+
+    public Response send(String method, String url, Map<String, String> headers, byte[] body) throws IOException {
+        if (closed) {
+            throw new IOException(name + " is closed");
+        }
+        acquire();
+        try {
+            return execute(method, url, headers, body);
+        } catch (IOException | RuntimeException e) {
+            metrics.failed();
+            throw e;
+        } finally {
+            metrics.released();
+            permits.release();
+        }
+    }
+
+    private void acquire() throws IOException {
+        long waitedNanos = 0;
+        if (!permits.tryAcquire()) {
+            long start = System.nanoTime();
+            try {
+                if (!permits.tryAcquire(readTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    metrics.failed();
+                    throw new IOException("all " + maxConnections + " connections of " + name
+                            + " stayed in use for " + readTimeoutMillis + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for a connection of " + name, e);
+            }
+            waitedNanos = Math.max(1, System.nanoTime() - start);
+        }
+        metrics.borrowed(waitedNanos);
+    }
+
+    private Response execute(String method, String url, Map<String, String> headers, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setUseCaches(false);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        byte[] responseBody = in == null ? new byte[0] : readFully(in);
+        return new Response(status, connection.getHeaderFields(), responseBody);
+    }
+
+    // reading to the end and closing is what returns the connection to the keep-alive cache
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = stream.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Counts requests as borrows of a connection, created stays 0 as the
+     * connections are opened and cached by the JDK.
+     */
+    @Override
+    public PoolMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Rejects further requests, the cached connections are closed by the JDK
+     * when they have been idle for the keep-alive timeout of the server.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    public static final class Response {
+
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        Response(int status, Map<String, List<String>> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
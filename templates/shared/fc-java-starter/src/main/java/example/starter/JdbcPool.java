@@ -0,0 +1,200 @@
+package example.starter;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * A small pool of JDBC connections opened through DriverManager, for
+ * functions that don't ship a pool library. The JDBC driver has to be a
+ * dependency of the function.
+ *
+ * <p>Closing a connection got from {@link #getConnection()} returns it to the
+ * pool, rolled back if it was left in a transaction. Connections idle for
+ * longer than the validation interval are checked with isValid before they
+ * are reused, as the instance may have been frozen between invocations for
+ * longer than the database keeps an idle session. {@link #close()} closes
+ * them all, which the PreStop handler should do before the instance stops.
+ */
+public final class JdbcPool implements DataSource, Metered, AutoCloseable {
+
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 30_000;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String name;
+    private final Pool<PooledConnection> connections;
+
+    private volatile long validationIntervalMillis = DEFAULT_VALIDATION_INTERVAL_MILLIS;
+
+    public JdbcPool(String name, String url, Properties properties, int maxSize) {
+        this.name = name;
+        this.connections = new Pool<PooledConnection>(name, maxSize,
+                () -> new PooledConnection(DriverManager.getConnection(url, properties)),
+                PooledConnection::reset) {
+
+            @Override
+            protected boolean validate(PooledConnection connection) throws SQLException {
+                return connection.idleMillis() < validationIntervalMillis
+                        || connection.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+            }
+
+            @Override
+            protected void destroy(PooledConnection connection) throws SQLException {
+                connection.raw.close();
+            }
+        };
+    }
+
+    public JdbcPool withTimeout(long timeout, TimeUnit unit) {
+        connections.withTimeout(timeout, unit);
+        return this;
+    }
+
+    public JdbcPool withValidationInterval(long interval, TimeUnit unit) {
+        this.validationIntervalMillis = unit.toMillis(interval);
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        PooledConnection connection;
+        try {
+            connection = connections.borrow();
+        } catch (PoolException e) {
+            throw e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getMessage(), e);
+        }
+        return connection.lease(connections);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("the credentials of " + name + " are given when it is created");
+    }
+
+    @Override
+    public PoolMetrics metrics() {
+        return connections.metrics();
+    }
+
+    @Override
+    public void close() {
+        connections.close();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException(name + " is not a " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static final class PooledConnection {
+
+        private final Connection raw;
+        private volatile long releasedAt = System.currentTimeMillis();
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        long idleMillis() {
+            return System.currentTimeMillis() - releasedAt;
+        }
+
+        void reset() throws SQLException {
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            raw.clearWarnings();
+            releasedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * A view of the connection whose close returns it to the pool, it
+         * can't be used after that.
+         */
+        Connection lease(Pool<PooledConnection> pool) {
+            AtomicBoolean returned = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (returned.compareAndSet(false, true)) {
+                                    pool.release(this);
+                                }
+                                return null;
+                            case "isClosed":
+                                if (returned.get()) {
+                                    return true;
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                        if (method.getDeclaringClass() == Object.class) {
+                            switch (method.getName()) {
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                default:
+                                    return "pooled " + raw;
+                            }
+                        }
+                        if (returned.get()) {
+                            throw new SQLException("the connection has been returned to its pool");
+                        }
+                        try {
+                            return method.invoke(raw, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package example.starter;
+
+/**
+ * A resource whose usage is reported by {@link Resources#metrics()}.
+ */
+public interface Metered {
+
+    PoolMetrics metrics();
+}
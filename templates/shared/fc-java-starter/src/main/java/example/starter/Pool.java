@@ -0,0 +1,259 @@
+package example.starter;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of reusable objects, created by the initializer of the
+ * function and shared by the invocations on the same instance.
+ *
+ * <p>Objects are created on demand, at most maxSize of them. A borrower beyond
+ * that waits up to the timeout for one to be released. Released objects are
+ * reset and handed out again most recently used first, so a lightly loaded
+ * instance keeps reusing the same warm few.
+ *
+ * <pre>
+ * try (Pool.Lease&lt;TextBuffer&gt; lease = buffers.lease()) {
+ *     lease.get().append("hello").writeTo(outputStream);
+ * }
+ * </pre>
+ */
+public class Pool<T> implements Metered, AutoCloseable {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    public interface Factory<T> {
+        T create() throws Exception;
+    }
+
+    public interface Action<T> {
+        void apply(T value) throws Exception;
+    }
+
+    private final String name;
+    private final int maxSize;
+    private final Factory<T> factory;
+    private final Action<T> reset;
+    private final Semaphore permits;
+    private final Deque<T> idle = new ConcurrentLinkedDeque<>();
+    private final PoolMetrics metrics = new PoolMetrics();
+
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private volatile boolean closed;
+
+    public Pool(String name, int maxSize, Factory<T> factory) {
+        this(name, maxSize, factory, null);
+    }
+
+    /**
+     * @param reset called on every released object before it is reused, an
+     *              exception from it discards the object instead
+     */
+    public Pool(String name, int maxSize, Factory<T> factory, Action<T> reset) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize of " + name + " must be positive: " + maxSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.factory = factory;
+        this.reset = reset;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public Pool<T> withTimeout(long timeout, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Whether an idle object is still usable, checked before it is handed out.
+     */
+    protected boolean validate(T value) throws Exception {
+        return true;
+    }
+
+    /**
+     * Releases what an object holds once it leaves the pool for good.
+     */
+    protected void destroy(T value) throws Exception {
+        if (value instanceof AutoCloseable) {
+            ((AutoCloseable) value).close();
+        }
+    }
+
+    public T borrow() {
+        if (closed) {
+            throw new PoolException(name + " is closed");
+        }
+
+        long waitedNanos = 0;
+        if (!permits.tryAcquire()) {
+            long start = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PoolException("interrupted while waiting for " + name, e);
+            }
+            if (!acquired) {
+                metrics.failed();
+                throw new PoolException("no " + name + " available in " + timeoutMillis + " ms, all "
+                        + maxSize + " are in use");
+            }
+            waitedNanos = Math.max(1, System.nanoTime() - start);
+        }
+
+        try {
+            T value = takeIdle();
+            if (value == null) {
+                value = factory.create();
+                metrics.created();
+            }
+            metrics.borrowed(waitedNanos);
+            return value;
+        } catch (Exception e) {
+            permits.release();
+            metrics.failed();
+            throw new PoolException("create " + name + " failed", e);
+        }
+    }
+
+    private T takeIdle() {
+        T value;
+        while ((value = idle.pollFirst()) != null) {
+            boolean valid;
+            try {
+                valid = validate(value);
+            } catch (Exception e) {
+                valid = false;
+            }
+            if (valid) {
+                return value;
+            }
+            metrics.failed();
+            destroyQuietly(value);
+        }
+        return null;
+    }
+
+    public Lease<T> lease() {
+        return new Lease<>(this, borrow());
+    }
+
+    /**
+     * Returns a borrowed object to the pool.
+     */
+    public void release(T value) {
+        try {
+            if (closed) {
+                destroyQuietly(value);
+                return;
+            }
+            try {
+                if (reset != null) {
+                    reset.apply(value);
+                }
+            } catch (Exception e) {
+                metrics.failed();
+                destroyQuietly(value);
+                return;
+            }
+            idle.offerFirst(value);
+            // closed concurrently, its drain may have missed this one
+            if (closed && idle.remove(value)) {
+                destroyQuietly(value);
+            }
+        } finally {
+            metrics.released();
+            permits.release();
+        }
+    }
+
+    /**
+     * Discards a borrowed object that is broken, a new one is created in its place when needed.
+     */
+    public void invalidate(T value) {
+        try {
+            destroyQuietly(value);
+        } finally {
+            metrics.released();
+            permits.release();
+        }
+    }
+
+    private void destroyQuietly(T value) {
+        try {
+            destroy(value);
+        } catch (Exception e) {
+            System.err.println("destroy " + name + " failed: " + e);
+        }
+    }
+
+    @Override
+    public PoolMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Destroys the idle objects, the borrowed ones are destroyed when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        T value;
+        while ((value = idle.pollFirst()) != null) {
+            destroyQuietly(value);
+        }
+    }
+
+    /**
+     * A borrowed object that goes back to its pool when closed.
+     */
+    public static final class Lease<T> implements AutoCloseable {
+
+        private final Pool<T> pool;
+        private final T value;
+        private boolean released;
+
+        private Lease(Pool<T> pool, T value) {
+            this.pool = pool;
+            this.value = value;
+        }
+
+        public T get() {
+            if (released) {
+                throw new IllegalStateException(pool.getName() + " has been released");
+            }
+            return value;
+        }
+
+        /**
+         * Discards the object instead of returning it when the lease is closed.
+         */
+        public void invalidate() {
+            if (!released) {
+                released = true;
+                pool.invalidate(value);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                pool.release(value);
+            }
+        }
+    }
+}
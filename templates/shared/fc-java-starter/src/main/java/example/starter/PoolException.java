@@ -0,0 +1,18 @@
+package example.starter;
+
+/**
+ * Thrown when an object could not be borrowed: the pool is closed, it stayed
+ * exhausted for the whole timeout, or a new object could not be created.
+ */
+public class PoolException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PoolException(String message) {
+        super(message);
+    }
+
+    public PoolException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
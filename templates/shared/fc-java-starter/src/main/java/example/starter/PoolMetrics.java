@@ -0,0 +1,83 @@
+package example.starter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Usage counters of a pooled resource. A warm instance should create its
+ * objects once and then only borrow them, so created staying flat while
+ * borrowed grows is what the pooling is for.
+ */
+public final class PoolMetrics {
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong inUse = new AtomicLong();
+    private final AtomicLong maxInUse = new AtomicLong();
+
+    void created() {
+        created.increment();
+    }
+
+    void borrowed(long waitedNanos) {
+        borrowed.increment();
+        if (waitedNanos > 0) {
+            waits.increment();
+            waitNanos.add(waitedNanos);
+        }
+        maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+    }
+
+    void released() {
+        inUse.decrementAndGet();
+    }
+
+    void failed() {
+        failures.increment();
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    public long getBorrowed() {
+        return borrowed.sum();
+    }
+
+    /**
+     * The borrows that found every object in use and had to wait for one.
+     */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    public long getWaitMillis() {
+        return waitNanos.sum() / 1_000_000;
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getInUse() {
+        return inUse.get();
+    }
+
+    public long getMaxInUse() {
+        return maxInUse.get();
+    }
+
+    @Override
+    public String toString() {
+        return "created=" + getCreated()
+                + " borrowed=" + getBorrowed()
+                + " in-use=" + getInUse()
+                + " max-in-use=" + getMaxInUse()
+                + " waits=" + getWaits()
+                + " wait-ms=" + getWaitMillis()
+                + " failures=" + getFailures();
+    }
+}
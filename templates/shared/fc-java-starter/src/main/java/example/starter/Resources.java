@@ -0,0 +1,150 @@
+package example.starter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The resources of a function instance: created by its initializer, reused
+ * by every invocation on the instance and closed by its PreStop handler.
+ *
+ * <pre>
+ * public void initialize(Context context) {
+ *     resources = new Resources();
+ *     buffers = resources.buffers("response buffers", 16, 1024);
+ *     http = resources.httpClient("backend", 8, 3000, 10000);
+ * }
+ *
+ * public void preStop(Context context) throws IOException {
+ *     context.getLogger().info(resources.metrics());
+ *     resources.close();
+ * }
+ * </pre>
+ *
+ * Resources are closed in the reverse order they were registered. A JVM
+ * shutdown hook closes the ones still open too, for instances without a
+ * PreStop handler; it is registered once for all of them.
+ */
+public final class Resources implements AutoCloseable {
+
+    private static final Set<Resources> OPEN = new LinkedHashSet<>();
+
+    private static boolean shutdownHookAdded;
+
+    private final Map<String, AutoCloseable> resources = new LinkedHashMap<>();
+
+    private boolean closed;
+
+    public Resources() {
+        synchronized (OPEN) {
+            if (!shutdownHookAdded) {
+                Runtime.getRuntime().addShutdownHook(new Thread(Resources::closeAll, "fc-java-starter-shutdown"));
+                shutdownHookAdded = true;
+            }
+            OPEN.add(this);
+        }
+    }
+
+    public synchronized <T extends AutoCloseable> T register(String name, T resource) {
+        if (closed) {
+            throw new IllegalStateException("resources are closed, " + name + " is registered too late");
+        }
+        if (resources.containsKey(name)) {
+            throw new IllegalArgumentException("a resource named " + name + " is already registered");
+        }
+        resources.put(name, resource);
+        return resource;
+    }
+
+    public <T> Pool<T> pool(String name, int maxSize, Pool.Factory<T> factory, Pool.Action<T> reset) {
+        return register(name, new Pool<>(name, maxSize, factory, reset));
+    }
+
+    /**
+     * Reusable buffers for building responses, see {@link TextBuffer}.
+     */
+    public Pool<TextBuffer> buffers(String name, int maxSize, int initialCapacity) {
+        return pool(name, maxSize, () -> new TextBuffer(initialCapacity), TextBuffer::reset);
+    }
+
+    public HttpClient httpClient(String name, int maxConnections, int connectTimeoutMillis, int readTimeoutMillis) {
+        return register(name, new HttpClient(name, maxConnections, connectTimeoutMillis, readTimeoutMillis));
+    }
+
+    public JdbcPool jdbcPool(String name, String url, Properties properties, int maxSize) {
+        return register(name, new JdbcPool(name, url, properties, maxSize));
+    }
+
+    /**
+     * One line with the usage of every pool, to be logged by the PreStop handler, e.g.
+     * {@code response buffers: created=1 borrowed=1200 in-use=0 max-in-use=1 waits=0 wait-ms=0 failures=0}
+     */
+    public synchronized String metrics() {
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, AutoCloseable> entry : resources.entrySet()) {
+            if (entry.getValue() instanceof Metered) {
+                if (line.length() > 0) {
+                    line.append("; ");
+                }
+                line.append(entry.getKey()).append(": ").append(((Metered) entry.getValue()).metrics());
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Closes every resource even if some of them fail, the first failure is
+     * thrown with the others suppressed.
+     */
+    @Override
+    public void close() throws IOException {
+        List<Map.Entry<String, AutoCloseable>> toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(resources.entrySet());
+        }
+
+        synchronized (OPEN) {
+            OPEN.remove(this);
+        }
+
+        IOException failure = null;
+        for (int i = toClose.size() - 1; i >= 0; i--) {
+            try {
+                toClose.get(i).getValue().close();
+            } catch (Exception e) {
+                IOException closeFailure = new IOException("close " + toClose.get(i).getKey() + " failed", e);
+                if (failure == null) {
+                    failure = closeFailure;
+                } else {
+                    failure.addSuppressed(closeFailure);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void closeAll() {
+        List<Resources> open;
+        synchronized (OPEN) {
+            open = new ArrayList<>(OPEN);
+        }
+        for (int i = open.size() - 1; i >= 0; i--) {
+            try {
+                open.get(i).close();
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
+    }
+}
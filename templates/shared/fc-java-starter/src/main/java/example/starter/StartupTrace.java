@@ -0,0 +1,89 @@
+package example.starter;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Cold start phases, printed to stderr as "FUN_STARTUP_TRACE {json}" lines when the environment
+ * variable FUN_STARTUP_TRACE is true. `fun local invoke --startup-trace` and `fun local start --startup-trace`
+ * set the variable and collect the lines into a Chrome trace.
+ *
+ * Timestamps are microseconds since the epoch, taken from a monotonic clock. Spans also count the classes
+ * loaded while they were open. When tracing is off, begin returns a shared span that does nothing, and the
+ * management classes are never loaded.
+ *
+ * <pre>
+ * StartupTrace.Span span = StartupTrace.begin("initialize");
+ * try {
+ *     ...
+ * } finally {
+ *     span.end();
+ * }
+ * </pre>
+ */
+public final class StartupTrace {
+
+    public static final boolean ENABLED = "true".equalsIgnoreCase(System.getenv("FUN_STARTUP_TRACE"));
+
+    public static final Span NOOP = new Span(null, 0, 0);
+
+    private static final long EPOCH_MICROS = System.currentTimeMillis() * 1000;
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private StartupTrace() {
+    }
+
+    public static Span begin(String name) {
+        return ENABLED ? new Span(name, currentMicros(), loadedClasses()) : NOOP;
+    }
+
+    /**
+     * Records the time from the start of the jvm until now, spent on the runtime before the function is loaded.
+     */
+    public static void recordSinceJvmStart(String name) {
+        if (ENABLED) {
+            long jvmStartMicros = ManagementFactory.getRuntimeMXBean().getStartTime() * 1000;
+            print(name, jvmStartMicros, currentMicros() - jvmStartMicros, loadedClasses());
+        }
+    }
+
+    /**
+     * Records a phase with millisecond timestamps taken elsewhere, without a class count.
+     */
+    public static void record(String name, long startMillis, long endMillis) {
+        if (ENABLED) {
+            print(name, startMillis * 1000, (endMillis - startMillis) * 1000, -1);
+        }
+    }
+
+    private static long currentMicros() {
+        return EPOCH_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+
+    private static long loadedClasses() {
+        return ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+    }
+
+    private static void print(String name, long ts, long dur, long classes) {
+        System.err.println("FUN_STARTUP_TRACE {\"name\":\"" + name.replace("\\", "\\\\").replace("\"", "\\\"")
+                + "\",\"ts\":" + ts + ",\"dur\":" + dur + ",\"classes\":" + classes + "}");
+    }
+
+    public static final class Span {
+
+        private final String name;
+        private final long start;
+        private final long classes;
+
+        private Span(String name, long start, long classes) {
+            this.name = name;
+            this.start = start;
+            this.classes = classes;
+        }
+
+        public void end() {
+            if (name != null) {
+                print(name, start, currentMicros() - start, loadedClasses() - classes);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package example.starter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that text is encoded into as UTF-8, for building
+ * responses without a String and its byte[] copy per invocation. It is
+ * meant to be borrowed from a {@link Pool} and reset on release, see
+ * {@link Resources#buffers(String, int, int)}.
+ */
+public final class TextBuffer extends OutputStream {
+
+    // a buffer grown by an unusually large response is not kept at that size
+    public static final int DEFAULT_RETAINED_CAPACITY = 1 << 20;
+
+    private final int initialCapacity;
+    private final int retainedCapacity;
+    private byte[] bytes;
+    private int size;
+
+    public TextBuffer(int initialCapacity) {
+        this(initialCapacity, DEFAULT_RETAINED_CAPACITY);
+    }
+
+    public TextBuffer(int initialCapacity, int retainedCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.retainedCapacity = Math.max(initialCapacity, retainedCapacity);
+        this.bytes = new byte[initialCapacity];
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = size + extra;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+        }
+    }
+
+    public TextBuffer append(CharSequence text) {
+        if (text == null) {
+            text = "null";
+        }
+        int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                // ensured above unless multibyte chars before used it up
+                if (size == bytes.length) {
+                    ensureCapacity(length - i);
+                }
+                bytes[size++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired, encoded as String.getBytes does
+                append('?');
+            } else {
+                appendCodePoint(c);
+            }
+        }
+        return this;
+    }
+
+    public TextBuffer append(char c) {
+        if (c < 0x80) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) c;
+        } else if (Character.isSurrogate(c)) {
+            append('?');
+        } else {
+            appendCodePoint(c);
+        }
+        return this;
+    }
+
+    public TextBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        ensureCapacity(4);
+        if (codePoint < 0x800) {
+            bytes[size++] = (byte) (0xc0 | (codePoint >> 6));
+        } else if (codePoint < 0x10000) {
+            bytes[size++] = (byte) (0xe0 | (codePoint >> 12));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        } else {
+            bytes[size++] = (byte) (0xf0 | (codePoint >> 18));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        }
+        bytes[size++] = (byte) (0x80 | (codePoint & 0x3f));
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, bytes, size, len);
+        size += len;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Empties the buffer for the next borrower.
+     */
+    public void reset() {
+        size = 0;
+        if (bytes.length > retainedCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+}
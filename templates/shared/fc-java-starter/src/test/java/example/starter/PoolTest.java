@@ -0,0 +1,183 @@
+package example.starter;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Borrows and releases items of a pool, including the paths where the pool
+ * has to wait, evict or is closed under its borrowers.
+ */
+public class PoolTest extends TestCase {
+
+    private static final class Item implements AutoCloseable {
+
+        final int id;
+        boolean valid = true;
+        boolean closed;
+        int resets;
+
+        Item(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private Pool<Item> newPool(int maxSize) {
+        return new Pool<Item>("items", maxSize, () -> new Item(ids.incrementAndGet()), item -> item.resets++) {
+
+            @Override
+            protected boolean validate(Item item) {
+                return item.valid;
+            }
+        };
+    }
+
+    public void testBorrowAndRelease() {
+        Pool<Item> pool = newPool(2);
+
+        Item first = pool.borrow();
+        pool.release(first);
+        Item second = pool.borrow();
+
+        assertSame(first, second);
+        assertEquals(1, second.resets);
+        assertFalse(second.closed);
+
+        pool.release(second);
+        assertEquals(1, pool.metrics().getCreated());
+        assertEquals(2, pool.metrics().getBorrowed());
+        assertEquals(0, pool.metrics().getInUse());
+        assertEquals(1, pool.metrics().getMaxInUse());
+    }
+
+    public void testMostRecentlyUsedFirst() {
+        Pool<Item> pool = newPool(2);
+
+        Item first = pool.borrow();
+        Item second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(second, pool.borrow());
+    }
+
+    public void testBorrowTimeout() {
+        Pool<Item> pool = newPool(1).withTimeout(50, TimeUnit.MILLISECONDS);
+        pool.borrow();
+
+        try {
+            pool.borrow();
+            fail("borrowing beyond maxSize should time out");
+        } catch (PoolException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("all 1 are in use"));
+        }
+        assertEquals(1, pool.metrics().getFailures());
+        assertEquals(1, pool.metrics().getInUse());
+    }
+
+    public void testReleaseWakesWaitingBorrower() throws Exception {
+        Pool<Item> pool = newPool(1).withTimeout(5, TimeUnit.SECONDS);
+        Item borrowed = pool.borrow();
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pool.release(borrowed);
+        });
+        releaser.start();
+
+        assertSame(borrowed, pool.borrow());
+        releaser.join();
+        assertEquals(1, pool.metrics().getWaits());
+    }
+
+    public void testCloseWhileBorrowed() {
+        Pool<Item> pool = newPool(2);
+        Item borrowed = pool.borrow();
+        Item idle = pool.borrow();
+        pool.release(idle);
+
+        pool.close();
+
+        assertTrue(idle.closed);
+        assertFalse(borrowed.closed);
+
+        pool.release(borrowed);
+        assertTrue(borrowed.closed);
+        assertEquals(0, pool.metrics().getInUse());
+
+        try {
+            pool.borrow();
+            fail("a closed pool should not lend");
+        } catch (PoolException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is closed"));
+        }
+    }
+
+    public void testInvalidIdleItemIsEvicted() {
+        Pool<Item> pool = newPool(1);
+        Item stale = pool.borrow();
+        pool.release(stale);
+        stale.valid = false;
+
+        Item fresh = pool.borrow();
+
+        assertTrue(stale.closed);
+        assertEquals(2, fresh.id);
+        assertEquals(2, pool.metrics().getCreated());
+        assertEquals(1, pool.metrics().getFailures());
+    }
+
+    public void testFailedResetDiscardsItem() {
+        Pool<Item> pool = new Pool<>("items", 1, () -> new Item(ids.incrementAndGet()), item -> {
+            throw new IllegalStateException("dirty");
+        });
+        Item dirty = pool.borrow();
+        pool.release(dirty);
+
+        assertTrue(dirty.closed);
+        assertEquals(2, pool.borrow().id);
+    }
+
+    public void testInvalidatedLeaseIsNotReused() {
+        Pool<Item> pool = newPool(1);
+        Item broken;
+        try (Pool.Lease<Item> lease = pool.lease()) {
+            broken = lease.get();
+            lease.invalidate();
+        }
+
+        assertTrue(broken.closed);
+        assertEquals(0, pool.metrics().getInUse());
+        assertEquals(2, pool.borrow().id);
+    }
+
+    public void testFailedCreateReleasesPermit() {
+        AtomicInteger attempts = new AtomicInteger();
+        Pool<Item> pool = new Pool<>("items", 1, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("unreachable");
+            }
+            return new Item(attempts.get());
+        }).withTimeout(50, TimeUnit.MILLISECONDS);
+
+        try {
+            pool.borrow();
+            fail("the failure of the factory should be thrown");
+        } catch (PoolException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(2, pool.borrow().id);
+    }
+}
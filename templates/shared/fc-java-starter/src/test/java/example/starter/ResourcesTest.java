@@ -0,0 +1,94 @@
+package example.starter;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Registers resources that record when they are closed.
+ */
+public class ResourcesTest extends TestCase {
+
+    private final List<String> closed = new ArrayList<>();
+
+    private AutoCloseable recorder(String name) {
+        return () -> closed.add(name);
+    }
+
+    public void testCloseInReverseOrder() throws IOException {
+        Resources resources = new Resources();
+        resources.register("db", recorder("db"));
+        resources.register("http", recorder("http"));
+        resources.register("buffers", recorder("buffers"));
+
+        resources.close();
+
+        assertEquals(Arrays.asList("buffers", "http", "db"), closed);
+    }
+
+    public void testCloseOnce() throws IOException {
+        Resources resources = new Resources();
+        resources.register("db", recorder("db"));
+
+        resources.close();
+        resources.close();
+
+        assertEquals(Arrays.asList("db"), closed);
+    }
+
+    public void testCloseAllDespiteFailures() {
+        Resources resources = new Resources();
+        resources.register("db", () -> {
+            throw new IllegalStateException("db");
+        });
+        resources.register("http", recorder("http"));
+        resources.register("buffers", () -> {
+            throw new IllegalStateException("buffers");
+        });
+
+        try {
+            resources.close();
+            fail("the close failures should be thrown");
+        } catch (IOException e) {
+            assertEquals("close buffers failed", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+            assertEquals("close db failed", e.getSuppressed()[0].getMessage());
+        }
+        assertEquals(Arrays.asList("http"), closed);
+    }
+
+    public void testRegister() throws IOException {
+        Resources resources = new Resources();
+        resources.register("db", recorder("db"));
+
+        try {
+            resources.register("db", recorder("db"));
+            fail("a name should be registered once");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        resources.close();
+        try {
+            resources.register("http", recorder("http"));
+            fail("closed resources should not take new ones");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testMetrics() throws IOException {
+        Resources resources = new Resources();
+        Pool<TextBuffer> buffers = resources.buffers("response buffers", 2, 64);
+        resources.register("db", recorder("db"));
+
+        try (Pool.Lease<TextBuffer> lease = buffers.lease()) {
+            lease.get().append("hello");
+        }
+
+        assertEquals("response buffers: created=1 borrowed=1 in-use=0 max-in-use=1 waits=0 wait-ms=0 failures=0",
+                resources.metrics());
+        resources.close();
+    }
+}
@@ -16,7 +16,8 @@ const { serviceName,
 } = require('../local/mock-data');
 
 const {
-  generateBuildContainerBuildOpts
+  generateBuildContainerBuildOpts,
+  resolveMavenRepositoryMount
 } = require('../../lib/build/build-opts');
 
 describe('test generateBuildContainerBuildOpts', () => {
@@ -82,3 +83,17 @@ describe('test generateBuildContainerBuildOpts', () => {
   });
 });
 
+describe('test resolveMavenRepositoryMount', () => {
+  it('test java runtime', () => {
+    expect(resolveMavenRepositoryMount('java8')).to.eql({
+      Type: 'volume',
+      Source: 'fun-build-maven-repository',
+      Target: '/root/.m2',
+      ReadOnly: false
+    });
+  });
+
+  it('test other runtime', () => {
+    expect(resolveMavenRepositoryMount('python3')).to.be(null);
+  });
+});
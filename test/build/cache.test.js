@@ -0,0 +1,98 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const { hashFunctionSources, loadBuildCache } = require('../../lib/build/cache');
+
+describe('test hashFunctionSources', () => {
+  const codeUri = path.join(os.tmpdir(), '.build-cache-code');
+
+  beforeEach(async () => {
+    await fs.outputFile(path.join(codeUri, 'pom.xml'), '<project></project>');
+    await fs.outputFile(path.join(codeUri, 'src', 'main', 'java', 'example', 'App.java'), 'class App {}');
+    await fs.outputFile(path.join(codeUri, 'target', 'demo.jar'), 'jar');
+  });
+
+  afterEach(() => {
+    rimraf.sync(codeUri);
+  });
+
+  it('test unchanged sources', async () => {
+    const hash = await hashFunctionSources('java8', codeUri);
+    expect(hash).to.be.a('string');
+    expect(await hashFunctionSources('java8', codeUri)).to.be(hash);
+  });
+
+  it('test build outputs are not hashed', async () => {
+    const hash = await hashFunctionSources('java8', codeUri);
+    await fs.outputFile(path.join(codeUri, 'target', 'demo.jar'), 'changed');
+    expect(await hashFunctionSources('java8', codeUri)).to.be(hash);
+  });
+
+  it('test changed source', async () => {
+    const hash = await hashFunctionSources('java8', codeUri);
+    await fs.outputFile(path.join(codeUri, 'src', 'main', 'java', 'example', 'App.java'), 'class App { }');
+    expect(await hashFunctionSources('java8', codeUri)).not.to.be(hash);
+  });
+
+  it('test changed fc-java-starter source', async () => {
+    const hash = await hashFunctionSources('java8', codeUri);
+    await fs.outputFile(path.join(codeUri, 'fc-java-starter', 'src', 'main', 'java', 'example', 'starter', 'Pool.java'), 'class Pool {}');
+    expect(await hashFunctionSources('java8', codeUri)).not.to.be(hash);
+  });
+
+  it('test changed runtime and build options', async () => {
+    const hash = await hashFunctionSources('java8', codeUri);
+    expect(await hashFunctionSources('java11', codeUri)).not.to.be(hash);
+    expect(await hashFunctionSources('java8', codeUri, { useDocker: true })).not.to.be(hash);
+    expect(await hashFunctionSources('java8', codeUri, { enableCds: true })).not.to.be(hash);
+  });
+
+  it('test not cacheable', async () => {
+    expect(await hashFunctionSources('nodejs10', codeUri)).to.be(null);
+    rimraf.sync(path.join(codeUri, 'pom.xml'));
+    expect(await hashFunctionSources('java8', codeUri)).to.be(null);
+  });
+});
+
+describe('test BuildCache', () => {
+  const rootArtifactsDir = path.join(os.tmpdir(), '.build-cache', 'build', 'artifacts');
+  const funcArtifactDir = path.join(rootArtifactsDir, 'service', 'function');
+
+  afterEach(() => {
+    rimraf.sync(path.join(os.tmpdir(), '.build-cache'));
+  });
+
+  it('test save and load', async () => {
+    await fs.outputFile(path.join(funcArtifactDir, 'demo.jar'), 'jar');
+
+    const buildCache = await loadBuildCache(rootArtifactsDir);
+    expect(await buildCache.isUpToDate('service/function', 'hash', funcArtifactDir)).to.be(false);
+
+    buildCache.update('service/function', 'hash');
+    await buildCache.save();
+
+    const loaded = await loadBuildCache(rootArtifactsDir);
+    expect(await loaded.isUpToDate('service/function', 'hash', funcArtifactDir)).to.be(true);
+    expect(await loaded.isUpToDate('service/function', 'other', funcArtifactDir)).to.be(false);
+  });
+
+  it('test missing artifacts', async () => {
+    const buildCache = await loadBuildCache(rootArtifactsDir);
+    buildCache.update('service/function', 'hash');
+
+    expect(await buildCache.isUpToDate('service/function', 'hash', funcArtifactDir)).to.be(false);
+  });
+
+  it('test not cacheable function', async () => {
+    await fs.outputFile(path.join(funcArtifactDir, 'demo.jar'), 'jar');
+    const buildCache = await loadBuildCache(rootArtifactsDir);
+    buildCache.update('service/function', null);
+
+    expect(await buildCache.isUpToDate('service/function', null, funcArtifactDir)).to.be(false);
+  });
+});
@@ -0,0 +1,130 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const cds = require('../../lib/build/cds');
+
+describe('test appendJavaToolOptions', () => {
+  it('test function without environment variables', () => {
+    const functionRes = { Properties: { Runtime: 'java11' } };
+    const updated = cds.appendJavaToolOptions(functionRes, '-Xshare:auto');
+
+    expect(updated.Properties.EnvironmentVariables).to.eql({ JAVA_TOOL_OPTIONS: '-Xshare:auto' });
+    expect(functionRes.Properties.EnvironmentVariables).to.be(undefined);
+  });
+
+  it('test function with existing JAVA_TOOL_OPTIONS', () => {
+    const functionRes = { Properties: { Runtime: 'java11', EnvironmentVariables: { JAVA_TOOL_OPTIONS: '-Xmx256m', FOO: 'bar' } } };
+    const updated = cds.appendJavaToolOptions(functionRes, '-Xshare:auto');
+
+    expect(updated.Properties.EnvironmentVariables).to.eql({ JAVA_TOOL_OPTIONS: '-Xmx256m -Xshare:auto', FOO: 'bar' });
+  });
+});
+
+describe('test isCdsSupported', () => {
+  it('test runtimes', () => {
+    expect(cds.isCdsSupported('java11')).to.be(true);
+    expect(cds.isCdsSupported('custom')).to.be(true);
+    expect(cds.isCdsSupported('java8')).to.be(false);
+    expect(cds.isCdsSupported('nodejs10')).to.be(false);
+  });
+});
+
+describe('test generateCdsArchives', () => {
+  const tpl = {
+    ROSTemplateFormatVersion: '2015-09-01',
+    Transform: 'Aliyun::Serverless-2018-04-03',
+    Resources: {
+      demo: {
+        Type: 'Aliyun::Serverless::Service',
+        java11: {
+          Type: 'Aliyun::Serverless::Function',
+          Properties: { Runtime: 'java11', Handler: 'example.App::handleRequest', CodeUri: 'demo/java11' }
+        },
+        nodejs: {
+          Type: 'Aliyun::Serverless::Function',
+          Properties: { Runtime: 'nodejs10', Handler: 'index.handler', CodeUri: 'demo/nodejs' }
+        },
+        custom: {
+          Type: 'Aliyun::Serverless::Function',
+          Properties: { Runtime: 'custom', Handler: 'index.handler', CodeUri: 'demo/custom' }
+        }
+      }
+    }
+  };
+
+  const rootArtifactsDir = path.join(os.tmpdir(), '.cds-test');
+
+  afterEach(() => {
+    rimraf.sync(rootArtifactsDir);
+  });
+
+  it('test functions without a supported runtime are skipped', async () => {
+    const updatedTpl = JSON.parse(JSON.stringify(tpl));
+    const builtFuncs = [{ serviceName: 'demo', functionName: 'nodejs' }];
+
+    const timings = await cds.generateCdsArchives(updatedTpl, builtFuncs, os.tmpdir());
+
+    expect(timings).to.eql({});
+    expect(updatedTpl).to.eql(tpl);
+  });
+
+  it('test custom functions not running java are skipped', async () => {
+    await fs.outputFile(path.join(rootArtifactsDir, 'demo', 'custom', 'bootstrap'), '#!/bin/bash\nexec node server.js\n');
+    const updatedTpl = JSON.parse(JSON.stringify(tpl));
+    const builtFuncs = [{ serviceName: 'demo', functionName: 'custom' }];
+
+    const timings = await cds.generateCdsArchives(updatedTpl, builtFuncs, rootArtifactsDir);
+
+    expect(timings).to.eql({});
+    expect(updatedTpl).to.eql(tpl);
+  });
+
+  it('test functions not built are skipped', async () => {
+    const updatedTpl = JSON.parse(JSON.stringify(tpl));
+
+    const timings = await cds.generateCdsArchives(updatedTpl, [], os.tmpdir());
+
+    expect(timings).to.eql({});
+    expect(updatedTpl).to.eql(tpl);
+  });
+});
+
+describe('test reuseCdsArchives', () => {
+  const rootArtifactsDir = path.join(os.tmpdir(), '.cds-test');
+  const functionRes = {
+    Type: 'Aliyun::Serverless::Function',
+    Properties: { Runtime: 'java11', Handler: 'example.App::handleRequest', CodeUri: 'demo/java11' }
+  };
+  const tpl = {
+    ROSTemplateFormatVersion: '2015-09-01',
+    Transform: 'Aliyun::Serverless-2018-04-03',
+    Resources: { demo: { Type: 'Aliyun::Serverless::Service', java11: functionRes } }
+  };
+
+  afterEach(() => {
+    rimraf.sync(rootArtifactsDir);
+  });
+
+  it('test cached function with archive', async () => {
+    await fs.outputFile(path.join(rootArtifactsDir, 'demo', 'java11', '.fun', 'cds', 'app.jsa'), '');
+    const updatedTpl = JSON.parse(JSON.stringify(tpl));
+
+    await cds.reuseCdsArchives(updatedTpl, [{ serviceName: 'demo', functionName: 'java11' }], rootArtifactsDir);
+
+    expect(updatedTpl.Resources.demo.java11.Properties.EnvironmentVariables).to.eql({ JAVA_TOOL_OPTIONS: cds.CDS_RUNTIME_OPTIONS });
+  });
+
+  it('test cached function without archive', async () => {
+    await fs.ensureDir(path.join(rootArtifactsDir, 'demo', 'java11'));
+    const updatedTpl = JSON.parse(JSON.stringify(tpl));
+
+    await cds.reuseCdsArchives(updatedTpl, [{ serviceName: 'demo', functionName: 'java11' }], rootArtifactsDir);
+
+    expect(updatedTpl).to.eql(tpl);
+  });
+});
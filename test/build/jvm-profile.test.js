@@ -0,0 +1,135 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const jvm = require('../../lib/build/jvm-profile');
+
+const springBootBootstrap = `#!/usr/bin/env bash
+export PORT=9000
+java -jar -Dserver.port=$PORT target/demo-0.0.1.jar
+`;
+
+describe('test jvm options', () => {
+  it('test resolveHeapSize', () => {
+    expect(jvm.resolveHeapSize(128)).to.be(64);
+    expect(jvm.resolveHeapSize(1024)).to.be(768);
+    expect(jvm.resolveHeapSize(3072)).to.be(2304);
+    expect(jvm.resolveHeapSize()).to.be(64);
+  });
+
+  it('test generateJvmOptions', () => {
+    expect(jvm.generateJvmOptions('fast-start', 512)).to.be('-Xms384m -Xmx384m -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Xshare:auto -XX:-UsePerfData -Xss512k');
+    expect(jvm.generateJvmOptions('throughput', 512)).to.be('-Xms384m -Xmx384m -XX:+TieredCompilation -XX:+UseParallelGC');
+  });
+
+  it('test resolveJvmProfile', () => {
+    expect(jvm.resolveJvmProfile('throughput')).to.be('throughput');
+    expect(jvm.resolveJvmProfile()).to.be(undefined);
+    expect(() => jvm.resolveJvmProfile('fast')).to.throwException(/invalid jvm profile fast/);
+  });
+});
+
+describe('test applyJvmProfile', () => {
+  it('test bootstrap without jvm options', () => {
+    const content = jvm.applyJvmProfile(springBootBootstrap, 'fast-start', 1024);
+
+    expect(content).to.be(`#!/usr/bin/env bash
+export PORT=9000
+${jvm.generateJvmOptionsLine('fast-start', 1024)}
+java $FUN_JVM_OPTIONS -jar -Dserver.port=$PORT target/demo-0.0.1.jar
+`);
+    expect(jvm.parseJvmProfile(content)).to.be('fast-start');
+  });
+
+  it('test bootstrap with jvm options', () => {
+    const content = jvm.applyJvmProfile(jvm.applyJvmProfile(springBootBootstrap, 'fast-start', 1024), 'throughput', 2048);
+
+    expect(content).to.be(`#!/usr/bin/env bash
+export PORT=9000
+${jvm.generateJvmOptionsLine('throughput', 2048)}
+java $FUN_JVM_OPTIONS -jar -Dserver.port=$PORT target/demo-0.0.1.jar
+`);
+    expect(jvm.parseJvmProfile(content)).to.be('throughput');
+  });
+
+  it('test bootstrap without java', () => {
+    const bootstrap = '#!/usr/bin/env bash\nnode index.js\n';
+    expect(jvm.applyJvmProfile(bootstrap, 'fast-start', 1024)).to.be(bootstrap);
+    expect(jvm.parseJvmProfile(bootstrap)).to.be(null);
+  });
+
+  it('test carryJvmOptions', () => {
+    const bootstrap = jvm.applyJvmProfile(springBootBootstrap, 'throughput', 1024);
+    const rewritten = `#!/usr/bin/env bash
+export PORT=9000
+java -jar $JETTY_RUNNER --port $PORT context.xml
+`;
+
+    expect(jvm.carryJvmOptions(bootstrap, rewritten)).to.be(`#!/usr/bin/env bash
+export PORT=9000
+${jvm.generateJvmOptionsLine('throughput', 1024)}
+java $FUN_JVM_OPTIONS -jar $JETTY_RUNNER --port $PORT context.xml
+`);
+    expect(jvm.carryJvmOptions(springBootBootstrap, rewritten)).to.be(rewritten);
+  });
+});
+
+describe('test updateBootstrapJvmProfile', () => {
+  const codeDir = path.join(os.tmpdir(), '.jvm-profile-test');
+  const bootstrapPath = path.join(codeDir, 'bootstrap');
+
+  afterEach(() => {
+    rimraf.sync(codeDir);
+  });
+
+  it('test bootstrap not managed by fun', async () => {
+    await fs.outputFile(bootstrapPath, springBootBootstrap);
+
+    expect(await jvm.updateBootstrapJvmProfile(codeDir, { memorySize: 512 })).to.be(null);
+    expect(await fs.readFile(bootstrapPath, 'utf8')).to.be(springBootBootstrap);
+
+    expect(await jvm.updateBootstrapJvmProfile(codeDir, { profile: 'throughput', memorySize: 512 })).to.be('throughput');
+    expect(await fs.readFile(bootstrapPath, 'utf8')).to.be(jvm.applyJvmProfile(springBootBootstrap, 'throughput', 512));
+  });
+
+  it('test memory size of managed bootstrap', async () => {
+    await fs.outputFile(bootstrapPath, jvm.applyJvmProfile(springBootBootstrap, 'throughput', 1024));
+
+    expect(await jvm.updateBootstrapJvmProfile(codeDir, { memorySize: 1024 })).to.be(null);
+    expect(await jvm.updateBootstrapJvmProfile(codeDir, { memorySize: 2048 })).to.be('throughput');
+    expect(await fs.readFile(bootstrapPath, 'utf8')).to.contain('-Xmx1536m');
+  });
+
+  it('test without bootstrap', async () => {
+    await fs.ensureDir(codeDir);
+    expect(await jvm.updateBootstrapJvmProfile(codeDir, { profile: 'fast-start', memorySize: 512 })).to.be(null);
+  });
+});
+
+describe('test isJavaBootstrap', () => {
+  const codeDir = path.join(os.tmpdir(), '.jvm-profile-test');
+  const bootstrapPath = path.join(codeDir, 'bootstrap');
+
+  afterEach(() => {
+    rimraf.sync(codeDir);
+  });
+
+  it('test java bootstrap', async () => {
+    await fs.outputFile(bootstrapPath, springBootBootstrap);
+    expect(await jvm.isJavaBootstrap(codeDir)).to.be(true);
+  });
+
+  it('test non java bootstrap', async () => {
+    await fs.outputFile(bootstrapPath, '#!/bin/bash\nexec python3 server.py\n');
+    expect(await jvm.isJavaBootstrap(codeDir)).to.be(false);
+  });
+
+  it('test without bootstrap', async () => {
+    await fs.ensureDir(codeDir);
+    expect(await jvm.isJavaBootstrap(codeDir)).to.be(false);
+  });
+});
@@ -0,0 +1,109 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+const proxyquire = require('proxyquire');
+
+const crc64 = {
+  crc64File: (filePath, cb) => cb(null, '17380263816131011825')
+};
+
+const { isCodeArchive, digestCode, detectCodeChange, saveCodeChecksum } = proxyquire('../../lib/deploy/code-checksum', {
+  'crc64-ecma182.js': crc64
+});
+
+describe('code checksum test', () => {
+  const baseDir = path.join(os.tmpdir(), '.code-checksum-test');
+  const codeAbsPath = path.join(baseDir, 'code');
+  const key = 'ACCOUNT_ID/cn-shanghai/localdemo/nodejs8';
+
+  beforeEach(async () => {
+    await fs.outputFile(path.join(codeAbsPath, 'index.js'), 'exports.handler = () => {};');
+    await fs.outputFile(path.join(codeAbsPath, 'lib', 'util.js'), 'module.exports = {};');
+  });
+
+  afterEach(() => {
+    rimraf.sync(baseDir);
+  });
+
+  it('test isCodeArchive', () => {
+    expect(isCodeArchive('./code.zip')).to.be(true);
+    expect(isCodeArchive('./target/demo.jar')).to.be(true);
+    expect(isCodeArchive('./web.war')).to.be(true);
+    expect(isCodeArchive('./code')).to.be(false);
+    expect(isCodeArchive(undefined)).to.be(false);
+  });
+
+  it('test digest is stable when mtimes change', async () => {
+    const digest = await digestCode(codeAbsPath);
+
+    const mtime = new Date(Date.now() + 60000);
+    await fs.utimes(path.join(codeAbsPath, 'index.js'), mtime, mtime);
+
+    expect(await digestCode(codeAbsPath)).to.be(digest);
+  });
+
+  it('test digest changes with content and mode', async () => {
+    const digest = await digestCode(codeAbsPath);
+
+    await fs.outputFile(path.join(codeAbsPath, 'lib', 'util.js'), 'module.exports = { a: 1 };');
+    const contentDigest = await digestCode(codeAbsPath);
+    expect(contentDigest).not.to.be(digest);
+
+    await fs.chmod(path.join(codeAbsPath, 'index.js'), 0o755);
+    expect(await digestCode(codeAbsPath)).not.to.be(contentDigest);
+  });
+
+  it('test digest skips ignored files', async () => {
+    const ignore = (fPath) => path.basename(fPath) === 'node_modules';
+    const digest = await digestCode(codeAbsPath, ignore);
+
+    await fs.outputFile(path.join(codeAbsPath, 'node_modules', 'a', 'index.js'), 'module.exports = 1;');
+    expect(await digestCode(codeAbsPath, ignore)).to.be(digest);
+    expect(await digestCode(codeAbsPath)).not.to.be(digest);
+  });
+
+  it('test detect change of code directory', async () => {
+    // the code is not read without a recorded digest
+    let change = await detectCodeChange({ baseDir, key, codeAbsPath, remoteChecksum: '123' });
+    expect(change).to.eql({ changed: true });
+
+    const digest = await digestCode(codeAbsPath);
+    await saveCodeChecksum(baseDir, key, digest, '123');
+    const records = await fs.readJson(path.join(baseDir, '.fun', 'tmp', 'deploy', 'code-checksums.json'));
+    expect(records[key]).to.eql({ digest, codeChecksum: '123' });
+
+    change = await detectCodeChange({ baseDir, key, codeAbsPath, remoteChecksum: '123' });
+    expect(change.changed).to.be(false);
+
+    // the function was updated by others
+    change = await detectCodeChange({ baseDir, key, codeAbsPath, remoteChecksum: '456' });
+    expect(change).to.eql({ changed: true });
+
+    // the function doesn't exist
+    change = await detectCodeChange({ baseDir, key, codeAbsPath });
+    expect(change).to.eql({ changed: true });
+
+    await fs.outputFile(path.join(codeAbsPath, 'index.js'), 'exports.handler = () => 1;');
+    change = await detectCodeChange({ baseDir, key, codeAbsPath, remoteChecksum: '123' });
+    expect(change.changed).to.be(true);
+  });
+
+  it('test detect change of code archive', async () => {
+    const zipPath = path.join(baseDir, 'code.zip');
+    await fs.outputFile(zipPath, 'zip');
+
+    let change = await detectCodeChange({ baseDir, key, codeAbsPath: zipPath, remoteChecksum: '17380263816131011825' });
+    expect(change).to.eql({ changed: false, digest: '17380263816131011825' });
+
+    change = await detectCodeChange({ baseDir, key, codeAbsPath: zipPath, remoteChecksum: '123' });
+    expect(change.changed).to.be(true);
+
+    change = await detectCodeChange({ baseDir, key, codeAbsPath: zipPath });
+    expect(change).to.eql({ changed: true });
+  });
+});
@@ -184,6 +184,7 @@ describe('deploy', () => {
         environmentVariables: undefined,
         instanceConcurrency: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         functionName: 'nodejs8',
         handler: 'index.handler',
@@ -229,6 +230,7 @@ describe('deploy', () => {
         memorySize: undefined,
         runtime: 'nodejs6',
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         instanceType: undefined,
         asyncConfiguration: undefined,
@@ -265,6 +267,7 @@ describe('deploy', () => {
         handler: 'helloworld.index',
         initializer: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         memorySize: undefined,
         instanceType: undefined,
@@ -305,6 +308,7 @@ describe('deploy', () => {
         memorySize: undefined,
         runtime: 'java8',
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         serviceName: 'java',
         instanceType: undefined,
@@ -355,6 +359,7 @@ describe('deploy', () => {
         memorySize: undefined,
         runtime: 'nodejs8',
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         serviceName: 'nasDemo',
         instanceType: undefined,
@@ -390,6 +395,7 @@ describe('deploy', () => {
         asyncConfiguration: undefined,
         initializer: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         memorySize: undefined,
         runtime: 'python2.7',
@@ -444,6 +450,7 @@ describe('deploy', () => {
         serviceName: 'fc',
         timeout: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         cAPort: undefined,
         customContainerConfig: undefined,
@@ -516,6 +523,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         functionName: 'fun-ots-func',
         memorySize: undefined,
@@ -565,6 +573,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         memorySize: undefined,
         runtime: 'python2.7',
@@ -614,6 +623,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         functionName: 'rds-function',
         memorySize: undefined,
@@ -667,6 +677,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         runtime: 'python2.7',
         serviceName: 'oss-test-service',
@@ -719,6 +730,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         memorySize: undefined,
         runtime: 'nodejs8',
@@ -777,6 +789,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         functionName: 'mnsTopic-function',
         memorySize: undefined,
@@ -828,6 +841,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         memorySize: undefined,
         runtime: 'python2.7',
@@ -909,6 +923,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         memorySize: undefined,
         runtime: 'nodejs8',
@@ -974,6 +989,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         initializer: undefined,
         memorySize: undefined,
@@ -1021,6 +1037,7 @@ describe('deploy', () => {
         handler: 'wechat.get',
         initializer: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         instanceType: undefined,
         asyncConfiguration: undefined,
@@ -1081,6 +1098,7 @@ describe('deploy', () => {
         initializer: undefined,
         instanceType: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         asyncConfiguration: undefined,
         memorySize: undefined,
@@ -1170,6 +1188,7 @@ describe('deploy', () => {
         environmentVariables: undefined,
         instanceConcurrency: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         functionName: 'initializer',
         handler: 'main.my_handler',
@@ -1246,6 +1265,7 @@ describe('deploy', () => {
         initializer: undefined,
         instanceType: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         asyncConfiguration: undefined,
         memorySize: undefined,
@@ -1303,6 +1323,7 @@ describe('deploy', () => {
         instanceType: undefined,
         asyncConfiguration: undefined,
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         initializer: undefined,
         memorySize: undefined,
@@ -1340,6 +1361,7 @@ describe('deploy', () => {
         functionName: 'function-async-config',
         handler: 'index.handler',
         InstanceLifecycleConfig: undefined,
+        tplUpdateLocked: false,
         layers: undefined,
         initializer: undefined,
         memorySize: undefined,
@@ -0,0 +1,124 @@
+'use strict';
+
+const expect = require('expect.js');
+const { DeployScheduler, resolveConcurrency, DEFAULT_DEPLOY_CONCURRENCY } = require('../../lib/deploy/deploy-scheduler');
+
+function sleep(ms) {
+  return new Promise(resolve => setTimeout(resolve, ms));
+}
+
+describe('deploy scheduler test', () => {
+  let running;
+  let maxRunning;
+  let finished;
+
+  function task(id, ms = 5, result) {
+    return async () => {
+      running++;
+      maxRunning = Math.max(maxRunning, running);
+      await sleep(ms);
+      running--;
+      finished.push(id);
+      return result;
+    };
+  }
+
+  beforeEach(() => {
+    running = 0;
+    maxRunning = 0;
+    finished = [];
+  });
+
+  it('test concurrency limit', async () => {
+    const scheduler = new DeployScheduler(2);
+    for (let i = 0; i < 5; i++) {
+      scheduler.add(`function:${i}`, { stage: 'function', run: task(i) });
+    }
+    await scheduler.run();
+
+    expect(finished.length).to.be(5);
+    expect(maxRunning).to.be(2);
+  });
+
+  it('test dependencies', async () => {
+    const scheduler = new DeployScheduler(5);
+    scheduler.add('role', { stage: 'role', run: task('role', 10, 'arn') });
+    scheduler.add('service', { stage: 'service', deps: ['role'], run: async (s) => {
+      expect(s.result('role')).to.be('arn');
+      await task('service')();
+    } });
+    scheduler.add('function:a', { stage: 'function', deps: ['service'], run: task('function:a', 10) });
+    scheduler.add('function:b', { stage: 'function', deps: ['service'], run: task('function:b', 1) });
+    scheduler.add('trigger:a', { stage: 'trigger', deps: ['function:a'], run: task('trigger:a') });
+    await scheduler.run();
+
+    expect(finished).to.eql(['role', 'service', 'function:b', 'function:a', 'trigger:a']);
+    expect(maxRunning).to.be(2);
+  });
+
+  it('test dependencies must be added first', () => {
+    const scheduler = new DeployScheduler();
+    expect(() => scheduler.add('service', { deps: ['role'], run: task('service') }))
+      .to.throwException(/depends on role, which must be added first/);
+  });
+
+  it('test add nodes while running', async () => {
+    const scheduler = new DeployScheduler(1);
+    scheduler.add('function:a', { stage: 'function', run: async (s) => {
+      s.add('function:a#1', { stage: 'function', deps: ['function:a'], run: task('function:a#1') });
+      await task('function:a')();
+    } });
+    await scheduler.run();
+
+    expect(finished).to.eql(['function:a', 'function:a#1']);
+  });
+
+  it('test add dependencies while running', async () => {
+    const scheduler = new DeployScheduler(2);
+    scheduler.add('function:a', { stage: 'function', run: async (s) => {
+      s.add('function:a#1', { stage: 'function', deps: ['function:a'], run: task('function:a#1', 10) });
+      s.addDeps('api', ['function:a#1']);
+      await task('function:a')();
+    } });
+    scheduler.add('api', { stage: 'api gateway', deps: ['function:a'], run: task('api') });
+    await scheduler.run();
+
+    expect(finished).to.eql(['function:a', 'function:a#1', 'api']);
+    expect(() => scheduler.addDeps('api', ['function:a'])).to.throwException(/is not pending/);
+  });
+
+  it('test stop on failure', async () => {
+    const scheduler = new DeployScheduler(2);
+    scheduler.add('function:a', { stage: 'function', run: async () => { throw new Error('deploy failed'); } });
+    scheduler.add('function:b', { stage: 'function', run: task('function:b', 10) });
+    scheduler.add('trigger:a', { stage: 'trigger', deps: ['function:a'], run: task('trigger:a') });
+    scheduler.add('function:c', { stage: 'function', run: task('function:c') });
+
+    try {
+      await scheduler.run();
+    } catch (e) {
+      expect(e.message).to.be('deploy failed');
+      // the running one finishes, but no more nodes are started
+      expect(finished).to.eql(['function:b']);
+      return;
+    }
+    expect().fail('should throw');
+  });
+
+  it('test stage timing', async () => {
+    const scheduler = new DeployScheduler(2);
+    scheduler.add('function:a', { stage: 'function', run: task('function:a', 20) });
+    scheduler.add('function:b', { stage: 'function', run: task('function:b', 20) });
+    await scheduler.run();
+
+    const timing = scheduler.stages.get('function');
+    expect(timing.count).to.be(2);
+    expect(timing.busy).to.be.greaterThan(timing.end - timing.start);
+  });
+
+  it('test resolve concurrency', () => {
+    expect(resolveConcurrency()).to.be(DEFAULT_DEPLOY_CONCURRENCY);
+    expect(resolveConcurrency('3')).to.be(3);
+    expect(() => resolveConcurrency('0')).to.throwException(/invalid deploy concurrency/);
+  });
+});
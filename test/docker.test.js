@@ -3,6 +3,7 @@
 const os = require('os');
 const fs = require('fs-extra');
 const path = require('path');
+const { PassThrough, Writable } = require('stream');
 
 let docker = require('../lib/docker');
 const DockerCli = require('dockerode');
@@ -491,6 +492,69 @@ describe('test docker run', async () => {
   });
 });
 
+describe('test demuxStreamWithBackpressure', () => {
+
+  function frame(type, payload) {
+    const header = Buffer.alloc(8);
+    header.writeUInt8(type, 0);
+    header.writeUInt32BE(payload.length, 4);
+    return Buffer.concat([header, Buffer.from(payload)]);
+  }
+
+  it('test demux stdout and stderr', async () => {
+    const stream = new PassThrough();
+    const outputStream = new PassThrough();
+    const errorStream = new PassThrough();
+
+    const output = [];
+    const error = [];
+    outputStream.on('data', (chunk) => output.push(chunk));
+    errorStream.on('data', (chunk) => error.push(chunk));
+
+    const done = docker.demuxStreamWithBackpressure(stream, outputStream, errorStream);
+
+    const data = Buffer.concat([frame(1, 'out1'), frame(2, 'err'), frame(1, 'out2')]);
+    stream.write(data.slice(0, 5));
+    stream.end(data.slice(5));
+    await done;
+
+    expect(Buffer.concat(output).toString()).to.be('out1out2');
+    expect(Buffer.concat(error).toString()).to.be('err');
+  });
+
+  it('test stop reading when output is full', async () => {
+    const stream = new PassThrough();
+
+    const written = [];
+    const callbacks = [];
+    const outputStream = new Writable({
+      highWaterMark: 4,
+      write(chunk, encoding, callback) {
+        written.push(chunk.toString());
+        callbacks.push(callback);
+      }
+    });
+
+    let resolved = false;
+    const done = docker.demuxStreamWithBackpressure(stream, outputStream, new PassThrough())
+      .then(() => { resolved = true; });
+
+    stream.end(Buffer.concat([frame(1, 'first'), frame(1, 'second')]));
+    await sleep(10);
+
+    expect(written).to.eql(['first']);
+
+    callbacks.shift()();
+    await sleep(10);
+    expect(written).to.eql(['first', 'second']);
+    expect(resolved).to.be(false);
+
+    callbacks.shift()();
+    await done;
+    expect(resolved).to.be(true);
+  });
+});
+
 describe('Integration::InstallationContainer', async () => {
 
   beforeEach(() => {
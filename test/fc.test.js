@@ -87,11 +87,11 @@ describe('test zipCode', () => {
   it('test zipCode: relative codeUri for war', async () => {
     const content = await fc.zipCode('/a/b', './web.war');
     expect(content).to.eql({
-      base64: Buffer.from('test').toString('base64'),
+      zipPath: path.resolve('/a/b/web.war'),
       compressedSize: '100'
     });
 
-    assert.calledWith(fs.readFile, path.resolve('/a/b/web.war'));
+    assert.notCalled(fs.readFile);
   });
 });
 
@@ -132,9 +132,7 @@ describe('Incorrect environmental variables', () => {
       initializationTimeout: 3,
       memorySize: 128,
       runtime: 'nodejs6',
-      code: {
-        zipFile: undefined
-      },
+      code: {},
       environmentVariables: {
         StringTypeValue1: '123',
         StringTypeValue2: 'test',
@@ -3,6 +3,11 @@
 const proxyquire = require('proxyquire');
 const sinon = require('sinon');
 const expect = require('expect.js');
+const fsExtra = require('fs-extra');
+const crypto = require('crypto');
+const path = require('path');
+const os = require('os');
+const utils = require('../../lib/import/utils');
 
 const sandbox = sinon.createSandbox();
 
@@ -111,6 +116,58 @@ describe('import utils', () => {
       }
     }));
   });
+});
+
+describe('import utils upload', () => {
+  const zipFilePath = path.join(os.tmpdir(), '.upload-progress-test.zip');
+  const content = crypto.randomBytes(100000);
+
+  beforeEach(async () => {
+    await fsExtra.outputFile(zipFilePath, content);
+  });
+
+  afterEach(async () => {
+    await fsExtra.remove(zipFilePath);
+  });
+
+  function readAll(readable) {
+    return new Promise((resolve, reject) => {
+      const chunks = [];
+      readable.on('data', (chunk) => chunks.push(Buffer.from(chunk)))
+        .on('error', reject)
+        .on('end', () => resolve(Buffer.concat(chunks).toString()));
+    });
+  }
+
+  it('test base64Encoder', async () => {
+    const encoder = utils.base64Encoder();
+    // chunks not aligned to 3 bytes
+    encoder.write(content.slice(0, 1));
+    encoder.write(content.slice(1, 5));
+    encoder.end(content.slice(5));
+
+    expect(await readAll(encoder)).to.be(content.toString('base64'));
+  });
+
+  it('test uploadProgress with zip file', async () => {
+    const params = {
+      handler: 'index.handler',
+      code: {},
+      environmentVariables: { ZIP: '"zipFile":""' }
+    };
 
+    const body = await readAll(await utils.uploadProgress(params, zipFilePath));
+    expect(JSON.parse(body)).to.eql({
+      handler: 'index.handler',
+      code: { zipFile: content.toString('base64') },
+      environmentVariables: { ZIP: '"zipFile":""' }
+    });
+  });
 
-});
\ No newline at end of file
+  it('test uploadProgress without zip file', async () => {
+    const params = { handler: 'index.handler' };
+
+    const body = await readAll(await utils.uploadProgress(params));
+    expect(JSON.parse(body)).to.eql(params);
+  });
+});
@@ -14,7 +14,8 @@ const fs = {
   createReadStream: sandbox.stub(),
   createWriteStream: sandbox.stub(),
   existsSync: sandbox.stub(),
-  chmodSync: sandbox.stub()
+  chmodSync: sandbox.stub(),
+  ensureDirSync: sandbox.stub()
 
 };
 
@@ -154,6 +155,22 @@ describe('renderer', () => {
     sandbox.assert.callCount(fs.chmodSync, 3);
   });
 
+  it('render with include paths', async () => {
+    fs.readdirSync.withArgs('baz').returns(['bar']).withArgs('shared').returns(['Pool.java']);
+    fs.statSync.returns({ mode: 123 });
+    fs.statSync
+      .withArgs('bar').returns({ isDirectory: () => false })
+      .withArgs('shared').returns({ isDirectory: () => true })
+      .withArgs('Pool.java').returns({ isDirectory: () => false, mode: 123 });
+    fs.readFileSync.returns('test {{ foo }}');
+    rendererStub.render({ repoDir: 'foor', templateDir: 'baz', vars: { foo: 'bar' }, config: { includePaths: { 'starter': 'shared' } } });
+    sandbox.assert.calledWith(fs.writeFileSync, 'bar', 'test bar');
+    sandbox.assert.calledWith(fs.ensureDirSync, 'starter');
+    // included files are copied without rendering
+    sandbox.assert.calledWith(fs.writeFileSync, 'Pool.java', 'test {{ foo }}');
+    sandbox.assert.calledTwice(fs.writeFileSync);
+  });
+
   it('render when merge is true', async () => {
     fs.readdirSync.withArgs('baz').returns(['template.yml']);
     fs.existsSync.returns(true);
@@ -0,0 +1,124 @@
+'use strict';
+
+const expect = require('expect.js');
+const sinon = require('sinon');
+const sandbox = sinon.createSandbox();
+const proxyquire = require('proxyquire');
+
+const serviceRes = {
+  Type: 'Aliyun::Serverless::Service',
+  Properties: {}
+};
+
+const functionRes = {
+  Type: 'Aliyun::Serverless::Function',
+  Properties: {
+    Handler: 'example.App::handleRequest',
+    Initializer: 'example.App::initialize',
+    CodeUri: 'target/demo.jar',
+    Runtime: 'java8',
+    MemorySize: 512
+  }
+};
+
+describe('test LocalBench', () => {
+
+  let docker;
+  let exec;
+
+  beforeEach(() => {
+    exec = sandbox.stub().callsFake(async (cmd, { errorStream }) => {
+      errorStream.write('FC Invoke End RequestId: 1\n\nDuration: 5.00 ms, Billed Duration: 100 ms');
+      await new Promise(resolve => setTimeout(resolve, 10));
+      return 0;
+    });
+
+    docker = {
+      generateDockerCmd: sandbox.stub().returns(['--server']),
+      generateRamdomContainerName: sandbox.stub().returns('fun_local_bench'),
+      startContainer: sandbox.stub().callsFake(async () => ({
+        exec,
+        stop: sandbox.stub().resolves(),
+        stats: sandbox.stub().resolves({ memory_stats: { usage: 300 * 1024 * 1024, limit: 512 * 1024 * 1024, stats: { cache: 44 * 1024 * 1024 } } })
+      }))
+    };
+  });
+
+  afterEach(() => {
+    sandbox.restore();
+  });
+
+  function createBench(options) {
+    const ServerInvoke = proxyquire('../../lib/local/server-invoke', {
+      '../docker': docker,
+      '../docker-opts': {
+        generateLocalStartOpts: sandbox.stub().resolves({}),
+        resolveMockScript: () => '/var/fc/runtime/java8/mock'
+      }
+    });
+    const { LocalBench } = proxyquire('../../lib/local/bench', {
+      './server-invoke': ServerInvoke
+    });
+
+    const bench = new LocalBench('localdemo', serviceRes, 'java8', functionRes, '/', '/tmp', null, options);
+    bench.inited = true;
+    bench.envs = {};
+    return bench;
+  }
+
+  it('test cold starts and warm invocations', async () => {
+    const bench = createBench({ concurrency: 2, duration: 1, events: ['a', 'b'] });
+    const report = await bench.run();
+
+    expect(report.coldStarts).to.have.length(2);
+    expect(report.coldStarts[0].reportedDuration).to.be(5);
+    expect(report.warm.requests).to.be.greaterThan(10);
+    expect(report.warm.errors).to.be(0);
+    expect(report.warm.reportedDuration.p50).to.be(5);
+    expect(report.warm.latency.p50).to.be.greaterThan(5);
+    expect(report.memorySize).to.be(512);
+
+    // the initializer is only passed to the first invocation of every container
+    const invokeInitializers = docker.generateDockerCmd.args
+      .filter(args => args[1] === false)
+      .map(args => args[2].invokeInitializer);
+    expect(invokeInitializers.slice(0, 2)).to.eql([true, true]);
+    expect(invokeInitializers.slice(2)).not.to.contain(true);
+    expect(exec.firstCall.args[1].event.toString()).to.be('a');
+    expect(exec.secondCall.args[1].event.toString()).to.be('b');
+  });
+
+  it('test restart exited containers', async () => {
+    let calls = 0;
+    const invoke = exec;
+    exec = sandbox.stub().callsFake(async (cmd, options) => {
+      if (++calls === 3) {
+        throw 'exited with code 137';
+      }
+      return await invoke(cmd, options);
+    });
+
+    const bench = createBench({ concurrency: 1, duration: 1 });
+    const report = await bench.run();
+
+    expect(report.warm.errors).to.be(1);
+    expect(docker.startContainer.calledTwice).to.be(true);
+    expect(report.coldStarts).to.have.length(2);
+  });
+
+  it('test custom container is not supported', () => {
+    const customRes = { Properties: Object.assign({}, functionRes.Properties, { Runtime: 'custom-container' }) };
+    const { LocalBench } = proxyquire('../../lib/local/bench', {});
+    expect(() => new LocalBench('localdemo', serviceRes, 'java8', customRes, '/', '/tmp')).to.throwException(/custom-container of localdemo\/java8 could not be invoked in server mode/);
+  });
+});
+
+describe('test memoryUsageOf', () => {
+  const { memoryUsageOf } = require('../../lib/local/bench');
+
+  it('test page cache is excluded', () => {
+    expect(memoryUsageOf({ memory_stats: { usage: 100, limit: 200, stats: { inactive_file: 30, cache: 40 } } })).to.eql({ usage: 70, limit: 200 });
+    expect(memoryUsageOf({ memory_stats: { usage: 100, limit: 200, stats: { cache: 40 } } })).to.eql({ usage: 60, limit: 200 });
+    expect(memoryUsageOf({ memory_stats: {} })).to.be(null);
+  });
+});
@@ -0,0 +1,16 @@
+'use strict';
+
+const expect = require('expect.js');
+
+const { parseInvokeDuration } = require('../../lib/local/duration');
+
+describe('test parseInvokeDuration', () => {
+
+  it('test duration of runtime output', () => {
+    expect(parseInvokeDuration('FC Invoke End RequestId: 1\n\nDuration: 17.45 ms, Billed Duration: 100 ms')).to.be(17.45);
+  });
+
+  it('test output without duration', () => {
+    expect(parseInvokeDuration('hello')).to.be(null);
+  });
+});
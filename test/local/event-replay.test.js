@@ -0,0 +1,187 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+const sinon = require('sinon');
+const sandbox = sinon.createSandbox();
+const proxyquire = require('proxyquire');
+
+const serviceRes = {
+  Type: 'Aliyun::Serverless::Service',
+  Properties: {}
+};
+
+const functionRes = {
+  Type: 'Aliyun::Serverless::Function',
+  Properties: {
+    Handler: 'example.App::handleRequest',
+    Initializer: 'example.App::initialize',
+    CodeUri: 'target/demo.jar',
+    Runtime: 'java8'
+  }
+};
+
+describe('test loadEvents', () => {
+  const eventsDir = path.join(os.tmpdir(), '.event-replay-test');
+  const { loadEvents } = require('../../lib/local/event-replay');
+
+  afterEach(() => {
+    rimraf.sync(eventsDir);
+  });
+
+  it('test events of jsonl', async () => {
+    const eventsPath = path.join(eventsDir, 'events.jsonl');
+    await fs.outputFile(eventsPath, '{"a":1}\n\n{"a":2}\r\n');
+
+    const events = await loadEvents(eventsPath);
+    expect(events.map(e => e.source)).to.eql(['events.jsonl:1', 'events.jsonl:3']);
+    expect((await events[1].read()).toString()).to.be('{"a":2}');
+  });
+
+  it('test events of directory', async () => {
+    await fs.outputFile(path.join(eventsDir, 'b.json'), '{"b":1}');
+    await fs.outputFile(path.join(eventsDir, 'a.json'), '{"a":1}');
+    await fs.ensureDir(path.join(eventsDir, 'nested'));
+
+    const events = await loadEvents(eventsDir);
+    expect(events.map(e => e.source)).to.eql(['a.json', 'b.json']);
+    expect((await events[0].read()).toString()).to.be('{"a":1}');
+  });
+});
+
+describe('test EventReplay', () => {
+  const resultsPath = path.join(os.tmpdir(), '.event-replay-results', 'results.jsonl');
+
+  let docker;
+  let exec;
+  let initializers;
+
+  beforeEach(() => {
+    initializers = 0;
+    exec = async (cmd, { event, outputStream, errorStream }) => {
+      if (cmd.includes('-i')) {
+        initializers++;
+      }
+      await new Promise(resolve => setTimeout(resolve, 5));
+      outputStream.write(`echo ${event.toString()}`);
+      errorStream.write('Duration: 2.50 ms, Billed Duration: 100 ms');
+      return event.toString() === 'bad' ? 1 : 0;
+    };
+
+    docker = {
+      generateDockerCmd: (runtime, isLocalStartInit, { invokeInitializer }) => {
+        return isLocalStartInit ? ['--server'] : (invokeInitializer ? ['-i', 'example.App::initialize'] : []);
+      },
+      generateRamdomContainerName: () => 'fun_local_replay',
+      startContainer: sandbox.stub().callsFake(async () => ({
+        exec: (cmd, options) => exec(cmd, options),
+        stop: sandbox.stub().resolves()
+      }))
+    };
+  });
+
+  afterEach(() => {
+    sandbox.restore();
+    rimraf.sync(path.dirname(resultsPath));
+  });
+
+  function createReplay(concurrency) {
+    const ServerInvoke = proxyquire('../../lib/local/server-invoke', {
+      '../docker': docker,
+      '../docker-opts': {
+        generateLocalStartOpts: async () => ({}),
+        resolveMockScript: () => '/var/fc/runtime/java8/mock'
+      }
+    });
+    const { EventReplay } = proxyquire('../../lib/local/event-replay', {
+      './server-invoke': ServerInvoke
+    });
+
+    const replay = new EventReplay('localdemo', serviceRes, 'java8', functionRes, '/', '/tmp', null, { concurrency, resultsPath });
+    replay.inited = true;
+    return replay;
+  }
+
+  function eventsOf(...bodies) {
+    return bodies.map((body, i) => ({ source: `events.jsonl:${i + 1}`, read: async () => Buffer.from(body) }));
+  }
+
+  async function readResults() {
+    const lines = (await fs.readFile(resultsPath, 'utf8')).trim().split('\n');
+    return lines.map(line => JSON.parse(line));
+  }
+
+  it('test replay through one container', async () => {
+    const replay = createReplay(3);
+    const summary = await replay.replay(eventsOf('1', '2', '3', 'bad', '5', '6', '7'));
+
+    expect(docker.startContainer.callCount).to.be(1);
+    expect(initializers).to.be(1);
+    expect(summary.events).to.be(7);
+    expect(summary.errors).to.be(1);
+    expect(summary.duration.count).to.be(7);
+
+    const results = await readResults();
+    expect(results.map(r => r.index).sort()).to.eql([0, 1, 2, 3, 4, 5, 6]);
+
+    const bad = results.find(r => r.source === 'events.jsonl:4');
+    expect(bad.exitCode).to.be(1);
+    expect(bad.output).to.be('echo bad');
+    expect(bad.reportedDuration).to.be(2.5);
+  });
+
+  it('test restart exited container', async () => {
+    const invoke = exec;
+    exec = async (cmd, options) => {
+      if (options.event.toString() === 'crash') {
+        throw 'exited with code 137';
+      }
+      return await invoke(cmd, options);
+    };
+
+    const replay = createReplay(1);
+    const summary = await replay.replay(eventsOf('1', 'crash', '3'));
+
+    expect(docker.startContainer.callCount).to.be(2);
+    expect(initializers).to.be(2);
+    expect(summary).to.have.property('restarts', 1);
+    expect(summary.errors).to.be(1);
+
+    const results = await readResults();
+    expect(results[1]).to.have.property('error', 'exited with code 137');
+    expect(results[2].output).to.be('echo 3');
+  });
+
+  it('test stop replaying when restart fails', async () => {
+    const invoke = exec;
+    exec = async (cmd, options) => {
+      if (options.event.toString() === 'crash') {
+        throw 'exited with code 137';
+      }
+      return await invoke(cmd, options);
+    };
+    const startContainer = docker.startContainer;
+    docker.startContainer = sandbox.stub().callsFake(async (...args) => {
+      if (docker.startContainer.callCount > 1) {
+        throw new Error('no space left on device');
+      }
+      return await startContainer(...args);
+    });
+
+    const replay = createReplay(1);
+    try {
+      await replay.replay(eventsOf('1', 'crash', '3', '4'));
+      expect().fail('the replay should stop');
+    } catch (e) {
+      expect(e.message).to.contain('replay stopped after 2 of 4 events');
+      expect(e.message).to.contain('no space left on device');
+    }
+
+    expect(docker.startContainer.callCount).to.be(2);
+    const results = await readResults();
+    expect(results.map(r => r.source)).to.eql(['events.jsonl:1', 'events.jsonl:2']);
+  });
+});
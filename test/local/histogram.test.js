@@ -0,0 +1,56 @@
+'use strict';
+
+const expect = require('expect.js');
+
+const Histogram = require('../../lib/local/histogram');
+
+describe('test Histogram', () => {
+
+  it('test empty histogram', () => {
+    const histogram = new Histogram();
+    expect(histogram.valueAtPercentile(50)).to.be(null);
+    expect(histogram.summary()).to.eql({ count: 0 });
+  });
+
+  it('test small values are exact', () => {
+    const histogram = new Histogram();
+    [1, 2, 3, 4].forEach(ms => histogram.record(ms / 1000));
+
+    expect(histogram.summary()).to.eql({
+      count: 4,
+      min: 0.001,
+      mean: 0.003,
+      p50: 0.002,
+      p90: 0.004,
+      p99: 0.004,
+      p999: 0.004,
+      max: 0.004
+    });
+  });
+
+  it('test relative error of large values', () => {
+    const histogram = new Histogram();
+    for (let ms = 1; ms <= 10000; ms++) {
+      histogram.record(ms);
+    }
+
+    for (const [percentile, expected] of [[50, 5000], [99, 9900], [99.9, 9990]]) {
+      const value = histogram.valueAtPercentile(percentile);
+      expect(value).to.be.greaterThan(expected - expected / 1000);
+      expect(value).to.be.lessThan(expected + expected / 1000);
+    }
+    expect(histogram.valueAtPercentile(100)).to.be(10000);
+  });
+
+  it('test tail percentiles', () => {
+    const histogram = new Histogram();
+    for (let i = 0; i < 999; i++) {
+      histogram.record(10);
+    }
+    histogram.record(500);
+
+    expect(histogram.valueAtPercentile(99)).to.be.lessThan(10.02);
+    expect(histogram.valueAtPercentile(99.9)).to.be.lessThan(10.02);
+    expect(histogram.valueAtPercentile(99.95)).to.be(500);
+  });
+});
@@ -1,12 +1,14 @@
 'use strict';
 
 const HttpInvoke = require('../../lib/local/http-invoke');
+const { HttpOutputStream } = require('../../lib/local/http');
 const { ensureTmpDir } = require('../../lib/utils/path');
 const sinon = require('sinon');
 const assert = sinon.assert;
 
 var express = require('express');
 const path = require('path');
+const { Writable } = require('stream');
 
 const { hasDocker } = require('../conditions');
 const tempDir = require('temp-dir');
@@ -94,6 +96,136 @@ describe('test http response', async () => {
   });
 });
 
+describe('test http stream response', async () => {
+
+  let httpInvoke;
+  let resp;
+  let received;
+
+  beforeEach(() => {
+    httpInvoke = new HttpInvoke(serviceName, serviceRes, functionName, functionRes, null, null, process.cwd());
+
+    received = [];
+    resp = new Writable({
+      write(chunk, encoding, callback) {
+        received.push(chunk);
+        callback();
+      }
+    });
+    const headers = {};
+    Object.assign(resp, {
+      send: sinon.stub(),
+      status: sinon.stub(),
+      set: sinon.stub(),
+      setHeader: sinon.stub().callsFake((key, value) => { headers[key.toLowerCase()] = value; }),
+      getHeader: (key) => headers[key.toLowerCase()]
+    });
+  });
+
+  it('test stream success http trigger', async () => {
+    const outputStream = new HttpOutputStream();
+    const responded = httpInvoke.streamResponse(outputStream, '', resp);
+
+    outputStream.end(httpOutputStream);
+    await responded;
+
+    assert.calledWith(resp.status, 200);
+    assert.calledWith(resp.setHeader, 'content-type', ['application/json']);
+    assert.notCalled(resp.send);
+    expect(Buffer.concat(received)).to.eql(Buffer.from('testBody'));
+  });
+
+  it('test stream with 4xx invoke http status', async () => {
+    const outputStream = new HttpOutputStream();
+    const responded = httpInvoke.streamResponse(outputStream, 'function invoke error', resp);
+
+    outputStream.end(httpErrorOutputStream);
+    await responded;
+
+    assert.calledWith(resp.status, '400');
+    assert.calledWith(resp.setHeader, 'Content-Type', 'application/json');
+    assert.calledWith(resp.send, Buffer.from('testBody'));
+  });
+
+  it('test stream without response', async () => {
+    const outputStream = new HttpOutputStream();
+    const responded = httpInvoke.streamResponse(outputStream, '', resp);
+
+    outputStream.end('load code for handler:read.handler\n');
+    await responded;
+
+    assert.calledWith(resp.status, 500);
+    assert.calledWith(resp.send, {
+      'errorMessage': 'Process exited unexpectedly before completing request (duration: undefinedms, maxMemoryUsage: undefinedMB)'
+    });
+  });
+
+  it('test stream custom http trigger', async () => {
+    httpInvoke.runtime = 'custom';
+
+    const outputStream = new HttpOutputStream();
+    const responded = httpInvoke.streamResponse(outputStream, '', resp);
+
+    outputStream.end(httpOutputStream);
+    await responded;
+
+    assert.calledWith(resp.status, '200');
+    assert.calledWith(resp.set, {
+      'x-fc-http-params': 'eyJzdGF0dXMiOjIwMCwiaGVhZGVycyI6eyJjb250ZW50LXR5cGUiOiJhcHBsaWNhdGlvbi9qc29uIn0sImhlYWRlcnNNYXAiOnsiY29udGVudC10eXBlIjpbImFwcGxpY2F0aW9uL2pzb24iXX19'
+    });
+    assert.calledWith(resp.setHeader, 'Content-Type', 'application/octet-stream');
+    expect(Buffer.concat(received)).to.eql(Buffer.from('testBody'));
+  });
+});
+
+describe('test swap runner pool', async () => {
+
+  let httpInvoke;
+  let oldCodeDir;
+  let newCodeDir;
+
+  beforeEach(async () => {
+    httpInvoke = new HttpInvoke(serviceName, serviceRes, functionName, functionRes, null, null, process.cwd());
+
+    oldCodeDir = path.join(tempDir, 'swap-old-code');
+    newCodeDir = path.join(tempDir, 'swap-new-code');
+    await fs.ensureDir(oldCodeDir);
+
+    httpInvoke.pool = { stop: sinon.stub().resolves(), slots: [] };
+    httpInvoke.unzippedCodeDir = oldCodeDir;
+    httpInvoke.codeMount = { Source: oldCodeDir };
+
+    sinon.stub(httpInvoke, 'init').callsFake(async () => {
+      await fs.ensureDir(newCodeDir);
+      httpInvoke.unzippedCodeDir = newCodeDir;
+      httpInvoke.codeMount = { Source: newCodeDir };
+    });
+    sinon.stub(httpInvoke, '_startRunnerPool').rejects(new Error('start container error'));
+  });
+
+  afterEach(() => {
+    rimraf.sync(oldCodeDir);
+    rimraf.sync(newCodeDir);
+  });
+
+  it('test remove new code dir when pool fails to start', async () => {
+    const oldPool = httpInvoke.pool;
+    try {
+      await httpInvoke._swapRunnerPool();
+      expect.fail();
+    } catch (error) {
+      expect(error.message).to.be('start container error');
+    }
+
+    expect(await fs.pathExists(newCodeDir)).to.be(false);
+    expect(await fs.pathExists(oldCodeDir)).to.be(true);
+    expect(httpInvoke.pool).to.be(oldPool);
+    expect(httpInvoke.unzippedCodeDir).to.be(oldCodeDir);
+    expect(httpInvoke.codeMount).to.eql({ Source: oldCodeDir });
+    assert.notCalled(oldPool.stop);
+  });
+});
+
 (hasDocker ? describe : describe.skip)('Integration::http-invoke', () => {
   const projectDir = path.join(tempDir, 'http-invoke-it-dir'); 
   const index = path.join(projectDir, 'index.py');
@@ -161,7 +293,7 @@ def handler(environ, start_response):
 
     expect(body).to.contain('Hello world!');
 
-    await httpInvoke.runner.stop();
+    await httpInvoke.pool.stop();
   });
 
   it('test http local invoke with authType function with invalid signature', async () => {
@@ -191,7 +323,7 @@ def handler(environ, start_response):
 
     expect(body).to.contain('Signature doesn\'t match, request signature is');
     
-    await httpInvoke.runner.stop();
+    await httpInvoke.pool.stop();
   });
 
   it('test http local invoke with authType function with valid signature', async () => {
@@ -230,6 +362,6 @@ def handler(environ, start_response):
 
     expect(body).to.contain('Hello world!');
     
-    await httpInvoke.runner.stop();
+    await httpInvoke.pool.stop();
   });
 });
@@ -104,6 +104,120 @@ describe('test parseOutputStream', async () => {
   });
 });
 
+function readBody(body) {
+  return new Promise((resolve) => {
+    const chunks = [];
+    body.on('data', (chunk) => chunks.push(chunk));
+    body.on('end', () => resolve(Buffer.concat(chunks)));
+  });
+}
+
+describe('test HttpOutputStream', async () => {
+
+  it('test parse head and body and executionInfo', async () => {
+    const outputStream = new http.HttpOutputStream();
+
+    const heads = [];
+    outputStream.on('head', (head) => heads.push(head));
+    const body = readBody(outputStream.body);
+
+    outputStream.end(httpOutputStream);
+
+    expect(heads).to.eql([{
+      statusCode: '200',
+      headers: {
+        'x-fc-http-params': 'eyJzdGF0dXMiOjIwMCwiaGVhZGVycyI6eyJjb250ZW50LXR5cGUiOiJhcHBsaWNhdGlvbi9qc29uIn0sImhlYWRlcnNNYXAiOnsiY29udGVudC10eXBlIjpbImFwcGxpY2F0aW9uL2pzb24iXX19'
+      }
+    }]);
+    expect(await body).to.eql(Buffer.from('testBody'));
+    expect(outputStream.executionInfo).to.eql({
+      requestId: '9c81b53e-ed17-4327-ac77-28dac374e055',
+      billedTime: '182',
+      memoryLimit: '1998',
+      memoryUsage: '20'
+    });
+  });
+
+  it('test emit head before the response ends', async () => {
+    const outputStream = new http.HttpOutputStream();
+
+    const heads = [];
+    outputStream.on('head', (head) => heads.push(head));
+    const chunks = [];
+    outputStream.body.on('data', (chunk) => chunks.push(chunk));
+
+    const base64 = Buffer.from('HTTP/1.1 200 OK\r\ncontent-type: text/plain\r\n\r\nfirst second').toString('base64');
+    outputStream.write(`--------------------response begin-----------------\n${base64.substring(0, 66)}`);
+
+    expect(heads).to.eql([{ statusCode: '200', headers: { 'content-type': 'text/plain' } }]);
+    expect(Buffer.concat(chunks).toString()).to.be('fir');
+
+    outputStream.end(`${base64.substring(66)}\n--------------------response end-----------------\n`);
+    await new Promise(resolve => outputStream.body.on('end', resolve));
+
+    expect(Buffer.concat(chunks).toString()).to.be('first second');
+  });
+
+  it('test binary body split at any position', async () => {
+    const image = Buffer.from(`iVBORw0KGgoAAAANSUhEUgAAABQAAAAUCAYAAACNiR0NAAAAKElEQVQ4
+jWNgYGD4Twzu6FhFFGYYNXDUwGFpIAk2E4dHDRw1cDgaCAASFOffhEIO3gAAAABJRU5ErkJggg==`, 'base64');
+    const response = Buffer.concat([Buffer.from('HTTP/1.1 200 OK\r\ncontent-type: image/png\r\n\r\n'), image]);
+
+    // base64 wraps lines at 76 characters
+    const base64Lines = response.toString('base64').match(/.{1,76}/g).join('\n');
+    const output = Buffer.from(`log before response\n--------------------response begin-----------------\n${base64Lines}\n--------------------response end-----------------\n`);
+
+    for (const size of [1, 3, 7, 64]) {
+      const outputStream = new http.HttpOutputStream();
+      const body = readBody(outputStream.body);
+
+      for (let i = 0; i < output.length; i += size) {
+        outputStream.write(output.slice(i, i + size));
+      }
+      outputStream.end();
+
+      expect(await body).to.eql(image);
+    }
+  });
+
+  it('test wait for the body to be read', async () => {
+    const outputStream = new http.HttpOutputStream();
+
+    const body = Buffer.alloc(64 * 1024, 'a');
+    const response = Buffer.concat([Buffer.from('HTTP/1.1 200 OK\r\n\r\n'), body]);
+
+    let written = false;
+    outputStream.write(`--------------------response begin-----------------\n${response.toString('base64')}\n`, () => {
+      written = true;
+    });
+
+    await new Promise(resolve => setTimeout(resolve, 10));
+    expect(written).to.be(false);
+
+    const received = readBody(outputStream.body);
+    outputStream.end('--------------------response end-----------------\n');
+
+    expect(await received).to.eql(body);
+    expect(written).to.be(true);
+  });
+
+  it('test response without body', async () => {
+    const outputStream = new http.HttpOutputStream();
+
+    const heads = [];
+    outputStream.on('head', (head) => heads.push(head));
+    const body = readBody(outputStream.body);
+
+    outputStream.end(`--------------------response begin-----------------
+${Buffer.from('HTTP/1.1 204 No Content\r\nx-test: value\r\n').toString('base64')}
+--------------------response end-----------------
+`);
+
+    expect(heads).to.eql([{ statusCode: '204', headers: { 'x-test': 'value' } }]);
+    expect(await body).to.eql(Buffer.alloc(0));
+  });
+});
+
 // response 所包含的 body，是一张简单的图片，原有的 http-string-parser 在 split 时使用 \r?\n 的方式 split 会导致有问题
 describe('test image response', async () => {
   const responseString = `SFRUUC8xLjEgMjAwIE9LDQpYLVBvd2VyZWQtQnk6IEV4cHJlc3MNCngtZmMtaHR0cC1wYXJhbXM6
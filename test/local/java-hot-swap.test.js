@@ -0,0 +1,163 @@
+'use strict';
+
+const os = require('os');
+const net = require('net');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const { readClassName, requiresRestart, generateHotSwapDebugOptions, redefineClasses } = require('../../lib/local/java-hot-swap');
+
+// a class file with the constant pool #1 Utf8 className, #2 Class #1, #3 Long, #5 Utf8 java/lang/Object, #6 Class #5
+function classFile(className) {
+  const utf8 = (value) => {
+    const bytes = Buffer.from(value, 'utf8');
+    const buf = Buffer.alloc(3 + bytes.length);
+    buf.writeUInt8(1, 0);
+    buf.writeUInt16BE(bytes.length, 1);
+    bytes.copy(buf, 3);
+    return buf;
+  };
+  const classRef = (index) => Buffer.from([7, index >> 8, index & 0xff]);
+  const long = Buffer.from([5, 0, 0, 0, 0, 0, 0, 0, 1]);
+
+  const header = Buffer.alloc(10);
+  header.writeUInt32BE(0xCAFEBABE, 0);
+  header.writeUInt16BE(0, 4);
+  header.writeUInt16BE(52, 6);
+  header.writeUInt16BE(7, 8);
+
+  // access_flags, this_class, super_class
+  const rest = Buffer.from([0, 0x21, 0, 2, 0, 6]);
+  return Buffer.concat([header, utf8(className), classRef(1), long, utf8('java/lang/Object'), classRef(5), rest]);
+}
+
+function reply(id, data = Buffer.alloc(0), errorCode = 0) {
+  const header = Buffer.alloc(11);
+  header.writeUInt32BE(11 + data.length, 0);
+  header.writeUInt32BE(id, 4);
+  header.writeUInt8(0x80, 8);
+  header.writeUInt16BE(errorCode, 9);
+  return Buffer.concat([header, data]);
+}
+
+function int(value) {
+  const buf = Buffer.alloc(4);
+  buf.writeInt32BE(value, 0);
+  return buf;
+}
+
+// answers IDSizes, ClassesBySignature, RedefineClasses and Dispose like a jvm with one loaded class
+function fakeJvm(loadedSignature, redefineErrorCode = 0) {
+  const commands = [];
+  const server = net.createServer(socket => {
+    let handshaken = false;
+    let buffer = Buffer.alloc(0);
+    socket.on('data', data => {
+      buffer = Buffer.concat([buffer, data]);
+      if (!handshaken) {
+        if (buffer.length < 14) { return; }
+        handshaken = true;
+        buffer = buffer.slice(14);
+        socket.write('JDWP-Handshake');
+        // an unrequested VM_START event
+        const event = reply(0, Buffer.from([2, 0]));
+        event.writeUInt8(0, 8);
+        socket.write(event);
+      }
+      while (buffer.length >= 11 && buffer.length >= buffer.readUInt32BE(0)) {
+        const packet = buffer.slice(0, buffer.readUInt32BE(0));
+        buffer = buffer.slice(packet.length);
+
+        const id = packet.readUInt32BE(4);
+        const command = packet.readUInt8(10);
+        const data = packet.slice(11);
+        commands.push({ command, data });
+
+        if (command === 7) {
+          socket.write(reply(id, Buffer.concat([int(8), int(8), int(8), int(8), int(8)])));
+        } else if (command === 2) {
+          const signature = data.toString('utf8', 4);
+          if (signature === loadedSignature) {
+            socket.write(reply(id, Buffer.concat([int(1), Buffer.from([1]), Buffer.alloc(8, 7), int(7)])));
+          } else {
+            socket.write(reply(id, int(0)));
+          }
+        } else if (command === 18) {
+          socket.write(reply(id, Buffer.alloc(0), redefineErrorCode));
+        } else if (command === 6) {
+          socket.end(reply(id));
+        }
+      }
+    });
+  });
+  return { server, commands };
+}
+
+describe('test java hot swap', () => {
+  const classesDir = path.join(os.tmpdir(), '.java-hot-swap-test');
+  const appClass = path.join(classesDir, 'example', 'App.class');
+  const utilClass = path.join(classesDir, 'example', 'Util.class');
+
+  let jvm;
+
+  beforeEach(async () => {
+    await fs.outputFile(appClass, classFile('example/App'));
+    await fs.outputFile(utilClass, classFile('example/Util'));
+  });
+
+  afterEach(() => {
+    rimraf.sync(classesDir);
+    if (jvm) {
+      jvm.server.close();
+      jvm = null;
+    }
+  });
+
+  function listen() {
+    return new Promise(resolve => jvm.server.listen(0, () => resolve(jvm.server.address().port)));
+  }
+
+  it('test read class name', async () => {
+    expect(readClassName(await fs.readFile(appClass))).to.be('example/App');
+  });
+
+  it('test requires restart', () => {
+    expect(requiresRestart('/code/pom.xml')).to.be(true);
+    expect(requiresRestart('/code/target/lib/dep.jar')).to.be(true);
+    expect(requiresRestart('/code/target/classes/example/App.class')).to.be(false);
+    expect(requiresRestart('/code/src/main/resources/application.properties')).to.be(false);
+  });
+
+  it('test debug options', () => {
+    expect(generateHotSwapDebugOptions('java8', 5005)).to.contain('suspend=n');
+    expect(generateHotSwapDebugOptions('java8', 5005)).to.contain('address=5005');
+    expect(generateHotSwapDebugOptions('java11', 5005)).to.contain('address=*:5005');
+  });
+
+  it('test redefine loaded classes only', async () => {
+    jvm = fakeJvm('Lexample/App;');
+    const port = await listen();
+
+    const count = await redefineClasses('localhost', port, [appClass, utilClass]);
+
+    expect(count).to.be(1);
+    const redefine = jvm.commands.find(c => c.command === 18);
+    expect(redefine.data.readInt32BE(0)).to.be(1);
+    expect(redefine.data.slice(4, 12)).to.eql(Buffer.alloc(8, 7));
+    expect(redefine.data.readInt32BE(12)).to.be((await fs.readFile(appClass)).length);
+  });
+
+  it('test redefine rejected by jvm', async () => {
+    jvm = fakeJvm('Lexample/App;', 63);
+    const port = await listen();
+
+    try {
+      await redefineClasses('localhost', port, [appClass]);
+      expect().fail();
+    } catch (e) {
+      expect(e.message).to.contain('ADD_METHOD_NOT_IMPLEMENTED');
+    }
+  });
+});
@@ -0,0 +1,99 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const { JavaProfile, createJavaProfile, getProfileOptions } = require('../../lib/local/java-profile');
+const { generateChunk } = require('./jfr-data');
+
+describe('test getProfileOptions', () => {
+  it('test options', () => {
+    expect(getProfileOptions({})).to.be(null);
+    expect(getProfileOptions({ profile: true })).to.eql({ asyncProfilerPath: null });
+    expect(getProfileOptions({ asyncProfiler: '/opt/async-profiler' })).to.eql({ asyncProfilerPath: '/opt/async-profiler' });
+  });
+});
+
+describe('test createJavaProfile', () => {
+  it('test java runtimes', () => {
+    expect(createJavaProfile('/demo', 'localdemo', 'java8', 'java8', null)).to.be(null);
+    expect(createJavaProfile('/demo', 'localdemo', 'nodejs10', 'nodejs10', {})).to.be(null);
+
+    const profile = createJavaProfile('/demo', 'localdemo', 'java11', 'java11', {});
+    expect(profile.outputDir).to.be(path.join('/demo', '.fun', 'profile', 'localdemo', 'java11'));
+  });
+});
+
+describe('test JavaProfile', () => {
+  const baseDir = path.join(os.tmpdir(), '.java-profile-test');
+  const outputDir = path.join(baseDir, 'profile');
+
+  afterEach(() => {
+    rimraf.sync(baseDir);
+  });
+
+  it('test flight recorder', async () => {
+    const profile = new JavaProfile(outputDir);
+    await profile.init();
+
+    expect(await fs.pathExists(outputDir)).to.be(true);
+    expect(profile.mounts()).to.eql([{ Type: 'bind', Source: outputDir, Target: '/tmp/fun-profile', ReadOnly: false }]);
+
+    const envs = { DEBUG_OPTIONS: '-agentlib:jdwp=transport=dt_socket,server=y,suspend=n,quiet=y,address=5005', local: true };
+    expect(profile.applyTo(envs, 'fun_local_1')).to.eql({
+      DEBUG_OPTIONS: '-agentlib:jdwp=transport=dt_socket,server=y,suspend=n,quiet=y,address=5005 -XX:StartFlightRecording=settings=profile,dumponexit=true,filename=/tmp/fun-profile/fun_local_1.jfr',
+      local: true
+    });
+    expect(envs.DEBUG_OPTIONS).to.not.contain('StartFlightRecording');
+    expect(profile.applyTo({}, 'fun_local_2').DEBUG_OPTIONS).to.be('-XX:StartFlightRecording=settings=profile,dumponexit=true,filename=/tmp/fun-profile/fun_local_2.jfr');
+  });
+
+  it('test async-profiler', async () => {
+    const asyncProfilerPath = path.join(baseDir, 'async-profiler');
+    await fs.outputFile(path.join(asyncProfilerPath, 'build', 'libasyncProfiler.so'), '');
+
+    const profile = new JavaProfile(outputDir, { asyncProfilerPath });
+    await profile.init();
+
+    expect(profile.mounts()[1]).to.eql({ Type: 'bind', Source: asyncProfilerPath, Target: '/opt/fun-async-profiler', ReadOnly: true });
+    expect(profile.applyTo({}, 'fun_local_1').DEBUG_OPTIONS).to.be('-agentpath:/opt/fun-async-profiler/build/libasyncProfiler.so=start,event=itimer,alloc,jfr,file=/tmp/fun-profile/fun_local_1.jfr');
+  });
+
+  it('test async-profiler not found', async () => {
+    const profile = new JavaProfile(outputDir, { asyncProfilerPath: baseDir });
+
+    try {
+      await profile.init();
+      expect().fail('should throw');
+    } catch (error) {
+      expect(error.message).to.contain('could not find lib/libasyncProfiler.so or build/libasyncProfiler.so');
+    }
+  });
+
+  it('test collect', async () => {
+    const profile = new JavaProfile(outputDir);
+    await profile.init();
+    profile.applyTo({}, 'fun_local_1');
+    profile.applyTo({}, 'fun_local_2');
+    profile.applyTo({}, 'fun_local_3');
+
+    await fs.writeFile(path.join(outputDir, 'fun_local_1.jfr'), generateChunk());
+    await profile.collect(['fun_local_1', 'fun_local_2']);
+
+    expect(await fs.readFile(path.join(outputDir, 'fun_local_1.cpu.collapsed'), 'utf8')).to.be([
+      'Hot.main 1',
+      'Hot.main;Hot.render;java.lang.String.format 2'
+    ].join('\n'));
+    expect(await fs.readFile(path.join(outputDir, 'fun_local_1.alloc.collapsed'), 'utf8')).to.be('Hot.main;Hot.render;java.lang.String.format;[B_[k] 1500');
+    expect(await fs.pathExists(path.join(outputDir, 'fun_local_2.cpu.collapsed'))).to.be(false);
+    expect(profile.recordings).to.eql(['fun_local_3']);
+
+    await fs.writeFile(path.join(outputDir, 'fun_local_3.jfr'), 'not a recording');
+    await profile.collect();
+    expect(profile.recordings).to.eql([]);
+    expect(await fs.pathExists(path.join(outputDir, 'fun_local_3.cpu.collapsed'))).to.be(false);
+  });
+});
@@ -0,0 +1,140 @@
+'use strict';
+
+const _ = require('lodash');
+
+// LEB128 of the 64 bits two's complement, the ninth byte holds all of its 8 bits
+function varlong(value) {
+  let low = ((value % 0x10000000) + 0x10000000) % 0x10000000;
+  let high = (value - low) / 0x10000000;
+  if (high < 0) { high += Math.pow(2, 36); }
+
+  const bytes = [];
+  for (let i = 0; i < 8; i++) {
+    const b = low & 0x7f;
+    low = Math.floor(low / 128) + (high % 128) * Math.pow(2, 21);
+    high = Math.floor(high / 128);
+    if (!low && !high) {
+      bytes.push(b);
+      return bytes;
+    }
+    bytes.push(b | 0x80);
+  }
+  bytes.push(low & 0xff);
+  return bytes;
+}
+
+function utf8(value) {
+  const bytes = Array.from(Buffer.from(value));
+  return [3, ...varlong(bytes.length), ...bytes];
+}
+
+// the size of an event includes its own varint
+function event(typeId, body) {
+  body = [...varlong(typeId), ...body];
+  let size = body.length + 1;
+  while (varlong(size).length + body.length !== size) {
+    size = varlong(size).length + body.length;
+  }
+  return [...varlong(size), ...body];
+}
+
+const TYPES = [
+  { id: 4, name: 'int' },
+  { id: 5, name: 'long' },
+  { id: 6, name: 'boolean' },
+  { id: 20, name: 'java.lang.String' },
+  { id: 21, name: 'java.lang.Class', fields: [{ name: 'name', type: 22, constantPool: true }] },
+  { id: 22, name: 'jdk.types.Symbol', fields: [{ name: 'string', type: 20 }] },
+  { id: 23, name: 'jdk.types.Method', fields: [{ name: 'type', type: 21, constantPool: true }, { name: 'name', type: 22, constantPool: true }] },
+  { id: 24, name: 'jdk.types.StackFrame', fields: [{ name: 'method', type: 23, constantPool: true }, { name: 'lineNumber', type: 4 }] },
+  { id: 25, name: 'jdk.types.StackTrace', fields: [{ name: 'truncated', type: 6 }, { name: 'frames', type: 24, array: true }] },
+  { id: 100, name: 'jdk.ExecutionSample', fields: [{ name: 'startTime', type: 5 }, { name: 'stackTrace', type: 25, constantPool: true }] },
+  { id: 101, name: 'jdk.ObjectAllocationSample', fields: [{ name: 'startTime', type: 5 }, { name: 'objectClass', type: 21, constantPool: true }, { name: 'weight', type: 5 }, { name: 'stackTrace', type: 25, constantPool: true }] },
+  { id: 102, name: 'jdk.GCPhasePause', fields: [{ name: 'startTime', type: 5 }, { name: 'duration', type: 5 }, { name: 'name', type: 20 }] }
+];
+
+function metadataEvent() {
+  const strings = [];
+  const index = value => {
+    if (!_.includes(strings, value)) { strings.push(value); }
+    return strings.indexOf(value);
+  };
+
+  const element = (name, attributes, children = []) => [
+    ...varlong(index(name)),
+    ...varlong(_.size(attributes)),
+    ..._.flatMap(_.toPairs(attributes), ([key, value]) => [...varlong(index(key)), ...varlong(index(value))]),
+    ...varlong(children.length),
+    ..._.flatten(children)
+  ];
+
+  const classes = TYPES.map(type => element('class', { id: String(type.id), name: type.name }, (type.fields || []).map(field => {
+    const attributes = { name: field.name, class: String(field.type) };
+    if (field.constantPool) { attributes.constantPool = 'true'; }
+    if (field.array) { attributes.dimension = '1'; }
+    return element('field', attributes);
+  })));
+  const root = element('root', {}, [element('metadata', {}, classes), element('region', {})]);
+
+  return event(0, [...varlong(0), ...varlong(0), ...varlong(1), ...varlong(strings.length), ..._.flatMap(strings, utf8), ...root]);
+}
+
+function constantPoolEvent(delta, pools) {
+  return event(1, [
+    ...varlong(0), ...varlong(0), ...varlong(delta), 0,
+    ...varlong(pools.length),
+    ..._.flatMap(pools, ([typeId, constants]) => [
+      ...varlong(typeId), ...varlong(constants.length), ..._.flatMap(constants, ([id, value]) => [...varlong(id), ...value])
+    ])
+  ]);
+}
+
+const frame = (methodId, line) => [...varlong(methodId), ...varlong(line)];
+
+// A chunk of 3 cpu samples and 2 allocation samples of 2 stacks:
+// Hot.main -> Hot.render -> java.lang.String.format, and Hot.main alone.
+// The constant pools are split into 2 events, the name of format refers to the pool of strings.
+function generateChunk() {
+  const samples = [
+    event(100, [...varlong(1), ...varlong(1)]),
+    event(102, [...varlong(2), ...varlong(300), ...utf8('Pause Young')]),
+    event(100, [...varlong(3), ...varlong(1)]),
+    event(100, [...varlong(4), ...varlong(2)]),
+    event(101, [...varlong(5), ...varlong(3), ...varlong(1000), ...varlong(1)]),
+    event(101, [...varlong(6), ...varlong(3), ...varlong(500), ...varlong(1)])
+  ];
+
+  const symbols = constantPoolEvent(0, [
+    [20, [[1, utf8('format')]]],
+    [22, [[1, utf8('Hot')], [2, utf8('main')], [3, utf8('render')], [4, utf8('java/lang/String')], [5, [2, ...varlong(1)]], [6, utf8('[B')]]]
+  ]);
+  const constants = delta => constantPoolEvent(delta, [
+    [21, [[1, varlong(1)], [2, varlong(4)], [3, varlong(6)]]],
+    [23, [[1, [...varlong(1), ...varlong(2)]], [2, [...varlong(1), ...varlong(3)]], [3, [...varlong(2), ...varlong(5)]]]],
+    [25, [
+      [1, [0, ...varlong(3), ...frame(3, 2937), ...frame(2, 4), ...frame(1, 9)]],
+      [2, [0, ...varlong(1), ...frame(1, 10)]]
+    ]]
+  ]);
+
+  const header = 68;
+  const body = _.flatten(samples);
+  const symbolsOffset = header + body.length;
+  const constantsOffset = symbolsOffset + symbols.length;
+  const constantsEvent = constants(symbolsOffset - constantsOffset);
+  const metadataOffset = constantsOffset + constantsEvent.length;
+  const metadata = metadataEvent();
+
+  const buffer = Buffer.alloc(metadataOffset + metadata.length);
+  buffer.write('FLR\0', 0, 'latin1');
+  buffer.writeUInt16BE(2, 4);
+  buffer.writeUInt16BE(1, 6);
+  buffer.writeUInt32BE(buffer.length, 12);
+  buffer.writeUInt32BE(constantsOffset, 20);
+  buffer.writeUInt32BE(metadataOffset, 28);
+  buffer.writeUInt32BE(1, 64);
+  Buffer.from([...body, ...symbols, ...constantsEvent, ...metadata]).copy(buffer, header);
+  return buffer;
+}
+
+module.exports = { generateChunk, varlong };
@@ -0,0 +1,49 @@
+'use strict';
+
+const expect = require('expect.js');
+
+const { readSamples, toCollapsed, topFrames } = require('../../lib/local/jfr');
+const { generateChunk } = require('./jfr-data');
+
+describe('test readSamples', () => {
+  it('test cpu and allocation samples', () => {
+    const { cpu, alloc } = readSamples(generateChunk());
+
+    expect(toCollapsed(cpu)).to.be([
+      'Hot.main 1',
+      'Hot.main;Hot.render;java.lang.String.format 2'
+    ].join('\n'));
+    expect(toCollapsed(alloc)).to.be('Hot.main;Hot.render;java.lang.String.format;[B_[k] 1500');
+  });
+
+  it('test chunks', () => {
+    const chunk = generateChunk();
+    const { cpu, alloc } = readSamples(Buffer.concat([chunk, chunk]));
+
+    expect(cpu.get('Hot.main;Hot.render;java.lang.String.format')).to.be(4);
+    expect(alloc.get('Hot.main;Hot.render;java.lang.String.format;[B_[k]')).to.be(3000);
+  });
+
+  it('test invalid file', () => {
+    expect(() => readSamples(Buffer.alloc(100))).to.throwException(/not a JFR file/);
+
+    const chunk = generateChunk();
+    chunk.writeUInt16BE(1, 4);
+    expect(() => readSamples(chunk)).to.throwException(/unsupported JFR version 1\.1/);
+  });
+});
+
+describe('test topFrames', () => {
+  it('test self weights', () => {
+    const { cpu, alloc } = readSamples(generateChunk());
+
+    expect(topFrames(cpu)).to.eql([
+      { frame: 'java.lang.String.format', weight: 2, percent: 66.7 },
+      { frame: 'Hot.main', weight: 1, percent: 33.3 }
+    ]);
+    expect(topFrames(cpu, 1)).to.have.length(1);
+    expect(topFrames(alloc)).to.eql([
+      { frame: 'java.lang.String.format ([B)', weight: 1500, percent: 100 }
+    ]);
+  });
+});
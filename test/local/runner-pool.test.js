@@ -0,0 +1,105 @@
+'use strict';
+
+const expect = require('expect.js');
+const sinon = require('sinon');
+const sandbox = sinon.createSandbox();
+const assert = sinon.assert;
+
+const RunnerPool = require('../../lib/local/runner-pool');
+
+function createRunner() {
+  return { stop: sandbox.stub().resolves() };
+}
+
+describe('test RunnerPool', () => {
+
+  let startRunner;
+
+  beforeEach(() => {
+    startRunner = sandbox.stub().callsFake(async () => createRunner());
+  });
+
+  afterEach(() => {
+    sandbox.restore();
+  });
+
+  it('test start runners', async () => {
+    const pool = new RunnerPool(3, startRunner);
+    await pool.start();
+
+    assert.calledThrice(startRunner);
+    expect(pool.idle).to.have.length(3);
+  });
+
+  it('test concurrent acquire', async () => {
+    const pool = new RunnerPool(2, startRunner);
+    await pool.start();
+
+    const first = await pool.acquire();
+    const second = await pool.acquire();
+    expect(first).not.to.be(second);
+    expect(first.invokeInitializer).to.be(true);
+
+    let third;
+    const waiting = pool.acquire().then(slot => { third = slot; });
+    await Promise.resolve();
+    expect(third).to.be(undefined);
+
+    pool.release(first);
+    await waiting;
+    expect(third).to.be(first);
+  });
+
+  it('test discard exited runner', async () => {
+    const pool = new RunnerPool(1, startRunner);
+    await pool.start();
+
+    const slot = await pool.acquire();
+    pool.discard(slot);
+
+    const replaced = await pool.acquire();
+    expect(replaced).not.to.be(slot);
+    expect(replaced.invokeInitializer).to.be(true);
+    assert.calledOnce(slot.runner.stop);
+    assert.calledTwice(startRunner);
+  });
+
+  it('test stop waits for borrowed runners', async () => {
+    const pool = new RunnerPool(2, startRunner);
+    await pool.start();
+
+    const slot = await pool.acquire();
+
+    let stopped = false;
+    const stopping = pool.stop().then(() => { stopped = true; });
+    await new Promise(resolve => setImmediate(resolve));
+    expect(stopped).to.be(false);
+
+    pool.release(slot);
+    await stopping;
+
+    pool.slots.forEach(s => assert.calledOnce(s.runner.stop));
+
+    try {
+      await pool.acquire();
+      expect().fail();
+    } catch (e) {
+      expect(e.message).to.contain('stopped');
+    }
+  });
+
+  it('test start failure stops started runners', async () => {
+    const runner = createRunner();
+    startRunner.onFirstCall().resolves(runner);
+    startRunner.onSecondCall().rejects(new Error('port is already allocated'));
+
+    const pool = new RunnerPool(2, startRunner);
+    try {
+      await pool.start();
+      expect().fail();
+    } catch (e) {
+      expect(e.message).to.be('port is already allocated');
+    }
+    assert.calledOnce(runner.stop);
+  });
+});
@@ -0,0 +1,73 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+const streams = require('memory-streams');
+
+const { StartupTrace, parseTraceLine } = require('../../lib/local/startup-trace');
+
+const listing = 'FUN_STARTUP_TRACE {"name":"list jars and class index","ts":1600000000000000,"dur":12000,"classes":35}';
+const initialize = 'FUN_STARTUP_TRACE {"name":"initialize","ts":1600000000020000,"dur":300000,"classes":1200}';
+const spring = 'FUN_STARTUP_TRACE {"name":"spring ready","ts":1600000000100000,"dur":5000,"classes":-1}';
+
+describe('test parseTraceLine', () => {
+  it('test trace lines', () => {
+    expect(parseTraceLine(listing)).to.eql({ name: 'list jars and class index', ts: 1600000000000000, dur: 12000, classes: 35 });
+    expect(parseTraceLine(`2020-09-13T12:26:40.000Z ${initialize}`).name).to.be('initialize');
+  });
+
+  it('test other lines', () => {
+    expect(parseTraceLine('FC Invoke Start RequestId: 1')).to.be(null);
+    expect(parseTraceLine('FUN_STARTUP_TRACE {"name":')).to.be(null);
+    expect(parseTraceLine('FUN_STARTUP_TRACE {"name":"a"}')).to.be(null);
+  });
+});
+
+describe('test StartupTrace', () => {
+  const outputPath = path.join(os.tmpdir(), '.startup-trace-test', 'trace.json');
+
+  afterEach(() => {
+    rimraf.sync(path.dirname(outputPath));
+  });
+
+  it('test tap passes logs through', async () => {
+    const trace = new StartupTrace(outputPath);
+    const pid = trace.addProcess('localdemo/java8');
+    const target = new streams.WritableStream();
+    const tap = trace.tap(target, pid);
+
+    const logs = `hello\n${listing}\n${initialize.substring(0, 30)}`;
+    tap.write(logs);
+    tap.write(`${initialize.substring(30)}\n${spring}`);
+    await new Promise(resolve => tap.end(resolve));
+
+    expect(target.toString()).to.be(`hello\n${listing}\n${initialize}\n${spring}`);
+    expect(trace.phases.map(phase => phase.name)).to.eql(['list jars and class index', 'initialize', 'spring ready']);
+    expect(trace.phases[0].pid).to.be(1);
+  });
+
+  it('test chrome trace', async () => {
+    const trace = new StartupTrace(outputPath);
+    const first = trace.addProcess('localdemo/java8 a');
+    const second = trace.addProcess('localdemo/java8 b');
+
+    trace.phases.push(Object.assign({ pid: second }, parseTraceLine(initialize)));
+    trace.phases.push(Object.assign({ pid: first }, parseTraceLine(spring)));
+    trace.phases.push(Object.assign({ pid: first }, parseTraceLine(listing)));
+    await trace.flush();
+
+    const { traceEvents } = await fs.readJson(outputPath);
+    expect(traceEvents[0]).to.eql({ name: 'process_name', ph: 'M', pid: 1, tid: 0, args: { name: 'localdemo/java8 a' } });
+    expect(traceEvents.slice(2).map(e => [e.pid, e.name])).to.eql([
+      [1, 'list jars and class index'], [2, 'initialize'], [1, 'spring ready']
+    ]);
+    expect(traceEvents[2]).to.eql({
+      name: 'list jars and class index', cat: 'startup', ph: 'X', pid: 1, tid: 0,
+      ts: 1600000000000000, dur: 12000, args: { loadedClasses: 35 }
+    });
+    expect(traceEvents[4].args).to.eql({});
+  });
+});
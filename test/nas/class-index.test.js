@@ -0,0 +1,68 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const { packTo } = require('../../lib/package/zip');
+const { packagesOf, writeClassIndexes, CLASS_INDEX_FILE_NAME } = require('../../lib/nas/class-index');
+
+describe('packagesOf test', () => {
+  it('test nested packages', () => {
+    const packages = packagesOf(['com/example/demo/App.class', 'com/example/Util.class', 'META-INF/', 'META-INF/MANIFEST.MF']);
+    expect(packages).to.eql(['META-INF/', 'com/', 'com/example/', 'com/example/demo/']);
+  });
+
+  it('test root entries', () => {
+    const packages = packagesOf(['log4j.properties', 'com/App.class']);
+    expect(packages).to.eql(['', 'com/']);
+  });
+});
+
+describe('writeClassIndexes test', () => {
+  const localNasDir = path.join(os.tmpdir(), '.class-index-test');
+  const libDir = path.join(localNasDir, 'lib');
+  const classesDir = path.join(os.tmpdir(), '.class-index-test-classes');
+
+  beforeEach(async () => {
+    await fs.mkdirp(libDir);
+    await fs.mkdirp(path.join(classesDir, 'com', 'example'));
+    await fs.writeFile(path.join(classesDir, 'com', 'example', 'App.class'), 'class');
+    await fs.writeFile(path.join(classesDir, 'app.properties'), 'key=value');
+    await packTo(classesDir, null, path.join(libDir, 'app.jar'));
+    await fs.writeFile(path.join(localNasDir, 'model.bin'), 'model');
+  });
+
+  afterEach(() => {
+    rimraf.sync(localNasDir);
+    rimraf.sync(classesDir);
+  });
+
+  it('test write index next to jars', async () => {
+    const indexPaths = await writeClassIndexes(localNasDir);
+    expect(indexPaths).to.eql([path.join(libDir, CLASS_INDEX_FILE_NAME)]);
+
+    const { size, mtimeMs } = await fs.stat(path.join(libDir, 'app.jar'));
+    const content = await fs.readFile(indexPaths[0], 'utf8');
+    expect(content).to.eql(`@app.jar ${size} ${Math.floor(mtimeMs / 1000)}\n/\ncom/\ncom/example/\n`);
+  });
+
+  it('test write index to output dir', async () => {
+    const outputDir = path.join(os.tmpdir(), '.class-index-test-output');
+    try {
+      const indexPaths = await writeClassIndexes(localNasDir, outputDir);
+      expect(indexPaths).to.eql([path.join(outputDir, 'lib', CLASS_INDEX_FILE_NAME)]);
+      expect(await fs.pathExists(path.join(libDir, CLASS_INDEX_FILE_NAME))).to.be(false);
+    } finally {
+      rimraf.sync(outputDir);
+    }
+  });
+
+  it('test dir without jars', async () => {
+    rimraf.sync(path.join(libDir, 'app.jar'));
+    const indexPaths = await writeClassIndexes(localNasDir);
+    expect(indexPaths).to.eql([]);
+  });
+});
@@ -0,0 +1,150 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const crypto = require('crypto');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+const sinon = require('sinon');
+const proxyquire = require('proxyquire');
+const constants = require('../../../lib/nas/constants');
+const sandbox = sinon.createSandbox();
+const assert = sinon.assert;
+
+const nasHttpTriggerPath = '/proxy/';
+const nasFile = '/mnt/nas/test-file';
+const request = {
+  uploadChunkBuffer: sandbox.stub()
+};
+
+const { ChunkScheduler, UploadJournal, uploadFileByChunk } = proxyquire('../../../lib/nas/cp/chunk-upload', {
+  '../request': request,
+  '../constants': Object.assign({}, constants, { FUN_NAS_UPLOAD_RETRY_DELAY: 1 })
+});
+
+function md5(content) {
+  return crypto.createHash('md5').update(content).digest('hex');
+}
+
+describe('chunk scheduler test', () => {
+  it('test increase after a round', () => {
+    const scheduler = new ChunkScheduler();
+    for (let i = 0; i < constants.FUN_NAS_UPLOAD_PARALLEL_COUNT; i++) {
+      scheduler.onSuccess(constants.FUN_NAS_CHUNK_SIZE);
+    }
+    expect(scheduler.concurrency).to.be(constants.FUN_NAS_UPLOAD_PARALLEL_COUNT + 1);
+    expect(scheduler.chunkSize).to.be(constants.FUN_NAS_CHUNK_SIZE);
+  });
+
+  it('test decrease on failure', () => {
+    const scheduler = new ChunkScheduler();
+    scheduler.onFailure();
+    expect(scheduler.concurrency).to.be(Math.floor(constants.FUN_NAS_UPLOAD_PARALLEL_COUNT / 2));
+    expect(scheduler.chunkSize).to.be(constants.FUN_NAS_CHUNK_SIZE / 2);
+
+    for (let i = 0; i < 10; i++) { scheduler.onFailure(); }
+    expect(scheduler.concurrency).to.be(1);
+    expect(scheduler.chunkSize).to.be(constants.FUN_NAS_MIN_CHUNK_SIZE);
+  });
+});
+
+describe('upload journal test', () => {
+  const localNasTmpDir = path.join(os.tmpdir(), '.upload-journal-nas-tmp');
+
+  afterEach(() => {
+    rimraf.sync(localNasTmpDir);
+  });
+
+  it('test ack and unacked', async () => {
+    const journal = new UploadJournal();
+    await journal.ack(10, 20, true);
+    await journal.ack(30, 40, true);
+    await journal.ack(20, 30, true);
+    await journal.ack(50, 60, true);
+
+    expect(journal.acked).to.eql([[10, 40], [50, 60]]);
+    expect(journal.ackedBytes()).to.be(40);
+    expect(journal.unacked(0, 100)).to.eql([[0, 10], [40, 50], [60, 100]]);
+    expect(journal.unacked(15, 35)).to.eql([]);
+    expect(journal.unacked(35, 55)).to.eql([[40, 50]]);
+  });
+
+  it('test reopen journal', async () => {
+    const journal = await UploadJournal.open(localNasTmpDir, 'key', { size: 100 });
+    await journal.ack(0, 10, false);
+
+    const reopened = await UploadJournal.open(localNasTmpDir, 'key', { size: 100 });
+    expect(reopened.acked).to.eql([[0, 10]]);
+    expect(reopened.unverified).to.be(true);
+
+    const changed = await UploadJournal.open(localNasTmpDir, 'key', { size: 200 });
+    expect(changed.acked).to.eql([]);
+
+    await reopened.remove();
+    expect(fs.readdirSync(localNasTmpDir)).to.eql([]);
+  });
+});
+
+describe('upload file by chunk test', () => {
+  const srcPath = path.join(os.tmpdir(), '.chunk-upload-local-nas-dir');
+  const localFile = path.join(srcPath, 'test-file');
+  const content = crypto.randomBytes(constants.FUN_NAS_CHUNK_SIZE * 2 + 10);
+
+  beforeEach(async () => {
+    await fs.outputFile(localFile, content);
+    request.uploadChunkBuffer.callsFake((triggerPath, nasFile, start, body, chunkHash) => ({ data: { chunkHash } }));
+  });
+
+  afterEach(() => {
+    sandbox.reset();
+    rimraf.sync(srcPath);
+  });
+
+  it('test upload with hash', async () => {
+    const { fileHash, verified } = await uploadFileByChunk(nasHttpTriggerPath, nasFile, localFile);
+
+    expect(fileHash).to.be(md5(content));
+    expect(verified).to.be(true);
+    assert.callCount(request.uploadChunkBuffer, 3);
+
+    const chunk = content.slice(0, constants.FUN_NAS_CHUNK_SIZE);
+    assert.calledWith(request.uploadChunkBuffer, nasHttpTriggerPath, nasFile, 0, chunk, md5(chunk));
+  });
+
+  it('test not verified by old server', async () => {
+    request.uploadChunkBuffer.returns({ data: { desc: 'chunk file write done' } });
+
+    const { verified } = await uploadFileByChunk(nasHttpTriggerPath, nasFile, localFile);
+    expect(verified).to.be(false);
+  });
+
+  it('test skip acked chunks', async () => {
+    const journal = new UploadJournal();
+    await journal.ack(0, constants.FUN_NAS_CHUNK_SIZE * 2, true);
+
+    const { fileHash } = await uploadFileByChunk(nasHttpTriggerPath, nasFile, localFile, journal);
+
+    expect(fileHash).to.be(md5(content));
+    assert.calledOnce(request.uploadChunkBuffer);
+    assert.calledWith(request.uploadChunkBuffer, nasHttpTriggerPath, nasFile, constants.FUN_NAS_CHUNK_SIZE * 2);
+    expect(journal.acked).to.eql([[0, content.length]]);
+  });
+
+  it('test retry with smaller chunks', async () => {
+    // the first chunk could only be uploaded after being split
+    request.uploadChunkBuffer.callsFake((triggerPath, nasFile, start, body, chunkHash) => {
+      if (start === 0 && body.length === constants.FUN_NAS_CHUNK_SIZE) {
+        throw new Error('socket hang up');
+      }
+      return { data: { chunkHash } };
+    });
+
+    const journal = new UploadJournal();
+    const { fileHash } = await uploadFileByChunk(nasHttpTriggerPath, nasFile, localFile, journal);
+
+    expect(fileHash).to.be(md5(content));
+    expect(journal.acked).to.eql([[0, content.length]]);
+    assert.calledWith(request.uploadChunkBuffer, nasHttpTriggerPath, nasFile, constants.FUN_NAS_CHUNK_SIZE / 2);
+  });
+});
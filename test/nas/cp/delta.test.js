@@ -0,0 +1,55 @@
+'use strict';
+
+const crypto = require('crypto');
+const expect = require('expect.js');
+
+const { weakChecksum, computeDelta } = require('../../../lib/nas/cp/delta');
+
+const blockSize = 16;
+
+function signaturesOf(buf) {
+  const signatures = [];
+  for (let index = 0; (index + 1) * blockSize <= buf.length; index++) {
+    const block = buf.slice(index * blockSize, (index + 1) * blockSize);
+    signatures.push({
+      index,
+      weak: weakChecksum(block, 0, blockSize),
+      strong: crypto.createHash('md5').update(block).digest('hex')
+    });
+  }
+  return signatures;
+}
+
+function applyDelta(old, ops, literal) {
+  return Buffer.concat(ops.map(op => {
+    if (op.length !== undefined) { return literal.slice(op.offset, op.offset + op.length); }
+    return old.slice(op.index * blockSize, (op.index + op.count) * blockSize);
+  }));
+}
+
+describe('compute delta test', () => {
+  const old = crypto.randomBytes(blockSize * 10);
+
+  it('test unchanged', () => {
+    const { ops, literal } = computeDelta(old, signaturesOf(old), blockSize);
+
+    expect(ops).to.eql([{ index: 0, count: 10 }]);
+    expect(literal.length).to.be(0);
+  });
+
+  it('test shifted blocks', () => {
+    const changed = Buffer.concat([Buffer.from('abc'), old.slice(0, 50), Buffer.from('xyz'), old.slice(50)]);
+    const { ops, literal } = computeDelta(changed, signaturesOf(old), blockSize);
+
+    expect(applyDelta(old, ops, literal)).to.eql(changed);
+    expect(literal.length).to.be.lessThan(blockSize * 2);
+  });
+
+  it('test nothing matched', () => {
+    const changed = crypto.randomBytes(blockSize * 3);
+    const { ops, literal } = computeDelta(changed, signaturesOf(old), blockSize);
+
+    expect(ops).to.eql([{ offset: 0, length: changed.length }]);
+    expect(literal).to.eql(changed);
+  });
+});
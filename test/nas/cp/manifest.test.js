@@ -0,0 +1,89 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const { getFileHash } = require('../../../lib/nas/cp/file');
+const { manifestCachePath, buildLocalManifest, diffManifests } = require('../../../lib/nas/cp/manifest');
+
+describe('build local manifest test', () => {
+  const srcPath = path.join(os.tmpdir(), '.manifest-local-nas-dir');
+  const localNasTmpDir = path.join(os.tmpdir(), '.manifest-nas-tmp');
+  const cachePath = manifestCachePath(localNasTmpDir, srcPath);
+  const filePath = path.join(srcPath, 'sub', 'test-file');
+
+  beforeEach(async () => {
+    await fs.mkdirp(path.join(srcPath, 'empty'));
+    await fs.outputFile(filePath, 'this is a test');
+  });
+
+  afterEach(() => {
+    rimraf.sync(srcPath);
+    rimraf.sync(localNasTmpDir);
+  });
+
+  it('test build manifest', async () => {
+    const files = await buildLocalManifest(srcPath, cachePath);
+
+    expect(Object.keys(files).sort()).to.eql(['empty/', 'sub/test-file']);
+    expect(files['empty/']).to.eql({ dir: true });
+    expect(files['sub/test-file'].size).to.be(14);
+    expect(files['sub/test-file'].hash).to.be(await getFileHash(filePath));
+    expect(await fs.pathExists(cachePath)).to.be(true);
+  });
+
+  it('test reuse cached hash', async () => {
+    await buildLocalManifest(srcPath, cachePath);
+
+    const cached = JSON.parse(await fs.readFile(cachePath, 'utf8'));
+    cached['sub/test-file'].hash = 'cached';
+    await fs.writeFile(cachePath, JSON.stringify(cached));
+
+    const files = await buildLocalManifest(srcPath, cachePath);
+    expect(files['sub/test-file'].hash).to.be('cached');
+  });
+});
+
+describe('diff manifests test', () => {
+  const localFiles = {
+    'empty/': { dir: true },
+    'added': { size: 1, hash: 'a' },
+    'changed': { size: 1, hash: 'b' },
+    'unchanged': { size: 1, hash: 'c' }
+  };
+  const remoteFiles = {
+    'empty/': { dir: true },
+    'changed': { size: 1, hash: 'x' },
+    'unchanged': { size: 1, hash: 'c' },
+    'extraneous': { size: 1, hash: 'd' }
+  };
+
+  it('test diff', () => {
+    expect(diffManifests(localFiles, remoteFiles)).to.eql({
+      added: ['added'],
+      changed: ['changed'],
+      removed: [],
+      unchanged: 2
+    });
+  });
+
+  it('test diff with no clobber', () => {
+    const { changed, unchanged } = diffManifests(localFiles, remoteFiles, { noClobber: true });
+    expect(changed).to.eql([]);
+    expect(unchanged).to.be(3);
+  });
+
+  it('test diff with delete extraneous', () => {
+    const { removed } = diffManifests(localFiles, remoteFiles, { deleteExtraneous: true });
+    expect(removed).to.eql(['extraneous']);
+  });
+
+  it('test class index is not extraneous', () => {
+    const withIndex = Object.assign({ 'lib/.fun-class-index': { size: 1, hash: 'e' } }, remoteFiles);
+    const { removed } = diffManifests(localFiles, withIndex, { deleteExtraneous: true });
+    expect(removed).to.eql(['extraneous']);
+  });
+});
@@ -9,6 +9,9 @@ const { getFileHash, getFilePermission } = require('../../../lib/nas/cp/file');
 const { readDirRecursive } = require('../../../lib/nas/path');
 const constants = require('../../../lib/nas/constants');
 const { chunk } = require('../../../lib/nas/support');
+const { weakChecksum } = require('../../../lib/nas/cp/delta');
+const { UploadJournal } = require('../../../lib/nas/cp/chunk-upload');
+const crypto = require('crypto');
 const path = require('path');
 const sinon = require('sinon');
 const proxyquire = require('proxyquire');
@@ -20,16 +23,25 @@ const nasHttpTriggerPath = '/proxy/';
 const noClobber = true;
 const request = {
   sendUnzipRequest: sandbox.stub(),
+  sendExtractRequest: sandbox.stub(),
   sendCleanRequest: sandbox.stub(), 
   createSizedNasFile: sandbox.stub(), 
-  uploadChunkFile: sandbox.stub(),
+  uploadChunkBuffer: sandbox.stub(),
+  statsRequest: sandbox.stub(),
   checkFileHash: sandbox.stub(), 
   checkRemoteNasTmpDir: sandbox.stub(), 
-  changeNasFilePermission: sandbox.stub()
+  changeNasFilePermission: sandbox.stub(),
+  getManifest: sandbox.stub(),
+  removeNasFiles: sandbox.stub(),
+  getFileSignatures: sandbox.stub(),
+  sendPatchRequest: sandbox.stub()
 };
 
 const uploadStub = proxyquire('../../../lib/nas/cp/upload', {
-  '../request': request
+  '../request': request,
+  './chunk-upload': proxyquire('../../../lib/nas/cp/chunk-upload', {
+    '../request': request
+  })
 });
 
 describe('upload folder test', () => {
@@ -52,7 +64,7 @@ describe('upload folder test', () => {
         stderr: ''
       }
     });
-    request.uploadChunkFile.returns({
+    request.uploadChunkBuffer.returns({
       headers: 200,
       data: {
         desc: 'chunk file write done'
@@ -70,6 +82,9 @@ describe('upload folder test', () => {
       stdout: 'test',
       stderr: ''
     });
+    request.sendExtractRequest.returns({
+      total: 1, extracted: 1, skipped: 0, next: 1, done: true
+    });
     request.sendCleanRequest.returns({
       desc: 'clean done'
     });
@@ -94,19 +109,138 @@ describe('upload folder test', () => {
     await uploadStub.uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber);
     const subDirs = fs.readdirSync(localNasTmpDir);
     expect(subDirs.length).to.eql(1);
-    const srcPathFiles = await readDirRecursive(srcPath);
-    
-    const filesArrSlicedBySize = chunk(srcPathFiles, constants.FUN_NAS_FILE_COUNT_PER_REQUEST);
-  
+
     assert.calledOnce(request.createSizedNasFile);
-    assert.calledOnce(request.uploadChunkFile);
+    assert.calledOnce(request.uploadChunkBuffer);
     assert.calledOnce(request.checkFileHash);
 
+    assert.calledOnce(request.sendExtractRequest);
+    assert.calledWith(request.sendExtractRequest, nasHttpTriggerPath, nasZipFile, dstPath, noClobber, 0);
+    assert.notCalled(request.sendUnzipRequest);
+    assert.calledWith(request.sendCleanRequest, nasHttpTriggerPath, nasZipFile);
+    assert.calledWith(request.checkRemoteNasTmpDir, nasHttpTriggerPath, remoteNasTmpDir);
+  });
+
+  it('continue unzipping after the time budget', async() => {
+    request.sendExtractRequest.callsFake((triggerPath, nasZipFile, dstDir, noClobber, start) => {
+      return start === 0 ? { total: 2, next: 1, done: false } : { total: 2, next: 2, done: true };
+    });
+
+    await uploadStub.uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber);
+
+    assert.calledTwice(request.sendExtractRequest);
+    assert.calledWith(request.sendExtractRequest, nasHttpTriggerPath, nasZipFile, dstPath, noClobber, 1);
+  });
+
+  it('unzip error other than 404', async() => {
+    request.sendExtractRequest.rejects(Object.assign(new Error('POST /proxy/unzip failed with 502. Cannot POST /unzip'), { statusCode: 502 }));
+
+    try {
+      await uploadStub.uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber);
+    } catch (error) {
+      expect(error.statusCode).to.be(502);
+      assert.notCalled(request.sendUnzipRequest);
+      return;
+    }
+    expect().fail('should throw');
+  });
+
+  it('unzip by command with old fun-nas-server', async() => {
+    request.sendExtractRequest.rejects(Object.assign(new Error('POST /proxy/unzip failed with 404. Cannot POST /unzip'), { statusCode: 404 }));
+
+    await uploadStub.uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, noClobber);
+    const srcPathFiles = await readDirRecursive(srcPath);
+
+    const filesArrSlicedBySize = chunk(srcPathFiles, constants.FUN_NAS_FILE_COUNT_PER_REQUEST);
+
     assert.calledWith(request.sendUnzipRequest, nasHttpTriggerPath, dstPath, nasZipFile, filesArrSlicedBySize[0], noClobber);
     assert.calledWith(request.sendCleanRequest, nasHttpTriggerPath, nasZipFile);
+  });
+});
+describe('upload folder by manifest test', () => {
+  const srcPath = path.join(os.tmpdir(), '.upload-manifest-local-nas-dir');
+  const localNasTmpDir = path.join(os.tmpdir(), '.upload-manifest-nas-tmp');
+  const remoteNasTmpDir = path.posix.join(dstPath, '.fun_nas_tmp');
+  const unchangedFile = path.join(srcPath, 'unchanged-file');
+  const changedFile = path.join(srcPath, 'changed-file');
+  const largeFile = path.join(srcPath, 'large-file');
+  const largeContent = crypto.randomBytes(constants.FUN_NAS_DELTA_MIN_SIZE);
+  const blockSize = constants.FUN_NAS_DELTA_BLOCK_SIZE;
+
+  let remoteFiles;
+
+  beforeEach(async () => {
+    await fs.mkdirp(srcPath);
+    await fs.writeFile(unchangedFile, 'unchanged');
+    await fs.writeFile(changedFile, 'changed');
+    await fs.writeFile(largeFile, largeContent);
+
+    remoteFiles = {
+      'unchanged-file': { size: 9, hash: await getFileHash(unchangedFile) },
+      'changed-file': { size: 7, hash: 'old' },
+      'large-file': { size: largeContent.length, hash: 'old' },
+      'extraneous-file': { size: 1, hash: 'extraneous' }
+    };
+
+    // the remote large file has the same blocks except the last one
+    const signatures = [];
+    for (let index = 0; index < largeContent.length / blockSize - 1; index++) {
+      const block = largeContent.slice(index * blockSize, (index + 1) * blockSize);
+      signatures.push({
+        index,
+        weak: weakChecksum(block, 0, blockSize),
+        strong: crypto.createHash('md5').update(block).digest('hex')
+      });
+    }
+
+    request.getManifest.returns({ data: { files: remoteFiles } });
+    request.getFileSignatures.returns({ data: { signatures } });
+    request.createSizedNasFile.returns({ data: {} });
+    request.uploadChunkBuffer.returns({ data: {} });
+    request.checkFileHash.returns({ data: {} });
+    request.sendUnzipRequest.returns({ stdout: 'test', stderr: '' });
+    // unzipping by the file list of old fun-nas-servers tells which files are zipped
+    request.sendExtractRequest.rejects(Object.assign(new Error('Cannot POST /unzip'), { statusCode: 404 }));
+  });
+
+  afterEach(() => {
+    sandbox.reset();
+    rimraf.sync(srcPath);
+    rimraf.sync(localNasTmpDir);
+  });
+
+  it('upload only changed files', async () => {
+    await uploadStub.uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, false);
+
     assert.calledWith(request.checkRemoteNasTmpDir, nasHttpTriggerPath, remoteNasTmpDir);
+    assert.notCalled(request.removeNasFiles);
+
+    assert.calledWith(request.getFileSignatures, nasHttpTriggerPath, path.posix.join(dstPath, 'large-file'), blockSize);
+    assert.calledOnce(request.sendPatchRequest);
+    const [, nasFile, , patchBlockSize, ops, fileHash] = request.sendPatchRequest.firstCall.args;
+    expect(nasFile).to.be(path.posix.join(dstPath, 'large-file'));
+    expect(patchBlockSize).to.be(blockSize);
+    expect(ops[0]).to.eql({ index: 0, count: largeContent.length / blockSize - 1 });
+    expect(fileHash).to.be(await getFileHash(largeFile));
+
+    assert.calledOnce(request.sendUnzipRequest);
+    expect(request.sendUnzipRequest.firstCall.args[3]).to.eql(['changed-file']);
+  });
+
+  it('remove extraneous files when syncing', async () => {
+    await uploadStub.uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, false, true);
+
+    assert.calledWith(request.removeNasFiles, nasHttpTriggerPath, dstPath, ['extraneous-file']);
+  });
+
+  it('skip changed files with no clobber', async () => {
+    await uploadStub.uploadFolder(srcPath, dstPath, nasHttpTriggerPath, localNasTmpDir, true);
+
+    assert.notCalled(request.sendPatchRequest);
+    assert.notCalled(request.sendUnzipRequest);
   });
 });
+
 describe('upload file test', () => {
   const srcPath = path.join(os.tmpdir(), '.upload-file-local-nas-dir');
   const srcPathFile = path.join(srcPath, 'test-file');
@@ -125,7 +259,7 @@ describe('upload file test', () => {
         stderr: ''
       }
     });
-    request.uploadChunkFile.returns({
+    request.uploadChunkBuffer.returns({
       headers: 200,
       data: {
         desc: 'chunk file write done'
@@ -148,8 +282,30 @@ describe('upload file test', () => {
     await uploadStub.uploadFile(srcPathFile, dstPath, nasHttpTriggerPath);
     
     assert.calledWith(request.createSizedNasFile, nasHttpTriggerPath, dstPath, fileSize);
-    assert.calledTwice(request.uploadChunkFile);
+    assert.calledTwice(request.uploadChunkBuffer);
     assert.calledWith(request.checkFileHash, nasHttpTriggerPath, dstPath, fileHash);
     assert.calledWith(request.changeNasFilePermission, nasHttpTriggerPath, dstPath, filePermission);
   });
+
+  it('resume upload test', async() => {
+    const localNasTmpDir = path.join(os.tmpdir(), '.upload-file-nas-tmp');
+    const stats = await fs.lstat(srcPathFile);
+    const journal = await UploadJournal.open(localNasTmpDir, `${path.resolve(srcPathFile)}:${dstPath}`, {
+      size: stats.size, mtime: stats.mtime.getTime()
+    });
+    await journal.ack(0, constants.FUN_NAS_CHUNK_SIZE, false);
+    request.statsRequest.returns({ data: { exists: true, isFile: true } });
+
+    try {
+      await uploadStub.uploadFile(srcPathFile, dstPath, nasHttpTriggerPath, localNasTmpDir);
+
+      assert.notCalled(request.createSizedNasFile);
+      assert.calledOnce(request.uploadChunkBuffer);
+      assert.calledWith(request.uploadChunkBuffer, nasHttpTriggerPath, dstPath, constants.FUN_NAS_CHUNK_SIZE);
+      assert.calledWith(request.checkFileHash, nasHttpTriggerPath, dstPath, fileHash);
+      expect(fs.readdirSync(localNasTmpDir)).to.eql([]);
+    } finally {
+      rimraf.sync(localNasTmpDir);
+    }
+  });
 });
\ No newline at end of file
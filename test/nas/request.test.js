@@ -110,4 +110,50 @@ describe('request test', () => {
     expect(res).to.eql('fcRequestRes');
   });
 
+  it('uploadChunkBuffer function test', async() => {
+    let res = await request.uploadChunkBuffer(nasHttpTriggerPath, nasFile, 10, body, 'chunkHash');
+    const query = {
+      nasFile,
+      fileStart: '10',
+      chunkHash: 'chunkHash'
+    };
+
+    assert.calledWith(fcRequest, 'POST', nasHttpTriggerPath + 'file/chunk/upload', query, body, {'X-Fc-Log-Type': 'Tail'}, {});
+    expect(res).to.eql('fcRequestRes');
+  });
+
+  it('sendExtractRequest function test', async() => {
+    fcRequest.resolves({ data: { total: 2, next: 2, done: true } });
+
+    const res = await request.sendExtractRequest(nasHttpTriggerPath, nasFile, dstPath, true, 0);
+    const reqBody = { nasZipFile: nasFile, dstDir: dstPath, noClobber: true, start: 0 };
+
+    assert.calledWith(fcRequest, 'POST', nasHttpTriggerPath + 'unzip', {}, reqBody, {'X-Fc-Log-Type': 'Tail'}, {});
+    expect(res).to.eql({ total: 2, next: 2, done: true });
+  });
+
+  it('sendExtractRequest error test', async() => {
+    fcRequest.resolves({ data: { error: 'bad zip' } });
+
+    try {
+      await request.sendExtractRequest(nasHttpTriggerPath, nasFile, dstPath, true, 0);
+    } catch (error) {
+      expect(error.message).to.be('bad zip');
+      return;
+    }
+    expect().fail('should throw');
+  });
+
+  it('http status of failed request test', async() => {
+    fcRequest.rejects(new Error('POST /proxy/unzip failed with 404. requestid: 1, message: Cannot POST /unzip.'));
+
+    try {
+      await request.sendExtractRequest(nasHttpTriggerPath, nasFile, dstPath, true, 0);
+    } catch (error) {
+      expect(error.statusCode).to.be(404);
+      return;
+    }
+    expect().fail('should throw');
+  });
+
 });
@@ -0,0 +1,75 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const JSZip = require('jszip');
+const crypto = require('crypto');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const { repackJar, UnsupportedJarError } = require('../../lib/package/jar-repack');
+
+describe('test repackJar', () => {
+  const testDir = path.join(os.tmpdir(), '.jar-repack-test');
+  const jarPath = path.join(testDir, 'target', 'demo.jar');
+  const libPath = path.join(testDir, 'target', 'lib');
+
+  const storedJar = crypto.randomBytes(4096);
+  const deflatedJar = Buffer.alloc(8192, 'deflated');
+  const nestedJar = crypto.randomBytes(2048);
+
+  beforeEach(async () => {
+    const zip = new JSZip();
+    zip.file('META-INF/MANIFEST.MF', 'Main-Class: org.springframework.boot.loader.JarLauncher\n');
+    zip.file('BOOT-INF/classes/App.class', Buffer.alloc(1024, 'class'));
+    zip.file('BOOT-INF/classes/nested.jar', nestedJar, { compression: 'STORE' });
+    zip.file('BOOT-INF/lib/stored.jar', storedJar, { compression: 'STORE' });
+    zip.file('BOOT-INF/lib/deflated.jar', deflatedJar);
+
+    const content = await zip.generateAsync({ type: 'nodebuffer', compression: 'DEFLATE', comment: 'demo' });
+    await fs.outputFile(jarPath, content);
+  });
+
+  afterEach(() => {
+    rimraf.sync(testDir);
+  });
+
+  it('test move lib to target lib', async () => {
+    const moved = await repackJar(jarPath, path.join('BOOT-INF', 'lib'), libPath);
+
+    expect(moved).to.be(2);
+    expect(await fs.readFile(path.join(libPath, 'stored.jar'))).to.eql(storedJar);
+    expect(await fs.readFile(path.join(libPath, 'deflated.jar'))).to.eql(deflatedJar);
+
+    const repacked = await JSZip.loadAsync(await fs.readFile(jarPath));
+    expect(Object.keys(repacked.files).filter(name => !name.endsWith('/')).sort()).to.eql([
+      'BOOT-INF/classes/App.class',
+      'BOOT-INF/classes/nested.jar',
+      'META-INF/MANIFEST.MF'
+    ]);
+    expect(await repacked.file('BOOT-INF/classes/App.class').async('nodebuffer')).to.eql(Buffer.alloc(1024, 'class'));
+    expect(await repacked.file('BOOT-INF/classes/nested.jar').async('nodebuffer')).to.eql(nestedJar);
+  });
+
+  it('test keep stored entries stored', async () => {
+    await repackJar(jarPath, path.join('BOOT-INF', 'lib'), libPath);
+
+    const content = await fs.readFile(jarPath);
+    expect(content.indexOf(nestedJar)).to.not.be(-1);
+    expect(content.indexOf(storedJar)).to.be(-1);
+  });
+
+  it('test not a zip file', async () => {
+    await fs.outputFile(jarPath, 'not a jar');
+
+    try {
+      await repackJar(jarPath, path.join('BOOT-INF', 'lib'), libPath);
+      expect().fail();
+    } catch (e) {
+      expect(e).to.not.be.a(UnsupportedJarError);
+      expect(e.message).to.contain('not a zip file');
+    }
+    expect(await fs.readFile(jarPath, 'utf8')).to.be('not a jar');
+  });
+});
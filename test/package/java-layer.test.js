@@ -0,0 +1,123 @@
+'use strict';
+
+const os = require('os');
+const fs = require('fs-extra');
+const path = require('path');
+const sinon = require('sinon');
+const rimraf = require('rimraf');
+const expect = require('expect.js');
+
+const { packTo } = require('../../lib/package/zip');
+const { hashDependencies, dependencyLayerName, listDependencyJars, publishDependencyLayer } = require('../../lib/package/java-layer');
+
+const assert = sinon.assert;
+const sandbox = sinon.createSandbox();
+
+function readBody(body) {
+  return new Promise((resolve, reject) => {
+    const chunks = [];
+    body.on('data', chunk => chunks.push(chunk));
+    body.on('end', () => resolve(Buffer.concat(chunks).toString()));
+    body.on('error', reject);
+  });
+}
+
+describe('test java dependency layer', () => {
+  const libDir = path.join(os.tmpdir(), '.java-layer-test', 'lib');
+  const classesDir = path.join(os.tmpdir(), '.java-layer-test-classes');
+
+  let fc;
+  let published;
+
+  beforeEach(async () => {
+    await fs.mkdirp(libDir);
+    await fs.mkdirp(path.join(classesDir, 'com', 'example'));
+    await fs.writeFile(path.join(classesDir, 'com', 'example', 'Dep.class'), 'class');
+    await packTo(classesDir, null, path.join(libDir, 'dep.jar'));
+    await fs.writeFile(path.join(libDir, 'README.md'), 'not a jar');
+
+    fc = {
+      listLayerVersions: sandbox.stub(),
+      publishLayerVersion: sandbox.stub().callsFake(async (layerName, body) => {
+        published = JSON.parse(await readBody(body));
+        return { data: { arn: 'acs:fc:cn-hangzhou:123:layers/demo/versions/1' } };
+      })
+    };
+  });
+
+  afterEach(() => {
+    sandbox.restore();
+    rimraf.sync(path.join(os.tmpdir(), '.java-layer-test'));
+    rimraf.sync(classesDir);
+  });
+
+  it('test list jars only', async () => {
+    expect(await listDependencyJars(libDir)).to.eql(['dep.jar']);
+  });
+
+  it('test hash follows content', async () => {
+    const hash = await hashDependencies(libDir, ['dep.jar']);
+    expect(await hashDependencies(libDir, ['dep.jar'])).to.be(hash);
+
+    await fs.appendFile(path.join(libDir, 'dep.jar'), 'changed');
+    expect(await hashDependencies(libDir, ['dep.jar'])).not.to.be(hash);
+  });
+
+  it('test publish new layer', async () => {
+    fc.listLayerVersions.rejects(Object.assign(new Error('layer not found'), { code: 'LayerNotFound' }));
+
+    const layer = await publishDependencyLayer(fc, libDir);
+
+    const hash = await hashDependencies(libDir, ['dep.jar']);
+    expect(layer).to.eql({ arn: 'acs:fc:cn-hangzhou:123:layers/demo/versions/1', hash, uploaded: true });
+    assert.calledWith(fc.publishLayerVersion, dependencyLayerName(hash));
+    expect(published).to.have.property('description', `fun java dependencies ${hash}`);
+    expect(published.compatibleRuntime).to.eql(['java8', 'java11', 'custom']);
+
+    const zipFile = published.code.zipFile;
+    expect(zipFile).to.be.a('string');
+    expect(zipFile).not.to.be.empty();
+    expect(zipFile).to.match(/^[A-Za-z0-9+/]+=*$/);
+    // a zip starts with the signature of its first local file header
+    expect(Buffer.from(zipFile, 'base64').readUInt32LE(0)).to.be(0x04034b50);
+  });
+
+  it('test remove layer zip when publish fails', async () => {
+    fc.listLayerVersions.rejects(Object.assign(new Error('layer not found'), { code: 'LayerNotFound' }));
+    fc.publishLayerVersion.rejects(new Error('publish failed'));
+    sandbox.spy(fs, 'readFile');
+
+    try {
+      await publishDependencyLayer(fc, libDir);
+      expect().fail('should throw');
+    } catch (e) {
+      expect(e.message).to.be('publish failed');
+    }
+
+    const zipPath = fs.readFile.firstCall.args[0];
+    expect(path.basename(zipPath)).to.be('code.zip');
+    expect(await fs.pathExists(path.dirname(zipPath))).to.be(false);
+  });
+
+  it('test reuse unchanged layer', async () => {
+    const hash = await hashDependencies(libDir, ['dep.jar']);
+    fc.listLayerVersions.resolves({
+      data: {
+        layers: [{ version: 1, arn: 'acs:fc:cn-hangzhou:123:layers/demo/versions/1', description: `fun java dependencies ${hash}` }]
+      }
+    });
+
+    const layer = await publishDependencyLayer(fc, libDir);
+
+    expect(layer.uploaded).to.be(false);
+    expect(layer.arn).to.be('acs:fc:cn-hangzhou:123:layers/demo/versions/1');
+    assert.notCalled(fc.publishLayerVersion);
+  });
+
+  it('test no dependencies', async () => {
+    rimraf.sync(path.join(libDir, 'dep.jar'));
+
+    expect(await publishDependencyLayer(fc, libDir)).to.be(null);
+    assert.notCalled(fc.listLayerVersions);
+  });
+});